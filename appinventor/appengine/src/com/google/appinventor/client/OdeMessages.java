@@ -2714,6 +2714,14 @@ public interface OdeMessages extends Messages {
   @Description("")
   String AllowCookiesProperties();
 
+  @DefaultMessage("CacheResponses")
+  @Description("")
+  String CacheResponsesProperties();
+
+  @DefaultMessage("SampleInterval")
+  @Description("")
+  String SampleIntervalProperties();
+
   @DefaultMessage("ApiKey")
   @Description("")
   String ApiKeyProperties();
@@ -2798,6 +2806,18 @@ public interface OdeMessages extends Messages {
   @Description("")
   String DelimiterByteProperties();
 
+  @DefaultMessage("ReceiveInBackground")
+  @Description("")
+  String ReceiveInBackgroundProperties();
+
+  @DefaultMessage("ReceiveThreshold")
+  @Description("")
+  String ReceiveThresholdProperties();
+
+  @DefaultMessage("SendInBackground")
+  @Description("")
+  String SendInBackgroundProperties();
+
   @DefaultMessage("DetectColor")
   @Description("")
   String DetectColorProperties();
@@ -3038,6 +3058,10 @@ public interface OdeMessages extends Messages {
   @Description("")
   String ServiceURLProperties();
 
+  @DefaultMessage("CacheTimeToLive")
+  @Description("")
+  String CacheTimeToLiveProperties();
+
   @DefaultMessage("ShowLoadingDialog")
   @Description("")
   String ShowLoadingDialogProperties();
@@ -3759,6 +3783,10 @@ public interface OdeMessages extends Messages {
   @Description("")
   String numberOfBytesParams();
 
+  @DefaultMessage("bytesAvailable")
+  @Description("")
+  String bytesAvailableParams();
+
   @DefaultMessage("number")
   @Description("")
   String numberParams();
@@ -4179,6 +4207,10 @@ public interface OdeMessages extends Messages {
   @Description("")
   String tagParams();
 
+  @DefaultMessage("tags")
+  @Description("")
+  String tagsParams();
+
   @DefaultMessage("value")
   @Description("")
   String valueParams();
@@ -4187,6 +4219,10 @@ public interface OdeMessages extends Messages {
   @Description("")
   String valueToStoreParams();
 
+  @DefaultMessage("tagsAndValues")
+  @Description("")
+  String tagsAndValuesParams();
+
   @DefaultMessage("valueToAdd")
   @Description("")
   String valueToAddParams();
@@ -4235,6 +4271,38 @@ public interface OdeMessages extends Messages {
   @Description("")
   String responseContentParams();
 
+  @DefaultMessage("table")
+  @Description("")
+  String tableParams();
+
+  @DefaultMessage("bytesRead")
+  @Description("")
+  String bytesReadParams();
+
+  @DefaultMessage("chunkSize")
+  @Description("")
+  String chunkSizeParams();
+
+  @DefaultMessage("lastChunk")
+  @Description("")
+  String lastChunkParams();
+
+  @DefaultMessage("bytesDone")
+  @Description("")
+  String bytesDoneParams();
+
+  @DefaultMessage("totalBytes")
+  @Description("")
+  String totalBytesParams();
+
+  @DefaultMessage("fromFileName")
+  @Description("")
+  String fromFileNameParams();
+
+  @DefaultMessage("toFileName")
+  @Description("")
+  String toFileNameParams();
+
   @DefaultMessage("htmlText")
   @Description("")
   String htmlTextParams();
@@ -4448,6 +4516,10 @@ public interface OdeMessages extends Messages {
   @Description("")
   String ConnectionAcceptedEvents();
 
+  @DefaultMessage("DataReceived")
+  @Description("")
+  String DataReceivedEvents();
+
   @DefaultMessage("Click")
   @Description("")
   String ClickEvents();
@@ -4708,6 +4780,10 @@ public interface OdeMessages extends Messages {
   @Description("")
   String GotValueEvents();
 
+  @DefaultMessage("GotValues")
+  @Description("")
+  String GotValuesEvents();
+
   @DefaultMessage("TagList")
   @Description("")
   String TagListEvents();
@@ -4716,6 +4792,10 @@ public interface OdeMessages extends Messages {
   @Description("")
   String ValueStoredEvents();
 
+  @DefaultMessage("ValuesStored")
+  @Description("")
+  String ValuesStoredEvents();
+
   @DefaultMessage("DataChanged")
   @Description("")
   String DataChangedEvents();
@@ -4764,6 +4844,22 @@ public interface OdeMessages extends Messages {
   @Description("")
   String GotTextEvents();
 
+  @DefaultMessage("GotCsvTable")
+  @Description("")
+  String GotCsvTableEvents();
+
+  @DefaultMessage("DownloadProgress")
+  @Description("")
+  String DownloadProgressEvents();
+
+  @DefaultMessage("GotChunk")
+  @Description("")
+  String GotChunkEvents();
+
+  @DefaultMessage("FileProgress")
+  @Description("")
+  String FileProgressEvents();
+
   @DefaultMessage("AfterFileSaved")
   @Description("")
   String AfterFileSavedEvents();
@@ -5429,6 +5525,10 @@ public interface OdeMessages extends Messages {
   @Description("")
   String StoreValueMethods();
 
+  @DefaultMessage("StoreValues")
+  @Description("")
+  String StoreValuesMethods();
+
   @DefaultMessage("GetTagList")
   @Description("")
   String GetTagListMethods();
@@ -5569,6 +5669,10 @@ public interface OdeMessages extends Messages {
   @Description("")
   String UriDecodeMethods();
 
+  @DefaultMessage("GetCsvTable")
+  @Description("")
+  String GetCsvTableMethods();
+
   @DefaultMessage("CanGoBack")
   @Description("")
   String CanGoBackMethods();
@@ -5613,6 +5717,22 @@ public interface OdeMessages extends Messages {
   @Description("")
   String ReadFromMethods();
 
+  @DefaultMessage("ReadCsvFrom")
+  @Description("")
+  String ReadCsvFromMethods();
+
+  @DefaultMessage("CancelDownloads")
+  @Description("")
+  String CancelDownloadsMethods();
+
+  @DefaultMessage("ReadInChunks")
+  @Description("")
+  String ReadInChunksMethods();
+
+  @DefaultMessage("CopyFile")
+  @Description("")
+  String CopyFileMethods();
+
   @DefaultMessage("SaveFile")
   @Description("")
   String SaveFileMethods();
@@ -6679,6 +6799,14 @@ public interface OdeMessages extends Messages {
   @Description("On zoom change, do...")
   String ZoomChangeEvents();
 
+  @DefaultMessage("TilePrefetchProgress")
+  @Description("")
+  String TilePrefetchProgressEvents();
+
+  @DefaultMessage("TilePrefetchComplete")
+  @Description("")
+  String TilePrefetchCompleteEvents();
+
   @DefaultMessage("InvalidPoint")
   @Description("")
   String InvalidPointEvents();
@@ -6687,6 +6815,26 @@ public interface OdeMessages extends Messages {
   @Description("Pan the map to the given latitude, longitude, and zoom")
   String PanToMethods();
 
+  @DefaultMessage("FeaturesNearPoint")
+  @Description("")
+  String FeaturesNearPointMethods();
+
+  @DefaultMessage("FeaturesInBoundingBox")
+  @Description("")
+  String FeaturesInBoundingBoxMethods();
+
+  @DefaultMessage("ClearTileCache")
+  @Description("")
+  String ClearTileCacheMethods();
+
+  @DefaultMessage("CancelTilePrefetch")
+  @Description("")
+  String CancelTilePrefetchMethods();
+
+  @DefaultMessage("PrefetchTiles")
+  @Description("")
+  String PrefetchTilesMethods();
+
   @DefaultMessage("Roads")
   @Description("Road network map type")
   String mapTypeRoads();
@@ -6787,10 +6935,18 @@ public interface OdeMessages extends Messages {
   @Description("")
   String LoadErrorEvents();
 
+  @DefaultMessage("LoadProgress")
+  @Description("")
+  String LoadProgressEvents();
+
   @DefaultMessage("GotFeatures")
   @Description("")
   String GotFeaturesEvents();
 
+  @DefaultMessage("FeaturesAdded")
+  @Description("")
+  String FeaturesAddedEvents();
+
   @DefaultMessage("TapAtPoint")
   @Description("")
   String TapAtPointEvents();
@@ -6847,6 +7003,10 @@ public interface OdeMessages extends Messages {
   @Description("")
   String EnablePanProperties();
 
+  @DefaultMessage("ClusterMarkers")
+  @Description("")
+  String ClusterMarkersProperties();
+
   @DefaultMessage("DistanceToFeature")
   @Description("")
   String DistanceToFeatureMethods();
@@ -6969,6 +7129,30 @@ public interface OdeMessages extends Messages {
   @Description("")
   String zoomParams();
 
+  @DefaultMessage("failed")
+  @Description("")
+  String failedParams();
+
+  @DefaultMessage("total")
+  @Description("")
+  String totalParams();
+
+  @DefaultMessage("completed")
+  @Description("")
+  String completedParams();
+
+  @DefaultMessage("boundingBox")
+  @Description("")
+  String boundingBoxParams();
+
+  @DefaultMessage("minZoom")
+  @Description("")
+  String minZoomParams();
+
+  @DefaultMessage("maxZoom")
+  @Description("")
+  String maxZoomParams();
+
   @DefaultMessage("Marker")
   @Description("")
   String markerComponentPallette();
@@ -7023,6 +7207,10 @@ public interface OdeMessages extends Messages {
   @Description("")
   String LoadFromURLMethods();
 
+  @DefaultMessage("AddFeaturesFromURL")
+  @Description("")
+  String AddFeaturesFromURLMethods();
+
   @DefaultMessage("Custom...")
   @Description("")
   String customEllipsis();
@@ -7067,6 +7255,14 @@ public interface OdeMessages extends Messages {
   @Description("")
   String RotationProperties();
 
+  @DefaultMessage("TileCacheSize")
+  @Description("")
+  String TileCacheSizeProperties();
+
+  @DefaultMessage("OfflineTiles")
+  @Description("")
+  String OfflineTilesProperties();
+
   @DefaultMessage("WebRTC")     // Note: This is INTERNAL so doesn't need translation
   @Description("")
   String WebRTCProperties();
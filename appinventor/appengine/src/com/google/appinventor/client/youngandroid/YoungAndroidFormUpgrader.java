@@ -272,6 +272,9 @@ public final class YoungAndroidFormUpgrader {
       } else if (componentType.equals("FusiontablesControl")) {
         srcCompVersion = upgradeFusiontablesControlProperties(componentProperties, srcCompVersion);
 
+      } else if (componentType.equals("GyroscopeSensor")) {
+        srcCompVersion = upgradeGyroscopeSensorProperties(componentProperties, srcCompVersion);
+
       } else if (componentType.equals("HorizontalArrangement")) {
         srcCompVersion = upgradeHorizontalArrangementProperties(componentProperties, srcCompVersion);
 
@@ -426,6 +429,11 @@ public final class YoungAndroidFormUpgrader {
       // No properties need to be modified to upgrade to version 4.
       srcCompVersion = 4;
     }
+    if (srcCompVersion < 5) {
+      // The SampleInterval property was added.
+      // No properties need to be modified to upgrade to version 5.
+      srcCompVersion = 5;
+    }
     return srcCompVersion;
   }
 
@@ -537,6 +545,12 @@ public final class YoungAndroidFormUpgrader {
       // No properties need to be modified to upgrade to version 5.
       srcCompVersion = 5;
     }
+    if (srcCompVersion < 6) {
+      // The ReceiveInBackground, SendInBackground and ReceiveThreshold properties and the
+      // DataReceived event were added.
+      // No properties need to be modified to upgrade to version 6.
+      srcCompVersion = 6;
+    }
     return srcCompVersion;
   }
 
@@ -563,6 +577,12 @@ public final class YoungAndroidFormUpgrader {
       // No properties need to be modified to upgrade to version 5.
       srcCompVersion = 5;
     }
+    if (srcCompVersion < 6) {
+      // The ReceiveInBackground, SendInBackground and ReceiveThreshold properties and the
+      // DataReceived event were added.
+      // No properties need to be modified to upgrade to version 6.
+      srcCompVersion = 6;
+    }
     return srcCompVersion;
   }
   private static int upgradeSliderProperties(Map<String, JSONValue> componentProperties,
@@ -798,6 +818,16 @@ public final class YoungAndroidFormUpgrader {
       // No properties need to be modified to upgrade to version 2.
       srcCompVersion = 2;
     }
+    if (srcCompVersion < 3) {
+      // The ReadCsvFrom method and GotCsvTable event were added.
+      // No properties need to be modified to upgrade to version 3.
+      srcCompVersion = 3;
+    }
+    if (srcCompVersion < 4) {
+      // The ReadInChunks and CopyFile methods and GotChunk and FileProgress events were added.
+      // No properties need to be modified to upgrade to version 4.
+      srcCompVersion = 4;
+    }
     return srcCompVersion;
   }
 
@@ -991,6 +1021,16 @@ public final class YoungAndroidFormUpgrader {
     return srcCompVersion;
   }
 
+  private static int upgradeGyroscopeSensorProperties(Map<String, JSONValue> componentProperties,
+      int srcCompVersion) {
+    if (srcCompVersion < 2) {
+      // The SampleInterval property was added.
+      // No properties need to be modified to upgrade to version 2.
+      srcCompVersion = 2;
+    }
+    return srcCompVersion;
+  }
+
   private static int upgradeHorizontalArrangementProperties(Map<String, JSONValue> componentProperties,
       int srcCompVersion) {
     if (srcCompVersion < 2) {
@@ -1182,6 +1222,11 @@ public final class YoungAndroidFormUpgrader {
       // Properties related to this component have now been upgraded to version 2.
       srcCompVersion = 2;
     }
+    if (srcCompVersion < 3) {
+      // The SampleInterval property was added.
+      // No properties need to be modified to upgrade to version 3.
+      srcCompVersion = 3;
+    }
     return srcCompVersion;
   }
 
@@ -1327,6 +1372,12 @@ public final class YoungAndroidFormUpgrader {
       // No properties need to be modified to upgrade to version 2.
       srcCompVersion = 2;
     }
+    if (srcCompVersion < 3) {
+      // The GetValues and StoreValues methods, the GotValues and ValuesStored events and the
+      // CacheTimeToLive property were added.
+      // No properties need to be modified to upgrade to version 3.
+      srcCompVersion = 3;
+    }
     return srcCompVersion;
   }
 
@@ -1494,6 +1545,21 @@ public final class YoungAndroidFormUpgrader {
       // No properties need to be modified to upgrade to version 5.
       srcCompVersion = 5;
     }
+    if (srcCompVersion < 6) {
+      // The GetCsvTable method and GotCsvTable event were added.
+      // No properties need to be modified to upgrade to version 6.
+      srcCompVersion = 6;
+    }
+    if (srcCompVersion < 7) {
+      // The CacheResponses property was added.
+      // No properties need to be modified to upgrade to version 7.
+      srcCompVersion = 7;
+    }
+    if (srcCompVersion < 8) {
+      // The CancelDownloads method and DownloadProgress event were added.
+      // No properties need to be modified to upgrade to version 8.
+      srcCompVersion = 8;
+    }
     return srcCompVersion;
   }
 
@@ -1547,6 +1613,26 @@ public final class YoungAndroidFormUpgrader {
       // The Rotation property was added with default 0.0 (due north)
       srcCompVersion = 4;
     }
+    if (srcCompVersion < 5) {
+      // The TileCacheSize and OfflineTiles properties were added.
+      // No properties need to be modified to upgrade to version 5.
+      srcCompVersion = 5;
+    }
+    if (srcCompVersion < 6) {
+      // The FeaturesInBoundingBox and FeaturesNearPoint methods were added.
+      // No properties need to be modified to upgrade to version 6.
+      srcCompVersion = 6;
+    }
+    if (srcCompVersion < 7) {
+      // The ClusterMarkers property was added.
+      // No properties need to be modified to upgrade to version 7.
+      srcCompVersion = 7;
+    }
+    if (srcCompVersion < 8) {
+      // The AddFeaturesFromURL method and the LoadProgress and FeaturesAdded events were added.
+      // No properties need to be modified to upgrade to version 8.
+      srcCompVersion = 8;
+    }
     return srcCompVersion;
   }
 
@@ -1569,6 +1655,11 @@ public final class YoungAndroidFormUpgrader {
       // The GotGeoJSON and GeoJSONError events were renamed in the blocks editor.
       srcCompVersion = 2;
     }
+    if (srcCompVersion < 3) {
+      // The AddFeaturesFromURL method and the LoadProgress and FeaturesAdded events were added.
+      // No properties need to be modified to upgrade to version 3.
+      srcCompVersion = 3;
+    }
     return srcCompVersion;
   }
 
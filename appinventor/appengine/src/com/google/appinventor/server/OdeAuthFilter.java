@@ -194,6 +194,8 @@ public class OdeAuthFilter implements Filter {
   @VisibleForTesting
   boolean isUserWhitelisted() {
     //return whitelist.isInWhitelist(localUser);
+    // The answer is cached by the storage layer, as is the user looked up in
+    // setUserFromUserId, so most requests don't touch the datastore.
     return storageIo.checkWhiteList(localUser.getUserEmail());
   }
 
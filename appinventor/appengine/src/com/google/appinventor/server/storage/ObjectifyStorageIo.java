@@ -15,7 +15,6 @@ import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
 import com.google.appengine.api.memcache.ErrorHandlers;
 import com.google.appengine.api.memcache.MemcacheService;
 import com.google.appengine.api.memcache.MemcacheServiceFactory;
-import com.google.appengine.api.memcache.Expiration;
 import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
 import com.google.appengine.api.taskqueue.Queue;
 import com.google.appengine.api.taskqueue.QueueFactory;
@@ -123,6 +122,25 @@ public class ObjectifyStorageIo implements  StorageIo {
 
   private final MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
 
+  // Prepended to memcache keys for whitelist entries, like User.usercachekey
+  private static final String WHITELIST_CACHE_KEY = "e4c987be-24fa-4c0f-829d-059a0c5feb26"; // UUID
+
+  // Users and whitelist entries are looked up on every authenticated RPC
+  // call (out of OdeAuthFilter), so we keep them in memory for a few seconds
+  // as well as in memcache. This saves a datastore query on every call for
+  // the whitelist. A user in memory is checked against its version in
+  // memcache on every call, so that a change made on another server, such as
+  // accepting the terms of service, is seen at once; the user itself is only
+  // read from memcache when it has changed. A user is remembered in memcache
+  // for a minute, so someone idle for longer reads the datastore again. The
+  // whitelist is edited outside of App Inventor, so nothing here invalidates
+  // it: changes take effect within ten minutes, or at once if memcache is
+  // flushed.
+  private final VersionedCache<User> userCache =
+    new VersionedCache<User>(memcache, User.usercachekey, 60, 10 * 1000, 1000, true);
+  private final VersionedCache<Boolean> whiteListCache =
+    new VersionedCache<Boolean>(memcache, WHITELIST_CACHE_KEY, 10 * 60, 60 * 1000, 1000, false);
+
   private final GcsService gcsService;
 
   private static final String GCS_BUCKET_NAME;
@@ -248,19 +266,28 @@ public class ObjectifyStorageIo implements  StorageIo {
    */
   @Override
   public User getUser(final String userId, final String email) {
-    String cachekey = User.usercachekey + "|" + userId;
-    User tuser = (User) memcache.get(cachekey);
-    if (tuser != null && tuser.getUserTosAccepted() && ((email == null) || (tuser.getUserEmail().equals(email)))) {
-      if (tuser.getUserName()==null) {
-        setUserName(userId,tuser.getDefaultName());
-        tuser.setUserName(tuser.getDefaultName());
+    User user = userCache.get(userId, new VersionedCache.Loader<User>() {
+      @Override
+      public User load() {
+        return loadUser(userId, email);
       }
-      return tuser;
-    } else {                    // If not in memcache, or tos
-                                // not yet accepted, fetch from datastore
-        tuser = new User(userId, email, null, null, 0, false, false, 0, null);
+    });
+    if (email != null && !email.equals(user.getUserEmail())) {
+      user = loadUser(userId, email);  // Records the new e-mail address
+      userCache.invalidate(userId);
+    }
+    // Callers change the User they are given, so give them their own copy
+    User copy = user.copy();
+    copy.setPassword(user.getPassword());
+    if (copy.getUserName() == null) {
+      setUserName(userId, copy.getDefaultName());
+      copy.setUserName(copy.getDefaultName());
     }
-    final User user = tuser;
+    return copy;
+  }
+
+  private User loadUser(final String userId, final String email) {
+    final User user = new User(userId, email, null, null, 0, false, false, 0, null);
     try {
       runJobWithRetries(new JobRetryHelper() {
         @Override
@@ -324,13 +351,6 @@ public class ObjectifyStorageIo implements  StorageIo {
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
-    memcache.put(cachekey, user, Expiration.byDeltaSeconds(60)); // Remember for one minute
-    // The choice of one minute here is arbitrary. getUser() is called on every authenticated
-    // RPC call to the system (out of OdeAuthFilter), so using memcache will save a significant
-    // number of calls to the datastore. If someone is idle for more then a minute, it isn't
-    // unreasonable to hit the datastore again. By pruning memcache ourselves, we have a
-    // bit more control (maybe) of how things are flushed from memcache. Otherwise we are
-    // at the whim of whatever algorithm App Engine employs now or in the future.
     return user;
   }
 
@@ -394,6 +414,7 @@ public class ObjectifyStorageIo implements  StorageIo {
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
+    userCache.invalidate(userId);
   }
 
   @Override
@@ -413,6 +434,7 @@ public class ObjectifyStorageIo implements  StorageIo {
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
+    userCache.invalidate(userId);
   }
 
   @Override
@@ -421,8 +443,6 @@ public class ObjectifyStorageIo implements  StorageIo {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
-          String cachekey = User.usercachekey + "|" + userId;
-          memcache.delete(cachekey);  // Flush cached copy prior to update
           UserData userData = datastore.find(userKey(userId));
           if (userData != null) {
             userData.name = name;
@@ -433,7 +453,7 @@ public class ObjectifyStorageIo implements  StorageIo {
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
-
+    userCache.invalidate(userId);
   }
 
   @Override
@@ -442,8 +462,6 @@ public class ObjectifyStorageIo implements  StorageIo {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
-          String cachekey = User.usercachekey + "|" + userId;
-          memcache.delete(cachekey);  // Flush cached copy prior to update
           UserData userData = datastore.find(userKey(userId));
           if (userData != null) {
             userData.link = link;
@@ -454,6 +472,7 @@ public class ObjectifyStorageIo implements  StorageIo {
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
+    userCache.invalidate(userId);
   }
 
   @Override
@@ -462,8 +481,6 @@ public class ObjectifyStorageIo implements  StorageIo {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
-          String cachekey = User.usercachekey + "|" + userId;
-          memcache.delete(cachekey);  // Flush cached copy prior to update
           UserData userData = datastore.find(userKey(userId));
           if (userData != null) {
             userData.emailFrequency = emailFrequency;
@@ -474,6 +491,7 @@ public class ObjectifyStorageIo implements  StorageIo {
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
+    userCache.invalidate(userId);
   }
 
   @Override
@@ -482,8 +500,6 @@ public class ObjectifyStorageIo implements  StorageIo {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
-          String cachekey = User.usercachekey + "|" + userId;
-          memcache.delete(cachekey);  // Flush cached copy prior to update
           UserData userData = datastore.find(userKey(userId));
           if (userData != null) {
             userData.sessionid = sessionId;
@@ -494,6 +510,7 @@ public class ObjectifyStorageIo implements  StorageIo {
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
+    userCache.invalidate(userId);
   }
 
   @Override
@@ -502,8 +519,6 @@ public class ObjectifyStorageIo implements  StorageIo {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
-          String cachekey = User.usercachekey + "|" + userId;
-          memcache.delete(cachekey);  // Flush cached copy prior to update
           UserData userData = datastore.find(userKey(userId));
           if (userData != null) {
             userData.password = password;
@@ -514,6 +529,7 @@ public class ObjectifyStorageIo implements  StorageIo {
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
     }
+    userCache.invalidate(userId);
   }
 
   @Override
@@ -2278,11 +2294,15 @@ public class ObjectifyStorageIo implements  StorageIo {
 
   @Override
   public boolean checkWhiteList(String email) {
-    Objectify datastore = ObjectifyService.begin();
-    WhiteListData data = datastore.query(WhiteListData.class).filter("emailLower", email.toLowerCase()).get();
-    if (data == null)
-      return false;
-    return true;
+    final String emailLower = email.toLowerCase();
+    return whiteListCache.get(emailLower, new VersionedCache.Loader<Boolean>() {
+      @Override
+      public Boolean load() {
+        Objectify datastore = ObjectifyService.begin();
+        WhiteListData data = datastore.query(WhiteListData.class).filter("emailLower", emailLower).get();
+        return data != null;
+      }
+    });
   }
 
   @Override
@@ -2873,6 +2893,9 @@ public class ObjectifyStorageIo implements  StorageIo {
       }
       throw CrashReport.createAndLogError(LOG, null, null, e);
     }
+    if (user.getId() != null) {
+      userCache.invalidate(user.getId());
+    }
   }
 
   /* Store a shared backpack.
@@ -0,0 +1,171 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A two level cache of values read from the datastore: a small in-process
+ * cache in front of memcache.
+ *
+ * <p>Each key has a version number kept in memcache, which is bumped by
+ * {@link #invalidate}. Values put in memcache are tagged with the version
+ * that was current before they were loaded, so a value loaded while the
+ * record was being changed is never served once the change is made, even
+ * though the load finished after the invalidation.
+ *
+ * <p>Values in the in-process cache are kept for up to {@code localMillis}.
+ * If the cache is made to check them, each is checked against the version in
+ * memcache before it is served, so an invalidation on any server is seen at
+ * once, and only the version is read from memcache while it is unchanged.
+ * Otherwise they are served without any RPC at all: an invalidation on this
+ * server drops them at once, but one on another server is seen here only once
+ * they expire.
+ *
+ * @param <V> the type of the cached values, which must not be changed once
+ *     they are in the cache
+ */
+final class VersionedCache<V extends Serializable> {
+
+  /**
+   * Loads a value from the datastore when it is not in either cache.
+   */
+  interface Loader<V> {
+    /**
+     * Returns the value to cache, or null if nothing should be cached.
+     */
+    V load();
+  }
+
+  // The value put in memcache: the value along with the version of the key
+  // that was current before it was loaded.
+  private static final class Entry<V> implements Serializable {
+    final long version;
+    final V value;
+
+    Entry(long version, V value) {
+      this.version = version;
+      this.value = value;
+    }
+  }
+
+  private final MemcacheService memcache;
+  private final String prefix;
+  private final int memcacheSeconds;
+  private final boolean checkLocal;
+  private final Cache<String, Entry<V>> local;
+
+  /**
+   * Creates a cache.
+   *
+   * @param memcache the memcache service
+   * @param prefix prepended to memcache keys, which should be unique to this
+   *     cache (see {@link com.google.appinventor.shared.rpc.user.User#usercachekey})
+   * @param memcacheSeconds how long values are kept in memcache
+   * @param localMillis how long values are served from this server's memory
+   * @param localSize how many values are kept in this server's memory
+   * @param checkLocal whether values in this server's memory are checked
+   *     against memcache before they are served
+   */
+  VersionedCache(MemcacheService memcache, String prefix, int memcacheSeconds,
+      long localMillis, int localSize, boolean checkLocal) {
+    this(memcache, prefix, memcacheSeconds, localMillis, localSize, checkLocal,
+        Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  VersionedCache(MemcacheService memcache, String prefix, int memcacheSeconds,
+      long localMillis, int localSize, boolean checkLocal, Ticker ticker) {
+    this.memcache = memcache;
+    this.prefix = prefix;
+    this.memcacheSeconds = memcacheSeconds;
+    this.checkLocal = checkLocal;
+    this.local = CacheBuilder.newBuilder()
+        .maximumSize(localSize)
+        .expireAfterWrite(localMillis, TimeUnit.MILLISECONDS)
+        .ticker(ticker)
+        .build();
+  }
+
+  /**
+   * Returns the value for a key, from this server's memory, from memcache or
+   * else from the loader.
+   */
+  V get(String key, Loader<V> loader) {
+    String versionKey = versionKey(key);
+    Entry<V> cached = local.getIfPresent(key);
+    if (cached != null) {
+      if (!checkLocal) {
+        return cached.value;
+      }
+      Long version = (Long) memcache.get(versionKey);
+      if (version != null && version == cached.version) {
+        return cached.value;
+      }
+    }
+    String entryKey = entryKey(key);
+    Map<String, Object> found = memcache.getAll(Arrays.asList(versionKey, entryKey));
+    Long version = (Long) found.get(versionKey);
+    if (version == null) {
+      version = memcache.increment(versionKey, 0L, initialVersion());
+    }
+    @SuppressWarnings("unchecked")
+    Entry<V> entry = (Entry<V>) found.get(entryKey);
+    if (entry == null || version == null || entry.version != version) {
+      V value = loader.load();
+      if (value == null) {
+        return null;
+      } else if (version == null) {   // Memcache isn't working
+        if (!checkLocal) {
+          local.put(key, new Entry<V>(0, value));
+        }
+        return value;
+      }
+      entry = new Entry<V>(version, value);
+      memcache.put(entryKey, entry, Expiration.byDeltaSeconds(memcacheSeconds));
+    }
+    local.put(key, entry);
+    return entry.value;
+  }
+
+  /**
+   * Invalidates the value for a key, on this server at once and on others
+   * at once if they check the values in their memory, or else once their copy
+   * expires. Call this after changing the record
+   * the value is loaded from, so that a load that read the record before the
+   * change is tagged with the old version.
+   */
+  void invalidate(String key) {
+    local.invalidate(key);
+    memcache.increment(versionKey(key), 1L, initialVersion());
+    memcache.delete(entryKey(key));
+  }
+
+  // Versions start at a random number so that an entry left over from before
+  // a version was evicted from memcache can't match the new version.
+  private static long initialVersion() {
+    return ThreadLocalRandom.current().nextLong(Long.MAX_VALUE / 2);
+  }
+
+  private String versionKey(String key) {
+    return prefix + "|version|" + key;
+  }
+
+  private String entryKey(String key) {
+    return prefix + "|" + key;
+  }
+}
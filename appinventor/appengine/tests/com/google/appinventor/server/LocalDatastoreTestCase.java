@@ -9,6 +9,7 @@ package com.google.appinventor.server;
 import com.google.appinventor.common.testutils.TestUtils;
 
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
 import com.google.apphosting.utils.config.GenerationDirectory;
 
@@ -22,8 +23,18 @@ import junit.framework.TestCase;
 public abstract class LocalDatastoreTestCase extends TestCase {
   private static final String APPENGINE_GENERATED_DIR = TestUtils.APP_INVENTOR_ROOT_DIR +
       "/appengine/build/tests/appengine-generated";
-  private final LocalServiceTestHelper helper =
-      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+  private final LocalServiceTestHelper helper;
+
+  /**
+   * Creates a test case that sets up the given services, such as memcache, as
+   * well as the local datastore.
+   */
+  protected LocalDatastoreTestCase(LocalServiceTestConfig... otherServices) {
+    LocalServiceTestConfig[] services = new LocalServiceTestConfig[otherServices.length + 1];
+    services[0] = new LocalDatastoreServiceTestConfig();
+    System.arraycopy(otherServices, 0, services, 1, otherServices.length);
+    helper = new LocalServiceTestHelper(services);
+  }
 
   @Override
   protected void setUp() throws Exception {
@@ -49,7 +60,7 @@ public abstract class LocalDatastoreTestCase extends TestCase {
    * Tests that cannot extend <code>LocalDatastoreTestCase</code> can call
    * <code>createHelper</code> to create a <code>LocalDatastoreTestCase</code>.
    */
-  public static LocalDatastoreTestCase createHelper() {
-    return new LocalDatastoreTestCase() {};
+  public static LocalDatastoreTestCase createHelper(LocalServiceTestConfig... otherServices) {
+    return new LocalDatastoreTestCase(otherServices) {};
   }
 }
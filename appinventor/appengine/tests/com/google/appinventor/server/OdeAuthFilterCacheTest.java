@@ -0,0 +1,219 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server;
+
+import static org.easymock.EasyMock.expect;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appinventor.server.storage.StorageIo;
+import com.google.appinventor.server.storage.StorageIoInstanceHolder;
+import com.google.appinventor.shared.rpc.user.User;
+import com.google.apphosting.api.ApiProxy;
+
+import org.easymock.EasyMock;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Future;
+import java.util.logging.LogRecord;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Tests that {@link OdeAuthFilter} doesn't read the datastore on every
+ * request, and reads no more than a version number from memcache, by counting
+ * the datastore and memcache calls each request makes.
+ */
+public class OdeAuthFilterCacheTest extends LocalDatastoreTestCase {
+  private static final int REQUESTS = 20;
+
+  private final StorageIo storageIo = StorageIoInstanceHolder.INSTANCE;
+  private final OdeAuthFilter filter = new OdeAuthFilter();
+  private CountingDelegate apiCalls;
+  private HttpServletRequest request;
+  private HttpServletResponse response;
+  private String userId;
+  private String email;
+
+  /**
+   * Counts the API calls made through it, by package and method.
+   */
+  private static class CountingDelegate implements ApiProxy.Delegate<ApiProxy.Environment> {
+    private final ApiProxy.Delegate<ApiProxy.Environment> delegate;
+    private final Map<String, Integer> counts = new HashMap<String, Integer>();
+
+    CountingDelegate(ApiProxy.Delegate<ApiProxy.Environment> delegate) {
+      this.delegate = delegate;
+    }
+
+    synchronized int calls(String packageName) {
+      int total = 0;
+      for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+        if (entry.getKey().startsWith(packageName + ".")) {
+          total += entry.getValue();
+        }
+      }
+      return total;
+    }
+
+    synchronized int calls(String packageName, String methodName) {
+      Integer count = counts.get(packageName + "." + methodName);
+      return count == null ? 0 : count;
+    }
+
+    synchronized void reset() {
+      counts.clear();
+    }
+
+    private synchronized void count(String packageName, String methodName) {
+      String key = packageName + "." + methodName;
+      Integer count = counts.get(key);
+      counts.put(key, count == null ? 1 : count + 1);
+    }
+
+    @Override
+    public byte[] makeSyncCall(ApiProxy.Environment environment, String packageName,
+        String methodName, byte[] request) {
+      count(packageName, methodName);
+      return delegate.makeSyncCall(environment, packageName, methodName, request);
+    }
+
+    @Override
+    public Future<byte[]> makeAsyncCall(ApiProxy.Environment environment, String packageName,
+        String methodName, byte[] request, ApiProxy.ApiConfig apiConfig) {
+      count(packageName, methodName);
+      return delegate.makeAsyncCall(environment, packageName, methodName, request, apiConfig);
+    }
+
+    @Override
+    public void log(ApiProxy.Environment environment, LogRecord record) {
+      delegate.log(environment, record);
+    }
+
+    @Override
+    public void flushLogs(ApiProxy.Environment environment) {
+      delegate.flushLogs(environment);
+    }
+
+    @Override
+    public List<Thread> getRequestThreads(ApiProxy.Environment environment) {
+      return delegate.getRequestThreads(environment);
+    }
+  }
+
+  /**
+   * Records the calls the filter lets through, and the name of the user they
+   * were made for.
+   */
+  private static class RecordingChain implements FilterChain {
+    int calls;
+    String userName;
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response) {
+      calls++;
+      userName = LocalUser.getInstance().getUserName();
+    }
+  }
+
+  public OdeAuthFilterCacheTest() {
+    super(new LocalMemcacheServiceTestConfig());
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  protected void setUp() throws Exception {
+    super.setUp();
+    apiCalls = new CountingDelegate(ApiProxy.getDelegate());
+    ApiProxy.setDelegate(apiCalls);
+
+    request = EasyMock.createNiceMock(HttpServletRequest.class);
+    expect(request.getRequestURI()).andReturn("/ode/userinfo").anyTimes();
+    response = EasyMock.createNiceMock(HttpServletResponse.class);
+    expect(response.getWriter()).andReturn(new PrintWriter(new StringWriter())).anyTimes();
+    EasyMock.replay(request, response);
+
+    // The filter's storage, and what it remembers, is shared by all of the
+    // tests, so each test has a user of its own.
+    userId = UUID.randomUUID().toString();
+    email = userId + "@test.com";
+    storageIo.getUser(userId, email);
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    OdeAuthFilter.useWhitelist.setForTest(false);
+    ApiProxy.setDelegate(apiCalls.delegate);
+    super.tearDown();
+  }
+
+  public void testRepeatedRequestsDontReadDatastore() throws Exception {
+    OdeAuthFilter.useWhitelist.setForTest(true);
+    addToWhitelist(email);
+    RecordingChain chain = new RecordingChain();
+
+    apiCalls.reset();
+    request(chain);
+    assertEquals(1, chain.calls);
+    assertEquals(1, apiCalls.calls("datastore_v3", "RunQuery"));  // the whitelist
+
+    apiCalls.reset();
+    for (int i = 0; i < REQUESTS; i++) {
+      request(chain);
+    }
+    assertEquals(REQUESTS + 1, chain.calls);
+    assertEquals(0, apiCalls.calls("datastore_v3"));
+    // Only the version of the user is read, to check the copy in memory.
+    assertEquals(REQUESTS, apiCalls.calls("memcache"));
+  }
+
+  public void testUserNotOnWhitelistIsRemembered() throws Exception {
+    OdeAuthFilter.useWhitelist.setForTest(true);
+    RecordingChain chain = new RecordingChain();
+
+    apiCalls.reset();
+    for (int i = 0; i < REQUESTS; i++) {
+      request(chain);
+    }
+    assertEquals(0, chain.calls);
+    assertEquals(1, apiCalls.calls("datastore_v3", "RunQuery"));
+  }
+
+  public void testUserChangeIsSeenOnNextRequest() throws Exception {
+    RecordingChain chain = new RecordingChain();
+    request(chain);
+    assertEquals(User.getDefaultName(email), chain.userName);
+
+    storageIo.setUserName(userId, "Changed");
+    request(chain);
+    assertEquals("Changed", chain.userName);
+
+    apiCalls.reset();
+    request(chain);
+    assertEquals("Changed", chain.userName);
+    assertEquals(0, apiCalls.calls("datastore_v3"));
+  }
+
+  private void request(FilterChain chain) throws Exception {
+    filter.doMyFilter(new OdeAuthFilter.UserInfo(userId, false), false, false, request, response,
+        chain);
+  }
+
+  private static void addToWhitelist(String email) {
+    Entity entry = new Entity("WhiteListData");
+    entry.setProperty("emailLower", email.toLowerCase());
+    DatastoreServiceFactory.getDatastoreService().put(entry);
+  }
+}
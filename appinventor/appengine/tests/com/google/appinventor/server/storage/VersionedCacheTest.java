@@ -0,0 +1,148 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appinventor.server.LocalDatastoreTestCase;
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link VersionedCache}. Two caches with the same prefix stand in
+ * for the same cache on two servers sharing memcache.
+ */
+public class VersionedCacheTest extends LocalDatastoreTestCase {
+  private static final String PREFIX = "test";
+  private static final String KEY = "key";
+  private static final long LOCAL_MILLIS = 1000;
+
+  private FakeTicker ticker;
+  private MemcacheService memcache;
+  private VersionedCache<String> server1;
+  private VersionedCache<String> server2;
+  private FakeLoader loader;
+
+  private static class FakeTicker extends Ticker {
+    long nanos;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+
+    void advance(long millis) {
+      nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+  }
+
+  // Stands in for the datastore: counts the loads and returns the current value.
+  private static class FakeLoader implements VersionedCache.Loader<String> {
+    String value = "v1";
+    int loads;
+
+    @Override
+    public String load() {
+      loads++;
+      return value;
+    }
+  }
+
+  public VersionedCacheTest() {
+    super(new LocalMemcacheServiceTestConfig());
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    memcache = MemcacheServiceFactory.getMemcacheService();
+    ticker = new FakeTicker();
+    server1 = makeCache(false);
+    server2 = makeCache(false);
+    loader = new FakeLoader();
+  }
+
+  public void testLoadsOnce() {
+    for (int i = 0; i < 5; i++) {
+      assertEquals("v1", server1.get(KEY, loader));
+      assertEquals("v1", server2.get(KEY, loader));
+      ticker.advance(LOCAL_MILLIS);
+    }
+    assertEquals(1, loader.loads);
+  }
+
+  public void testInvalidate() {
+    server1.get(KEY, loader);
+    server2.get(KEY, loader);
+
+    loader.value = "v2";
+    server1.invalidate(KEY);
+    assertEquals("v2", server1.get(KEY, loader));
+    assertEquals(2, loader.loads);
+
+    // The other server sees the change once its copy in memory expires.
+    assertEquals("v1", server2.get(KEY, loader));
+    ticker.advance(LOCAL_MILLIS);
+    assertEquals("v2", server2.get(KEY, loader));
+    assertEquals(2, loader.loads);
+  }
+
+  public void testLoadRacingAChangeIsNotServed() {
+    VersionedCache.Loader<String> racingLoader = new VersionedCache.Loader<String>() {
+      @Override
+      public String load() {
+        String read = loader.load();
+        // Another server changes the record after this one has read it.
+        loader.value = "v2";
+        server2.invalidate(KEY);
+        return read;
+      }
+    };
+    assertEquals("v1", server1.get(KEY, racingLoader));
+
+    // The stale value is not served from memcache, even though it was put
+    // there after the invalidation.
+    assertEquals("v2", server2.get(KEY, loader));
+    ticker.advance(LOCAL_MILLIS);
+    assertEquals("v2", server1.get(KEY, loader));
+    assertEquals(2, loader.loads);
+  }
+
+  public void testCheckedCacheSeesOtherServersChangesAtOnce() {
+    server1 = makeCache(true);
+    server2 = makeCache(true);
+    server1.get(KEY, loader);
+    server2.get(KEY, loader);
+
+    loader.value = "v2";
+    server1.invalidate(KEY);
+    assertEquals("v2", server2.get(KEY, loader));
+    assertEquals("v2", server1.get(KEY, loader));
+    assertEquals(2, loader.loads);
+  }
+
+  public void testCheckedCacheOnlyReadsVersionWhileUnchanged() {
+    server1 = makeCache(true);
+    server1.get(KEY, loader);
+    // Without the value in memcache, only the copy in memory can be served.
+    memcache.delete(PREFIX + "|" + KEY);
+    assertEquals("v1", server1.get(KEY, loader));
+    assertEquals(1, loader.loads);
+  }
+
+  public void testNullIsNotCached() {
+    loader.value = null;
+    assertNull(server1.get(KEY, loader));
+    assertNull(server1.get(KEY, loader));
+    assertEquals(2, loader.loads);
+  }
+
+  private VersionedCache<String> makeCache(boolean checkLocal) {
+    return new VersionedCache<String>(memcache, PREFIX, 60, LOCAL_MILLIS, 10, checkLocal, ticker);
+  }
+}
@@ -1147,7 +1147,11 @@ Blockly.Versioning.AllUpgradeMaps =
     3: "noUpgrade",
 
     // AI2: LegacyMode property was added.
-    4: "noUpgrade"
+    4: "noUpgrade",
+
+    // AI2: The SampleInterval property was added.
+    // No blocks need to be modified to upgrade to version 5.
+    5: "noUpgrade"
 
   }, // End Accelerometer upgraders
 
@@ -1244,7 +1248,12 @@ Blockly.Versioning.AllUpgradeMaps =
 
     // The BluetoothClient.Secure property was added.
     // No blocks need to be modified to upgrade to version 5.
-    5: "noUpgrade"
+    5: "noUpgrade",
+
+    // AI2: The ReceiveInBackground, SendInBackground and ReceiveThreshold properties and the
+    // DataReceived event were added.
+    // No blocks need to be modified to upgrade to version 6.
+    6: "noUpgrade"
 
   }, // End BluetoothClient upgraders
 
@@ -1270,7 +1279,12 @@ Blockly.Versioning.AllUpgradeMaps =
 
     // The BluetoothServer.Secure property was added.
     // No blocks need to be modified to upgrade to version 5.
-    5: "noUpgrade"
+    5: "noUpgrade",
+
+    // AI2: The ReceiveInBackground, SendInBackground and ReceiveThreshold properties and the
+    // DataReceived event were added.
+    // No blocks need to be modified to upgrade to version 6.
+    6: "noUpgrade"
 
   }, // End BluetoothServer upgraders
 
@@ -1484,14 +1498,27 @@ Blockly.Versioning.AllUpgradeMaps =
       Blockly.Versioning.changeEventName('FeatureCollection', 'GeoGeoJSON', 'GotFeatures'),
       Blockly.Versioning.changeEventName('FeatureCollection', 'ErrorLoadingFeatureCollection', 'LoadError'),
       Blockly.Versioning.changeEventName('FeatureCollection', 'LoadedFeatureCollection', 'GotFeatures')
-    ]
+    ],
+
+    // AI2:
+    // - The AddFeaturesFromURL method was added
+    // - The LoadProgress and FeaturesAdded events were added
+    3: "noUpgrade"
   },
 
   "File": {
 
     // AI2: The AfterFileSaved event was added.
     // No blocks need to be modified to upgrade to version 2.
-    2: "noUpgrade"
+    2: "noUpgrade",
+
+    // AI2: The ReadCsvFrom method and GotCsvTable event were added.
+    // No blocks need to be modified to upgrade to version 3.
+    3: "noUpgrade",
+
+    // AI2: The ReadInChunks and CopyFile methods and GotChunk and FileProgress events were added.
+    // No blocks need to be modified to upgrade to version 4.
+    4: "noUpgrade"
 
   }, // End File upgraders
 
@@ -1534,7 +1561,11 @@ Blockly.Versioning.AllUpgradeMaps =
   "GyroscopeSensor": {
 
     // This is initial version. Placeholder for future upgrades
-    1: "noUpgrade"
+    1: "noUpgrade",
+
+    // AI2: The SampleInterval property was added.
+    // No blocks need to be modified to upgrade to version 2.
+    2: "noUpgrade"
 
   }, // End GyroscopeSensor upgraders
 
@@ -1859,7 +1890,26 @@ Blockly.Versioning.AllUpgradeMaps =
 
     // AI2:
     // - The Rotation property was added to Map
-    4: "noUpgrade"
+    4: "noUpgrade",
+
+    // AI2:
+    // - The TileCacheSize and OfflineTiles properties were added
+    // - The PrefetchTiles, CancelTilePrefetch and ClearTileCache methods were added
+    // - The TilePrefetchProgress and TilePrefetchComplete events were added
+    5: "noUpgrade",
+
+    // AI2:
+    // - The FeaturesInBoundingBox and FeaturesNearPoint methods were added
+    6: "noUpgrade",
+
+    // AI2:
+    // - The ClusterMarkers property was added
+    7: "noUpgrade",
+
+    // AI2:
+    // - The AddFeaturesFromURL method was added
+    // - The LoadProgress and FeaturesAdded events were added
+    8: "noUpgrade"
 
   }, // End Map upgraders
 
@@ -2029,7 +2079,11 @@ Blockly.Versioning.AllUpgradeMaps =
         changeFirstMatchingSocketBlockConnectorLabel(block, "yaw", "azimuth");
       }
     */
-    2: "ai1CantDoUpgrade" // Just indicates we couldn't do upgrade even if we wanted to
+    2: "ai1CantDoUpgrade", // Just indicates we couldn't do upgrade even if we wanted to
+
+    // AI2: The SampleInterval property was added.
+    // No blocks need to be modified to upgrade to version 3.
+    3: "noUpgrade"
 
   }, // End OrientationSensor upgraders
 
@@ -2406,7 +2460,12 @@ Blockly.Versioning.AllUpgradeMaps =
       }
       // Blocks related to this component have now been upgraded to version 2.
     */
-    2: "ai1CantDoUpgrade" // Just indicates we couldn't do upgrade even if we wanted to
+    2: "ai1CantDoUpgrade", // Just indicates we couldn't do upgrade even if we wanted to
+
+    // AI2: The GetValues and StoreValues methods, the GotValues and ValuesStored events and the
+    // CacheTimeToLive property were added.
+    // No blocks need to be modified to upgrade to version 3.
+    3: "noUpgrade"
 
   }, // End TinyWebDB upgraders
 
@@ -2533,7 +2592,18 @@ Blockly.Versioning.AllUpgradeMaps =
     4: "noUpgrade",
       
     // AI2: Added method UriDecode
-    5: "noUpgrade"
+    5: "noUpgrade",
+
+    // AI2: Added method GetCsvTable and event GotCsvTable
+    6: "noUpgrade",
+
+    // AI2: Added property CacheResponses
+    // No blocks need to be modified to upgrade to version 7.
+    7: "noUpgrade",
+
+    // AI2: Added method CancelDownloads and event DownloadProgress
+    // No blocks need to be modified to upgrade to version 8.
+    8: "noUpgrade"
 
   }, // End Web upgraders
 
@@ -161,6 +161,8 @@ public final class Compiler {
       RUNTIME_FILES_DIR + "kawa.jar";
   private static final String SIMPLE_ANDROID_RUNTIME_JAR =
       RUNTIME_FILES_DIR + "AndroidRuntime.jar";
+  private static final String COMPONENT_DISPATCH_JAR =
+      RUNTIME_FILES_DIR + "ComponentDispatch.jar";
 
   private static final String LINUX_AAPT_TOOL =
       "/tools/linux/aapt";
@@ -1255,6 +1257,8 @@ public final class Compiler {
       classpath.append(COLON);
       classpath.append(getResource(SIMPLE_ANDROID_RUNTIME_JAR));
       classpath.append(COLON);
+      classpath.append(getResource(COMPONENT_DISPATCH_JAR));
+      classpath.append(COLON);
 
       for (String jar : SUPPORT_JARS) {
         classpath.append(getResource(jar));
@@ -1506,6 +1510,7 @@ public final class Compiler {
     List<File> class2List = new ArrayList<File>();
     inputList.add(classesDir); //this is a directory, and won't be cached into the dex cache
     inputList.add(new File(getResource(SIMPLE_ANDROID_RUNTIME_JAR)));
+    inputList.add(new File(getResource(COMPONENT_DISPATCH_JAR)));
     inputList.add(new File(getResource(KAWA_RUNTIME)));
     inputList.add(new File(getResource(ACRA_RUNTIME)));
 
@@ -198,7 +198,7 @@
 ;;; (get-property 'Label1 'Text)
 (define (get-property component prop-name)
   (let ((component (coerce-to-component-and-verify component)))
-    (sanitize-component-data (invoke component prop-name))))
+    (sanitize-component-data (%invoke-component component prop-name '()))))
 
 (define (coerce-to-component-and-verify possible-component)
   (let ((component (coerce-to-component possible-component)))
@@ -217,7 +217,7 @@
                  component-type
                  (*:getSimpleName (*:getClass possible-component)))
          "Problem with application")
-        (sanitize-component-data (invoke component prop-name)))))
+        (sanitize-component-data (%invoke-component component prop-name '())))))
 
 (define (set-and-coerce-property-and-check! possible-component comp-type prop-sym property-value property-type)
   (let ((component (coerce-to-component-of-type possible-component comp-type)))
@@ -735,7 +735,10 @@
 (define (lookup-in-current-form-environment name :: gnu.mapping.Symbol #!optional (default-value #f))
                     ;  (android-log (format #f "Looking up ~A in env ~A" name
                     ;                                     (if (not (eq? *this-form* #!null)) (*:.form-environment *this-form*) 'null)))
-  (let ((env (if (not (eq? *this-form* #!null))
+  ;; env is declared so that isBound and get are compiled as direct calls rather than being
+  ;; resolved by reflection on every lookup, which happens for every component reference.
+  (let ((env :: gnu.mapping.Environment
+             (if (not (eq? *this-form* #!null))
                  (*:.form-environment *this-form*)
                  ;; The following is just for testing. In normal situations *this-form* should be non-null
                  *test-environment*)))
@@ -768,7 +771,8 @@
     *the-null-value*))
 
 (define (lookup-global-var-in-current-form-environment name :: gnu.mapping.Symbol #!optional (default-value #f))
-  (let ((env (if (not (eq? *this-form* #!null))
+  (let ((env :: gnu.mapping.Environment
+             (if (not (eq? *this-form* #!null))
                  (*:.global-var-environment *this-form*)
                  ;; The following is just for testing. In normal situations *this-form* should be non-null
                  *test-global-var-environment*)))
@@ -899,6 +903,8 @@
 (module-name com.google.youngandroid.runtime)
 (module-static #t)
 
+(define-alias ComponentDispatcher <com.google.appinventor.components.runtime.util.ComponentDispatcher>)
+(define-alias ComponentInvoker <com.google.appinventor.components.runtime.util.ComponentDispatcher$Invoker>)
 (define-alias CsvUtil <com.google.appinventor.components.runtime.util.CsvUtil>)
 (define-alias Double <java.lang.Double>)
 (define-alias Float <java.lang.Float>)
@@ -976,15 +982,30 @@
 ;;; values they will receive.
 
 
+;;; %INVOKE-COMPONENT
+;;; Call the component method or property accessor with the given (already coerced) args.
+;;; Components built with App Inventor have a generated dispatcher that calls the Java method
+;;; directly; the invoker for a method is looked up once per component class and method name
+;;; and cached.  Components without a dispatcher, such as extensions, go through Kawa's
+;;; reflective invoke as before.
+;;; For example:
+;;;  (%invoke-component Sound1 'Vibrate (*list-for-runtime* 500))
+
+(define (%invoke-component component method-name args)
+  (let ((invoker :: ComponentInvoker
+                 (ComponentDispatcher:getInvoker component method-name (length args))))
+    (if (eq? invoker #!null)
+        (apply invoke component method-name args)
+        (invoker:invoke component args))))
+
 (define (call-component-method component-name method-name arglist typelist)
   (let ((coerced-args (coerce-args method-name arglist typelist)))
     (let ((result
            (if (all-coercible? coerced-args)
                (try-catch
-                (apply invoke
-                       `(,(lookup-in-current-form-environment component-name)
-                         ,method-name
-                         ,@coerced-args))
+                (%invoke-component (lookup-in-current-form-environment component-name)
+                                   method-name
+                                   coerced-args)
                 (exception PermissionException
                            (*:dispatchPermissionDeniedEvent (SimpleForm:getActiveForm) (lookup-in-current-form-environment component-name) method-name exception)))
                (generate-runtime-type-error method-name arglist))))
@@ -1011,10 +1032,7 @@
                                      (list (get-display-representation possible-component)))
         (let ((result
                (if (all-coercible? coerced-args)
-                   (apply invoke
-                          `(,component-value
-                            ,method-name
-                            ,@coerced-args))
+                   (%invoke-component component-value method-name coerced-args)
                    (generate-runtime-type-error method-name arglist))))
           ;; TODO(markf): this should probably be generalized but for now this is OK, I think
           (sanitize-component-data result)))))
@@ -1120,16 +1138,14 @@
 ;;; See also kawa-list->yail list below.
 
 (define (java-collection->yail-list collection :: JavaCollection)
-  (kawa-list->yail-list (java-collection->kawa-list collection)))
-
-(define (java-collection->kawa-list collection :: JavaCollection)
-  (let ((iterator :: JavaIterator (collection:iterator)))
-    (define (looper result)
-      (if (not (iterator:hasNext))
-          result
-          (looper (cons (sanitize-component-data (iterator:next))
-                        result))))
-    (reverse! (looper '()))))
+  ;; Build the yail list in one pass, rather than building a kawa list and copying it.
+  (let ((result :: YailList (make YailList))
+        (iterator :: JavaIterator (collection:iterator)))
+    (let loop ()
+      (when (iterator:hasNext)
+        (result:addObject (sanitize-component-data (iterator:next)))
+        (loop)))
+    result))
 
 (define (sanitize-atomic arg)
   (cond
@@ -1181,12 +1197,16 @@
 ;;; Call a component's property setter method with argument coercion
 ;;; Ex: (%set-and-coerce-property! Button3 'FontSize 14 'number)
 (define (%set-and-coerce-property! comp prop-name property-value property-type)
-  (android-log (format #f "coercing for setting property ~A -- value ~A to type ~A" prop-name property-value property-type))
+  ;; Property setters run once per frame in animations, so don't build the log messages
+  ;; unless they will be logged.
+  (when *debug*
+    (android-log (format #f "coercing for setting property ~A -- value ~A to type ~A" prop-name property-value property-type)))
   (let ((coerced-arg (coerce-arg property-value property-type)))
-    (android-log (format #f "coerced property value was: ~A " coerced-arg))
+    (when *debug*
+      (android-log (format #f "coerced property value was: ~A " coerced-arg)))
     (if (all-coercible? (list coerced-arg))
         (try-catch
-         (invoke comp prop-name coerced-arg)
+         (%invoke-component comp prop-name (list coerced-arg))
          (exception PermissionException
                     (*:dispatchPermissionDeniedEvent (SimpleForm:getActiveForm) comp prop-name exception)))
         (generate-runtime-type-error prop-name (list property-value)))))
@@ -1512,14 +1532,21 @@
 ;;; Notice that this procedure works on the yail-list type
 ;;; because a yail-list is implemented as an ordinary list, with a tag
 (define (yail-equal? x1 x2)
-  (cond ((and (null? x1) (null? x2)) #t)
-        ((or (null? x1) (null? x2)) #f)
-        ((and (not (pair? x1)) (not (pair? x2)))
-         (yail-atomic-equal? x1 x2))
-        ((or (not (pair? x1)) (not (pair? x2)))
-         #f)
-        (else (and (yail-equal? (car x1) (car x2))
-         (yail-equal? (cdr x1) (cdr x2))))))
+  ;; Walk the two lists together, recursing only into sublists, so that
+  ;; comparing long lists doesn't use stack in proportion to their length.
+  ;; The eq? test lets lists that share their tails compare without walking
+  ;; the shared part.
+  (let loop ((x1 x1) (x2 x2))
+    (cond ((and (pair? x1) (eq? x1 x2)) #t)
+          ((and (null? x1) (null? x2)) #t)
+          ((or (null? x1) (null? x2)) #f)
+          ((and (not (pair? x1)) (not (pair? x2)))
+           (yail-atomic-equal? x1 x2))
+          ((or (not (pair? x1)) (not (pair? x2)))
+           #f)
+          ((yail-equal? (car x1) (car x2))
+           (loop (cdr x1) (cdr x2)))
+          (else #f))))
 
 (define (yail-atomic-equal? x1 x2)
   (cond
@@ -1931,8 +1958,8 @@ list, use the make-yail-list constructor with no arguments.
 (define (yail-list-contents yail-list)
   (cdr yail-list))
 
-(define (set-yail-list-contents! yail-list contents)
-  (set-cdr! yail-list contents))
+(define (set-yail-list-contents! yail-list :: YailList contents)
+  (yail-list:setContents contents))
 
 
 (define (insert-yail-list-header x)
@@ -1952,7 +1979,14 @@ list, use the make-yail-list constructor with no arguments.
         ;;TODO(halabeslon): Do we really need to sanitize atomic elements here?
         ((not (pair? x)) (sanitize-atomic x))
         ((yail-list? x) x)
-        (else (YailList:makeList (map kawa-list->yail-list x)))))
+        ;; Loop down the list, recursing only into sublists, so that long lists
+        ;; don't use stack in proportion to their length.
+        (else (let ((result :: YailList (make YailList)))
+                (let loop ((rest x))
+                  (when (pair? rest)
+                    (result:addObject (kawa-list->yail-list (car rest)))
+                    (loop (cdr rest))))
+                result))))
 
 ;;; To transform a yail list to a kawa-list,  strip off the *list* header at each node of the tree
 (define (yail-list->kawa-list data)
@@ -1975,9 +2009,17 @@ list, use the make-yail-list constructor with no arguments.
 ;;; does a deep copy of the yail list yl
 ;;; assumes yl is a real yail list, with all
 ;;; atomic elements sanitized
+;;; When *yail-list-copy-on-write* is true, copying a list that has no
+;;; sublists makes no new pairs: the copy shares the original's items until
+;;; either list is changed.  This is off unless the app turns it on.
+(define *yail-list-copy-on-write* #f)
+
 (define (yail-list-copy yl)
   (cond ((yail-list-empty? yl) (make YailList))
         ((not (pair? yl)) yl)
+        ((yail-list? yl)
+         (let ((original :: YailList yl))
+           (original:copy *yail-list-copy-on-write*)))
         (else (YailList:makeList (map yail-list-copy (yail-list-contents yl))))))
 
 ;;; converts a yail list to a CSV-formatted table and returns the text.
@@ -2033,8 +2075,10 @@ list, use the make-yail-list constructor with no arguments.
 
 
 ;; Implements the Blocks length operation
-(define (yail-list-length yail-list)
-  (length (yail-list-contents yail-list)))
+;; YailList keeps an index of its items, so this, selecting and replacing an item, and adding
+;; items to the end of a list take constant time rather than walking the list.
+(define (yail-list-length yail-list :: YailList)
+  (yail-list:size))
 
 ;; These are removed, to simplify the API to lists
 ;; ;; Implements the Blocks first operation
@@ -2064,7 +2108,7 @@ list, use the make-yail-list constructor with no arguments.
           (else (loop (+ i 1) (cdr list))))))
 
 ;; Implements the Blocks get list item operation
-(define (yail-list-get-item yail-list index)
+(define (yail-list-get-item yail-list :: YailList index)
   (if (< index 1)
       (signal-runtime-error
        (format #f "Select list item: Attempt to get item number ~A, of the list ~A.  The minimum valid item number is 1."
@@ -2079,11 +2123,11 @@ list, use the make-yail-list constructor with no arguments.
                  len
                  (get-display-representation yail-list))
          "Select list item: List index too large")
-    (list-ref (yail-list-contents yail-list) (- index 1)))))
+    (yail-list:getObject (- index 1)))))
 
 
 ;; Implements the Blocks set list item operation
-(define (yail-list-set-item! yail-list index value)
+(define (yail-list-set-item! yail-list :: YailList index value)
   (if (< index 1)
       (signal-runtime-error
        (format #f "Replace list item: Attempt to replace item number ~A of the list ~A.  The minimum valid item number is 1."
@@ -2098,13 +2142,13 @@ list, use the make-yail-list constructor with no arguments.
                  len
                  (get-display-representation yail-list))
          "List index too large")))
-  (set-car! (list-tail (yail-list-contents yail-list) (- index 1)) value))
+  (yail-list:setObject (- index 1) value))
 
 
 
 ;; Implements the Blocks remove list item operation
 ;; We have to operate on the yail-list itself, not the contents
-(define (yail-list-remove-item! yail-list index)
+(define (yail-list-remove-item! yail-list :: YailList index)
   (let ((index2 (coerce-to-number index)))
     (if (eq? index2 *non-coercible-value*)
         (signal-runtime-error
@@ -2129,15 +2173,14 @@ list, use the make-yail-list constructor with no arguments.
                    len
                    (get-display-representation yail-list))
            "List index too large"))
-      (let ((pair-pointing-to-deletion (list-tail yail-list (- index2 1))))
-        (set-cdr! pair-pointing-to-deletion (cddr pair-pointing-to-deletion))))))
+      (yail-list:removeObject (- index2 1)))))
 
 
 ;; Implements the Blocks insert list item operation
 ;; Inserts the new item to be at the index of the augmented list,
 ;; Given how we number yail list items, this means that the
 ;; valid range for index is from 1 through the length of the list plus 1
-(define (yail-list-insert-item! yail-list index item)
+(define (yail-list-insert-item! yail-list :: YailList index item)
   (let ((index2 (coerce-to-number index)))
     (if (eq? index2 *non-coercible-value*)
         (signal-runtime-error
@@ -2159,35 +2202,25 @@ list, use the make-yail-list constructor with no arguments.
                    (get-display-representation yail-list)
                    len+1)
            "List index too large"))
-      (let ((contents (yail-list-contents yail-list)))
-        (if (= index2 1)
-            (set-yail-list-contents! yail-list (cons item contents))
-            (let ((at-item (list-tail contents (- index2 2))))
-              (set-cdr! at-item (cons item (cdr at-item)))))))))
+      (yail-list:insertObject (- index2 1) item))))
 
 ;; Extends list A by appending the elements of list B to it
 ;; Modifies list A
 ;; Implements blocks append operation
-(define (yail-list-append! yail-list-A yail-list-B)
+(define (yail-list-append! yail-list-A :: YailList yail-list-B)
   ;; Unlike Scheme, we copy the tail so there's no shared tail
   ;; between the augmented list and the source of the added elements.
   ;; But like Python, we do a shallow copy, so that substructure is
-  ;; shared.
-  (define (list-copy l)
-    (if (null? l)
-    '()
-    (cons (car l) (list-copy (cdr l)))))
-  ;; We have to operate on the yail-list itself, not the contents, because
-  ;; the contents might be empty
-  (set-cdr! (list-tail yail-list-A (length (yail-list-contents yail-list-A)))
-        (list-copy (yail-list-contents yail-list-B))))
+  ;; shared.  addAll does the copying, and finds the end of list A
+  ;; without walking it.
+  (yail-list-A:addAll (yail-list-contents yail-list-B)))
 
 
 ;; Extend list A by appending the items to it
 ;; Modifies list A
 ;; Implements blocks add to list operation
-(define (yail-list-add-to-list! yail-list . items)
-  (yail-list-append! yail-list (apply make-yail-list items)))
+(define (yail-list-add-to-list! yail-list :: YailList . items)
+  (yail-list:addAll items))
 
 ;;;TODO(halabelson): BUG!  We need to recognize that "1" is
 ;;; a member of (1 2 3)
@@ -0,0 +1,143 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.components.runtime.util.ComponentDispatcher;
+import com.google.appinventor.components.scripts.ComponentDispatchGenerator;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import gnu.lists.LList;
+import gnu.math.IntNum;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Tests for the dispatchers written by {@link ComponentDispatchGenerator}. Each test compiles a
+ * small component with the generator as its annotation processor, then calls the component
+ * through the dispatcher that was generated for it.
+ */
+public class ComponentDispatchGeneratorTest extends TestCase {
+  private static final String HEADER =
+      "package com.example;\n"
+      + "import com.google.appinventor.components.annotations.*;\n"
+      + "import com.google.appinventor.components.common.ComponentCategory;\n"
+      + "@DesignerComponent(version = 1, category = ComponentCategory.INTERNAL,"
+      + " nonVisible = true)\n"
+      + "@SimpleObject\n"
+      + "public class Counter {\n"
+      + "  private int count;\n"
+      + "  @SimpleProperty public int Count() { return count; }\n"
+      + "  @SimpleProperty public void Count(int count) { this.count = count; }\n"
+      + "  @SimpleFunction public void Add(int n) { count += n; }\n"
+      + "  @SimpleFunction public String Describe(String prefix, boolean shout) {\n"
+      + "    String s = prefix + count;\n"
+      + "    return shout ? s.toUpperCase() : s;\n"
+      + "  }\n";
+
+  private File dir;
+  private File classes;
+  private DiagnosticCollector<JavaFileObject> diagnostics;
+
+  @Override
+  protected void setUp() throws Exception {
+    dir = Files.createTempDir();
+    classes = new File(dir, "classes");
+    diagnostics = new DiagnosticCollector<JavaFileObject>();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtils.deleteDirectory(dir);
+  }
+
+  public void testGeneratedDispatcher() throws Exception {
+    assertTrue(diagnostics.getDiagnostics().toString(), compile(HEADER + "}\n"));
+    Object counter = load("com.example.Counter");
+
+    ComponentDispatcher.Invoker setCount = ComponentDispatcher.getInvoker(counter, "Count", 1);
+    ComponentDispatcher.Invoker getCount = ComponentDispatcher.getInvoker(counter, "Count", 0);
+    ComponentDispatcher.Invoker add = ComponentDispatcher.getInvoker(counter, "Add", 1);
+    ComponentDispatcher.Invoker describe =
+        ComponentDispatcher.getInvoker(counter, "Describe", 2);
+    assertNotNull(setCount);
+    assertNotNull(getCount);
+    assertNotNull(add);
+    assertNotNull(describe);
+
+    setCount.invoke(counter, LList.list1(IntNum.make(3)));
+    add.invoke(counter, LList.list1(IntNum.make(4)));
+    assertEquals(7, getCount.invoke(counter, LList.Empty));
+    assertEquals("N=7", describe.invoke(counter, LList.list2("n=", Boolean.TRUE)));
+    assertEquals("n=7", describe.invoke(counter, LList.list2("n=", Boolean.FALSE)));
+
+    // Names and arities the component doesn't have are left to Kawa's invoke.
+    assertNull(ComponentDispatcher.getInvoker(counter, "Add", 2));
+    assertNull(ComponentDispatcher.getInvoker(counter, "Missing", 0));
+  }
+
+  public void testSameNameAndArityIsAnError() throws Exception {
+    // A method named like the Count setter, and with as many arguments, can't be dispatched.
+    assertFalse(compile(HEADER
+        + "  @SimpleFunction public void Count(String count) {}\n"
+        + "}\n"));
+    boolean reported = false;
+    for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+      if (diagnostic.getKind() == Diagnostic.Kind.ERROR
+          && diagnostic.getMessage(null).contains("named Count takes 1 argument")) {
+        reported = true;
+      }
+    }
+    assertTrue(diagnostics.getDiagnostics().toString(), reported);
+    assertFalse(new File(classes, "com/example/dispatch/CounterDispatcher.class").exists());
+  }
+
+  /**
+   * Compiles {@code source} as {@code com.example.Counter}, running the dispatch generator on
+   * it and compiling the dispatcher it writes.
+   */
+  private boolean compile(String source) throws IOException {
+    File file = new File(dir, "src/com/example/Counter.java");
+    File generated = new File(dir, "generated");
+    Files.createParentDirs(file);
+    Files.write(source, file, Charsets.UTF_8);
+    classes.mkdirs();
+    generated.mkdirs();
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+    try {
+      List<String> options = Arrays.asList(
+          "-classpath", System.getProperty("java.class.path"),
+          "-processor", ComponentDispatchGenerator.class.getName(),
+          "-d", classes.getPath(),
+          "-s", generated.getPath());
+      return compiler.getTask(null, fileManager, diagnostics, options, null,
+          fileManager.getJavaFileObjects(file)).call();
+    } finally {
+      fileManager.close();
+    }
+  }
+
+  private Object load(String className) throws Exception {
+    ClassLoader loader = new URLClassLoader(new URL[] { classes.toURI().toURL() },
+        getClass().getClassLoader());
+    return loader.loadClass(className).newInstance();
+  }
+}
@@ -0,0 +1,73 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver;
+
+import com.google.appinventor.components.runtime.Component;
+import com.google.appinventor.components.runtime.HandlesEventDispatching;
+
+/**
+ * A component with a few sprite-like properties, for exercising component calls from YAIL
+ * without Android. {@link com.google.appinventor.buildserver.dispatch.FakeSpriteDispatcher} is
+ * its dispatcher; {@link Reflective} has none, so calls on it go through Kawa's invoke.
+ */
+public class FakeSprite implements Component {
+  private double x;
+  private double y;
+  private int heading;
+  private boolean visible = true;
+
+  /**
+   * The same component without a dispatcher.
+   */
+  public static class Reflective extends FakeSprite {
+  }
+
+  @Override
+  public HandlesEventDispatching getDispatchDelegate() {
+    return null;
+  }
+
+  public double X() {
+    return x;
+  }
+
+  public void X(double x) {
+    this.x = x;
+  }
+
+  public double Y() {
+    return y;
+  }
+
+  public void Y(double y) {
+    this.y = y;
+  }
+
+  public int Heading() {
+    return heading;
+  }
+
+  public void Heading(int heading) {
+    this.heading = heading;
+  }
+
+  public boolean Visible() {
+    return visible;
+  }
+
+  public void Visible(boolean visible) {
+    this.visible = visible;
+  }
+
+  public void MoveTo(double x, double y) {
+    this.x = x;
+    this.y = y;
+  }
+
+  public String Describe(String prefix) {
+    return prefix + " " + x + "," + y;
+  }
+}
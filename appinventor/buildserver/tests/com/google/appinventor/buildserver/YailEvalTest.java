@@ -9,12 +9,16 @@ package com.google.appinventor.buildserver;
 import com.google.appinventor.common.testutils.TestUtils;
 import com.google.appinventor.components.runtime.errors.YailRuntimeError;
 
+import gnu.lists.LList;
 import gnu.math.DFloNum;
 import gnu.math.IntNum;
 import junit.framework.Assert;
 import junit.framework.TestCase;
 import kawa.standard.Scheme;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Tests the evaluation of various YAIL code.
  *
@@ -1265,4 +1269,139 @@ public class YailEvalTest extends TestCase {
         "(coerce-to-string (sanitize-component-data zero))";
     assertEquals("0", scheme.eval(schemeString).toString());
   }
+
+  public void testListEditsThroughIndex() throws Throwable {
+    String schemeString = "(let ((l (make-yail-list 1 2 3))) " +
+        "  (yail-list-add-to-list! l 4 5) " +
+        "  (yail-list-insert-item! l 1 0) " +
+        "  (yail-list-insert-item! l 7 6) " +
+        "  (yail-list-remove-item! l 3) " +
+        "  (yail-list-set-item! l 2 'one) " +
+        "  (yail-list-append! l (make-yail-list 7 8)) " +
+        "  (format #f \"~A ~A ~A\" (yail-list-length l) (yail-list-get-item l 8) " +
+        "          (get-display-representation l)))";
+    assertEquals("8 8 [0, one, 3, 4, 5, 6, 7, 8]", scheme.eval(schemeString).toString());
+    schemeString = "(let ((l (make-yail-list 'a))) " +
+        "  (yail-list-remove-item! l 1) " +
+        "  (yail-list-add-to-list! l 'b) " +
+        "  (format #f \"~A ~A\" (yail-list-length l) (yail-list-get-item l 1)))";
+    assertEquals("1 b", scheme.eval(schemeString).toString());
+    schemeString = "(let ((l (make-yail-list 1 2))) " +
+        "  (yail-list-append! l l) " +
+        "  (get-display-representation l))";
+    assertEquals("[1, 2, 1, 2]", scheme.eval(schemeString).toString());
+  }
+
+  /**
+   * Builds lists of 10k and 100k items with "add items to list" and then reads and replaces every
+   * item by index, which used to take time quadratic in the length of the list.
+   */
+  public void testIndexedListLoops() throws Throwable {
+    checkIndexedListLoop(10000);
+    checkIndexedListLoop(100000);
+  }
+
+  private void checkIndexedListLoop(int n) throws Throwable {
+    String schemeString = "(let ((l (make-yail-list))) " +
+        "  (let loop ((i 1)) " +
+        "    (when (<= i " + n + ") (yail-list-add-to-list! l i) (loop (+ i 1)))) " +
+        "  (let loop ((i 1)) " +
+        "    (when (<= i (yail-list-length l)) " +
+        "      (yail-list-set-item! l i (* 2 (yail-list-get-item l i))) " +
+        "      (loop (+ i 1)))) " +
+        "  (format #f \"~A ~A ~A\" (yail-list-length l) (yail-list-get-item l 1) " +
+        "          (yail-list-get-item l " + n + ")))";
+    assertEquals(n + " 2 " + 2 * n, scheme.eval(schemeString).toString());
+  }
+
+  /**
+   * Sanitizes, copies and compares lists of 1k to 1M items, and checks that none of them
+   * overflows a small thread stack like Android's.
+   */
+  public void testLongListTraversals() throws Throwable {
+    final Throwable[] failure = new Throwable[1];
+    Thread thread = new Thread(null, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          for (int n = 1000; n <= 1000000; n *= 10) {
+            checkLongListTraversals(n);
+          }
+        } catch (Throwable e) {
+          failure[0] = e;
+        }
+      }
+    }, "small-stack", 256 * 1024);
+    thread.start();
+    thread.join();
+    if (failure[0] != null) {
+      throw failure[0];
+    }
+  }
+
+  private void checkLongListTraversals(int n) throws Throwable {
+    LList result = (LList) scheme.eval(
+        "(let* ((items (com.google.appinventor.buildserver.YailEvalTest:makeItems " + n + ")) " +
+        "       (l1 (sanitize-component-data items)) " +
+        "       (l2 (sanitize-component-data items)) " +
+        "       (equal (yail-equal? l1 l2)) " +
+        "       (copy (yail-list-copy l1)) " +
+        "       (shared (begin (set! *yail-list-copy-on-write* #t) (yail-list-copy l2)))) " +
+        "  (set! *yail-list-copy-on-write* #f) " +
+        "  (yail-list-set-item! copy " + n + " 'changed) " +
+        "  (yail-list-set-item! shared 1 'changed) " +
+        "  (list equal (yail-equal? l1 l2) (yail-equal? l1 copy) (yail-list-length copy) " +
+        "        (yail-list-get-item l1 " + n + ") (yail-equal? l2 shared) " +
+        "        (yail-list-get-item l2 1) (yail-list-get-item shared 1)))");
+    assertEquals(Boolean.TRUE, result.get(0));
+    assertEquals(Boolean.TRUE, result.get(1));
+    assertEquals(Boolean.FALSE, result.get(2));
+    assertEquals(n, ((Number) result.get(3)).intValue());
+    assertEquals(n - 0.5, ((Number) result.get(4)).doubleValue(), 0);
+    // Changing a copy that shares the original's items leaves the original as it was.
+    assertEquals(Boolean.FALSE, result.get(5));
+    assertEquals(0, ((Number) result.get(6)).intValue());
+    assertEquals("changed", result.get(7).toString());
+  }
+
+  /**
+   * Returns a list of {@code n} numbers, for sanitizing into a YAIL list.
+   */
+  public static List<Object> makeItems(int n) {
+    List<Object> items = new ArrayList<Object>(n);
+    for (int i = 0; i < n; i++) {
+      items.add(i % 2 == 0 ? (Object) i : (Object) (i + 0.5));
+    }
+    return items;
+  }
+
+  /**
+   * Runs a small game loop against a component, once with its dispatcher and once through
+   * reflection, and checks that both leave the component in the same state.
+   */
+  public void testComponentDispatchMatchesReflection() throws Throwable {
+    String dispatched = runSpriteLoop(FakeSprite.class, 200);
+    String reflective = runSpriteLoop(FakeSprite.Reflective.class, 200);
+    assertEquals("(199.0 200.5 199 #f at 199.0,200.5)", dispatched);
+    assertEquals(dispatched, reflective);
+  }
+
+  private String runSpriteLoop(Class<?> spriteClass, int frames) throws Throwable {
+    scheme.eval("(add-to-current-form-environment 'Sprite1 (make " + spriteClass.getName() + "))");
+    String loop = "(let loop ((i 0)) " +
+        "  (when (< i " + frames + ") " +
+        "    (set-and-coerce-property! 'Sprite1 'X (+ (get-property 'Sprite1 'X) 1) 'number) " +
+        "    (set-and-coerce-property! 'Sprite1 'Heading (modulo i 360) 'number) " +
+        "    (set-and-coerce-property! 'Sprite1 'Visible (even? i) 'boolean) " +
+        "    (call-component-method 'Sprite1 'MoveTo " +
+        "      (*list-for-runtime* (get-property 'Sprite1 'X) (+ i 1.5)) '(number number)) " +
+        "    (set-and-coerce-property! 'Sprite1 'X i 'number) " +
+        "    (loop (+ i 1))))";
+    scheme.eval(loop);
+    return scheme.eval("(format #f \"~A\" " +
+        "(list (get-property 'Sprite1 'X) (get-property 'Sprite1 'Y) " +
+        "(get-property 'Sprite1 'Heading) (get-property 'Sprite1 'Visible) " +
+        "(call-component-method 'Sprite1 'Describe (*list-for-runtime* \"at\") '(text))))")
+        .toString();
+  }
 }
@@ -0,0 +1,78 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.buildserver.dispatch;
+
+import com.google.appinventor.buildserver.FakeSprite;
+import com.google.appinventor.components.runtime.util.ComponentDispatcher;
+
+/**
+ * The dispatcher for {@link FakeSprite}, written the way ComponentDispatchGenerator writes
+ * them for real components.
+ */
+public final class FakeSpriteDispatcher extends ComponentDispatcher {
+  @Override
+  protected int lookup(String name, int arity) {
+    switch (arity) {
+      case 0:
+        switch (name) {
+          case "Heading": return 0;
+          case "Visible": return 2;
+          case "X": return 4;
+          case "Y": return 6;
+        }
+        break;
+      case 1:
+        switch (name) {
+          case "Describe": return 8;
+          case "Heading": return 1;
+          case "Visible": return 3;
+          case "X": return 5;
+          case "Y": return 7;
+        }
+        break;
+      case 2:
+        switch (name) {
+          case "MoveTo": return 9;
+        }
+        break;
+    }
+    return -1;
+  }
+
+  @Override
+  protected Object invoke(Object component, int id, Object[] args) throws Exception {
+    FakeSprite c = (FakeSprite) component;
+    switch (id) {
+      case 0:
+        return c.Heading();
+      case 1:
+        c.Heading(toInt(args[0]));
+        return VOID;
+      case 2:
+        return c.Visible();
+      case 3:
+        c.Visible(toBoolean(args[0]));
+        return VOID;
+      case 4:
+        return c.X();
+      case 5:
+        c.X(toDouble(args[0]));
+        return VOID;
+      case 6:
+        return c.Y();
+      case 7:
+        c.Y(toDouble(args[0]));
+        return VOID;
+      case 8:
+        return c.Describe(toText(args[0]));
+      case 9:
+        c.MoveTo(toDouble(args[0]), toDouble(args[1]));
+        return VOID;
+      default:
+        throw new IllegalArgumentException("No method with id " + id);
+    }
+  }
+}
@@ -433,8 +433,35 @@ public class YaVersion {
   // - WEBVIEWER_COMPONENT_VERSION was incremented to 7
   // For YOUNG_ANDROID_VERSION 173:
   // - FORM_COMPONENT_VERSION was incremented to 24
-
-  public static final int YOUNG_ANDROID_VERSION = 173;
+  // For YOUNG_ANDROID_VERSION 174:
+  // - FILE_COMPONENT_VERSION was incremented to 3
+  // - WEB_COMPONENT_VERSION was incremented to 6
+  // For YOUNG_ANDROID_VERSION 175:
+  // - MAP_COMPONENT_VERSION was incremented to 5
+  // For YOUNG_ANDROID_VERSION 176:
+  // - MAP_COMPONENT_VERSION was incremented to 6
+  // For YOUNG_ANDROID_VERSION 177:
+  // - MAP_COMPONENT_VERSION was incremented to 7
+  // For YOUNG_ANDROID_VERSION 178:
+  // - MAP_COMPONENT_VERSION was incremented to 8
+  // - FEATURE_COLLECTION_COMPONENT_VERSION was incremented to 3
+  // For YOUNG_ANDROID_VERSION 179:
+  // - BLUETOOTHCLIENT_COMPONENT_VERSION was incremented to 6
+  // - BLUETOOTHSERVER_COMPONENT_VERSION was incremented to 6
+  // For YOUNG_ANDROID_VERSION 180:
+  // - TINYWEBDB_COMPONENT_VERSION was incremented to 3
+  // For YOUNG_ANDROID_VERSION 181:
+  // - FILE_COMPONENT_VERSION was incremented to 4
+  // For YOUNG_ANDROID_VERSION 182:
+  // - WEB_COMPONENT_VERSION was incremented to 7
+  // For YOUNG_ANDROID_VERSION 183:
+  // - WEB_COMPONENT_VERSION was incremented to 8
+  // For YOUNG_ANDROID_VERSION 184:
+  // - ACCELEROMETERSENSOR_COMPONENT_VERSION was incremented to 5
+  // - GYROSCOPESENSOR_COMPONENT_VERSION was incremented to 2
+  // - ORIENTATIONSENSOR_COMPONENT_VERSION was incremented to 3
+
+  public static final int YOUNG_ANDROID_VERSION = 184;
 
   // ............................... Blocks Language Version Number ...............................
 
@@ -544,7 +571,9 @@ public class YaVersion {
   // - AccelerometerSensor.Sensitivty property was added.
   //For ACCELEROMETERSENSOR_COMPONENT_VERSION 4:
   // - Added the LegacyMode property.
-  public static final int ACCELEROMETERSENSOR_COMPONENT_VERSION = 4;
+  //For ACCELEROMETERSENSOR_COMPONENT_VERSION 5:
+  // - Added the SampleInterval property.
+  public static final int ACCELEROMETERSENSOR_COMPONENT_VERSION = 5;
 
   // For ACTIVITYSTARTER_COMPONENT_VERSION 2:
   // - The ActivityStarter.DataType, ActivityStarter.ResultType, and ActivityStarter.ResultUri
@@ -585,7 +614,10 @@ public class YaVersion {
   // - The BluetoothClient.DelimiterByte property was added.
   // For BLUETOOTHCLIENT_COMPONENT_VERSION 5:
   // - The BluetoothClient.Secure property was added.
-  public static final int BLUETOOTHCLIENT_COMPONENT_VERSION = 5;
+  // For BLUETOOTHCLIENT_COMPONENT_VERSION 6:
+  // - The ReceiveInBackground, SendInBackground and ReceiveThreshold properties were added.
+  // - The DataReceived event was added.
+  public static final int BLUETOOTHCLIENT_COMPONENT_VERSION = 6;
 
   // For BLUETOOTHSERVER_COMPONENT_VERSION 2:
   // - The BluetoothServer.Enabled property was added.
@@ -595,7 +627,10 @@ public class YaVersion {
   // - The BluetoothServer.DelimiterByte property was added.
   // For BLUETOOTHSERVER_COMPONENT_VERSION 5:
   // - The BluetoothServer.Secure property was added.
-  public static final int BLUETOOTHSERVER_COMPONENT_VERSION = 5;
+  // For BLUETOOTHSERVER_COMPONENT_VERSION 6:
+  // - The ReceiveInBackground, SendInBackground and ReceiveThreshold properties were added.
+  // - The DataReceived event was added.
+  public static final int BLUETOOTHSERVER_COMPONENT_VERSION = 6;
 
   // For BUTTON_COMPONENT_VERSION 2:
   // - The Alignment property was renamed to TextAlignment.
@@ -693,11 +728,19 @@ public class YaVersion {
   // - GotGeoJSON event was renamed to GotFeatures
   // - ErrorLoadingFeatureCollection event was removed
   // - LoadedFeatureCollection event was removed
-  public static final int FEATURE_COLLECTION_COMPONENT_VERSION = 2;
+  // For FEATURE_COLLECTION_COMPONENT_VERSION 3:
+  // - Added AddFeaturesFromURL method
+  // - Added LoadProgress and FeaturesAdded events
+  public static final int FEATURE_COLLECTION_COMPONENT_VERSION = 3;
 
   // For FILE_COMPONENT_VERSION 2:
   // - The AfterFileSaved event was added.
-  public static final int FILE_COMPONENT_VERSION = 2;
+  // For FILE_COMPONENT_VERSION 3:
+  // - The ReadCsvFrom method and GotCsvTable event were added.
+  // For FILE_COMPONENT_VERSION 4:
+  // - The ReadInChunks and CopyFile methods were added.
+  // - The GotChunk and FileProgress events were added.
+  public static final int FILE_COMPONENT_VERSION = 4;
 
   // For FORM_COMPONENT_VERSION 2:
   // - The Screen.Scrollable property was added.
@@ -769,7 +812,9 @@ public class YaVersion {
 
   public static final int GAMECLIENT_COMPONENT_VERSION = 1;
 
-  public static final int GYROSCOPESENSOR_COMPONENT_VERSION = 1;
+  // For GYROSCOPESENSOR_COMPONENT_VERSION 2:
+  // - Added the SampleInterval property.
+  public static final int GYROSCOPESENSOR_COMPONENT_VERSION = 2;
 
   // For HORIZONTALARRANGEMENT_COMPONENT_VERSION 2:
   // - The AlignHorizontal property was added
@@ -873,7 +918,18 @@ public class YaVersion {
   // - GeoJSONError was renamed to LoadError
   // For MAP_COMPONENT_VERSION 4:
   // - Added Rotation property
-  public static final int MAP_COMPONENT_VERSION = 4;
+  // For MAP_COMPONENT_VERSION 5:
+  // - Added TileCacheSize and OfflineTiles properties
+  // - Added PrefetchTiles, CancelTilePrefetch and ClearTileCache methods
+  // - Added TilePrefetchProgress and TilePrefetchComplete events
+  // For MAP_COMPONENT_VERSION 6:
+  // - Added FeaturesInBoundingBox and FeaturesNearPoint methods
+  // For MAP_COMPONENT_VERSION 7:
+  // - Added ClusterMarkers property
+  // For MAP_COMPONENT_VERSION 8:
+  // - Added AddFeaturesFromURL method
+  // - Added LoadProgress and FeaturesAdded events
+  public static final int MAP_COMPONENT_VERSION = 8;
 
   // For MARKER_COMPONENT_VERSION 1:
   // - Initial Marker implementation using OpenStreetMap
@@ -927,7 +983,9 @@ public class YaVersion {
   // For ORIENTATIONSENSOR_COMPONENT_VERSION = 2:
   // - The Yaw property was renamed to Azimuth.
   // - The yaw parameter to OrientationChanged was renamed to azimuth.
-  public static final int ORIENTATIONSENSOR_COMPONENT_VERSION = 2;
+  // For ORIENTATIONSENSOR_COMPONENT_VERSION = 3:
+  // - Added the SampleInterval property.
+  public static final int ORIENTATIONSENSOR_COMPONENT_VERSION = 3;
 
   // For PASSWORDTEXTBOX_COMPONENT_VERSION 2:
   // - The Alignment property was renamed to TextAlignment.
@@ -1059,7 +1117,11 @@ public class YaVersion {
 
   // For TINYWEBDB_COMPONENT_VERSION 2:
   // - The TinyWebDB.ShowAlert method was removed. Notifier.ShowAlert should be used instead.
-  public static final int TINYWEBDB_COMPONENT_VERSION = 2;
+  // For TINYWEBDB_COMPONENT_VERSION 3:
+  // - The GetValues and StoreValues methods were added.
+  // - The GotValues and ValuesStored events were added.
+  // - The CacheTimeToLive property was added.
+  public static final int TINYWEBDB_COMPONENT_VERSION = 3;
 
   // For FIREBASE_COMPONENT_VERSION 1:
   // - FirebaseDB component introduced
@@ -1135,7 +1197,13 @@ public class YaVersion {
   // - Added method XMLTextDecode
   // For WEB_COMPONENT_VERSION 5:
   // - Added method UriDecode
-  public static final int WEB_COMPONENT_VERSION = 5;
+  // For WEB_COMPONENT_VERSION 6:
+  // - Added method GetCsvTable and event GotCsvTable
+  // For WEB_COMPONENT_VERSION 7:
+  // - Added property CacheResponses
+  // For WEB_COMPONENT_VERSION 8:
+  // - Added method CancelDownloads and event DownloadProgress
+  public static final int WEB_COMPONENT_VERSION = 8;
 
   // For WEBVIEWER_COMPONENT_VERSION 2:
   // - The CanGoForward and CanGoBack methods were added
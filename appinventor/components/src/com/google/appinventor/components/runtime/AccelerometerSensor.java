@@ -18,6 +18,8 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
+import com.google.appinventor.components.runtime.util.SensorSampler;
+import com.google.appinventor.components.runtime.util.SensorWindow;
 
 import android.content.Context;
 import android.content.res.Configuration;
@@ -34,9 +36,7 @@ import android.util.Log;
 import android.view.Surface;
 import android.view.WindowManager;
 
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 
 /**
  * Physical world component that can detect shaking and measure
@@ -91,9 +91,12 @@ public class AccelerometerSensor extends AndroidNonvisibleComponent
 
   // Cache for shake detection
   private static final int SENSOR_CACHE_SIZE = 10;
-  private final Queue<Float> X_CACHE = new LinkedList<Float>();
-  private final Queue<Float> Y_CACHE = new LinkedList<Float>();
-  private final Queue<Float> Z_CACHE = new LinkedList<Float>();
+  private final SensorWindow X_CACHE = new SensorWindow(SENSOR_CACHE_SIZE);
+  private final SensorWindow Y_CACHE = new SensorWindow(SENSOR_CACHE_SIZE);
+  private final SensorWindow Z_CACHE = new SensorWindow(SENSOR_CACHE_SIZE);
+
+  // Decides which readings are passed on in AccelerationChanged events
+  private final SensorSampler sampler = new SensorSampler();
 
   // Backing for sensor values
   private float xAccel;
@@ -176,6 +179,38 @@ public class AccelerometerSensor extends AndroidNonvisibleComponent
     minimumInterval = interval;
   }
 
+  /**
+   * Returns the minimum interval between AccelerationChanged events, in milliseconds.
+   *
+   * @return  sample interval in ms
+   */
+  @SimpleProperty(
+      category = PropertyCategory.BEHAVIOR,
+      description = "The minimum interval, in milliseconds, between AccelerationChanged events. " +
+      "If 0, every reading of the accelerometer triggers the event. Otherwise the event gives " +
+      "the mean of the readings taken during the interval, while XAccel, YAccel and ZAccel " +
+      "still give the latest reading. Shaking is still detected from every reading.")
+  public int SampleInterval() {
+    return sampler.getInterval();
+  }
+
+  /**
+   * Specifies the minimum interval between AccelerationChanged events, in milliseconds.
+   *
+   * @param interval  sample interval in ms
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+      defaultValue = "0")
+  @SimpleProperty
+  public void SampleInterval(int interval) {
+    sampler.setInterval(interval);
+    if (enabled) {
+      // Register again so that the accelerometer can batch its readings over the new interval.
+      stopListening();
+      startListening();
+    }
+  }
+
   /**
    * Returns a number that encodes how sensitive the AccelerometerSensor is.
    * The choices are: 1 = weak, 2 = moderate, 3 = strong.
@@ -219,25 +254,27 @@ public class AccelerometerSensor extends AndroidNonvisibleComponent
    */
   @SimpleEvent
   public void AccelerationChanged(float xAccel, float yAccel, float zAccel) {
-    this.xAccel = xAccel;
-    this.yAccel = yAccel;
-    this.zAccel = zAccel;
-
-    addToSensorCache(X_CACHE, xAccel);
-    addToSensorCache(Y_CACHE, yAccel);
-    addToSensorCache(Z_CACHE, zAccel);
+    EventDispatcher.dispatchEvent(this, "AccelerationChanged", xAccel, yAccel, zAccel);
+  }
 
-    long currentTime = System.currentTimeMillis();
+  /*
+   * Adds a reading to the shake detection caches and calls Shaking() if the phone is shaking and
+   * the minimum interval has elapsed since it was last called.
+   */
+  private void detectShaking(float xAccel, float yAccel, float zAccel) {
+    X_CACHE.add(xAccel);
+    Y_CACHE.add(yAccel);
+    Z_CACHE.add(zAccel);
 
     //Checks whether the phone is shaking and the minimum interval
     //has elapsed since the last registered a shaking event.
-    if ((isShaking(X_CACHE, xAccel) || isShaking(Y_CACHE, yAccel) || isShaking(Z_CACHE, zAccel))
-        && (timeLastShook == 0 || currentTime >= timeLastShook + minimumInterval)){
-      timeLastShook = currentTime;
-      Shaking();
+    if (isShaking(X_CACHE, xAccel) || isShaking(Y_CACHE, yAccel) || isShaking(Z_CACHE, zAccel)) {
+      long currentTime = System.currentTimeMillis();
+      if (timeLastShook == 0 || currentTime >= timeLastShook + minimumInterval) {
+        timeLastShook = currentTime;
+        Shaking();
+      }
     }
-
-    EventDispatcher.dispatchEvent(this, "AccelerationChanged", xAccel, yAccel, zAccel);
   }
 
 public int getDeviceDefaultOrientation() {
@@ -308,12 +345,14 @@ public int getDeviceDefaultOrientation() {
         }
       }, 32);                   // Wait 32ms for the UI to settle down
 
-    sensorManager.registerListener(this, accelerometerSensor, SensorManager.SENSOR_DELAY_GAME);
+    SensorSampler.registerListener(sensorManager, this, accelerometerSensor,
+        SensorManager.SENSOR_DELAY_GAME, sampler.getInterval());
   }
 
   // Assumes that sensorManager has been initialized, which happens in constructor
   private void stopListening() {
     sensorManager.unregisterListener(this);
+    sampler.reset();
   }
 
   /**
@@ -375,28 +414,13 @@ public int getDeviceDefaultOrientation() {
     return zAccel;
   }
 
-  /*
-   * Updating sensor cache, replacing oldest values.
-   */
-  private void addToSensorCache(Queue<Float> cache, float value) {
-    if (cache.size() >= SENSOR_CACHE_SIZE) {
-      cache.remove();
-    }
-    cache.add(value);
-  }
-
   /*
    * Indicates whether there was a sudden, unusual movement.
    */
   // TODO(user): Maybe this can be improved.
   // See http://www.utdallas.edu/~rxb023100/pubs/Accelerometer_WBSN.pdf.
-  private boolean isShaking(Queue<Float> cache, float currentValue) {
-    float average = 0;
-    for (float value : cache) {
-      average += value;
-    }
-
-    average /= cache.size();
+  private boolean isShaking(SensorWindow cache, float currentValue) {
+    float average = cache.mean();
 
     if (Sensitivity() == 1) { //sensitivity is weak
       return Math.abs(average - currentValue) > strongShakeThreshold;
@@ -450,7 +474,10 @@ public int getDeviceDefaultOrientation() {
       }
       zAccel = values[2];
       accuracy = sensorEvent.accuracy;
-      AccelerationChanged(xAccel, yAccel, zAccel);
+      detectShaking(xAccel, yAccel, zAccel);
+      if (sampler.add(xAccel, yAccel, zAccel, sensorEvent.timestamp)) {
+        AccelerationChanged(sampler.getX(), sampler.getY(), sampler.getZ());
+      }
     }
   }
 
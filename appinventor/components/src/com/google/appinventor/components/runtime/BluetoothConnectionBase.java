@@ -13,6 +13,7 @@ import com.google.appinventor.components.annotations.SimpleFunction;
 import com.google.appinventor.components.annotations.SimpleObject;
 import com.google.appinventor.components.annotations.SimpleProperty;
 import com.google.appinventor.components.common.PropertyTypeConstants;
+import com.google.appinventor.components.runtime.util.AsynchUtil;
 import com.google.appinventor.components.runtime.util.BluetoothReflection;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.SdkLevel;
@@ -25,11 +26,13 @@ import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * An abstract base class for the BluetoothClient and BluetoothServer
@@ -41,6 +44,12 @@ import java.util.List;
 public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     implements Component, OnDestroyListener, Deleteable {
 
+  // The most bytes that are received in the background and not yet read by a Receive block.
+  // When the buffer is full, the background thread stops reading from the device until there is
+  // room, so bytes are held back rather than lost.
+  private static final int RECEIVE_BUFFER_SIZE = 16 * 1024;
+  private static final int RECEIVE_CHUNK_SIZE = 1024;
+
   protected final String logTag;
   private final List<BluetoothConnectionListener> bluetoothConnectionListeners =
       new ArrayList<BluetoothConnectionListener>();
@@ -50,10 +59,18 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
   private byte delimiter;
   protected boolean secure;
 
+  private boolean receiveInBackground;
+  private boolean sendInBackground;
+  private int receiveThreshold;
+
   private Object connectedBluetoothSocket;
   private InputStream inputStream;
   private OutputStream outputStream;
 
+  // While receiving in the background, the bytes read from inputStream by the receive thread.
+  private ReceiveBuffer receiveBuffer;
+  private final AtomicBoolean dataReceivedPending = new AtomicBoolean(false);
+
   /**
    * Creates a new BluetoothConnectionBase.
    */
@@ -70,6 +87,9 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     CharacterEncoding("UTF-8");
     DelimiterByte(0);
     Secure(true);
+    ReceiveInBackground(false);
+    SendInBackground(false);
+    ReceiveThreshold(1);
   }
 
   /**
@@ -166,6 +186,9 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
         BluetoothReflection.getInputStream(connectedBluetoothSocket));
     outputStream = new BufferedOutputStream(
         BluetoothReflection.getOutputStream(connectedBluetoothSocket));
+    if (receiveInBackground) {
+      startReceiving();
+    }
     fireAfterConnectEvent();
   }
 
@@ -176,6 +199,7 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
   public final void Disconnect() {
     if (connectedBluetoothSocket != null) {
       fireBeforeDisconnectEvent();
+      stopReceiving();
       try {
         BluetoothReflection.closeBluetoothSocket(connectedBluetoothSocket);
         Log.i(logTag, "Disconnected from Bluetooth device.");
@@ -301,6 +325,97 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     return delimiter;
   }
 
+  /**
+   * Specifies whether bytes are received from the connected device by a background thread. If
+   * true, bytes are read as soon as they arrive and held until a Receive block reads them, and
+   * the DataReceived event is raised when enough have arrived. Setting this to false while
+   * connected stops the DataReceived event, but bytes continue to be received in the background
+   * until the connection is closed.
+   *
+   * @param receiveInBackground {@code true} to receive in the background
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+      defaultValue = "False")
+  @SimpleProperty
+  public void ReceiveInBackground(boolean receiveInBackground) {
+    this.receiveInBackground = receiveInBackground;
+    if (receiveInBackground && IsConnected() && receiveBuffer == null) {
+      startReceiving();
+    }
+  }
+
+  /**
+   * Returns whether bytes are received from the connected device by a background thread.
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "Whether bytes are received from the connected device in the background. " +
+      "If true, bytes are read as soon as they arrive, so that fast senders do not lose data, " +
+      "and the DataReceived event is raised when ReceiveThreshold bytes are waiting to be " +
+      "received.")
+  public boolean ReceiveInBackground() {
+    return receiveInBackground;
+  }
+
+  /**
+   * Specifies whether the Send blocks return without waiting for the bytes to be written to
+   * the connected device. If true, the bytes are written in the background in the order they
+   * were sent.
+   *
+   * @param sendInBackground {@code true} to send in the background
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+      defaultValue = "False")
+  @SimpleProperty
+  public void SendInBackground(boolean sendInBackground) {
+    this.sendInBackground = sendInBackground;
+  }
+
+  /**
+   * Returns whether the Send blocks return without waiting for the bytes to be written.
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "Whether the Send blocks return without waiting for the bytes to be " +
+      "written to the connected device. If true, bytes are written in the background in the " +
+      "order they were sent, and errors are reported through Screen.ErrorOccurred.")
+  public boolean SendInBackground() {
+    return sendInBackground;
+  }
+
+  /**
+   * Sets the number of bytes that must be waiting to be received before the DataReceived event
+   * is raised. If negative, the event is raised when a delimiter byte is received.
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_INTEGER,
+      defaultValue = "1")
+  @SimpleProperty
+  public void ReceiveThreshold(int receiveThreshold) {
+    this.receiveThreshold = receiveThreshold;
+  }
+
+  /**
+   * Returns the number of bytes that must be waiting to be received before the DataReceived
+   * event is raised.
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "The number of bytes that must be waiting to be received before the " +
+      "DataReceived event is raised when ReceiveInBackground is true. If less than 0, the " +
+      "event is raised when a delimiter byte value is received.")
+  public int ReceiveThreshold() {
+    return receiveThreshold;
+  }
+
+  /**
+   * Indicates that bytes have been received in the background and are waiting to be read.
+   *
+   * @param bytesAvailable the number of bytes that can be received without blocking
+   */
+  @SimpleEvent(description = "Indicates that ReceiveThreshold bytes, or a delimiter byte if " +
+      "ReceiveThreshold is less than 0, have been received in the background. Use the Receive " +
+      "blocks to read them.")
+  public void DataReceived(int bytesAvailable) {
+    EventDispatcher.dispatchEvent(this, "DataReceived", bytesAvailable);
+  }
+
   /**
    * Converts the given text to bytes and writes them to the output stream.
    *
@@ -493,6 +608,11 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
       return;
     }
 
+    if (sendInBackground) {
+      writeInBackground(functionName, new byte[] { b });
+      return;
+    }
+
     try {
       outputStream.write(b);
       outputStream.flush();
@@ -515,6 +635,11 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
       return;
     }
 
+    if (sendInBackground) {
+      writeInBackground(functionName, bytes.clone());
+      return;
+    }
+
     try {
       outputStream.write(bytes);
       outputStream.flush();
@@ -524,6 +649,25 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     }
   }
 
+  /**
+   * Writes the given bytes to the output stream after every byte sent before them, without
+   * waiting for the write to finish.
+   */
+  private void writeInBackground(final String functionName, final byte[] bytes) {
+    final OutputStream out = outputStream;
+    AsynchUtil.runSerially(this, new Runnable() {
+      public void run() {
+        try {
+          out.write(bytes);
+          out.flush();
+        } catch (IOException e) {
+          bluetoothError(functionName,
+              ErrorMessages.ERROR_BLUETOOTH_UNABLE_TO_WRITE, e.getMessage());
+        }
+      }
+    });
+  }
+
   /**
    * Returns number of bytes available from the input stream.
    */
@@ -538,7 +682,7 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     }
 
     try {
-      return inputStream.available();
+      return receiveStream().available();
     } catch (IOException e) {
       bluetoothError(functionName,
           ErrorMessages.ERROR_BLUETOOTH_UNABLE_TO_READ, e.getMessage());
@@ -746,6 +890,7 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
       return new byte[0];
     }
 
+    InputStream source = receiveStream();
     ByteArrayOutputStream buffer = new ByteArrayOutputStream();
 
     if (numberOfBytes >= 0) {
@@ -754,7 +899,7 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
       int totalBytesRead = 0;
       while (totalBytesRead < numberOfBytes) {
         try {
-          int numBytesRead = inputStream.read(bytes, totalBytesRead, bytes.length - totalBytesRead);
+          int numBytesRead = source.read(bytes, totalBytesRead, bytes.length - totalBytesRead);
           if (numBytesRead == -1) {
             bluetoothError(functionName,
                 ErrorMessages.ERROR_BLUETOOTH_END_OF_STREAM);
@@ -772,7 +917,7 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
       // Read one byte at a time until a delimiter byte is read.
       while (true) {
         try {
-          int value = inputStream.read();
+          int value = source.read();
           if (value == -1) {
             bluetoothError(functionName,
                 ErrorMessages.ERROR_BLUETOOTH_END_OF_STREAM);
@@ -793,6 +938,200 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     return buffer.toByteArray();
   }
 
+  /**
+   * Returns the stream that the Receive blocks read from, which is the buffer filled by the
+   * receive thread while receiving in the background.
+   */
+  private InputStream receiveStream() {
+    return receiveBuffer != null ? receiveBuffer : inputStream;
+  }
+
+  private void startReceiving() {
+    final InputStream source = inputStream;
+    final ReceiveBuffer buffer = new ReceiveBuffer(RECEIVE_BUFFER_SIZE);
+    receiveBuffer = buffer;
+    Thread receiver = new Thread(new Runnable() {
+      public void run() {
+        byte[] chunk = new byte[RECEIVE_CHUNK_SIZE];
+        try {
+          while (true) {
+            int n = source.read(chunk);
+            if (n == -1) {
+              buffer.end(null);
+              return;
+            }
+            if (!buffer.put(chunk, n)) {
+              return;  // stopReceiving was called
+            }
+            postDataReceived();
+          }
+        } catch (IOException e) {
+          buffer.end(e);
+        }
+      }
+    }, logTag + "-receive");
+    receiver.setDaemon(true);
+    receiver.start();
+  }
+
+  private void stopReceiving() {
+    if (receiveBuffer != null) {
+      // The receive thread finishes when closing the socket ends its read.
+      receiveBuffer.close();
+      receiveBuffer = null;
+    }
+  }
+
+  /**
+   * Asks the UI thread to check whether DataReceived should be raised. Called on the receive
+   * thread after each read; at most one check is waiting at a time.
+   */
+  private void postDataReceived() {
+    if (dataReceivedPending.compareAndSet(false, true)) {
+      form.runOnUiThread(new Runnable() {
+        public void run() {
+          dataReceivedPending.set(false);
+          ReceiveBuffer buffer = receiveBuffer;
+          if (buffer == null || !receiveInBackground) {
+            return;
+          }
+          int available = buffer.available();
+          boolean ready = receiveThreshold < 0
+              ? buffer.contains(delimiter)
+              : available > 0 && available >= receiveThreshold;
+          if (ready) {
+            DataReceived(available);
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * A fixed-size ring buffer of received bytes, written by the receive thread and read through
+   * the InputStream interface by the Receive blocks.
+   */
+  private static final class ReceiveBuffer extends InputStream {
+    private final byte[] bytes;
+    private int head = 0;  // the index of the next byte to read
+    private int count = 0;
+    private boolean ended = false;
+    private boolean closed = false;
+    private IOException error = null;
+
+    ReceiveBuffer(int size) {
+      bytes = new byte[size];
+    }
+
+    /**
+     * Appends bytes, waiting for room if the buffer is full. Returns false if the buffer was
+     * closed, in which case the bytes may not all have been added.
+     */
+    synchronized boolean put(byte[] source, int length) throws InterruptedIOException {
+      int offset = 0;
+      while (offset < length) {
+        while (count == bytes.length && !closed) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+          }
+        }
+        if (closed) {
+          return false;
+        }
+        int tail = (head + count) % bytes.length;
+        int n = Math.min(length - offset, Math.min(bytes.length - count, bytes.length - tail));
+        System.arraycopy(source, offset, bytes, tail, n);
+        count += n;
+        offset += n;
+        notifyAll();
+      }
+      return true;
+    }
+
+    /**
+     * Marks the end of the received bytes. Once the bytes before it are read, reads return
+     * -1, or throw {@code error} if it is not null.
+     */
+    synchronized void end(IOException error) {
+      ended = true;
+      this.error = error;
+      notifyAll();
+    }
+
+    synchronized boolean contains(byte b) {
+      for (int i = 0; i < count; i++) {
+        if (bytes[(head + i) % bytes.length] == b) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public synchronized int read() throws IOException {
+      if (!waitForBytes()) {
+        return -1;
+      }
+      int b = bytes[head] & 0xFF;
+      head = (head + 1) % bytes.length;
+      count--;
+      notifyAll();
+      return b;
+    }
+
+    @Override
+    public synchronized int read(byte[] buffer, int offset, int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      if (!waitForBytes()) {
+        return -1;
+      }
+      int n = Math.min(length, Math.min(count, bytes.length - head));
+      System.arraycopy(bytes, head, buffer, offset, n);
+      head = (head + n) % bytes.length;
+      count -= n;
+      notifyAll();
+      return n;
+    }
+
+    @Override
+    public synchronized int available() {
+      return count;
+    }
+
+    @Override
+    public synchronized void close() {
+      closed = true;
+      notifyAll();
+    }
+
+    /**
+     * Waits until there is a byte to read. Returns false at the end of the received bytes.
+     */
+    private boolean waitForBytes() throws IOException {
+      while (count == 0) {
+        if (closed) {
+          return false;
+        }
+        if (ended) {
+          if (error != null) {
+            throw error;
+          }
+          return false;
+        }
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException();
+        }
+      }
+      return true;
+    }
+  }
+
   // OnDestroyListener implementation
 
   @Override
@@ -7,9 +7,6 @@ package com.google.appinventor.components.runtime;
 
 import android.app.Activity;
 
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
-
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 
@@ -49,12 +46,11 @@ import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicReference;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
@@ -65,6 +61,8 @@ import org.json.JSONArray;
 import org.json.JSONException;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 import redis.clients.jedis.exceptions.JedisDataException;
 import redis.clients.jedis.exceptions.JedisException;
@@ -230,28 +228,42 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
 
   // Store can be called frequenly and quickly in some situations. For example
   // using store inside of a Canvas Drag event (for realtime updating of a remote
-  // canvas). Or in a handler for the Accelerometer (gasp!). To make storing as
-  // effecient as possible, we have a queue of pending store requests and we
-  // have a background task that drains this queue as fast as possible and
-  // iterates over the queue until it is drained.
-  private final List<storedValue> storeQueue = Collections.synchronizedList(new ArrayList());
+  // canvas). Or in a handler for the Accelerometer (gasp!). So can GetValue, say
+  // when an app reads 20 tags every frame. To make this as effecient as possible,
+  // StoreValue, GetValue, AppendValueToList and ClearTag go on a queue of pending
+  // operations and we have a background task that drains this queue as fast as
+  // possible. Everything that is waiting is sent to Redis as one pipeline, so a
+  // burst of calls costs one round trip rather than one each. A store to the
+  // tag that the last waiting operation stores is folded into that store.
+  private final List<PendingOperation> pendingOperations = new ArrayList<PendingOperation>();
+
+  // The most operations sent in one pipeline.
+  private static final int MAX_PIPELINE_LENGTH = 256;
+
+  // The SHA1s of the Lua scripts that have been sent in full on the connection
+  // scriptsConnection. Until a script has been, we use EVAL rather than EVALSHA,
+  // which saves a round trip to ask Redis whether it already has the script.
+  private Jedis scriptsConnection = null;
+  private final Set<String> loadedScripts = new HashSet<String>();
 
   private ConnectivityManager cm;
 
-  private static class storedValue {
-    private String tag;
-    private JSONArray  valueList;
-    storedValue(String tag, JSONArray valueList) {
+  private static final int STORE = 0;
+  private static final int GET = 1;
+  private static final int APPEND = 2;
+  private static final int CLEAR = 3;
+
+  private static class PendingOperation {
+    private final int operation;
+    private final String tag;
+    private String value;         // The JSON value to store or append
+    private JSONArray valueList;  // Every value stored, to publish
+    private Object valueIfTagNotThere;
+    private Response<?> response;
+
+    PendingOperation(int operation, String tag) {
+      this.operation = operation;
       this.tag = tag;
-      this.valueList = valueList;
-    }
-
-    public String getTag() {
-      return tag;
-    }
-
-    public JSONArray getValueList() {
-      return valueList;
     }
   }
 
@@ -579,120 +591,11 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
       if (DEBUG) {
         Log.d(LOG_TAG,"Device is online...");
       }
-      synchronized(storeQueue) {
-        boolean kickit = false;
-        if (storeQueue.size() == 0) { // Need to kick off the background task
-          if (DEBUG) {
-            Log.d(LOG_TAG, "storeQueue is zero length, kicking background");
-          }
-          kickit = true;
-        } else {
-          if (DEBUG) {
-            Log.d(LOG_TAG, "storeQueue has " + storeQueue.size() + " entries");
-          }
-        }
-        JSONArray valueList = new JSONArray();
-        try {
-          valueList.put(0, value);
-        } catch (JSONException e) {
-          throw new YailRuntimeError("JSON Error putting value.", "value is not convertable");
-        }
-        storedValue work  = new storedValue(tag, valueList);
-        storeQueue.add(work);
-        if (kickit) {
-          background.submit(new Runnable() {
-              public void run() {
-                JSONArray pendingValueList = null;
-                String pendingTag = null;
-                String pendingValue = null;
-                try {
-                  storedValue work;
-                  if (DEBUG) {
-                    Log.d(LOG_TAG, "store background task running.");
-                  }
-                  while (true) {
-                    synchronized(storeQueue) {
-                      if (DEBUG) {
-                        Log.d(LOG_TAG, "store: In background synchronized block");
-                      }
-                      int size = storeQueue.size();
-                      if (size == 0) {
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "store background task exiting.");
-                        }
-                        work = null;
-                      } else {
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "store: storeQueue.size() == " + size);
-                        }
-                        work = storeQueue.remove(0);
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "store: got work.");
-                        }
-                      }
-                    }
-                    if (DEBUG) {
-                      Log.d(LOG_TAG, "store: left synchronized block");
-                    }
-                    if (work == null) {
-                      try {
-                        if (pendingTag != null) {
-                          String jsonValueList = pendingValueList.toString();
-                          if (DEBUG) {
-                            Log.d(LOG_TAG, "Workqueue empty, sending pendingTag, valueListLength = " + pendingValueList.length());
-                          }
-                          jEval(SET_SUB_SCRIPT, SET_SUB_SCRIPT_SHA1, 1, pendingTag, pendingValue, jsonValueList, projectID);
-                        }
-                      } catch (JedisException e) {
-                        CloudDBError(e.getMessage());
-                        flushJedis(true);
-                      }
-                      return;
-                    }
-
-                    String tag = work.getTag();
-                    JSONArray valueList = work.getValueList();
-                    if (tag == null || valueList == null) {
-                      if (DEBUG) {
-                        Log.d(LOG_TAG, "Either tag or value is null!");
-                      }
-                    } else {
-                      if (DEBUG) {
-                        Log.d(LOG_TAG, "Got Work: tag = " + tag + " value = " + valueList.get(0));
-                      }
-                    }
-                    if (pendingTag == null) { // First time through this invocation
-                      pendingTag = tag;
-                      pendingValueList = valueList;
-                      pendingValue = valueList.getString(0);
-                    } else if (pendingTag.equals(tag)) { // work is for the same tag
-                      pendingValue = valueList.getString(0);
-                      pendingValueList.put(pendingValue);
-                    } else {    // Work is for a different tag, send what we have
-                      try {     // and add the new tag,incoming valuelist for the next round
-                        String jsonValueList = pendingValueList.toString();
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "pendingTag changed sending pendingTag, valueListLength = " + pendingValueList.length());
-                        }
-                        jEval(SET_SUB_SCRIPT, SET_SUB_SCRIPT_SHA1, 1, pendingTag, pendingValue, jsonValueList, projectID);
-                      } catch (JedisException e) {
-                        CloudDBError(e.getMessage());
-                        flushJedis(true);
-                        storeQueue.clear(); // Flush pending changes, we are in
-                        return;             // an error state
-                      }
-                      pendingTag = tag;
-                      pendingValueList = valueList;
-                      pendingValue = valueList.getString(0);
-                    }
-                  }
-                } catch (Exception e) {
-                Log.e(LOG_TAG, "Exception in store worker!", e);
-                }
-              }
-            });
-        }
-      }
+      PendingOperation work = new PendingOperation(STORE, tag);
+      work.value = value;
+      work.valueList = new JSONArray();
+      work.valueList.put(value);
+      queueOperation(work);
     } else {
       CloudDBError("Cannot store values off-line.");
     }
@@ -715,61 +618,15 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
     if (DEBUG) {
       Log.d(LOG_TAG, "getting value ... for tag: " + tag);
     }
-    final AtomicReference<Object> value = new AtomicReference<Object>();
-    Cursor cursor = null;
-    SQLiteDatabase db = null;
     NetworkInfo networkInfo = cm.getActiveNetworkInfo();
     boolean isConnected = networkInfo != null && networkInfo.isConnected();
 
     if (isConnected) {
-      // Set value to either the JSON from the CloudDB
+      // The value will be either the JSON from the CloudDB
       // or the JSON representation of valueIfTagNotThere
-      background.submit(new Runnable() {
-          public void run() {
-            Jedis jedis = getJedis();
-            try {
-              if (DEBUG) {
-                Log.d(LOG_TAG,"about to call jedis.get()");
-              }
-              String returnValue = jedis.get(projectID + ":" + tag);
-              if (DEBUG) {
-                Log.d(LOG_TAG, "finished call jedis.get()");
-              }
-              if (returnValue != null) {
-                String val = JsonUtil.getJsonRepresentationIfValueFileName(returnValue);
-                if(val != null) value.set(val);
-                else value.set(returnValue);
-              }
-              else {
-                if (DEBUG) {
-                  Log.d(CloudDB.LOG_TAG,"Value retrieved is null");
-                }
-                value.set(JsonUtil.getJsonRepresentation(valueIfTagNotThere));
-              }
-            } catch (JSONException e) {
-              CloudDBError("JSON conversion error for " + tag);
-              return;
-            } catch (NullPointerException e) {
-              CloudDBError("System Error getting tag " + tag);
-              flushJedis(true);
-              return;
-            } catch (JedisException e) {
-              Log.e(LOG_TAG, "Exception in GetValue", e);
-              CloudDBError(e.getMessage());
-              flushJedis(true);
-              return;
-            }
-
-            androidUIHandler.post(new Runnable() {
-                public void run() {
-                  // Signal an event to indicate that the value was
-                  // received.  We post this to run in the Application's main
-                  // UI thread.
-                  GotValue(tag, value.get());
-                }
-              });
-          }
-        });
+      PendingOperation work = new PendingOperation(GET, tag);
+      work.valueIfTagNotThere = valueIfTagNotThere;
+      queueOperation(work);
     } else {
       if (DEBUG) {
         Log.d(LOG_TAG, "GetValue(): We're offline");
@@ -897,20 +754,9 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
       throw new YailRuntimeError("Value failed to convert to JSON.", "JSON Creation Error.");
     }
 
-    final String item = (String) itemObject;
-    final String key = tag;
-
-    background.submit(new Runnable() {
-        public void run() {
-          Jedis jedis = getJedis();
-          try {
-            jEval(APPEND_SCRIPT, APPEND_SCRIPT_SHA1, 1, key, item, projectID);
-          } catch(JedisException e) {
-            CloudDBError(e.getMessage());
-            flushJedis(true);
-          }
-        }
-      });
+    PendingOperation work = new PendingOperation(APPEND, tag);
+    work.value = (String) itemObject;
+    queueOperation(work);
   }
 
   /**
@@ -956,17 +802,7 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
   @SimpleFunction(description = "Remove the tag from CloudDB")
   public void ClearTag(final String tag) {
     checkProjectIDNotBlank();
-    background.submit(new Runnable() {
-        public void run() {
-          try {
-            Jedis jedis = getJedis();
-            jedis.del(projectID + ":" + tag);
-          } catch (Exception e) {
-            CloudDBError(e.getMessage());
-            flushJedis(true);
-          }
-        }
-      });
+    queueOperation(new PendingOperation(CLEAR, tag));
   }
 
   /**
@@ -1168,6 +1004,13 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
             Log.d(LOG_TAG, "Killing background executor, returned tasks = " + tasks);
           }
           background = Executors.newSingleThreadExecutor();
+          // The task sending pending operations may have been killed, start
+          // another one for whatever is still waiting.
+          synchronized(pendingOperations) {
+            if (pendingOperations.size() > 0) {
+              background.submit(sendPendingOperations);
+            }
+          }
         }
       });
 
@@ -1177,6 +1020,187 @@ public final class CloudDB extends AndroidNonvisibleComponent implements Compone
     }
   }
 
+  /*
+   * queueOperation -- Add work for Redis to the pending operations,
+   * starting the background task that sends them if it isn't already
+   * running.
+   */
+  private void queueOperation(PendingOperation work) {
+    synchronized(pendingOperations) {
+      boolean kickit = pendingOperations.size() == 0;
+      if (work.operation == STORE && pendingOperations.size() > 0) {
+        // Fold the value into a store to the same tag that is the last
+        // operation waiting. Folding it into one further back would send it
+        // ahead of the operations queued after that one.
+        PendingOperation last = pendingOperations.get(pendingOperations.size() - 1);
+        if (last.operation == STORE && last.tag.equals(work.tag)) {
+          if (DEBUG) {
+            Log.d(LOG_TAG, "Coalescing store to " + work.tag);
+          }
+          last.value = work.value;
+          last.valueList.put(work.value);
+          return;
+        }
+      }
+      pendingOperations.add(work);
+      if (kickit) {
+        if (DEBUG) {
+          Log.d(LOG_TAG, "pendingOperations was empty, kicking background");
+        }
+        background.submit(sendPendingOperations);
+      }
+    }
+  }
+
+  private final Runnable sendPendingOperations = new Runnable() {
+      public void run() {
+        try {
+          while (true) {
+            List<PendingOperation> batch;
+            synchronized(pendingOperations) {
+              if (pendingOperations.size() == 0) {
+                if (DEBUG) {
+                  Log.d(LOG_TAG, "pending operations task exiting.");
+                }
+                return;
+              }
+              List<PendingOperation> first = pendingOperations.subList(0,
+                  Math.min(pendingOperations.size(), MAX_PIPELINE_LENGTH));
+              batch = new ArrayList<PendingOperation>(first);
+              first.clear();
+            }
+            if (!sendOperations(batch)) {
+              synchronized(pendingOperations) {
+                pendingOperations.clear(); // Flush pending changes, we are in
+              }                            // an error state
+              return;
+            }
+          }
+        } catch (Exception e) {
+          Log.e(LOG_TAG, "Exception in pending operations worker!", e);
+        }
+      }
+    };
+
+  /*
+   * sendOperations -- Send a batch of operations to Redis in one pipeline
+   * and then handle each reply. Returns false if the connection failed.
+   */
+  private boolean sendOperations(List<PendingOperation> batch) {
+    Jedis jedis = getJedis();
+    if (jedis == null) {
+      return false;             // getJedis() has already signaled the error
+    }
+    if (DEBUG) {
+      Log.d(LOG_TAG, "Sending " + batch.size() + " operations");
+    }
+    if (scriptsConnection != jedis) {
+      scriptsConnection = jedis;
+      loadedScripts.clear();
+    }
+    try {
+      Pipeline pipeline = jedis.pipelined();
+      for (PendingOperation work : batch) {
+        String key = projectID + ":" + work.tag;
+        switch (work.operation) {
+          case STORE:
+            work.response = pipelineEval(pipeline, SET_SUB_SCRIPT, SET_SUB_SCRIPT_SHA1,
+                work.tag, work.value, work.valueList.toString(), projectID);
+            break;
+          case GET:
+            work.response = pipeline.get(key);
+            break;
+          case APPEND:
+            work.response = pipelineEval(pipeline, APPEND_SCRIPT, APPEND_SCRIPT_SHA1,
+                work.tag, work.value, projectID);
+            break;
+          case CLEAR:
+            work.response = pipeline.del(key);
+            break;
+        }
+      }
+      pipeline.sync();
+    } catch (JedisException e) {
+      CloudDBError(e.getMessage());
+      flushJedis(true);
+      return false;
+    }
+    for (PendingOperation work : batch) {
+      try {
+        Object result;
+        try {
+          result = work.response.get();
+        } catch (JedisDataException e) {
+          if (e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT")) {
+            throw e;
+          }
+          // Redis has forgotten the script, so send it again.
+          loadedScripts.clear();
+          result = work.operation == STORE
+              ? jEval(SET_SUB_SCRIPT, SET_SUB_SCRIPT_SHA1, 1, work.tag, work.value,
+                  work.valueList.toString(), projectID)
+              : jEval(APPEND_SCRIPT, APPEND_SCRIPT_SHA1, 1, work.tag, work.value, projectID);
+        }
+        if (work.operation == GET) {
+          gotValue(work.tag, (String) result, work.valueIfTagNotThere);
+        }
+      } catch (JedisConnectionException e) {
+        CloudDBError(e.getMessage());
+        flushJedis(true);
+        return false;
+      } catch (JedisException e) {
+        // An error for this operation alone, such as appending to a tag that
+        // doesn't hold a list.
+        CloudDBError(e.getMessage());
+      }
+    }
+    return true;
+  }
+
+  /*
+   * pipelineEval -- Add a script with one key to the pipeline, sending it
+   * in full the first time. Redis runs a pipeline in order, so the script
+   * can be referred to by its SHA1 from then on, even within the same
+   * pipeline.
+   */
+  private Response<Object> pipelineEval(Pipeline pipeline, String script, String scriptsha1,
+      String... args) {
+    if (loadedScripts.add(scriptsha1)) {
+      return pipeline.eval(script, 1, args);
+    }
+    return pipeline.evalsha(scriptsha1, 1, args);
+  }
+
+  private void gotValue(final String tag, String returnValue, Object valueIfTagNotThere) {
+    final Object value;
+    if (returnValue != null) {
+      String val = JsonUtil.getJsonRepresentationIfValueFileName(returnValue);
+      if (val != null) {
+        value = val;
+      } else {
+        value = returnValue;
+      }
+    } else {
+      if (DEBUG) {
+        Log.d(CloudDB.LOG_TAG,"Value retrieved is null");
+      }
+      try {
+        value = JsonUtil.getJsonRepresentation(valueIfTagNotThere);
+      } catch (JSONException e) {
+        CloudDBError("JSON conversion error for " + tag);
+        return;
+      }
+    }
+    androidUIHandler.post(new Runnable() {
+        public void run() {
+          // Signal an event to indicate that the value was
+          // received.  We post this to run in the Application's main
+          // UI thread.
+          GotValue(tag, value);
+        }
+      });
+  }
+
  /**
    * Accepts a file name and returns a Yail List with two
    * elements. the first element is the file's extension (example:
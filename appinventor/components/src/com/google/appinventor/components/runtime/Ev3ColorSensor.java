@@ -16,7 +16,6 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
-import android.os.Handler;
 
 /**
  * A component that provides a high-level interface to a color sensor on a
@@ -43,12 +42,10 @@ public class Ev3ColorSensor extends LegoMindstormsEv3Sensor implements Deleteabl
   private static final int DEFAULT_BOTTOM_OF_RANGE = 30;
   private static final int DEFAULT_TOP_OF_RANGE = 60;
   private static final String DEFAULT_SENSOR_MODE_STRING = SENSOR_MODE_REFLECTED_STRING;
-  private static final int DELAY_MILLISECONDS = 50;
 
   private int mode = 0;
   private String modeString = SENSOR_MODE_REFLECTED_STRING;
-  private Handler eventHandler;
-  private final Runnable sensorValueChecker;
+  private final LegoCommandScheduler.Poller<int[]> sensorValueChecker;
   private int bottomOfRange;
   private int topOfRange;
   private int previousLightLevel = 0;
@@ -65,18 +62,33 @@ public class Ev3ColorSensor extends LegoMindstormsEv3Sensor implements Deleteabl
   public Ev3ColorSensor(ComponentContainer container) {
     super(container, "Ev3ColorSensor");
 
-    eventHandler = new Handler();
-    sensorValueChecker = new Runnable() {
-      public void run() {
+    sensorValueChecker = new LegoCommandScheduler.Poller<int[]>() {
+      private int requestMode;
+      private LegoCommandScheduler.Reply request;
+
+      @Override
+      void startPoll() {
+        requestMode = mode;
+        request = requestSensorValue("", requestMode);
+      }
+
+      @Override
+      int[] finishPoll() {
+        // The sample is paired with the mode it was read in, since the mode may have changed
+        // by the time it is handled.
+        return new int[] { requestMode, getSensorValue("", requestMode, request) };
+      }
+
+      @Override
+      void handleSample(int[] sample) {
         String functionName = "";
 
-        if (bluetooth != null && bluetooth.IsConnected()) {
+        if (sample[0] == mode) {
           if (mode == SENSOR_MODE_COLOR) {
-            int currentColor = getSensorValue(functionName);
+            int currentColor = sample[1];
 
             if (previousColor < 0) {
               previousColor = currentColor;
-              eventHandler.postDelayed(this, DELAY_MILLISECONDS);
               return;
             }
 
@@ -85,10 +97,9 @@ public class Ev3ColorSensor extends LegoMindstormsEv3Sensor implements Deleteabl
 
             previousColor = currentColor;
           } else {                // mode == SENSOR_MODE_REFLECTED or mode == SENSOR_MODE_AMBIENT
-            int currentLightLevel = getSensorValue(functionName);
+            int currentLightLevel = sample[1];
             if (previousLightLevel < 0) {
               previousLightLevel = currentLightLevel;
-              eventHandler.postDelayed(this, DELAY_MILLISECONDS);
               return;
             }
 
@@ -107,11 +118,9 @@ public class Ev3ColorSensor extends LegoMindstormsEv3Sensor implements Deleteabl
             previousLightLevel = currentLightLevel;
           }
         }
-
-        eventHandler.postDelayed(this, DELAY_MILLISECONDS);
       }
     };
-    eventHandler.post(sensorValueChecker);
+    startPolling(sensorValueChecker);
 
     TopOfRange(DEFAULT_TOP_OF_RANGE);
     BottomOfRange(DEFAULT_BOTTOM_OF_RANGE);
@@ -318,11 +327,20 @@ public class Ev3ColorSensor extends LegoMindstormsEv3Sensor implements Deleteabl
   }
 
   private int getSensorValue(String functionName) {
-    int level = readInputPercentage(functionName,
-                                    0, // assume layer = 0
-                                    sensorPortNumber,
-                                    SENSOR_TYPE,
-                                    mode);
+    int currentMode = mode;
+    return getSensorValue(functionName, currentMode, requestSensorValue(functionName, currentMode));
+  }
+
+  private LegoCommandScheduler.Reply requestSensorValue(String functionName, int mode) {
+    return requestInputPercentage(functionName,
+                                  0, // assume layer = 0
+                                  sensorPortNumber,
+                                  SENSOR_TYPE,
+                                  mode);
+  }
+
+  private int getSensorValue(String functionName, int mode, LegoCommandScheduler.Reply request) {
+    int level = readInputPercentage(functionName, request);
 
     // map values according to LEGO's convention
     if (mode == SENSOR_MODE_COLOR) {
@@ -459,7 +477,7 @@ public class Ev3ColorSensor extends LegoMindstormsEv3Sensor implements Deleteabl
   // interface Deleteable implementation
   @Override
   public void onDelete() {
-    eventHandler.removeCallbacks(sensorValueChecker);
+    stopPolling(sensorValueChecker);
     super.onDelete();
   }
 }
@@ -16,7 +16,6 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
-import android.os.Handler;
 
 /**
  * A component that provides a high-level interface to a gyro sensor on a LEGO
@@ -33,7 +32,6 @@ import android.os.Handler;
                    iconName = "images/legoMindstormsEv3.png")
 @SimpleObject
 public class Ev3GyroSensor extends LegoMindstormsEv3Sensor implements Deleteable {
-  private static final int DELAY_MILLISECONDS = 50;
   private static final int SENSOR_TYPE = 32;
   private static final int SENSOR_MODE_ANGLE = 0;
   private static final int SENSOR_MODE_RATE = 1;
@@ -41,8 +39,7 @@ public class Ev3GyroSensor extends LegoMindstormsEv3Sensor implements Deleteable
   private static final String SENSOR_MODE_RATE_STRING = "rate";
   private static final String DEFAULT_SENSOR_MODE_STRING = SENSOR_MODE_ANGLE_STRING;
 
-  private Handler eventHandler;
-  private final Runnable sensorValueChecker;
+  private final LegoCommandScheduler.Poller<double[]> sensorValueChecker;
   private int mode = SENSOR_MODE_ANGLE;
   private String modeString = SENSOR_MODE_ANGLE_STRING;
   private double previousValue = -1.0;
@@ -54,17 +51,30 @@ public class Ev3GyroSensor extends LegoMindstormsEv3Sensor implements Deleteable
   public Ev3GyroSensor(ComponentContainer container) {
     super(container, "Ev3GyroSensor");
 
-    eventHandler = new Handler();
-    sensorValueChecker = new Runnable() {
-      public void run() {
-        String functionName = "";
+    sensorValueChecker = new LegoCommandScheduler.Poller<double[]>() {
+      private int requestMode;
+      private LegoCommandScheduler.Reply request;
 
-        if (bluetooth != null && bluetooth.IsConnected()) {
-          double currentValue = getSensorValue(functionName);
+      @Override
+      void startPoll() {
+        requestMode = mode;
+        request = requestSensorValue("", requestMode);
+      }
+
+      @Override
+      double[] finishPoll() {
+        // The sample is paired with the mode it was read in, since the mode may have changed
+        // by the time it is handled.
+        return new double[] { requestMode, readInputSI("", request) };
+      }
+
+      @Override
+      void handleSample(double[] sample) {
+        if (sample[0] == mode) {
+          double currentValue = sample[1];
 
           if (previousValue < 0.0) {
             previousValue = currentValue;
-            eventHandler.postDelayed(this, DELAY_MILLISECONDS);
             return;
           }
 
@@ -76,11 +86,9 @@ public class Ev3GyroSensor extends LegoMindstormsEv3Sensor implements Deleteable
 
           previousValue = currentValue;
         }
-
-        eventHandler.postDelayed(this, DELAY_MILLISECONDS);
       }
     };
-    eventHandler.post(sensorValueChecker);
+    startPolling(sensorValueChecker);
 
     Mode(DEFAULT_SENSOR_MODE_STRING);
     SensorValueChangedEventEnabled(false);
@@ -166,11 +174,15 @@ public class Ev3GyroSensor extends LegoMindstormsEv3Sensor implements Deleteable
   }
 
   private double getSensorValue(String functionName) {
-    return readInputSI(functionName,
-                       0,
-                       sensorPortNumber,
-                       SENSOR_TYPE,
-                       mode);
+    return readInputSI(functionName, requestSensorValue(functionName, mode));
+  }
+
+  private LegoCommandScheduler.Reply requestSensorValue(String functionName, int mode) {
+    return requestInputSI(functionName,
+                          0,
+                          sensorPortNumber,
+                          SENSOR_TYPE,
+                          mode);
   }
 
   private void setMode(String newModeString) {
@@ -187,6 +199,7 @@ public class Ev3GyroSensor extends LegoMindstormsEv3Sensor implements Deleteable
   // Deleteable implementation
   @Override
   public void onDelete() {
+    stopPolling(sensorValueChecker);
     super.onDelete();
   }
 }
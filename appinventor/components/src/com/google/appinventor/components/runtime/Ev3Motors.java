@@ -18,7 +18,6 @@ import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.util.Ev3Constants;
 import com.google.appinventor.components.runtime.util.Ev3BinaryParser;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
-import android.os.Handler;
 
 /**
  * A component that provides both high- and low-level interfaces to
@@ -35,7 +34,6 @@ import android.os.Handler;
                    iconName = "images/legoMindstormsEv3.png")
 @SimpleObject
 public class Ev3Motors extends LegoMindstormsEv3Base {
-  private static final int DELAY_MILLISECONDS = 50;
   private static final String DEFAULT_MOTOR_PORTS = "ABC";
   private static final double DEFAULT_WHEEL_DIAMETER = 4.32;
 
@@ -45,8 +43,7 @@ public class Ev3Motors extends LegoMindstormsEv3Base {
   private boolean regulationEnabled = true;
   private boolean stopBeforeDisconnect = true;
   private boolean tachoCountChangedEventEnabled = false;
-  private final Runnable sensorValueChecker;
-  private Handler eventHandler;
+  private final LegoCommandScheduler.Poller<Integer> sensorValueChecker;
   private int previousValue = 0;
   private boolean ifReset = false;
 
@@ -55,29 +52,32 @@ public class Ev3Motors extends LegoMindstormsEv3Base {
    */
   public Ev3Motors(ComponentContainer container) {
     super(container, "Ev3Motors");
-    eventHandler = new Handler();
-    sensorValueChecker = new Runnable() {
-      public void run() {
-        String functionName = "";
-
-        if (bluetooth != null && bluetooth.IsConnected()) {
-          int sensorValue = getOutputCount(functionName, 0, motorPortBitField);
-
-          if (!ifReset) {
-            if (sensorValue != previousValue && tachoCountChangedEventEnabled) {
-              TachoCountChanged(sensorValue);
-            }
-          } else {
-            ifReset = false;
+    sensorValueChecker = new LegoCommandScheduler.Poller<Integer>() {
+      private LegoCommandScheduler.Reply request;
+
+      @Override
+      void startPoll() {
+        request = requestOutputCount("", 0, motorPortBitField);
+      }
+
+      @Override
+      Integer finishPoll() {
+        return getOutputCount("", request);
+      }
+
+      @Override
+      void handleSample(Integer sensorValue) {
+        if (!ifReset) {
+          if (sensorValue != previousValue && tachoCountChangedEventEnabled) {
+            TachoCountChanged(sensorValue);
           }
-          previousValue = sensorValue;
+        } else {
+          ifReset = false;
         }
-
-        eventHandler.postDelayed(this, DELAY_MILLISECONDS);
+        previousValue = sensorValue;
       }
     };
-
-    eventHandler.post(sensorValueChecker);
+    startPolling(sensorValueChecker);
 
     MotorPorts(DEFAULT_MOTOR_PORTS);
     StopBeforeDisconnect(true);
@@ -656,6 +656,10 @@ public class Ev3Motors extends LegoMindstormsEv3Base {
   }
 
   private int getOutputCount(String functionName, int layer, int nos) {
+    return getOutputCount(functionName, requestOutputCount(functionName, layer, nos));
+  }
+
+  private LegoCommandScheduler.Reply requestOutputCount(String functionName, int layer, int nos) {
     if (layer < 0 || layer > 3 || nos < 0 || nos > 15)
       throw new IllegalArgumentException();
 
@@ -692,7 +696,11 @@ public class Ev3Motors extends LegoMindstormsEv3Base {
                                                          (byte) layer,
                                                          (byte) portNumber,
                                                          (byte) 0);
-    byte[] reply = sendCommand(functionName, command, true);
+    return submitCommand(functionName, command, true);
+  }
+
+  private int getOutputCount(String functionName, LegoCommandScheduler.Reply request) {
+    byte[] reply = request == null ? null : receiveReply(functionName, request);
 
     if (reply != null && reply.length == 5 && reply[0] == Ev3Constants.DirectReplyType.DIRECT_REPLY) {
       Object[] values = Ev3BinaryParser.unpack("xi", reply);
@@ -15,7 +15,6 @@ import com.google.appinventor.components.annotations.SimpleProperty;
 import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
-import android.os.Handler;
 
 /**
  * A component that provides a high-level interface to a touch sensor on a LEGO
@@ -36,12 +35,10 @@ public class Ev3TouchSensor extends LegoMindstormsEv3Sensor implements Deleteabl
   private static final int SENSOR_TYPE = 16;
   private static final int SENSOR_MODE_TOUCH = 0;
   private static final String SENSOR_MODE_TOUCH_STRING = "touch";
-  private static final int DELAY_MILLISECONDS = 50;
 
   private String modeString = SENSOR_MODE_TOUCH_STRING;
   private int mode = SENSOR_MODE_TOUCH;
-  private Handler eventHandler;
-  private final Runnable sensorValueChecker;
+  private final LegoCommandScheduler.Poller<Integer> sensorValueChecker;
   private int savedPressedValue = -1;
   private boolean pressedEventEnabled;
   private boolean releasedEventEnabled;
@@ -52,35 +49,38 @@ public class Ev3TouchSensor extends LegoMindstormsEv3Sensor implements Deleteabl
   public Ev3TouchSensor(ComponentContainer container) {
     super(container, "Ev3TouchSensor");
 
-    eventHandler = new Handler();
-    sensorValueChecker = new Runnable() {
-      public void run() {
-        String functionName = "";
+    sensorValueChecker = new LegoCommandScheduler.Poller<Integer>() {
+      private LegoCommandScheduler.Reply request;
 
-        if (bluetooth != null && bluetooth.IsConnected()) {
-          int currentPressedValue = getPressedValue(functionName);
-
-          if (savedPressedValue < 0) {
-            savedPressedValue = currentPressedValue;
-            eventHandler.postDelayed(this, DELAY_MILLISECONDS);
-            return;
-          }
+      @Override
+      void startPoll() {
+        request = requestPressedValue("");
+      }
 
-          if (savedPressedValue < SENSOR_VALUE_THRESHOLD) {
-            if (releasedEventEnabled && currentPressedValue >= SENSOR_VALUE_THRESHOLD)
-              Pressed();
-          } else {
-            if (pressedEventEnabled && currentPressedValue < SENSOR_VALUE_THRESHOLD)
-              Released();
-          }
+      @Override
+      Integer finishPoll() {
+        return readInputPercentage("", request);
+      }
 
+      @Override
+      void handleSample(Integer currentPressedValue) {
+        if (savedPressedValue < 0) {
           savedPressedValue = currentPressedValue;
+          return;
         }
 
-        eventHandler.postDelayed(this, DELAY_MILLISECONDS);
+        if (savedPressedValue < SENSOR_VALUE_THRESHOLD) {
+          if (releasedEventEnabled && currentPressedValue >= SENSOR_VALUE_THRESHOLD)
+            Pressed();
+        } else {
+          if (pressedEventEnabled && currentPressedValue < SENSOR_VALUE_THRESHOLD)
+            Released();
+        }
+
+        savedPressedValue = currentPressedValue;
       }
     };
-    eventHandler.post(sensorValueChecker);
+    startPolling(sensorValueChecker);
 
     PressedEventEnabled(false);
     ReleasedEventEnabled(false);
@@ -156,18 +156,21 @@ public class Ev3TouchSensor extends LegoMindstormsEv3Sensor implements Deleteabl
   }
 
   private int getPressedValue(String functionName) {
-    int value =  readInputPercentage(functionName,
-                                     0, // assume layer = 0
-                                     sensorPortNumber,
-                                     SENSOR_TYPE,
-                                     mode);
-    return value;
+    return readInputPercentage(functionName, requestPressedValue(functionName));
+  }
+
+  private LegoCommandScheduler.Reply requestPressedValue(String functionName) {
+    return requestInputPercentage(functionName,
+                                  0, // assume layer = 0
+                                  sensorPortNumber,
+                                  SENSOR_TYPE,
+                                  mode);
   }
 
   // Deleteable implementation
   @Override
   public void onDelete() {
-    eventHandler.removeCallbacks(sensorValueChecker);
+    stopPolling(sensorValueChecker);
     super.onDelete();
   }
 }
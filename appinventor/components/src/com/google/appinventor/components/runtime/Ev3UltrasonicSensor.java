@@ -16,7 +16,6 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
-import android.os.Handler;
 
 /**
  * A component that provides a high-level interface to an ultrasonic sensor on a LEGO
@@ -42,12 +41,10 @@ public class Ev3UltrasonicSensor extends LegoMindstormsEv3Sensor implements Dele
   private static final int DEFAULT_BOTTOM_OF_RANGE = 30;
   private static final int DEFAULT_TOP_OF_RANGE = 90;
   private static final String DEFAULT_SENSOR_MODE_STRING = SENSOR_MODE_CM_STRING;
-  private static final int DELAY_MILLISECONDS = 50;
 
   private String modeString = SENSOR_MODE_CM_STRING;
   private int mode = SENSOR_MODE_CM;
-  private Handler eventHandler;
-  private final Runnable sensorValueChecker;
+  private final LegoCommandScheduler.Poller<Double> sensorValueChecker;
   private double previousDistance = -1.0;
   private int bottomOfRange;
   private int topOfRange;
@@ -61,39 +58,41 @@ public class Ev3UltrasonicSensor extends LegoMindstormsEv3Sensor implements Dele
   public Ev3UltrasonicSensor(ComponentContainer container) {
     super(container, "Ev3UltrasonicSensor");
 
-    eventHandler = new Handler();
-    sensorValueChecker = new Runnable() {
-      public void run() {
-        String functionName = "";
-
-        if (bluetooth != null && bluetooth.IsConnected()) {
-          double currentDistance = getDistance(functionName);
-
-          if (previousDistance < 0.0) {
-            previousDistance = currentDistance;
-            eventHandler.postDelayed(this, DELAY_MILLISECONDS);
-            return;
-          }
-
-          if (currentDistance < bottomOfRange) {
-            if (belowRangeEventEnabled && previousDistance >= bottomOfRange)
-              BelowRange();
-          } else if (currentDistance > topOfRange) {
-            if (aboveRangeEventEnabled && previousDistance <= topOfRange)
-              AboveRange();
-          } else {
-            if (withinRangeEventEnabled && (previousDistance < bottomOfRange || previousDistance > topOfRange))
-              WithinRange();
-          }
+    sensorValueChecker = new LegoCommandScheduler.Poller<Double>() {
+      private LegoCommandScheduler.Reply request;
 
+      @Override
+      void startPoll() {
+        request = requestDistance("");
+      }
+
+      @Override
+      Double finishPoll() {
+        return getDistance("", request);
+      }
+
+      @Override
+      void handleSample(Double currentDistance) {
+        if (previousDistance < 0.0) {
           previousDistance = currentDistance;
+          return;
+        }
+
+        if (currentDistance < bottomOfRange) {
+          if (belowRangeEventEnabled && previousDistance >= bottomOfRange)
+            BelowRange();
+        } else if (currentDistance > topOfRange) {
+          if (aboveRangeEventEnabled && previousDistance <= topOfRange)
+            AboveRange();
+        } else {
+          if (withinRangeEventEnabled && (previousDistance < bottomOfRange || previousDistance > topOfRange))
+            WithinRange();
         }
 
-        eventHandler.postDelayed(this, DELAY_MILLISECONDS);
+        previousDistance = currentDistance;
       }
     };
-
-    eventHandler.post(sensorValueChecker);
+    startPolling(sensorValueChecker);
 
     TopOfRange(DEFAULT_TOP_OF_RANGE);
     BottomOfRange(DEFAULT_BOTTOM_OF_RANGE);
@@ -111,7 +110,15 @@ public class Ev3UltrasonicSensor extends LegoMindstormsEv3Sensor implements Dele
   }
 
   private double getDistance(String functionName) {
-    double distance = readInputSI(functionName, 0, sensorPortNumber, SENSOR_TYPE, mode);
+    return getDistance(functionName, requestDistance(functionName));
+  }
+
+  private LegoCommandScheduler.Reply requestDistance(String functionName) {
+    return requestInputSI(functionName, 0, sensorPortNumber, SENSOR_TYPE, mode);
+  }
+
+  private double getDistance(String functionName, LegoCommandScheduler.Reply request) {
+    double distance = readInputSI(functionName, request);
     return distance == 255 ? -1.0 : distance;
   }
 
@@ -317,7 +324,7 @@ public class Ev3UltrasonicSensor extends LegoMindstormsEv3Sensor implements Dele
   // Deleteable implementation
   @Override
   public void onDelete() {
-    eventHandler.removeCallbacks(sensorValueChecker);
+    stopPolling(sensorValueChecker);
     super.onDelete();
   }
 }
@@ -8,10 +8,12 @@ package com.google.appinventor.components.runtime;
 
 import android.util.Log;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Dispatches events to component event handlers.
@@ -59,6 +61,9 @@ public class EventDispatcher {
   /*
    * Each EventRegistry is associated with one dispatchDelegate.
    * It contains all the event closures for a single form.
+   *
+   * Events may be registered and dispatched from different threads (for example, sensor and
+   * network callbacks), so the maps are concurrent.
    */
   private static final class EventRegistry {
     private final HandlesEventDispatching dispatchDelegate;
@@ -67,18 +72,44 @@ public class EventDispatcher {
     // Note that by using a Set here, we'll only have one closure corresponding to a
     // given componentId-eventName.  We do not support invoking multiple handlers for a
     // single event.
-    private final HashMap<String, Set<EventClosure>> eventClosuresMap =
-        new HashMap<String, Set<EventClosure>>();
+    private final Map<String, Set<EventClosure>> eventClosuresMap =
+        new ConcurrentHashMap<String, Set<EventClosure>>();
+
+    // For each component, and each event name, the closure that last handled that event for
+    // that component. Component names are bound to components late, so the closure for a
+    // component can't be known when the event is registered; instead it is found by the first
+    // dispatch and tried first after that, so that an event goes to one closure rather than to
+    // every closure with the same event name. The dispatch delegate still checks that the
+    // closure's component name refers to the component, so a stale entry only costs a retry.
+    private final Map<Component, Map<String, EventClosure>> resolvedClosures =
+        Collections.synchronizedMap(new WeakHashMap<Component, Map<String, EventClosure>>());
 
     EventRegistry(HandlesEventDispatching dispatchDelegate) {
       this.dispatchDelegate = dispatchDelegate;
     }
+
+    EventClosure getResolvedClosure(Component component, String eventName) {
+      Map<String, EventClosure> closures = resolvedClosures.get(component);
+      return closures == null ? null : closures.get(eventName);
+    }
+
+    void setResolvedClosure(Component component, EventClosure eventClosure) {
+      synchronized (resolvedClosures) {
+        Map<String, EventClosure> closures = resolvedClosures.get(component);
+        if (closures == null) {
+          closures = new ConcurrentHashMap<String, EventClosure>();
+          resolvedClosures.put(component, closures);
+        }
+        closures.put(eventClosure.eventName, eventClosure);
+      }
+    }
   }
 
   private static final boolean DEBUG = false;
 
   private static final Map<HandlesEventDispatching, EventRegistry>
-      mapDispatchDelegateToEventRegistry = new HashMap<HandlesEventDispatching, EventRegistry>();
+      mapDispatchDelegateToEventRegistry =
+          new ConcurrentHashMap<HandlesEventDispatching, EventRegistry>();
 
   private EventDispatcher() {
   }
@@ -86,8 +117,13 @@ public class EventDispatcher {
   private static EventRegistry getEventRegistry(HandlesEventDispatching dispatchDelegate) {
     EventRegistry er = mapDispatchDelegateToEventRegistry.get(dispatchDelegate);
     if (er == null) {
-      er = new EventRegistry(dispatchDelegate);
-      mapDispatchDelegateToEventRegistry.put(dispatchDelegate, er);
+      synchronized (mapDispatchDelegateToEventRegistry) {
+        er = mapDispatchDelegateToEventRegistry.get(dispatchDelegate);
+        if (er == null) {
+          er = new EventRegistry(dispatchDelegate);
+          mapDispatchDelegateToEventRegistry.put(dispatchDelegate, er);
+        }
+      }
     }
     return er;
   }
@@ -109,10 +145,13 @@ public class EventDispatcher {
   public static void registerEventForDelegation(HandlesEventDispatching dispatchDelegate,
                                                 String componentId, String eventName) {
     EventRegistry er = getEventRegistry(dispatchDelegate);
-    Set<EventClosure> eventClosures = er.eventClosuresMap.get(eventName);
-    if (eventClosures == null) {
-      eventClosures = new HashSet<EventClosure>();
-      er.eventClosuresMap.put(eventName, eventClosures);
+    Set<EventClosure> eventClosures;
+    synchronized (er.eventClosuresMap) {
+      eventClosures = er.eventClosuresMap.get(eventName);
+      if (eventClosures == null) {
+        eventClosures = Collections.newSetFromMap(new ConcurrentHashMap<EventClosure, Boolean>());
+        er.eventClosuresMap.put(eventName, eventClosures);
+      }
     }
 
     eventClosures.add(new EventClosure(componentId, eventName));
@@ -151,6 +190,7 @@ public class EventDispatcher {
       }
       eventClosures.remove(eventClosure);
     }
+    er.resolvedClosures.clear();
   }
 
   /**
@@ -161,6 +201,7 @@ public class EventDispatcher {
   public static void unregisterAllEventsForDelegation() {
     for (EventRegistry er : mapDispatchDelegateToEventRegistry.values()) {
       er.eventClosuresMap.clear();
+      er.resolvedClosures.clear();
     }
   }
 
@@ -175,6 +216,7 @@ public class EventDispatcher {
     EventRegistry er = removeEventRegistry(dispatchDelegate);
     if (er != null) {
       er.eventClosuresMap.clear();
+      er.resolvedClosures.clear();
     }
   }
 
@@ -195,7 +237,7 @@ public class EventDispatcher {
       EventRegistry er = getEventRegistry(dispatchDelegate);
       Set<EventClosure> eventClosures = er.eventClosuresMap.get(eventName);
       if (eventClosures != null && eventClosures.size() > 0) {
-        dispatched = delegateDispatchEvent(dispatchDelegate, eventClosures, component, args);
+        dispatched = delegateDispatchEvent(er, eventClosures, component, eventName, args);
       }
     }
     return dispatched;
@@ -204,19 +246,35 @@ public class EventDispatcher {
   /**
    * Delegates the dispatch of an event to the dispatch delegate.
    *
+   * @param er the event registry of the dispatch delegate
    * @param eventClosures set of event closures matching the event name
    * @param component the component that generated the event
+   * @param eventName  name of event being raised
    * @param args  arguments to event handler
    */
-  private static boolean delegateDispatchEvent(HandlesEventDispatching dispatchDelegate,
+  private static boolean delegateDispatchEvent(EventRegistry er,
                                                Set<EventClosure> eventClosures,
-                                               Component component, Object... args) {
+                                               Component component, String eventName,
+                                               Object... args) {
+    HandlesEventDispatching dispatchDelegate = er.dispatchDelegate;
+    // Try the closure that handled this event for this component last time.
+    EventClosure resolved = er.getResolvedClosure(component, eventName);
+    if (resolved != null && eventClosures.contains(resolved)) {
+      if (dispatchDelegate.dispatchEvent(component, resolved.componentId, eventName, args)) {
+        return true;
+      }
+    }
     // The event closures set will contain all event closures matching the event name.
     // We depend on the delegate's dispatchEvent method to check the registered event closure and
     // only dispatch the event if the registered component matches the component that generated the
-    // event.  This should only be true for one (or zero) of the closures.
+    // event.  This should only be true for one (or zero) of the closures. The resolved closure,
+    // if any, has already been tried; it is skipped so that its handler does not run twice when
+    // it returns false because the handler failed.
     boolean dispatched = false;
     for (EventClosure eventClosure : eventClosures) {
+      if (eventClosure.equals(resolved)) {
+        continue;
+      }
       if (dispatchDelegate.dispatchEvent(component,
                                          eventClosure.componentId,
                                          eventClosure.eventName,
@@ -225,6 +283,7 @@ public class EventDispatcher {
           Log.i("EventDispatcher", "Successfully dispatched event " +
               eventClosure.componentId + "." + eventClosure.eventName);
         }
+        er.setResolvedClosure(component, eventClosure);
         dispatched = true;  // break here or keep iterating through loop?
       }
     }
@@ -14,13 +14,16 @@ import com.google.appinventor.components.annotations.SimpleProperty;
 import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
+import com.google.appinventor.components.runtime.util.AsynchUtil;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.MapFactory;
 import com.google.appinventor.components.runtime.util.MapFactory.MapFeatureCollection;
 import com.google.appinventor.components.runtime.util.YailList;
 
 import android.view.View;
-import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.StringReader;
 
 @DesignerComponent(version = YaVersion.FEATURE_COLLECTION_COMPONENT_VERSION,
     category = ComponentCategory.MAPS,
@@ -43,13 +46,27 @@ public class FeatureCollection extends MapFeatureContainerBase implements MapFea
   @SimpleProperty(description = "Loads a collection of features from the given string. If the " +
       "string is not valid GeoJSON, the ErrorLoadingFeatureCollection error will be run with " +
       "url = <string>.")
-  public void FeaturesFromGeoJSON(String geojson) {
-    try {
-      processGeoJSON("<string>", geojson);
-    } catch(JSONException e) {
-      $form().dispatchErrorOccurredEvent(this, "FeaturesFromGeoJSON",
-          ErrorMessages.ERROR_INVALID_GEOJSON, e.getMessage());
-    }
+  public void FeaturesFromGeoJSON(final String geojson) {
+    // Parse in the background so that a large collection does not hold up the UI thread.
+    AsynchUtil.runAsynchronously(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          processGeoJSON("<string>", new StringReader(geojson), false);
+        } catch (IOException e) {
+          invalidGeoJSON(e);
+        } catch (IllegalStateException e) {
+          invalidGeoJSON(e);
+        } catch (IllegalArgumentException e) {
+          invalidGeoJSON(e);
+        }
+      }
+    });
+  }
+
+  private void invalidGeoJSON(Exception e) {
+    $form().dispatchErrorOccurredEvent(this, "FeaturesFromGeoJSON",
+        ErrorMessages.ERROR_INVALID_GEOJSON, e.getMessage());
   }
 
   @Override
@@ -60,6 +77,14 @@ public class FeatureCollection extends MapFeatureContainerBase implements MapFea
     super.GotFeatures(url, features);
   }
 
+  @Override
+  @SimpleEvent(description = "All of the features in the GeoJSON document at url have been " +
+      "added by AddFeaturesFromURL. The new features are provided as a list in features.")
+  public void FeaturesAdded(String url, YailList features) {
+    source = url;
+    super.FeaturesAdded(url, features);
+  }
+
   @Override
   @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_GEOJSON_TYPE)
   public void Source(String source) {
@@ -15,22 +15,30 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.errors.PermissionException;
 import com.google.appinventor.components.runtime.util.AsynchUtil;
+import com.google.appinventor.components.runtime.util.CsvUtil;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.FileUtil;
 import com.google.appinventor.components.runtime.util.MediaUtil;
+import com.google.appinventor.components.runtime.util.YailList;
 
 import android.Manifest;
 import android.app.Activity;
 import android.os.Environment;
 import android.util.Log;
 
+import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A Component for working with files and directories on the device.
@@ -55,6 +63,20 @@ public class File extends AndroidNonvisibleComponent implements Component {
   private final int BUFFER_LENGTH = 4096;
   private static final String LOG_TAG = "FileComponent";
 
+  // How many bytes are read or copied between FileProgress events.
+  private static final int PROGRESS_INTERVAL = 1024 * 1024;
+
+  // How many chunks read by ReadInChunks may wait for the UI thread at once. The reader waits
+  // rather than reading ahead of the app, so a large file is never all in memory.
+  private static final int MAX_CHUNKS_WAITING = 2;
+
+  // The file the last append went to, kept open while more writes are queued for this component
+  // so that a burst of appends doesn't open and close the file for each one. Only the writes
+  // touch these, and they run one at a time.
+  private final AtomicInteger queuedWrites = new AtomicInteger();
+  private String appendPath = null;
+  private Writer appendWriter = null;
+
   /**
    * Creates a new File component.
    * @param container the Form that this component is contained in.
@@ -127,16 +149,7 @@ public class File extends AndroidNonvisibleComponent implements Component {
       public void HandlePermissionResponse(String permission, boolean granted) {
         if (granted) {
           try {
-            InputStream inputStream;
-            if (fileName.startsWith("//")) {
-              inputStream = form.openAsset(fileName.substring(2));
-            } else {
-              String filepath = AbsoluteFileName(fileName);
-              Log.d(LOG_TAG, "filepath = " + filepath);
-              inputStream = FileUtil.openFile(filepath);
-            }
-
-            final InputStream asyncInputStream = inputStream;
+            final InputStream asyncInputStream = openForReading(fileName);
             AsynchUtil.runAsynchronously(new Runnable() {
               @Override
               public void run() {
@@ -162,6 +175,157 @@ public class File extends AndroidNonvisibleComponent implements Component {
   }
 
 
+  /**
+   * Reads the specified file as a CSV table.
+   *
+   * @param fileName the file from which the table is read
+   */
+  @SimpleFunction(description = "Reads a CSV table from a file in storage and returns it as a " +
+      "list of rows in the GotCsvTable event. The file is parsed one row at a time as it is read, " +
+      "so large files do not first have to be loaded as text. " +
+      "See the help text under ReadFrom for information about where files are read from.")
+  public void ReadCsvFrom(final String fileName) {
+    form.askPermission(Manifest.permission.READ_EXTERNAL_STORAGE, new PermissionResultHandler() {
+      @Override
+      public void HandlePermissionResponse(String permission, boolean granted) {
+        if (granted) {
+          try {
+            final InputStream asyncInputStream = openForReading(fileName);
+            AsynchUtil.runAsynchronously(new Runnable() {
+              @Override
+              public void run() {
+                AsyncReadCsv(asyncInputStream, fileName);
+              }
+            });
+          } catch (PermissionException e) {
+            form.dispatchPermissionDeniedEvent(File.this, "ReadCsvFrom", e);
+          } catch (IOException e) {
+            Log.e(LOG_TAG, "IOException", e);
+            form.dispatchErrorOccurredEvent(File.this, "ReadCsvFrom",
+                ErrorMessages.ERROR_CANNOT_FIND_FILE, fileName);
+          }
+        } else {
+          form.dispatchPermissionDeniedEvent(File.this, "ReadCsvFrom", permission);
+        }
+      }
+    });
+  }
+
+  /**
+   * Reads the specified file a chunk at a time.
+   *
+   * @param fileName the file from which the text is read
+   * @param chunkSize the most characters in each chunk
+   */
+  @SimpleFunction(description = "Reads text from a file in storage a chunk at a time, without " +
+      "loading the whole file. Each chunk of at most chunkSize characters is given to the " +
+      "GotChunk event, in order, and FileProgress reports how much of the file has been read. " +
+      "Use this rather than ReadFrom for files too large to hold as one piece of text. " +
+      "See the help text under ReadFrom for information about where files are read from.")
+  public void ReadInChunks(final String fileName, final int chunkSize) {
+    if (chunkSize <= 0) {
+      form.dispatchErrorOccurredEvent(this, "ReadInChunks",
+          ErrorMessages.ERROR_INVALID_CHUNK_SIZE, chunkSize);
+      return;
+    }
+    form.askPermission(Manifest.permission.READ_EXTERNAL_STORAGE, new PermissionResultHandler() {
+      @Override
+      public void HandlePermissionResponse(String permission, boolean granted) {
+        if (granted) {
+          try {
+            final long totalBytes = lengthOf(fileName);
+            final InputStream asyncInputStream = openForReading(fileName);
+            AsynchUtil.runAsynchronously(new Runnable() {
+              @Override
+              public void run() {
+                AsyncReadChunks(asyncInputStream, fileName, chunkSize, totalBytes);
+              }
+            });
+          } catch (PermissionException e) {
+            form.dispatchPermissionDeniedEvent(File.this, "ReadInChunks", e);
+          } catch (IOException e) {
+            Log.e(LOG_TAG, "IOException", e);
+            form.dispatchErrorOccurredEvent(File.this, "ReadInChunks",
+                ErrorMessages.ERROR_CANNOT_FIND_FILE, fileName);
+          }
+        } else {
+          form.dispatchPermissionDeniedEvent(File.this, "ReadInChunks", permission);
+        }
+      }
+    });
+  }
+
+  /**
+   * Copies one file to another.
+   *
+   * @param fromFileName the file to copy
+   * @param toFileName the file to write the copy to
+   */
+  @SimpleFunction(description = "Copies a file, replacing the file it is copied to if that " +
+      "already exists. The contents are copied directly from file to file without being read " +
+      "as text, so this works for files of any size and type. FileProgress reports how much " +
+      "has been copied and AfterFileSaved is signaled with toFileName when the copy is done. " +
+      "Copying a file to itself leaves it as it is. " +
+      "The file copied from may be an asset (starting with //). See the help text under " +
+      "SaveFile and ReadFrom for information about where files are written and read.")
+  public void CopyFile(final String fromFileName, final String toFileName) {
+    if (toFileName.startsWith("//")) {
+      form.dispatchErrorOccurredEvent(this, "CopyFile",
+          ErrorMessages.ERROR_CANNOT_WRITE_ASSET, toFileName);
+      return;
+    }
+    if (toFileName.startsWith("/")) {
+      FileUtil.checkExternalStorageWriteable(); // Only check if writing to sdcard
+    }
+    final Runnable operation = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          AsyncCopy(fromFileName, toFileName);
+        } finally {
+          finishedWrite();
+        }
+      }
+    };
+    form.askPermission(Manifest.permission.WRITE_EXTERNAL_STORAGE, new PermissionResultHandler() {
+      @Override
+      public void HandlePermissionResponse(String permission, boolean granted) {
+        if (granted) {
+          // The copy waits for the writes asked for before it, such as appends to the file
+          // being copied.
+          queuedWrites.incrementAndGet();
+          AsynchUtil.runSerially(File.this, operation);
+        } else {
+          form.dispatchPermissionDeniedEvent(File.this, "CopyFile", permission);
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns the length in bytes of the given file, or -1 if it is an asset, whose length isn't
+   * known until it has been read.
+   */
+  private long lengthOf(String fileName) {
+    if (fileName.startsWith("//")) {
+      return -1;
+    }
+    return new java.io.File(AbsoluteFileName(fileName)).length();
+  }
+
+  /**
+   * Opens the given file for reading. Files starting with // are assets.
+   */
+  private InputStream openForReading(String fileName) throws IOException {
+    if (fileName.startsWith("//")) {
+      return form.openAsset(fileName.substring(2));
+    } else {
+      String filepath = AbsoluteFileName(fileName);
+      Log.d(LOG_TAG, "filepath = " + filepath);
+      return FileUtil.openFile(filepath);
+    }
+  }
+
   /**
    * Delete the specified file.
    *
@@ -225,6 +389,9 @@ public class File extends AndroidNonvisibleComponent implements Component {
         }
         final java.io.File file = new java.io.File(filepath);
 
+        if (!append || !filepath.equals(appendPath)) {
+          closeAppendWriter();
+        }
         if(!file.exists()){
           try {
             file.createNewFile();
@@ -240,12 +407,21 @@ public class File extends AndroidNonvisibleComponent implements Component {
           }
         }
         try {
-          FileOutputStream fileWriter = new FileOutputStream(file, append);
-          OutputStreamWriter out = new OutputStreamWriter(fileWriter);
-          out.write(text);
-          out.flush();
-          out.close();
-          fileWriter.close();
+          if (append) {
+            if (appendWriter == null) {
+              appendWriter = new OutputStreamWriter(new FileOutputStream(file, true));
+              appendPath = filepath;
+            }
+            appendWriter.write(text);
+            appendWriter.flush();
+          } else {
+            FileOutputStream fileWriter = new FileOutputStream(file, append);
+            OutputStreamWriter out = new OutputStreamWriter(fileWriter);
+            out.write(text);
+            out.flush();
+            out.close();
+            fileWriter.close();
+          }
 
           activity.runOnUiThread(new Runnable() {
             @Override
@@ -254,6 +430,7 @@ public class File extends AndroidNonvisibleComponent implements Component {
             }
           });
         } catch (IOException e) {
+          closeAppendWriter();
           if (append) {
             form.dispatchErrorOccurredEvent(File.this, "AppendTo",
                 ErrorMessages.ERROR_CANNOT_WRITE_TO_FILE, filepath);
@@ -264,11 +441,23 @@ public class File extends AndroidNonvisibleComponent implements Component {
         }
       }
     };
+    final Runnable write = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          operation.run();
+        } finally {
+          finishedWrite();
+        }
+      }
+    };
     form.askPermission(Manifest.permission.WRITE_EXTERNAL_STORAGE, new PermissionResultHandler() {
       @Override
       public void HandlePermissionResponse(String permission, boolean granted) {
         if (granted) {
-          AsynchUtil.runAsynchronously(operation);
+          // Writes from one File component must land in the order the blocks asked for them.
+          queuedWrites.incrementAndGet();
+          AsynchUtil.runSerially(File.this, write);
         } else {
           form.dispatchPermissionDeniedEvent(File.this, append ? "AppendTo" : "SaveFile",
               permission);
@@ -278,17 +467,58 @@ public class File extends AndroidNonvisibleComponent implements Component {
   }
 
   /**
-   * Replace Windows-style CRLF with Unix LF as String. This allows
-   * end-user to treat Windows text files same as Unix or Mac. In
+   * Called after each write or copy. Once no more are queued, the file kept open for appending
+   * is closed.
+   */
+  private void finishedWrite() {
+    if (queuedWrites.decrementAndGet() == 0) {
+      closeAppendWriter();
+    }
+  }
+
+  private void closeAppendWriter() {
+    if (appendWriter != null) {
+      try {
+        appendWriter.close();
+      } catch (IOException e) {
+        // do nothing...
+      }
+      appendWriter = null;
+      appendPath = null;
+    }
+  }
+
+  /**
+   * Appends the first length characters of buffer to out, replacing Windows-style CRLF with
+   * Unix LF. This allows end-user to treat Windows text files same as Unix or Mac. In
    * future, allowing user to choose to normalize new lines might also
    * be nice - in case someone really wants to detect Windows-style
    * line separators, or save a file which was read (and expect no
    * changes in size or checksum).
-   * @param s to convert
+   *
+   * <p>A CR at the end of the buffer is held back, since the LF that goes with it may start the
+   * next buffer.
+   *
+   * @param heldCR whether a CR was held back from the previous buffer
+   * @return whether a CR is held back from this buffer
    */
-
-  private String normalizeNewLines(String s) {
-    return s.replaceAll("\r\n", "\n");
+  private static boolean appendNormalized(char[] buffer, int length, boolean heldCR,
+      StringBuilder out) {
+    for (int i = 0; i < length; i++) {
+      char c = buffer[i];
+      if (heldCR) {
+        heldCR = false;
+        if (c != '\n') {
+          out.append('\r');
+        }
+      }
+      if (c == '\r') {
+        heldCR = true;
+      } else {
+        out.append(c);
+      }
+    }
+    return heldCR;
   }
 
 
@@ -304,21 +534,25 @@ public class File extends AndroidNonvisibleComponent implements Component {
     InputStreamReader input = null;
     try {
       input = new InputStreamReader(fileInput);
-      StringWriter output = new StringWriter();
+      // Normalize any line separators as the file is read to avoid compatibility between Windows
+      // and Mac text files. Users can expect \n to mean a line separator regardless of how
+      // file was created. Currently only doing this for files opened locally - not files we pull
+      // from other places like URLs. Doing it while reading, into a builder sized for the file
+      // where its size is known, keeps from holding several copies of a large file at once.
+      long size = lengthOf(fileName);
+      StringBuilder output = new StringBuilder(size > 0 && size < Integer.MAX_VALUE
+          ? (int) size : BUFFER_LENGTH);
       char [] buffer = new char[BUFFER_LENGTH];
-      int offset = 0;
       int length = 0;
-      while ((length = input.read(buffer, offset, BUFFER_LENGTH)) > 0) {
-        output.write(buffer, 0, length);
+      boolean heldCR = false;
+      while ((length = input.read(buffer, 0, BUFFER_LENGTH)) > 0) {
+        heldCR = appendNormalized(buffer, length, heldCR, output);
+      }
+      if (heldCR) {
+        output.append('\r');
       }
 
-      // Now that we have the file as a String,
-      // normalize any line separators to avoid compatibility between Windows and Mac
-      // text files. Users can expect \n to mean a line separator regardless of how
-      // file was created. Currently only doing this for files opened locally - not files we pull
-      // from other places like URLs.
-
-      final String text = normalizeNewLines(output.toString());
+      final String text = output.toString();
 
       activity.runOnUiThread(new Runnable() {
         @Override
@@ -345,6 +579,304 @@ public class File extends AndroidNonvisibleComponent implements Component {
     }
   }
 
+  /**
+   * Asynchronously reads the given file a chunk at a time, signaling GotChunk on the main event
+   * thread for each chunk.
+   * @param fileInput the stream to read from
+   * @param fileName the file to read
+   * @param chunkSize the most characters in each chunk
+   * @param totalBytes the size of the file, or -1 if it isn't known
+   */
+  private void AsyncReadChunks(InputStream fileInput, String fileName, int chunkSize,
+      long totalBytes) {
+    CountingInputStream counted = new CountingInputStream(fileInput);
+    ChunkSender sender = new ChunkSender(fileName, chunkSize, totalBytes, counted);
+    InputStreamReader input = null;
+    try {
+      input = new InputStreamReader(counted);
+      char[] buffer = new char[BUFFER_LENGTH];
+      boolean heldCR = false;
+      int length;
+      while ((length = input.read(buffer, 0, BUFFER_LENGTH)) > 0) {
+        heldCR = appendNormalized(buffer, length, heldCR, sender.pending);
+        sender.sendFullChunks();
+      }
+      if (heldCR) {
+        sender.pending.append('\r');
+      }
+      sender.sendFullChunks();
+      sender.sendLastChunk();
+    } catch (InterruptedException e) {
+      Log.e(LOG_TAG, "Interrupted reading " + fileName, e);
+    } catch (IOException e) {
+      Log.e(LOG_TAG, "IOException", e);
+      form.dispatchErrorOccurredEvent(File.this, "ReadInChunks",
+          ErrorMessages.ERROR_CANNOT_READ_FILE, fileName);
+    } finally {
+      if (input != null) {
+        try {
+          input.close();
+        } catch (IOException e) {
+          // do nothing...
+        }
+      }
+    }
+  }
+
+  /**
+   * Cuts the text read by ReadInChunks into chunks and signals GotChunk on the main event thread
+   * for each, and FileProgress after about every PROGRESS_INTERVAL bytes and at the end.
+   */
+  private class ChunkSender {
+    // The text read but not yet sent. At least one character is kept back until the file ends
+    // so that the last chunk can be marked as such.
+    final StringBuilder pending = new StringBuilder();
+    private final String fileName;
+    private final int chunkSize;
+    private final long totalBytes;
+    private final CountingInputStream counted;
+    private final Semaphore chunksWaiting = new Semaphore(MAX_CHUNKS_WAITING);
+    private long reportedBytes = 0;
+
+    ChunkSender(String fileName, int chunkSize, long totalBytes, CountingInputStream counted) {
+      this.fileName = fileName;
+      this.chunkSize = chunkSize;
+      this.totalBytes = totalBytes;
+      this.counted = counted;
+    }
+
+    void sendFullChunks() throws InterruptedException {
+      int start = 0;
+      while (pending.length() - start > chunkSize) {
+        send(pending.substring(start, start + chunkSize), false);
+        start += chunkSize;
+      }
+      pending.delete(0, start);
+    }
+
+    void sendLastChunk() throws InterruptedException {
+      send(pending.toString(), true);
+      pending.setLength(0);
+    }
+
+    /**
+     * Waits if MAX_CHUNKS_WAITING chunks are still waiting for the main event thread, and then
+     * hands it the chunk.
+     */
+    private void send(final String text, final boolean lastChunk) throws InterruptedException {
+      final long bytesRead = counted.getCount();
+      final boolean report = lastChunk || bytesRead - reportedBytes >= PROGRESS_INTERVAL;
+      if (report) {
+        reportedBytes = bytesRead;
+      }
+      chunksWaiting.acquire();
+      activity.runOnUiThread(new Runnable() {
+        @Override
+        public void run() {
+          chunksWaiting.release();
+          if (report) {
+            FileProgress(fileName, bytesRead, totalBytes < 0 ? bytesRead : totalBytes);
+          }
+          GotChunk(fileName, text, lastChunk);
+        }
+      });
+    }
+  }
+
+  /**
+   * Copies one file to another. Files are copied by the kernel from channel to channel, in
+   * pieces so that progress can be reported, without the contents passing through the Java heap;
+   * assets, which can only be opened as streams, are copied through a buffer.
+   * @param fromFileName the file to copy
+   * @param toFileName the file to write the copy to
+   */
+  private void AsyncCopy(final String fromFileName, final String toFileName) {
+    final String toPath = AbsoluteFileName(toFileName);
+    if (MediaUtil.isExternalFile(toPath)) {
+      form.assertPermission(Manifest.permission.WRITE_EXTERNAL_STORAGE);
+    }
+    if (toPath.equals(appendPath)) {
+      closeAppendWriter();
+    }
+    InputStream in = null;
+    FileOutputStream out = null;
+    try {
+      try {
+        in = openForReading(fromFileName);
+      } catch (IOException e) {
+        Log.e(LOG_TAG, "IOException", e);
+        form.dispatchErrorOccurredEvent(File.this, "CopyFile",
+            ErrorMessages.ERROR_CANNOT_FIND_FILE, fromFileName);
+        return;
+      }
+      long copied = 0;
+      if (isSameFile(fromFileName, toPath)) {
+        // Opening the file for writing would empty it before it was read, and it already holds
+        // what the copy would write.
+        copied = new java.io.File(toPath).length();
+      } else {
+        try {
+          out = new FileOutputStream(toPath);
+        } catch (IOException e) {
+          Log.e(LOG_TAG, "IOException", e);
+          form.dispatchErrorOccurredEvent(File.this, "CopyFile",
+              ErrorMessages.ERROR_CANNOT_CREATE_FILE, toPath);
+          return;
+        }
+        if (in instanceof FileInputStream) {
+          FileChannel source = ((FileInputStream) in).getChannel();
+          FileChannel destination = out.getChannel();
+          long size = source.size();
+          while (copied < size) {
+            copied += source.transferTo(copied, Math.min(PROGRESS_INTERVAL, size - copied),
+                destination);
+            reportProgress(fromFileName, copied, size);
+          }
+        } else {
+          byte[] buffer = new byte[BUFFER_LENGTH * 4];
+          long reported = 0;
+          int length;
+          while ((length = in.read(buffer)) > 0) {
+            out.write(buffer, 0, length);
+            copied += length;
+            if (copied - reported >= PROGRESS_INTERVAL) {
+              reported = copied;
+              reportProgress(fromFileName, copied, -1);
+            }
+          }
+        }
+        out.close();
+        out = null;
+      }
+      reportProgress(fromFileName, copied, copied);
+      activity.runOnUiThread(new Runnable() {
+        @Override
+        public void run() {
+          AfterFileSaved(toFileName);
+        }
+      });
+    } catch (PermissionException e) {
+      form.dispatchPermissionDeniedEvent(File.this, "CopyFile", e);
+    } catch (IOException e) {
+      Log.e(LOG_TAG, "IOException", e);
+      form.dispatchErrorOccurredEvent(File.this, "CopyFile",
+          ErrorMessages.ERROR_CANNOT_WRITE_TO_FILE, toPath);
+    } finally {
+      closeQuietly(in);
+      closeQuietly(out);
+    }
+  }
+
+  /**
+   * Returns whether fromFileName names the file at toPath, however the two are spelled.
+   */
+  private boolean isSameFile(String fromFileName, String toPath) throws IOException {
+    if (fromFileName.startsWith("//")) {
+      return false;
+    }
+    return new java.io.File(AbsoluteFileName(fromFileName)).getCanonicalPath()
+        .equals(new java.io.File(toPath).getCanonicalPath());
+  }
+
+  private void reportProgress(final String fileName, final long bytesDone,
+      final long totalBytes) {
+    if (totalBytes < 0) {
+      return;  // Reported once the size is known, at the end.
+    }
+    activity.runOnUiThread(new Runnable() {
+      @Override
+      public void run() {
+        FileProgress(fileName, bytesDone, totalBytes);
+      }
+    });
+  }
+
+  private static void closeQuietly(java.io.Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        // do nothing...
+      }
+    }
+  }
+
+  /**
+   * An input stream that counts the bytes read through it, to report progress in bytes while
+   * reading characters.
+   */
+  private static class CountingInputStream extends FilterInputStream {
+    private long count = 0;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    long getCount() {
+      return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int n = super.read(buffer, offset, length);
+      if (n > 0) {
+        count += n;
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count += skipped;
+      return skipped;
+    }
+  }
+
+  /**
+   * Asynchronously parses the given file as CSV, row by row.
+   * @param fileInput the stream to read from
+   * @param fileName the file to read
+   */
+  private void AsyncReadCsv(InputStream fileInput, final String fileName) {
+    InputStreamReader input = null;
+    try {
+      input = new InputStreamReader(fileInput);
+      final YailList table = CsvUtil.fromCsvTable(new BufferedReader(input, BUFFER_LENGTH));
+      activity.runOnUiThread(new Runnable() {
+        @Override
+        public void run() {
+          GotCsvTable(table);
+        }
+      });
+    } catch (IOException e) {
+      Log.e(LOG_TAG, "IOException", e);
+      form.dispatchErrorOccurredEvent(File.this, "ReadCsvFrom",
+          ErrorMessages.ERROR_CANNOT_READ_FILE, fileName);
+    } catch (Exception e) {
+      Log.e(LOG_TAG, "Unable to parse CSV", e);
+      form.dispatchErrorOccurredEvent(File.this, "ReadCsvFrom",
+          ErrorMessages.ERROR_CANNOT_PARSE_CSV_FILE, fileName, e.getMessage());
+    } finally {
+      if (input != null) {
+        try {
+          input.close();
+        } catch (IOException e) {
+          // do nothing...
+        }
+      }
+    }
+  }
+
   /**
    * Event indicating that a request has finished.
    *
@@ -356,6 +888,47 @@ public class File extends AndroidNonvisibleComponent implements Component {
     EventDispatcher.dispatchEvent(this, "GotText", text);
   }
 
+  /**
+   * Event indicating that a CSV table has been read.
+   *
+   * @param table the rows read from the file, each a list of cells
+   */
+  @SimpleEvent (description = "Event indicating that a CSV table has been read from the file " +
+      "by ReadCsvFrom. The table is a list of rows, each of which is a list of cells.")
+  public void GotCsvTable(YailList table) {
+    // invoke the application's "GotCsvTable" event handler.
+    EventDispatcher.dispatchEvent(this, "GotCsvTable", table);
+  }
+
+  /**
+   * Event indicating that a chunk of a file has been read by ReadInChunks.
+   *
+   * @param fileName the file being read
+   * @param text the chunk of text
+   * @param lastChunk true if this is the last chunk of the file
+   */
+  @SimpleEvent (description = "Event indicating that a chunk of text has been read from the " +
+      "file by ReadInChunks. The chunks arrive in order, and lastChunk is true for the last one.")
+  public void GotChunk(String fileName, String text, boolean lastChunk) {
+    // invoke the application's "GotChunk" event handler.
+    EventDispatcher.dispatchEvent(this, "GotChunk", fileName, text, lastChunk);
+  }
+
+  /**
+   * Event indicating how much of a file has been read or copied.
+   *
+   * @param fileName the file being read or copied
+   * @param bytesDone the bytes read or copied so far
+   * @param totalBytes the size of the file in bytes
+   */
+  @SimpleEvent (description = "Event indicating how much of a file has been read by " +
+      "ReadInChunks or copied by CopyFile. It is signaled after about every megabyte and " +
+      "when the file is finished.")
+  public void FileProgress(String fileName, long bytesDone, long totalBytes) {
+    // invoke the application's "FileProgress" event handler.
+    EventDispatcher.dispatchEvent(this, "FileProgress", fileName, bytesDone, totalBytes);
+  }
+
   /**
    * Event indicating that a request has finished.
    *
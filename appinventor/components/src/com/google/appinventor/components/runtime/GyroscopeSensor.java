@@ -15,6 +15,7 @@ import com.google.appinventor.components.annotations.SimpleProperty;
 import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
+import com.google.appinventor.components.runtime.util.SensorSampler;
 
 import android.content.Context;
 import android.hardware.Sensor;
@@ -49,6 +50,9 @@ public class GyroscopeSensor extends AndroidNonvisibleComponent
   private final Sensor gyroSensor;
   private boolean listening;
 
+  // Decides which readings are passed on in GyroscopeChanged events
+  private final SensorSampler sampler = new SensorSampler();
+
   /**
    * Creates a new GyroscopeSensor component.
    */
@@ -69,7 +73,13 @@ public class GyroscopeSensor extends AndroidNonvisibleComponent
 
   private void startListening() {
     if (!listening) {
-      sensorManager.registerListener(this, gyroSensor, SensorManager.SENSOR_DELAY_FASTEST);
+      // Without a sample interval every reading is passed on, so read the gyroscope as fast as it
+      // goes. With one, readings are averaged over the interval and the game rate is plenty.
+      int rate = (sampler.getInterval() == 0)
+          ? SensorManager.SENSOR_DELAY_FASTEST
+          : SensorManager.SENSOR_DELAY_GAME;
+      SensorSampler.registerListener(sensorManager, this, gyroSensor, rate,
+          sampler.getInterval());
       listening = true;
     }
   }
@@ -80,6 +90,7 @@ public class GyroscopeSensor extends AndroidNonvisibleComponent
       listening = false;
 
       // Throw out sensor information that will go stale.
+      sampler.reset();
       xAngularVelocity = 0;
       yAngularVelocity = 0;
       zAngularVelocity = 0;
@@ -146,6 +157,38 @@ public class GyroscopeSensor extends AndroidNonvisibleComponent
     }
   }
 
+  /**
+   * SampleInterval property getter method.
+   *
+   * @return  minimum interval between GyroscopeChanged events in milliseconds
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "The minimum interval, in milliseconds, between GyroscopeChanged events. If " +
+      "0, every reading of the gyroscope triggers the event. Otherwise the event gives the mean " +
+      "angular velocities over the interval, while XAngularVelocity, YAngularVelocity and " +
+      "ZAngularVelocity still give the latest reading.")
+  public int SampleInterval() {
+    return sampler.getInterval();
+  }
+
+  /**
+   * SampleInterval property setter method.
+   *
+   * @param interval  minimum interval between GyroscopeChanged events in milliseconds
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+      defaultValue = "0")
+  @SimpleProperty
+  public void SampleInterval(int interval) {
+    sampler.setInterval(interval);
+    if (listening) {
+      // Register again so that the gyroscope reports at the rate that goes with the interval.
+      sensorManager.unregisterListener(this);
+      listening = false;
+      startListening();
+    }
+  }
+
   /**
    * XAngularVelocity property getter method (read-only property).
    *
@@ -200,9 +243,13 @@ public class GyroscopeSensor extends AndroidNonvisibleComponent
       yAngularVelocity = (float) Math.toDegrees(sensorEvent.values[1]);
       zAngularVelocity = (float) Math.toDegrees(sensorEvent.values[2]);
 
-      // Raise event.
-      GyroscopeChanged(xAngularVelocity, yAngularVelocity, zAngularVelocity,
-          sensorEvent.timestamp);
+      // Raise event, with the mean angular velocities if there is a sample interval.
+      if (sampler.add(sensorEvent.values[0], sensorEvent.values[1], sensorEvent.values[2],
+          sensorEvent.timestamp)) {
+        GyroscopeChanged((float) Math.toDegrees(sampler.getX()),
+            (float) Math.toDegrees(sampler.getY()), (float) Math.toDegrees(sampler.getZ()),
+            sensorEvent.timestamp);
+      }
     }
   }
 
@@ -0,0 +1,564 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the direct commands of every LEGO MINDSTORMS component that shares a Bluetooth
+ * connection, and reads the sensors of those components in one poll cycle.
+ *
+ * <p>Commands are written in order by a writer thread, so a component that sends a command
+ * without waiting for a reply is never held up by the connection. Several commands that need
+ * replies may be outstanding at once, and a reader thread matches each reply to its command:
+ * an NXT replies to its commands in order, and an EV3 reply carries the message counter of its
+ * command.</p>
+ *
+ * <p>Components whose events depend on a sensor register a {@link Poller}. Each poll cycle
+ * first starts every poller, which sends their commands back to back, then waits for the
+ * replies, and finally hands all of the samples to the UI thread at once. A cycle with several
+ * sensors therefore costs about one round trip to the brick rather than one per sensor, and the
+ * UI thread never waits for the brick. A new cycle does not start until the UI thread has
+ * handled the samples of the last one.</p>
+ */
+final class LegoCommandScheduler implements BluetoothConnectionListener {
+  private static final String LOG_TAG = "LegoCommandScheduler";
+
+  // The most commands that may be waiting for a reply at once.
+  private static final int MAX_OUTSTANDING = 4;
+
+  // How long a disconnect waits for a command to be written.
+  private static final long DRAIN_TIMEOUT_MS = 1000;
+
+  // How often idle threads check whether the connection has closed, while it is closing.
+  private static final long CLOSE_CHECK_MS = 100;
+
+  /**
+   * The framing of direct commands and replies on the connection.
+   */
+  enum Protocol {
+    /**
+     * An NXT telegram is preceded by its length as a little-endian UWORD.
+     */
+    NXT(0) {
+      @Override
+      byte[] frame(byte[] command, int sequence) {
+        byte[] packet = new byte[command.length + 2];
+        packet[0] = (byte) (command.length & 0xFF);
+        packet[1] = (byte) ((command.length >> 8) & 0xFF);
+        System.arraycopy(command, 0, packet, 2, command.length);
+        return packet;
+      }
+
+      @Override
+      Frame readReply(BluetoothConnectionBase connection, String functionName) {
+        byte[] header = connection.read(functionName, 2);
+        if (header.length != 2) {
+          return null;
+        }
+        int length = (header[0] & 0xFF) | ((header[1] & 0xFF) << 8);
+        byte[] reply = connection.read(functionName, length);
+        return reply.length == length ? new Frame(-1, reply) : null;
+      }
+    },
+
+    /**
+     * An EV3 command is preceded by its length and a message counter, both little-endian
+     * 16-bit values, and its reply carries the same counter.
+     */
+    EV3(50) {
+      @Override
+      byte[] frame(byte[] command, int sequence) {
+        int length = command.length + 2;
+        byte[] packet = new byte[command.length + 4];
+        packet[0] = (byte) (length & 0xFF);
+        packet[1] = (byte) ((length >> 8) & 0xFF);
+        packet[2] = (byte) (sequence & 0xFF);
+        packet[3] = (byte) ((sequence >> 8) & 0xFF);
+        System.arraycopy(command, 0, packet, 4, command.length);
+        return packet;
+      }
+
+      @Override
+      Frame readReply(BluetoothConnectionBase connection, String functionName) {
+        byte[] header = connection.read(functionName, 4);
+        if (header.length != 4) {
+          return null;
+        }
+        int length = ((header[0] & 0xFF) | ((header[1] & 0xFF) << 8)) - 2;
+        int counter = (header[2] & 0xFF) | ((header[3] & 0xFF) << 8);
+        if (length < 0) {
+          return null;
+        }
+        byte[] reply = connection.read(functionName, length);
+        return reply.length == length ? new Frame(counter, reply) : null;
+      }
+    };
+
+    // The least time between the starts of two poll cycles.
+    final long pollIntervalMs;
+
+    Protocol(long pollIntervalMs) {
+      this.pollIntervalMs = pollIntervalMs;
+    }
+
+    /**
+     * Returns the bytes to write for the given command.
+     */
+    abstract byte[] frame(byte[] command, int sequence);
+
+    /**
+     * Reads one reply, or returns null if it could not be read.
+     */
+    abstract Frame readReply(BluetoothConnectionBase connection, String functionName);
+  }
+
+  /**
+   * A reply read from the connection. The sequence is -1 if the protocol does not number its
+   * replies.
+   */
+  static final class Frame {
+    final int sequence;
+    final byte[] payload;
+
+    Frame(int sequence, byte[] payload) {
+      this.sequence = sequence;
+      this.payload = payload;
+    }
+  }
+
+  /**
+   * A command that has been submitted, and the reply to it once it arrives.
+   */
+  static final class Reply {
+    final String functionName;
+    final boolean replyExpected;
+    final int sequence;
+    private final byte[] packet;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile byte[] payload;
+
+    private Reply(String functionName, byte[] packet, int sequence, boolean replyExpected) {
+      this.functionName = functionName;
+      this.packet = packet;
+      this.sequence = sequence;
+      this.replyExpected = replyExpected;
+    }
+
+    private void complete(byte[] payload) {
+      this.payload = payload;
+      done.countDown();
+    }
+
+    /**
+     * Waits for the reply and returns it, or returns null if no reply could be read or the
+     * connection was closed first.
+     */
+    byte[] await() {
+      try {
+        done.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+      return payload;
+    }
+  }
+
+  /**
+   * Reads a sensor in every poll cycle. The type parameter is the type of a sample.
+   */
+  abstract static class Poller<T> {
+    /**
+     * Sends the commands that read the sensor, without waiting for their replies. Called on the
+     * poll thread.
+     */
+    abstract void startPoll();
+
+    /**
+     * Waits for the replies to the commands sent by {@link #startPoll()} and returns the
+     * sample, or null if there is none to handle. Called on the poll thread.
+     */
+    abstract T finishPoll();
+
+    /**
+     * Handles a sample, for example by raising events. Called on the UI thread, unless the
+     * poller has been removed since the sample was read.
+     */
+    abstract void handleSample(T sample);
+  }
+
+  // A connection keeps its scheduler as a listener, so the scheduler is only held weakly here:
+  // holding it strongly would hold the connection too, and it would never be collected.
+  private static final Map<BluetoothConnectionBase, WeakReference<LegoCommandScheduler>>
+      schedulers = new WeakHashMap<BluetoothConnectionBase, WeakReference<LegoCommandScheduler>>();
+
+  private final BluetoothConnectionBase connection;
+  private final Protocol protocol;
+  private final Handler uiHandler;
+
+  // Commands waiting to be written, and commands written whose replies have not been read.
+  // Both are guarded by this.
+  private final LinkedList<Reply> queue = new LinkedList<Reply>();
+  private final LinkedList<Reply> outstanding = new LinkedList<Reply>();
+  private Reply writing;
+  private int sequence = 0;
+  private Thread writer;
+  private Thread reader;
+  // Set while the connection is being closed, when commands are written before submit returns.
+  private boolean disconnecting = false;
+
+  private final List<Poller<?>> pollers = new CopyOnWriteArrayList<Poller<?>>();
+  private Thread poller;
+
+  private LegoCommandScheduler(BluetoothConnectionBase connection, Protocol protocol) {
+    this.connection = connection;
+    this.protocol = protocol;
+    uiHandler = new Handler(Looper.getMainLooper());
+    connection.addBluetoothConnectionListener(this);
+  }
+
+  /**
+   * Returns the scheduler for the given connection, creating it if needed.
+   */
+  static LegoCommandScheduler forConnection(BluetoothConnectionBase connection,
+      Protocol protocol) {
+    synchronized (schedulers) {
+      WeakReference<LegoCommandScheduler> ref = schedulers.get(connection);
+      LegoCommandScheduler scheduler = (ref == null) ? null : ref.get();
+      if (scheduler == null) {
+        scheduler = new LegoCommandScheduler(connection, protocol);
+        schedulers.put(connection, new WeakReference<LegoCommandScheduler>(scheduler));
+      }
+      return scheduler;
+    }
+  }
+
+  /**
+   * Queues a command to be written and returns at once. If {@code replyExpected} is true, the
+   * reply can be waited for with {@link Reply#await()}.
+   */
+  synchronized Reply submit(String functionName, byte[] command, boolean replyExpected) {
+    int counter = sequence;
+    sequence = (sequence + 1) & 0xFFFF;
+    Reply reply = new Reply(functionName, protocol.frame(command, counter), counter,
+        replyExpected);
+    if (!replyExpected) {
+      reply.complete(null);
+    }
+    queue.add(reply);
+    start();
+    notifyAll();
+    if (disconnecting) {
+      // Components send their last commands, such as stopping the motors, as the connection is
+      // closed, so make sure they are written before it is.
+      awaitWritten(reply);
+    }
+    return reply;
+  }
+
+  /**
+   * Adds a poller to the poll cycle. Does nothing if it is already there.
+   */
+  void addPoller(Poller<?> poller) {
+    synchronized (pollers) {
+      if (!pollers.contains(poller)) {
+        pollers.add(poller);
+        startPolling();
+      }
+    }
+  }
+
+  /**
+   * Removes a poller from the poll cycle.
+   */
+  void removePoller(Poller<?> poller) {
+    pollers.remove(poller);
+  }
+
+  int getPollerCount() {
+    return pollers.size();
+  }
+
+  /**
+   * Returns how many of the writer, reader and poll threads are running.
+   */
+  int getThreadCount() {
+    int count;
+    synchronized (this) {
+      count = (writer == null ? 0 : 1) + (reader == null ? 0 : 1);
+    }
+    synchronized (pollers) {
+      return count + (poller == null ? 0 : 1);
+    }
+  }
+
+  // BluetoothConnectionListener implementation
+
+  @Override
+  public void afterConnect(BluetoothConnectionBase bluetoothConnection) {
+    synchronized (this) {
+      disconnecting = false;
+    }
+    synchronized (pollers) {
+      if (!pollers.isEmpty()) {
+        startPolling();
+      }
+    }
+  }
+
+  @Override
+  public void beforeDisconnect(BluetoothConnectionBase bluetoothConnection) {
+    // Components that get beforeDisconnect after this may still send commands, which submit
+    // then waits to write.
+    synchronized (this) {
+      disconnecting = true;
+      // Idle threads check from now on whether the connection has closed, and stop once it has.
+      notifyAll();
+      if (!queue.isEmpty()) {
+        awaitWritten(queue.getLast());
+      }
+    }
+  }
+
+  /**
+   * Waits until the given command has been written, or for at most DRAIN_TIMEOUT_MS.
+   */
+  private synchronized void awaitWritten(Reply reply) {
+    long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+    while (writing == reply || queue.contains(reply)) {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        Log.w(LOG_TAG, "Timed out writing " + reply.functionName);
+        return;
+      }
+      try {
+        wait(remaining);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Starts the writer and reader if they aren't running. They wait while there is nothing to
+   * write or read, and stop once they are idle and the connection is closed or was never opened,
+   * so that they don't keep the connection from being collected. Called with this locked.
+   */
+  private void start() {
+    if (writer == null) {
+      writer = startThread(new Runnable() {
+        public void run() {
+          write();
+        }
+      }, "write");
+    }
+    if (reader == null) {
+      reader = startThread(new Runnable() {
+        public void run() {
+          read();
+        }
+      }, "read");
+    }
+  }
+
+  /**
+   * Starts the poll thread if it isn't running. It stops once the connection is closed or there
+   * are no pollers. Called with pollers locked.
+   */
+  private void startPolling() {
+    if (poller == null) {
+      poller = startThread(new Runnable() {
+        public void run() {
+          poll();
+        }
+      }, "poll");
+    }
+  }
+
+  // Whether the connection is closed, including one that failed to open. Idle threads stop then,
+  // since a connection that isn't open never notifies them. Called with this locked.
+  private boolean isClosed() {
+    return !connection.IsConnected();
+  }
+
+  private void write() {
+    while (true) {
+      Reply next;
+      synchronized (this) {
+        while (queue.isEmpty()
+            || (queue.getFirst().replyExpected && outstanding.size() >= MAX_OUTSTANDING)) {
+          if (queue.isEmpty() && isClosed()) {
+            writer = null;
+            return;
+          }
+          waitQuietly();
+        }
+        next = queue.removeFirst();
+        if (next.replyExpected) {
+          outstanding.add(next);
+        }
+        writing = next;
+      }
+      connection.write(next.functionName, next.packet);
+      synchronized (this) {
+        writing = null;
+        notifyAll();
+      }
+    }
+  }
+
+  private void read() {
+    while (true) {
+      String functionName;
+      synchronized (this) {
+        while (outstanding.isEmpty()) {
+          // A command still to be written may expect a reply, even if it is sure to fail.
+          if (queue.isEmpty() && writing == null && isClosed()) {
+            reader = null;
+            return;
+          }
+          waitQuietly();
+        }
+        functionName = outstanding.getFirst().functionName;
+      }
+      // If the connection is closed, the read fails and the oldest command gets no reply.
+      Frame frame = protocol.readReply(connection, functionName);
+      synchronized (this) {
+        Reply reply = match(frame);
+        if (reply != null) {
+          reply.complete(frame == null ? null : frame.payload);
+        }
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Removes and returns the outstanding command that a reply answers. A reply that could not be
+   * read is taken to answer the oldest command.
+   */
+  private Reply match(Frame frame) {
+    if (frame != null && frame.sequence >= 0) {
+      Iterator<Reply> it = outstanding.iterator();
+      while (it.hasNext()) {
+        Reply reply = it.next();
+        if (reply.sequence == frame.sequence) {
+          it.remove();
+          return reply;
+        }
+      }
+      Log.w(LOG_TAG, "Dropping reply with unknown message counter " + frame.sequence);
+      return null;
+    }
+    return outstanding.isEmpty() ? null : outstanding.removeFirst();
+  }
+
+  private void poll() {
+    while (true) {
+      long start = System.currentTimeMillis();
+      if (connection.IsConnected()) {
+        runPollCycle();
+      }
+      long delay = protocol.pollIntervalMs - (System.currentTimeMillis() - start);
+      try {
+        // afterConnect starts polling again if the connection is reopened.
+        synchronized (pollers) {
+          if (pollers.isEmpty() || !connection.IsConnected()) {
+            poller = null;
+            return;
+          }
+        }
+        if (delay > 0) {
+          Thread.sleep(delay);
+        }
+      } catch (InterruptedException e) {
+        synchronized (pollers) {
+          poller = null;
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Starts every poller, then collects their samples and hands them to the UI thread, waiting
+   * until the UI thread has handled them.
+   */
+  void runPollCycle() {
+    List<Poller<?>> cycle = new ArrayList<Poller<?>>(pollers.size());
+    for (Poller<?> poller : pollers) {
+      try {
+        poller.startPoll();
+        cycle.add(poller);
+      } catch (IllegalArgumentException e) {
+        // For example, a component's ports are not set. It is skipped until they are.
+        Log.w(LOG_TAG, "Unable to poll: " + e.getMessage());
+      }
+    }
+    final List<Runnable> deliveries = new ArrayList<Runnable>(cycle.size());
+    for (Poller<?> poller : cycle) {
+      deliveries.add(finish(poller));
+    }
+    final CountDownLatch handled = new CountDownLatch(1);
+    uiHandler.post(new Runnable() {
+      public void run() {
+        try {
+          for (Runnable delivery : deliveries) {
+            delivery.run();
+          }
+        } finally {
+          handled.countDown();
+        }
+      }
+    });
+    try {
+      handled.await(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private <T> Runnable finish(final Poller<T> poller) {
+    final T sample = poller.finishPoll();
+    return new Runnable() {
+      public void run() {
+        if (sample != null && pollers.contains(poller)) {
+          poller.handleSample(sample);
+        }
+      }
+    };
+  }
+
+  private Thread startThread(Runnable runnable, String name) {
+    Thread thread = new Thread(runnable, LOG_TAG + "-" + name);
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  private void waitQuietly() {
+    try {
+      wait(disconnecting ? CLOSE_CHECK_MS : 0);
+    } catch (InterruptedException e) {
+      // The caller's loop checks its condition again.
+    }
+  }
+}
@@ -11,8 +11,9 @@ import com.google.appinventor.components.annotations.SimpleObject;
 import com.google.appinventor.components.annotations.SimpleProperty;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
-import com.google.appinventor.components.runtime.util.Ev3BinaryParser;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 /**
  * The base class for EV3 components.
@@ -25,10 +26,13 @@ public class LegoMindstormsEv3Base extends AndroidNonvisibleComponent
   implements BluetoothConnectionListener, Component, Deleteable {
 
   private static final int TOY_ROBOT = 0x0804;
-  protected int commandCount;
   protected final String logTag;
   protected BluetoothClient bluetooth;
 
+  // The pollers that read this component's sensors while the robot is connected.
+  private final List<LegoCommandScheduler.Poller<?>> pollers =
+      new ArrayList<LegoCommandScheduler.Poller<?>>();
+
   protected LegoMindstormsEv3Base(ComponentContainer container, String logTag) {
     super(container.$form());
     this.logTag = logTag;
@@ -50,6 +54,7 @@ public class LegoMindstormsEv3Base extends AndroidNonvisibleComponent
   @SimpleProperty
   public void BluetoothClient(BluetoothClient bluetoothClient) {
     if (bluetooth != null) {
+      removePollers();
       bluetooth.removeBluetoothConnectionListener(this);
       bluetooth.detachComponent(this);
       bluetooth = null;
@@ -59,6 +64,11 @@ public class LegoMindstormsEv3Base extends AndroidNonvisibleComponent
       bluetooth = bluetoothClient;
       bluetooth.attachComponent(this, Collections.singleton(TOY_ROBOT));
       bluetooth.addBluetoothConnectionListener(this);
+      // Create the scheduler now, since it listens to the connection too.
+      LegoCommandScheduler scheduler = scheduler();
+      for (LegoCommandScheduler.Poller<?> poller : pollers) {
+        scheduler.addPoller(poller);
+      }
       if (bluetooth.IsConnected()) {
         // We missed the real afterConnect event.
         afterConnect(bluetooth);
@@ -81,42 +91,67 @@ public class LegoMindstormsEv3Base extends AndroidNonvisibleComponent
   }
 
   protected final byte[] sendCommand(String functionName, byte[] command, boolean doReceiveReply) {
+    LegoCommandScheduler.Reply reply = submitCommand(functionName, command, doReceiveReply);
+    if (reply == null || !doReceiveReply)
+      return null;
+    return receiveReply(functionName, reply);
+  }
+
+  /**
+   * Queues a command to be sent to the robot and returns without waiting for it to be written.
+   * Returns null if the robot is not connected. If doReceiveReply is true, the reply can be read
+   * with receiveReply.
+   */
+  protected final LegoCommandScheduler.Reply submitCommand(String functionName, byte[] command,
+      boolean doReceiveReply) {
     // check connecttivity
     if (!isBluetoothConnected(functionName))
       return null;
 
-    // prepend header and send payload
-    byte[] header = Ev3BinaryParser.pack("hh", (short) (command.length + 2), (short) commandCount);
-    commandCount++;
-
-    bluetooth.write(functionName, header);
-    bluetooth.write(functionName, command);
-
-    // receive reply if required
-    if (doReceiveReply) {
-      header = bluetooth.read(functionName, 4);
-
-      if (header.length == 4) {
-        Object[] decodedHeader = Ev3BinaryParser.unpack("hh", header);
-        int replySize = (int) ((Short) decodedHeader[0]) - 2;
-        int replyCount = (int) ((Short) decodedHeader[1]);
-        byte[] reply = bluetooth.read(functionName, replySize);
-
-        if (reply.length == replySize)
-          return reply;
-        else
-        {
-          form.dispatchErrorOccurredEvent(this, functionName, ErrorMessages.ERROR_EV3_INVALID_REPLY);
-          return null;
-        }
-      }
+    // the scheduler prepends the header, which holds the message counter matched by the reply
+    return scheduler().submit(functionName, command, doReceiveReply);
+  }
 
-      // handle errors
+  /**
+   * Waits for the reply to a command sent by submitCommand.
+   */
+  protected final byte[] receiveReply(String functionName, LegoCommandScheduler.Reply reply) {
+    byte[] payload = reply.await();
+    if (payload == null) {
       form.dispatchErrorOccurredEvent(this, functionName, ErrorMessages.ERROR_EV3_INVALID_REPLY);
-      return null;
-    } else {
-      return null;
     }
+    return payload;
+  }
+
+  /**
+   * Adds a poller that reads this component's sensors in the robot's poll cycle. Does nothing if
+   * the poller was already added.
+   */
+  protected final void startPolling(LegoCommandScheduler.Poller<?> poller) {
+    if (!pollers.contains(poller)) {
+      pollers.add(poller);
+      if (bluetooth != null) {
+        scheduler().addPoller(poller);
+      }
+    }
+  }
+
+  protected final void stopPolling(LegoCommandScheduler.Poller<?> poller) {
+    pollers.remove(poller);
+    if (bluetooth != null) {
+      scheduler().removePoller(poller);
+    }
+  }
+
+  private void removePollers() {
+    LegoCommandScheduler scheduler = scheduler();
+    for (LegoCommandScheduler.Poller<?> poller : pollers) {
+      scheduler.removePoller(poller);
+    }
+  }
+
+  private LegoCommandScheduler scheduler() {
+    return LegoCommandScheduler.forConnection(bluetooth, LegoCommandScheduler.Protocol.EV3);
   }
 
   protected final int sensorPortLetterToPortNumber(String letter) {
@@ -218,6 +253,8 @@ public class LegoMindstormsEv3Base extends AndroidNonvisibleComponent
   @Override
   public void onDelete() {
     if (bluetooth != null) {
+      removePollers();
+      pollers.clear();
       bluetooth.removeBluetoothConnectionListener(this);
       bluetooth.detachComponent(this);
       bluetooth = null;
@@ -62,6 +62,19 @@ public class LegoMindstormsEv3Sensor extends LegoMindstormsEv3Base {
                                           int no,
                                           int type,
                                           int mode) {
+    return readInputPercentage(functionName,
+                               requestInputPercentage(functionName, layer, no, type, mode));
+  }
+
+  /**
+   * Sends a command that reads an input as a percentage, without waiting for the reply, which
+   * can be read later with readInputPercentage(String, LegoCommandScheduler.Reply).
+   */
+  protected final LegoCommandScheduler.Reply requestInputPercentage(String functionName,
+                                                                   int layer,
+                                                                   int no,
+                                                                   int type,
+                                                                   int mode) {
     if (layer < 0 || layer > 3 || no < 0 || no > 3 || mode < -1 || mode > 7)
       throw new IllegalArgumentException();
 
@@ -78,7 +91,11 @@ public class LegoMindstormsEv3Sensor extends LegoMindstormsEv3Base {
                                                          (byte) 1,
                                                          (byte) 0);
 
-    byte[] reply = sendCommand(functionName, command, true);
+    return submitCommand(functionName, command, true);
+  }
+
+  protected final int readInputPercentage(String functionName, LegoCommandScheduler.Reply request) {
+    byte[] reply = request == null ? null : receiveReply(functionName, request);
     if (reply != null && reply.length == 2 && reply[0] == Ev3Constants.DirectReplyType.DIRECT_REPLY) {
       return (int) reply[1];
     } else {                    // error
@@ -91,6 +108,18 @@ public class LegoMindstormsEv3Sensor extends LegoMindstormsEv3Base {
                                      int no,
                                      int type,
                                      int mode) {
+    return readInputSI(functionName, requestInputSI(functionName, layer, no, type, mode));
+  }
+
+  /**
+   * Sends a command that reads an input in SI units, without waiting for the reply, which can be
+   * read later with readInputSI(String, LegoCommandScheduler.Reply).
+   */
+  protected final LegoCommandScheduler.Reply requestInputSI(String functionName,
+                                                           int layer,
+                                                           int no,
+                                                           int type,
+                                                           int mode) {
     if (layer < 0 || layer > 3 || no < 0 || no > 3 || mode < -1 || mode > 7)
       throw new IllegalArgumentException();
     byte[] command = Ev3BinaryParser.encodeDirectCommand(Ev3Constants.Opcode.INPUT_DEVICE,
@@ -106,7 +135,11 @@ public class LegoMindstormsEv3Sensor extends LegoMindstormsEv3Base {
                                                          (byte) 1,
                                                          (byte) 0); //index always be 0
 
-    byte[] reply = sendCommand(functionName, command, true);
+    return submitCommand(functionName, command, true);
+  }
+
+  protected final double readInputSI(String functionName, LegoCommandScheduler.Reply request) {
+    byte[] reply = request == null ? null : receiveReply(functionName, request);
 
     if (reply != null && reply.length == 5 && reply[0] == Ev3Constants.DirectReplyType.DIRECT_REPLY) {
       Object[] values = Ev3BinaryParser.unpack("xf", reply);
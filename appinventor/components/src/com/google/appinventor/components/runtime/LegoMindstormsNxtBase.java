@@ -16,8 +16,10 @@ import com.google.appinventor.components.runtime.util.ErrorMessages;
 import android.util.Log;
 
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -76,6 +78,9 @@ public class LegoMindstormsNxtBase extends AndroidNonvisibleComponent
   // TODO(lizlooney) - allow communication via USB if possible.
   protected BluetoothClient bluetooth;
 
+  // The pollers that read this component's sensors while the robot is connected.
+  private final List<LegoCommandScheduler.Poller<?>> pollers =
+      new ArrayList<LegoCommandScheduler.Poller<?>>();
 
   /**
    * Creates a new LegoMindstormsNxtBase.
@@ -117,6 +122,7 @@ public class LegoMindstormsNxtBase extends AndroidNonvisibleComponent
   @SimpleProperty(userVisible = false)
   public void BluetoothClient(BluetoothClient bluetoothClient) {
     if (bluetooth != null) {
+      removePollers();
       bluetooth.removeBluetoothConnectionListener(this);
       bluetooth.detachComponent(this);
       bluetooth = null;
@@ -126,6 +132,11 @@ public class LegoMindstormsNxtBase extends AndroidNonvisibleComponent
       bluetooth = bluetoothClient;
       bluetooth.attachComponent(this, Collections.singleton(TOY_ROBOT));
       bluetooth.addBluetoothConnectionListener(this);
+      // Create the scheduler now, since it listens to the connection too.
+      LegoCommandScheduler scheduler = scheduler();
+      for (LegoCommandScheduler.Poller<?> poller : pollers) {
+        scheduler.addPoller(poller);
+      }
       if (bluetooth.IsConnected()) {
         // We missed the real afterConnect event.
         afterConnect(bluetooth);
@@ -165,12 +176,24 @@ public class LegoMindstormsNxtBase extends AndroidNonvisibleComponent
   }
 
   protected final byte[] getInputValues(String functionName, int port) {
+    return getInputValues(functionName, requestInputValues(functionName, port));
+  }
+
+  /*
+   * Sends a GETINPUTVALUES command without waiting for the reply, which can be read later with
+   * getInputValues(String, LegoCommandScheduler.Reply).
+   */
+  protected final LegoCommandScheduler.Reply requestInputValues(String functionName, int port) {
     byte[] command = new byte[3];
     command[0] = (byte) 0x00;  // Direct command telegram, response required
     command[1] = (byte) 0x07;  // GETINPUTVALUES command
     copyUBYTEValueToBytes(port, command, 2);
-    byte[] returnPackage = sendCommandAndReceiveReturnPackage(functionName, command);
-    if (evaluateStatus(functionName, returnPackage, command[1])) {
+    return submitCommand(functionName, command);
+  }
+
+  protected final byte[] getInputValues(String functionName, LegoCommandScheduler.Reply reply) {
+    byte[] returnPackage = receiveReturnPackage(functionName, reply);
+    if (evaluateStatus(functionName, returnPackage, (byte) 0x07)) {
       if (returnPackage.length == 16) {
         return returnPackage;
       } else {
@@ -261,25 +284,30 @@ public class LegoMindstormsNxtBase extends AndroidNonvisibleComponent
   }
 
   protected final byte[] sendCommandAndReceiveReturnPackage(String functionName, byte[] command) {
-    sendCommand(functionName, command);
-    return receiveReturnPackage(functionName);
+    return receiveReturnPackage(functionName, submitCommand(functionName, command));
   }
 
+  /*
+   * Queues a command to be sent to the robot and returns without waiting for it to be written.
+   */
   protected final void sendCommand(String functionName, byte[] command) {
-    byte[] header = new byte[2];
-    copyUWORDValueToBytes(command.length, header, 0);
-    bluetooth.write(functionName, header);
-    bluetooth.write(functionName, command);
-  }
-
-  private byte[] receiveReturnPackage(String functionName) {
-    byte[] header = bluetooth.read(functionName, 2);
-    if (header.length == 2) {
-      int length = getUWORDValueFromBytes(header, 0);
-      byte[] returnPackage = bluetooth.read(functionName, length);
-      if (returnPackage.length >= 3) {
-        return returnPackage;
-      }
+    submitCommand(functionName, command);
+  }
+
+  /*
+   * Queues a command to be sent to the robot. If the command asks for a response, the response
+   * can be read with receiveReturnPackage(String, LegoCommandScheduler.Reply).
+   */
+  protected final LegoCommandScheduler.Reply submitCommand(String functionName, byte[] command) {
+    boolean responseRequired = (command[0] & 0x80) == 0;
+    return scheduler().submit(functionName, command, responseRequired);
+  }
+
+  protected final byte[] receiveReturnPackage(String functionName,
+      LegoCommandScheduler.Reply reply) {
+    byte[] returnPackage = reply.await();
+    if (returnPackage != null && returnPackage.length >= 3) {
+      return returnPackage;
     }
 
     form.dispatchErrorOccurredEvent(this, functionName,
@@ -316,6 +344,37 @@ public class LegoMindstormsNxtBase extends AndroidNonvisibleComponent
     return -1;
   }
 
+  /*
+   * Adds a poller that reads this component's sensors in the robot's poll cycle. Does nothing if
+   * the poller was already added.
+   */
+  protected final void startPolling(LegoCommandScheduler.Poller<?> poller) {
+    if (!pollers.contains(poller)) {
+      pollers.add(poller);
+      if (bluetooth != null) {
+        scheduler().addPoller(poller);
+      }
+    }
+  }
+
+  protected final void stopPolling(LegoCommandScheduler.Poller<?> poller) {
+    pollers.remove(poller);
+    if (bluetooth != null) {
+      scheduler().removePoller(poller);
+    }
+  }
+
+  private void removePollers() {
+    LegoCommandScheduler scheduler = scheduler();
+    for (LegoCommandScheduler.Poller<?> poller : pollers) {
+      scheduler.removePoller(poller);
+    }
+  }
+
+  private LegoCommandScheduler scheduler() {
+    return LegoCommandScheduler.forConnection(bluetooth, LegoCommandScheduler.Protocol.NXT);
+  }
+
   private void handleError(String functionName, int status) {
     if (status < 0) {
       // Real status bytes received from the NXT are unsigned.
@@ -531,6 +590,8 @@ public class LegoMindstormsNxtBase extends AndroidNonvisibleComponent
   @Override
   public void onDelete() {
     if (bluetooth != null) {
+      removePollers();
+      pollers.clear();
       bluetooth.removeBluetoothConnectionListener(this);
       bluetooth.detachComponent(this);
       bluetooth = null;
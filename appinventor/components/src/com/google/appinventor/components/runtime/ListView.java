@@ -14,12 +14,17 @@ import android.text.SpannableString;
 import android.text.TextWatcher;
 import android.text.style.AbsoluteSizeSpan;
 import android.text.style.ForegroundColorSpan;
+import android.util.TypedValue;
+import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
+import android.widget.BaseAdapter;
 import android.widget.EditText;
+import android.widget.Filter;
+import android.widget.Filterable;
 import android.widget.LinearLayout;
+import android.widget.TextView;
 
 import android.widget.LinearLayout.LayoutParams;
 import com.google.appinventor.components.annotations.DesignerComponent;
@@ -34,6 +39,10 @@ import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.util.ElementsUtil;
 import com.google.appinventor.components.runtime.util.YailList;
 
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * ListView Component. Non-Visible component to create a ListView in the Screen from a series of
  * elements added from a comma separated set of text elements. It is similar to the ListPicker
@@ -60,10 +69,9 @@ public final class ListView extends AndroidViewComponent implements AdapterView.
   protected final ComponentContainer container;
   private final LinearLayout listViewLayout;
 
-  // The adapter contains spannables rather than strings, since we will be changing the item
-  // colors using ForegroundColorSpan
-  private ArrayAdapter<Spannable> adapter;
-  private ArrayAdapter<Spannable> adapterCopy;
+  // The adapter holds the raw items and only converts the rows that are on screen to text, so
+  // its cost does not grow with the length of the list.
+  private final ElementsAdapter adapter;
   private YailList items;
   private int selectionIndex;
   private String selection;
@@ -97,6 +105,8 @@ public final class ListView extends AndroidViewComponent implements AdapterView.
     view.setOnItemClickListener(this);
     view.setChoiceMode(android.widget.ListView.CHOICE_MODE_SINGLE);
     view.setScrollingCacheEnabled(false);
+    adapter = new ElementsAdapter();
+    view.setAdapter(adapter);
     listViewLayout = new LinearLayout(container.$context());
     listViewLayout.setOrientation(LinearLayout.VERTICAL);
 
@@ -115,7 +125,7 @@ public final class ListView extends AndroidViewComponent implements AdapterView.
         @Override
         public void onTextChanged(CharSequence cs, int arg1, int arg2, int arg3) {
           // When user changed the Text
-          adapter.getFilter().filter(cs);
+          adapter.filter(cs);
         }
 
         @Override
@@ -136,9 +146,6 @@ public final class ListView extends AndroidViewComponent implements AdapterView.
     }
 
     // set the colors and initialize the elements
-    // note that the TextColor and ElementsFromString setters
-    // need to have the textColor set first, since they reset the
-    // adapter
 
     Width(Component.LENGTH_FILL_PARENT);
     BackgroundColor(DEFAULT_BACKGROUND_COLOR);
@@ -258,41 +265,42 @@ public final class ListView extends AndroidViewComponent implements AdapterView.
    * Sets the items of the ListView through an adapter
    */
   public void setAdapterData(){
-    adapter = new ArrayAdapter<Spannable>(container.$context(), android.R.layout.simple_list_item_1,
-        itemsToColoredText());
-    view.setAdapter(adapter);
-
-    adapterCopy = new ArrayAdapter<Spannable>(container.$context(), android.R.layout.simple_list_item_1);
-    for (int i = 0; i < adapter.getCount(); ++i) {
-      adapterCopy.insert(adapter.getItem(i), i);
-    }
+    adapter.setElements(items.toArray());
   }
 
+  /**
+   * Returns the items as text styled with the ListView's text color and size.
+   *
+   * @deprecated The adapter now styles each row when it is shown, so nothing in the ListView
+   * uses these strings any more.
+   */
+  @Deprecated
   public Spannable[] itemsToColoredText() {
-    // TODO(hal): Generalize this so that different items could have different
-    // colors and even fonts and sizes
-    int size = items.size();
-    int displayTextSize = textSize;
-    Spannable [] objects = new Spannable[size];
-    for (int i = 1; i <= size; i++) {
-      // Note that the ListPicker and otherPickers pickers convert Yail lists to string by calling
-      // YailList.ToStringArray.
-      // ListView however, does the string conversion via the adapter, so we must ensure
-      // that the adapter uses YailListElementToSring
-      String itemString = YailList.YailListElementToString(items.get(i));
-      // Is there a more efficient way to do conversion to spannable strings that does not
-      // need to allocate new objects?
+    int displayTextSize = displayTextSize();
+    Spannable [] objects = new Spannable[items.size()];
+    int i = 0;
+    // Walk the list with an iterator; items.get(i) restarts from the head of the list each time.
+    for (Iterator<Object> it = items.itemIterator(); it.hasNext(); ) {
+      String itemString = YailList.YailListElementToString(it.next());
       Spannable chars = new SpannableString(itemString);
       chars.setSpan(new ForegroundColorSpan(textColor),0,chars.length(),0);
-      if (!container.$form().getCompatibilityMode()) {
-        displayTextSize = (int) (textSize * container.$form().deviceDensity());
-      }
       chars.setSpan(new AbsoluteSizeSpan(displayTextSize),0,chars.length(),0);
-      objects[i - 1] = chars;
+      objects[i++] = chars;
     }
     return objects;
   }
 
+  /**
+   * Returns the size in pixels of the item text, taking the screen density into account unless
+   * the form is in compatibility mode.
+   */
+  private int displayTextSize() {
+    if (container.$form().getCompatibilityMode()) {
+      return textSize;
+    }
+    return (int) (textSize * container.$form().deviceDensity());
+  }
+
   /**
    * Selection index property getter method.
    */
@@ -352,9 +360,10 @@ public final class ListView extends AndroidViewComponent implements AdapterView.
    */
   @Override
   public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-    Spannable item = (Spannable) parent.getAdapter().getItem(position);
-    this.selection = item.toString();
-    this.selectionIndex = adapterCopy.getPosition(item) + 1; // AI lists are 1-based
+    // The position is relative to the filtered rows; the adapter maps it back to the item's
+    // position in the full list.
+    this.selection = (String) adapter.getItem(position);
+    this.selectionIndex = adapter.elementIndex(position) + 1; // AI lists are 1-based
 
     AfterPicking();
   }
@@ -474,7 +483,8 @@ public final class ListView extends AndroidViewComponent implements AdapterView.
   @SimpleProperty
   public void TextColor(int argb) {
       textColor = argb;
-      setAdapterData();
+      // Rows pick up the new color when they are redrawn; the items themselves are unchanged.
+      adapter.notifyDataSetChanged();
   }
 
   /**
@@ -502,7 +512,238 @@ public final class ListView extends AndroidViewComponent implements AdapterView.
         textSize = 999;
       else
         textSize = fontSize;
-      setAdapterData();
+      adapter.notifyDataSetChanged();
+  }
+
+  /**
+   * Adapter for the rows of the ListView.  The items are kept as they came from the YailList
+   * and are converted to text only when a row is shown, and every row takes its color and size
+   * from the ListView instead of carrying spans of its own.  When the filter bar is in use the
+   * adapter shows only the matching items, and {@link #elementIndex} maps a row back to the
+   * item's position in the full list.
+   *
+   * <p>Blocks can only replace the Elements as a whole, so appending or changing items also
+   * arrives here as a new list.  The items that the new list shares with the old one, up to the
+   * first one that differs, keep their filter results and cached text, so after items are added
+   * to the end of a long list the filter only has to look at the new ones.</p>
+   */
+  private class ElementsAdapter extends BaseAdapter implements Filterable {
+    // Read by the filter on its worker thread; replaced, never modified, on the UI thread.
+    private volatile Object[] elements = new Object[0];
+    // Positions in elements of the rows that pass the filter, or null to show every element.
+    private int[] visible;
+    private CharSequence constraint = "";
+    private final ElementsFilter filter = new ElementsFilter();
+
+    /**
+     * Replaces the items shown, keeping the adapter and the views it has already created.  If a
+     * filter is active it is applied again to the new items.
+     */
+    void setElements(Object[] newElements) {
+      int shared = sharedPrefixLength(elements, newElements);
+      elements = newElements;
+      if (visible != null) {
+        // Until the filter has looked at the new items, show the matches among the old ones.
+        visible = positionsBefore(visible, shared);
+      }
+      notifyDataSetChanged();
+      if (constraint.length() > 0) {
+        filter(constraint);
+      }
+    }
+
+    void filter(CharSequence newConstraint) {
+      constraint = newConstraint == null ? "" : newConstraint;
+      filter.generation.incrementAndGet();
+      filter.filter(constraint);
+    }
+
+    /**
+     * Returns the 0-based position in the full list of the item shown at {@code position}.
+     */
+    int elementIndex(int position) {
+      return visible == null ? position : visible[position];
+    }
+
+    @Override
+    public int getCount() {
+      return visible == null ? elements.length : visible.length;
+    }
+
+    @Override
+    public Object getItem(int position) {
+      // ListPicker and the other pickers convert Yail lists to strings by calling
+      // YailList.toStringArray, so the rows must use the same conversion.
+      return YailList.YailListElementToString(elements[elementIndex(position)]);
+    }
+
+    @Override
+    public long getItemId(int position) {
+      return elementIndex(position);
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+      TextView tv = (TextView) convertView;
+      if (tv == null) {
+        tv = (TextView) LayoutInflater.from(parent.getContext())
+            .inflate(android.R.layout.simple_list_item_1, parent, false);
+      }
+      tv.setText((String) getItem(position));
+      tv.setTextColor(textColor);
+      tv.setTextSize(TypedValue.COMPLEX_UNIT_PX, displayTextSize());
+      return tv;
+    }
+
+    @Override
+    public Filter getFilter() {
+      return filter;
+    }
+  }
+
+  /**
+   * Filters the items on the worker thread that {@link Filter} provides.  An item matches when
+   * its text, or any space-separated word in it, starts with the filter text, ignoring case.
+   * When the filter text is extended only the previous matches are searched again, and a
+   * request stops early once a newer one has been made.
+   */
+  private class ElementsFilter extends Filter {
+    private final AtomicInteger generation = new AtomicInteger();
+
+    // The state below is used only on the filter's worker thread.
+    private Object[] lastElements = new Object[0];
+    private String[] lowerCaseText = new String[0];
+    private String lastPrefix;
+    private int[] lastMatches;
+    // The number of items at the start of lastElements that lastMatches covers.
+    private int lastMatchesEnd;
+
+    @Override
+    protected FilterResults performFiltering(CharSequence constraint) {
+      int requestGeneration = generation.get();
+      Object[] source = adapter.elements;
+      if (source != lastElements) {
+        // Keep what is known about the items the new list starts with.
+        int shared = sharedPrefixLength(lastElements, source);
+        String[] text = new String[source.length];
+        System.arraycopy(lowerCaseText, 0, text, 0, shared);
+        lowerCaseText = text;
+        if (lastMatches != null) {
+          lastMatches = positionsBefore(lastMatches, shared);
+          lastMatchesEnd = shared;
+        }
+        lastElements = source;
+      }
+      FilterResults results = new FilterResults();
+      String prefix = constraint == null ? "" : constraint.toString().toLowerCase();
+      int[] matches = null;
+      if (prefix.length() > 0) {
+        // Only the earlier matches can match a longer filter text, but the items after those
+        // the earlier matches cover have to be searched in full.
+        int[] candidates = new int[0];
+        int from = 0;
+        if (lastPrefix != null && prefix.startsWith(lastPrefix)) {
+          candidates = lastMatches;
+          from = lastMatchesEnd;
+        }
+        int count = candidates.length + source.length - from;
+        int[] found = new int[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+          if ((i & 0xff) == 0 && generation.get() != requestGeneration) {
+            return null;  // superseded by a newer request
+          }
+          int index = i < candidates.length ? candidates[i] : from + i - candidates.length;
+          if (matches(lowerCaseText(source, index), prefix)) {
+            found[n++] = index;
+          }
+        }
+        matches = Arrays.copyOf(found, n);
+        lastPrefix = prefix;
+        lastMatches = matches;
+        lastMatchesEnd = source.length;
+      }
+      results.values = new Matches(source, matches);
+      results.count = matches == null ? source.length : matches.length;
+      return results;
+    }
+
+    @Override
+    protected void publishResults(CharSequence constraint, FilterResults results) {
+      if (results == null) {
+        return;
+      }
+      Matches matches = (Matches) results.values;
+      // Results computed for a list that has since been replaced are dropped; setElements has
+      // already asked for the new list to be filtered.
+      if (matches.elements != adapter.elements) {
+        return;
+      }
+      adapter.visible = matches.positions;
+      adapter.notifyDataSetChanged();
+    }
+
+    private String lowerCaseText(Object[] source, int index) {
+      String text = lowerCaseText[index];
+      if (text == null) {
+        text = YailList.YailListElementToString(source[index]).toLowerCase();
+        lowerCaseText[index] = text;
+      }
+      return text;
+    }
+
+    private boolean matches(String text, String prefix) {
+      if (text.startsWith(prefix)) {
+        return true;
+      }
+      for (int i = text.indexOf(' '); i >= 0; i = text.indexOf(' ', i + 1)) {
+        if (text.startsWith(prefix, i + 1)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Returns the number of items at the start of {@code newElements} that are the same as those
+   * at the start of {@code oldElements}.  Only text and numbers are compared, since a sublist
+   * may have changed since it was shown even if it is the same object.
+   */
+  private static int sharedPrefixLength(Object[] oldElements, Object[] newElements) {
+    int length = Math.min(oldElements.length, newElements.length);
+    for (int i = 0; i < length; i++) {
+      Object oldElement = oldElements[i];
+      if (!(oldElement instanceof String || oldElement instanceof Number)
+          || !oldElement.equals(newElements[i])) {
+        return i;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Returns the positions, which are in increasing order, that are less than {@code end}.
+   */
+  private static int[] positionsBefore(int[] positions, int end) {
+    int n = 0;
+    while (n < positions.length && positions[n] < end) {
+      n++;
+    }
+    return n == positions.length ? positions : Arrays.copyOf(positions, n);
+  }
+
+  /**
+   * The outcome of one filter request.
+   */
+  private static class Matches {
+    final Object[] elements;
+    final int[] positions;
+
+    Matches(Object[] elements, int[] positions) {
+      this.elements = elements;
+      this.positions = positions;
+    }
   }
 
 }
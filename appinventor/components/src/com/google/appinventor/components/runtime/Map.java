@@ -9,10 +9,14 @@ import com.google.appinventor.components.common.ComponentConstants;
 import com.google.appinventor.components.runtime.LocationSensor.LocationSensorListener;
 import com.google.appinventor.components.runtime.util.AsynchUtil;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
+import com.google.appinventor.components.runtime.util.FeatureIndex;
 import com.google.appinventor.components.runtime.util.GeoJSONUtil;
 import com.google.appinventor.components.runtime.util.GeometryUtil;
 import com.google.appinventor.components.runtime.util.MapFactory;
+import com.google.appinventor.components.runtime.util.MediaUtil;
 import com.google.appinventor.components.runtime.util.YailList;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
 import org.osmdroid.util.BoundingBox;
 
 import com.google.appinventor.components.annotations.DesignerComponent;
@@ -41,7 +45,11 @@ import android.util.Log;
 import android.view.View;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -78,7 +86,7 @@ import java.util.List;
   + "android.permission.ACCESS_COARSE_LOCATION, " + "android.permission.ACCESS_WIFI_STATE, "
   + "android.permission.ACCESS_NETWORK_STATE, " + "android.permission.WRITE_EXTERNAL_STORAGE, "
   + "android.permission.READ_EXTERNAL_STORAGE")
-@UsesLibraries(libraries = "osmdroid.aar, osmdroid.jar, androidsvg.jar, jts.jar")
+@UsesLibraries(libraries = "osmdroid.aar, osmdroid.jar, androidsvg.jar, jts.jar, gson-2.1.jar")
 public class Map extends MapFeatureContainerBase implements MapEventListener {
   private static final String TAG = Map.class.getSimpleName();
 
@@ -86,6 +94,12 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   private static final String ERROR_LATITUDE_OUT_OF_BOUNDS = "Latitude %f is out of bounds.";
   private static final String ERROR_LONGITUDE_OUT_OF_BOUNDS = "Longitude %f is out of bounds.";
 
+  private static final int DEFAULT_TILE_CACHE_SIZE = 100;  // megabytes
+  private static final int BYTES_PER_MEGABYTE = 1024 * 1024;
+  private static final int MAX_PREFETCH_ZOOM = 19;
+  // Keeps a prefetch to a few tens of megabytes and to what tile servers will put up with.
+  private static final int MAX_PREFETCH_TILES = 10000;
+
   /**
    * <p>Platform-specific map controller returned by {@link MapFactory}.</p>
    */
@@ -93,6 +107,14 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
 
   private LocationSensor sensor = null;
 
+  private String offlineTiles = "";
+
+  /**
+   * <p>Spatial index of the features in {@link #features}, used by FeaturesInBoundingBox and
+   * FeaturesNearPoint.</p>
+   */
+  private final FeatureIndex featureIndex = new FeatureIndex();
+
   /**
    * Construct a new map to be rendered within the given container.
    *
@@ -114,6 +136,8 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
     ShowUser(false);
     ShowZoom(false);
     EnableRotation(false);
+    TileCacheSize(DEFAULT_TILE_CACHE_SIZE);
+    ClusterMarkers(false);
   }
 
   @Override
@@ -412,13 +436,35 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
     return mapController.isPanEnabled();
   }
 
+  /**
+   * <p>Group markers that are close together on the screen into clusters, each drawn as a
+   * badge showing how many markers it holds. Tapping a cluster zooms the map in to show its
+   * markers. This keeps maps with thousands of markers quick to pan and zoom.</p>
+   *
+   * @param cluster True if markers should be clustered, otherwise false.
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+      defaultValue = "False")
+  @SimpleProperty
+  public void ClusterMarkers(boolean cluster) {
+    mapController.setClusterMarkersEnabled(cluster);
+  }
+
+  /**
+   * Get whether markers close together are drawn as clusters.
+   *
+   * @return True if markers are clustered, otherwise false.
+   */
+  @SimpleProperty(category = PropertyCategory.APPEARANCE,
+      description = "Group markers that are close together on the screen into a single badge " +
+          "showing how many markers it holds. Tapping the badge zooms in to show the markers.")
+  public boolean ClusterMarkers() {
+    return mapController.isClusterMarkersEnabled();
+  }
+
   @SimpleProperty
   public void BoundingBox(YailList boundingbox) {
-    double latNorth = GeometryUtil.coerceToDouble(((YailList) boundingbox.get(1)).get(1));
-    double longWest = GeometryUtil.coerceToDouble(((YailList)boundingbox.get(1)).get(2));
-    double latSouth = GeometryUtil.coerceToDouble(((YailList)boundingbox.get(2)).get(1));
-    double longEast = GeometryUtil.coerceToDouble(((YailList)boundingbox.get(2)).get(2));
-    mapController.setBoundingBox(new BoundingBox(latNorth, longEast, latSouth, longWest));
+    mapController.setBoundingBox(toBoundingBox(boundingbox));
   }
 
   @SimpleProperty(category = PropertyCategory.APPEARANCE,
@@ -449,6 +495,75 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
     return sensor;
   }
 
+  /**
+   * <p>Set the number of megabytes that map tiles saved on the device may use. Tiles are saved
+   * as they are downloaded so that panning and zooming over areas seen before does not wait for
+   * the network. When the saved tiles use more than this, the ones downloaded longest ago are
+   * removed. The setting is shared by all maps in the app.</p>
+   *
+   * @param megabytes the size of the tile cache in megabytes
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+      defaultValue = DEFAULT_TILE_CACHE_SIZE + "")
+  @SimpleProperty
+  public void TileCacheSize(int megabytes) {
+    mapController.setTileCacheSize((long) Math.max(0, megabytes) * BYTES_PER_MEGABYTE);
+  }
+
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "The number of megabytes that map tiles saved on the device may use. When " +
+          "the saved tiles use more than this, the ones downloaded longest ago are removed.")
+  public int TileCacheSize() {
+    return (int) (mapController.getTileCacheSize() / BYTES_PER_MEGABYTE);
+  }
+
+  /**
+   * <p>Set a tile archive in the project's assets from which the map reads tiles before
+   * downloading them, so that the area it covers can be shown without a network connection.
+   * ZIP, SQLite, GEMF and MBTiles archives are supported, such as those made by Mobile Atlas
+   * Creator. ZIP, SQLite and GEMF archives must have been made for the Map's MapType.</p>
+   *
+   * @param path the name of the archive asset
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_ASSET)
+  @SimpleProperty
+  public void OfflineTiles(String path) {
+    offlineTiles = path == null ? "" : path;
+    if (offlineTiles.length() == 0) {
+      return;
+    }
+    final String archivePath = offlineTiles;
+    final Form form = $form();
+    AsynchUtil.runAsynchronously(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          InputStream archive = MediaUtil.openMedia(form, archivePath);
+          try {
+            mapController.addTileArchive(archivePath, archive);
+          } finally {
+            archive.close();
+          }
+        } catch (final IOException e) {
+          form.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+              form.dispatchErrorOccurredEvent(Map.this, "OfflineTiles",
+                  ErrorMessages.ERROR_UNABLE_TO_LOAD_TILE_ARCHIVE, archivePath, e.getMessage());
+            }
+          });
+        }
+      }
+    });
+  }
+
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "A tile archive in the project's assets from which the map reads tiles " +
+          "before downloading them. ZIP, SQLite, GEMF and MBTiles archives are supported.")
+  public String OfflineTiles() {
+    return offlineTiles;
+  }
+
   @SimpleProperty(category = PropertyCategory.BEHAVIOR,
       description = "Returns the user's latitude if ShowUser is enabled.")
   public double UserLatitude() {
@@ -497,6 +612,91 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
     });
   }
 
+  @SimpleFunction(description = "Download the tiles that cover the bounding box, given as " +
+      "[[North, West], [South, East]], at zoom levels minZoom through maxZoom, so that the map " +
+      "can show the area without a network connection. The tiles are downloaded in the " +
+      "background. TilePrefetchProgress reports progress and TilePrefetchComplete is raised " +
+      "when the download is done.")
+  public void PrefetchTiles(YailList boundingBox, int minZoom, int maxZoom) {
+    if (minZoom < 1 || maxZoom > MAX_PREFETCH_ZOOM || minZoom > maxZoom) {
+      $form().dispatchErrorOccurredEvent(this, "PrefetchTiles",
+          ErrorMessages.ERROR_INVALID_ZOOM_RANGE, minZoom, maxZoom, MAX_PREFETCH_ZOOM);
+      return;
+    }
+    BoundingBox bbox = toBoundingBox(boundingBox);
+    int tiles = mapController.countTiles(bbox, minZoom, maxZoom);
+    if (tiles > MAX_PREFETCH_TILES) {
+      $form().dispatchErrorOccurredEvent(this, "PrefetchTiles",
+          ErrorMessages.ERROR_TOO_MANY_TILES_TO_PREFETCH, tiles, MAX_PREFETCH_TILES);
+      return;
+    }
+    mapController.prefetchTiles(bbox, minZoom, maxZoom);
+  }
+
+  @SimpleFunction(description = "Stop any tile downloads started by PrefetchTiles. Tiles that " +
+      "have already been downloaded stay on the device.")
+  public void CancelTilePrefetch() {
+    mapController.cancelTilePrefetch();
+  }
+
+  @SimpleFunction(description = "Returns the features on the map, including hidden ones, that " +
+      "lie at least partly within the bounding box, given as [[North, West], [South, East]]. " +
+      "The features are returned in no particular order.")
+  public YailList FeaturesInBoundingBox(YailList boundingBox) {
+    BoundingBox bbox = toBoundingBox(boundingBox);
+    Envelope envelope = new Envelope(bbox.getLonWest(), bbox.getLonEast(), bbox.getLatSouth(),
+        bbox.getLatNorth());
+    Geometry area = GeometryUtil.createGeometry(bbox.getLatNorth(), bbox.getLonEast(),
+        bbox.getLatSouth(), bbox.getLonWest());
+    List<MapFeature> result = new ArrayList<MapFeature>();
+    for (MapFeature feature : featureIndex.query(envelope)) {
+      if (feature instanceof MapCircle) {
+        // A circle's geometry is its center, so compare the distance to the box with its radius.
+        double distance = GeometryUtil.ONE_DEG_IN_METERS * area.distance(feature.getGeometry());
+        if (distance <= ((MapCircle) feature).Radius()) {
+          result.add(feature);
+        }
+      } else if (area.intersects(feature.getGeometry())) {
+        result.add(feature);
+      }
+    }
+    return YailList.makeList(result);
+  }
+
+  @SimpleFunction(description = "Returns the features on the map, including hidden ones, that " +
+      "are within the given distance, in meters, of the given latitude and longitude. The " +
+      "distance to a feature is measured to its nearest edge. The features are returned " +
+      "nearest first.")
+  public YailList FeaturesNearPoint(double latitude, double longitude, double distance) {
+    double latitudeDistance = distance / GeometryUtil.ONE_DEG_IN_METERS;
+    double cosLatitude = Math.cos(Math.toRadians(latitude));
+    double longitudeDistance = cosLatitude > 0.01 ? latitudeDistance / cosLatitude : 180;
+    Envelope envelope = new Envelope(longitude - longitudeDistance,
+        longitude + longitudeDistance, latitude - latitudeDistance, latitude + latitudeDistance);
+    final java.util.Map<MapFeature, Double> distances = new HashMap<MapFeature, Double>();
+    List<MapFeature> result = new ArrayList<MapFeature>();
+    for (MapFeature feature : featureIndex.query(envelope)) {
+      double d = ((MapFeatureBase) feature).DistanceToPoint(latitude, longitude, false);
+      if (d <= distance) {
+        distances.put(feature, d);
+        result.add(feature);
+      }
+    }
+    Collections.sort(result, new Comparator<MapFeature>() {
+      @Override
+      public int compare(MapFeature a, MapFeature b) {
+        return Double.compare(distances.get(a), distances.get(b));
+      }
+    });
+    return YailList.makeList(result);
+  }
+
+  @SimpleFunction(description = "Remove all map tiles saved on the device. Tiles in the " +
+      "OfflineTiles archive are not affected.")
+  public void ClearTileCache() {
+    mapController.clearTileCache();
+  }
+
   @SuppressWarnings({"WeakerAccess", "squid:S00100"})
   @SimpleEvent(description = "Map has been initialized and is ready for user interaction.")
   public void Ready() {
@@ -536,10 +736,26 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
     EventDispatcher.dispatchEvent(this, "LongPressAtPoint", latitude, longitude);
   }
 
+  @SimpleEvent(description = "Reports how many of the tiles requested by PrefetchTiles have " +
+      "been downloaded so far.")
+  public void TilePrefetchProgress(int completed, int total) {
+    EventDispatcher.dispatchEvent(this, "TilePrefetchProgress", completed, total);
+  }
+
+  @SimpleEvent(description = "The tiles requested by PrefetchTiles have been downloaded. The " +
+      "failed parameter is the number of tiles that could not be downloaded.")
+  public void TilePrefetchComplete(int total, int failed) {
+    EventDispatcher.dispatchEvent(this, "TilePrefetchComplete", total, failed);
+  }
+
   public MapController getController() {
     return mapController;
   }
 
+  public FeatureIndex getFeatureIndex() {
+    return featureIndex;
+  }
+
   // MapEventListener implementation
   @Override
   public void onReady(MapController map) {
@@ -651,16 +867,48 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
     });
   }
 
+  @Override
+  public void onTilePrefetchProgress(final int completed, final int total) {
+    container.$form().runOnUiThread(new Runnable() {
+      @Override
+      public void run() {
+        Map.this.TilePrefetchProgress(completed, total);
+      }
+    });
+  }
+
+  @Override
+  public void onTilePrefetchComplete(final int total, final int failed) {
+    container.$form().runOnUiThread(new Runnable() {
+      @Override
+      public void run() {
+        Map.this.TilePrefetchComplete(total, failed);
+      }
+    });
+  }
+
   @Override
   public Map getMap() {
     return this;
   }
 
+  /**
+   * Converts a bounding box given as [[North, West], [South, East]] to a {@link BoundingBox}.
+   */
+  private static BoundingBox toBoundingBox(YailList boundingbox) {
+    double latNorth = GeometryUtil.coerceToDouble(((YailList) boundingbox.get(1)).get(1));
+    double longWest = GeometryUtil.coerceToDouble(((YailList)boundingbox.get(1)).get(2));
+    double latSouth = GeometryUtil.coerceToDouble(((YailList)boundingbox.get(2)).get(1));
+    double longEast = GeometryUtil.coerceToDouble(((YailList)boundingbox.get(2)).get(2));
+    return new BoundingBox(latNorth, longEast, latSouth, longWest);
+  }
+
 
   // MapFeatureContainerBase optimizations
   @Override
   void addFeature(MapMarker marker) {
     features.add(marker);
+    featureIndex.add(marker);
     marker.setMap(this);
     mapController.addFeature(marker);
   }
@@ -668,6 +916,7 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   @Override
   void addFeature(MapLineString lineString) {
     features.add(lineString);
+    featureIndex.add(lineString);
     lineString.setMap(this);
     mapController.addFeature(lineString);
   }
@@ -675,6 +924,7 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   @Override
   void addFeature(MapPolygon polygon) {
     features.add(polygon);
+    featureIndex.add(polygon);
     polygon.setMap(this);
     mapController.addFeature(polygon);
   }
@@ -682,6 +932,7 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   @Override
   void addFeature(MapRectangle rectangle) {
     features.add(rectangle);
+    featureIndex.add(rectangle);
     rectangle.setMap(this);
     mapController.addFeature(rectangle);
   }
@@ -689,6 +940,7 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   @Override
   void addFeature(MapCircle circle) {
     features.add(circle);
+    featureIndex.add(circle);
     circle.setMap(this);
     mapController.addFeature(circle);
   }
@@ -696,6 +948,7 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   @Override
   public void removeFeature(MapFeature feature) {
     features.remove(feature);
+    featureIndex.remove(feature);
     mapController.removeFeature(feature);
   }
 }
@@ -111,6 +111,7 @@ public abstract class MapFeatureBase implements MapFeature, HasStroke {
   @Override
   public void removeFromMap() {
     map.getController().removeFeature(this);
+    map.getFeatureIndex().remove(this);
   }
 
   @SuppressWarnings("squid:S00100")
@@ -324,9 +325,16 @@ public abstract class MapFeatureBase implements MapFeature, HasStroke {
   }
 
   @SuppressWarnings("WeakerAccess")
-  protected final synchronized void clearGeometry() {
-    centroid = null;
-    geometry = null;
+  protected final void clearGeometry() {
+    synchronized (this) {
+      centroid = null;
+      geometry = null;
+    }
+    // Tell the index outside the lock, since the index locks itself and then the feature when
+    // it recomputes the geometry.
+    if (map != null) {
+      map.getFeatureIndex().update(this);
+    }
   }
 
   protected abstract Geometry computeGeometry();
@@ -6,6 +6,8 @@
 package com.google.appinventor.components.runtime;
 
 import android.app.Activity;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
 import com.google.appinventor.components.annotations.PropertyCategory;
 import com.google.appinventor.components.annotations.SimpleEvent;
@@ -13,25 +15,27 @@ import com.google.appinventor.components.annotations.SimpleFunction;
 import com.google.appinventor.components.annotations.SimpleObject;
 import com.google.appinventor.components.annotations.SimpleProperty;
 import com.google.appinventor.components.runtime.util.AsynchUtil;
+import com.google.appinventor.components.runtime.util.GeoJSONReader;
+import com.google.appinventor.components.runtime.util.IOUtils;
 import com.google.appinventor.components.runtime.util.MapFactory;
 import com.google.appinventor.components.runtime.util.MapFactory.MapFeature;
 import com.google.appinventor.components.runtime.util.YailList;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.google.gson.stream.MalformedJsonException;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.google.appinventor.components.runtime.util.GeoJSONUtil.processGeoJSONFeature;
 
@@ -46,17 +50,23 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
   private static final String ERROR_MALFORMED_URL = "The URL is malformed";
   private static final String ERROR_IO_EXCEPTION = "Unable to download content from URL";
   private static final String ERROR_MALFORMED_GEOJSON = "Malformed GeoJSON response. Expected FeatureCollection as root element.";
-  private static final String ERROR_UNKNOWN_TYPE = "Unrecognized/invalid type in JSON object";
-  private static final String GEOJSON_TYPE = "type";
-  private static final String GEOJSON_FEATURECOLLECTION = "FeatureCollection";
-  private static final String GEOJSON_GEOMETRYCOLLECTION = "GeometryCollection";
-  private static final String GEOJSON_FEATURES = "features";
+
+  // Features read for AddFeaturesFromURL are handed to the UI thread in batches of this many, and
+  // reading waits while this many batches are waiting to be added, which bounds the memory used.
+  private static final int FEATURE_BATCH_SIZE = 100;
+  private static final int MAX_PENDING_BATCHES = 4;
+  // Adding features stops after this long so that the map can draw a frame.
+  private static final long FRAME_BUDGET_MS = 8;
+  // LoadProgress is raised at most this often.
+  private static final long PROGRESS_INTERVAL_MS = 250;
 
   /**
    * <p>List of {@link MapFactory.MapFeature features} associated with this map, including those that are
    * invisible.</p>
    */
-  protected List<MapFeature> features = new CopyOnWriteArrayList<MapFeature>();
+  protected List<MapFeature> features = new ArrayList<MapFeature>();
+
+  private final Handler androidUIHandler = new Handler();
 
   private final MapFactory.MapFeatureVisitor<Void> featureAdder = new MapFactory.MapFeatureVisitor<Void>() {
     @Override
@@ -186,7 +196,29 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
   public void LoadFromURL(final String url) {
     AsynchUtil.runAsynchronously(new Runnable() {
       public void run() {
-        performGet(url);
+        performGet(url, false);
+      }
+    });
+  }
+
+  /**
+   * Load a feature collection in GeoJSON format from the given url and add its features to this
+   * container. The document is read in the background and the features are added a few at a
+   * time between frames, so large collections load without freezing the app. LoadProgress is
+   * raised as features are added, and FeaturesAdded when all of them have been.
+   *
+   * @param url The URL from which to read a GeoJSON-encoded feature collection
+   */
+  @SimpleFunction(description = "<p>Load a feature collection in " +
+      "<a href=\"https://en.wikipedia.org/wiki/GeoJSON\">GeoJSON</a> format from the given " +
+      "url and add its features. The features are added a few at a time so that large " +
+      "collections load without freezing the app. LoadProgress is raised as features are " +
+      "added and FeaturesAdded when all have been. On failure, the LoadError event will be " +
+      "raised with any applicable HTTP response code and error message.</p>")
+  public void AddFeaturesFromURL(final String url) {
+    AsynchUtil.runAsynchronously(new Runnable() {
+      public void run() {
+        performGet(url, true);
       }
     });
   }
@@ -233,6 +265,19 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
     EventDispatcher.dispatchEvent(this, "LoadError", url, responseCode, errorMessage);
   }
 
+  @SimpleEvent(description = "Raised from time to time while a GeoJSON document is loaded from " +
+      "url by LoadFromURL or AddFeaturesFromURL. The features parameter is the number of " +
+      "features read, or for AddFeaturesFromURL added, so far.")
+  public void LoadProgress(String url, int features) {
+    EventDispatcher.dispatchEvent(this, "LoadProgress", url, features);
+  }
+
+  @SimpleEvent(description = "All of the features in the GeoJSON document at url have been " +
+      "added by AddFeaturesFromURL. The new features are provided as a list in features.")
+  public void FeaturesAdded(String url, YailList features) {
+    EventDispatcher.dispatchEvent(this, "FeaturesAdded", url, features);
+  }
+
   @Override
   public Activity $context() {
     return container.$context();
@@ -293,21 +338,29 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
     feature.accept(featureAdder);
   }
 
-  private void performGet(final String url) {
+  private void performGet(final String url, boolean addFeatures) {
+    InputStream content = openUrl(url);
+    if (content == null) {
+      return;
+    }
     try {
-      String jsonContent = loadUrl(url);
-      if (jsonContent == null) {
-        return;
-      }
-      processGeoJSON(url, jsonContent);
+      processGeoJSON(url, new InputStreamReader(content, "UTF-8"), addFeatures);
+    } catch (MalformedJsonException e) {
+      Log.e(TAG, "Exception retreiving GeoJSON", e);
+      $form().dispatchErrorOccurredEvent(this, addFeatures ? "AddFeaturesFromURL" : "LoadFromURL",
+          ERROR_CODE_UNKNOWN_TYPE, e.toString());
+    } catch (IOException e) {
+      postLoadError(url, ERROR_CODE_IO_EXCEPTION, ERROR_IO_EXCEPTION);
     } catch(Exception e) {
       Log.e(TAG, "Exception retreiving GeoJSON", e);
-      $form().dispatchErrorOccurredEvent(this, "LoadFromURL", ERROR_CODE_UNKNOWN_TYPE,
-          e.toString());
+      $form().dispatchErrorOccurredEvent(this, addFeatures ? "AddFeaturesFromURL" : "LoadFromURL",
+          ERROR_CODE_UNKNOWN_TYPE, e.toString());
+    } finally {
+      IOUtils.closeQuietly(TAG, content);
     }
   }
 
-  private String loadUrl(final String url) {
+  private InputStream openUrl(final String url) {
     try {
       URLConnection connection = new URL(url).openConnection();
       connection.connect();
@@ -316,121 +369,266 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
         final int responseCode = conn.getResponseCode();
         final String responseMessage = conn.getResponseMessage();
         if (responseCode != 200) {
-          $form().runOnUiThread(new Runnable() {
-            public void run() {
-              MapFeatureContainerBase.this.LoadError(url, responseCode, responseMessage);
-            }
-          });
+          postLoadError(url, responseCode, responseMessage);
           conn.disconnect();
           return null;
         }
       }
-      BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(),
-            "UTF-8"));
-      StringBuilder content = new StringBuilder();
-      String line;
-      while ((line = reader.readLine()) != null) {
-        content.append(line);
-        content.append("\n");
-      }
-      reader.close();
-      return content.toString();
+      return connection.getInputStream();
     } catch(MalformedURLException e) {
-      $form().runOnUiThread(new Runnable() {
-        public void run() {
-          MapFeatureContainerBase.this.LoadError(url, ERROR_CODE_MALFORMED_URL,
-              ERROR_MALFORMED_URL);
-        }
-      });
+      postLoadError(url, ERROR_CODE_MALFORMED_URL, ERROR_MALFORMED_URL);
     } catch (IOException e) {
-      $form().runOnUiThread(new Runnable() {
-        public void run() {
-          MapFeatureContainerBase.this.LoadError(url, ERROR_CODE_IO_EXCEPTION,
-              ERROR_IO_EXCEPTION);
-        }
-      });
+      postLoadError(url, ERROR_CODE_IO_EXCEPTION, ERROR_IO_EXCEPTION);
     }
     return null;
   }
 
+  private void postLoadError(final String url, final int responseCode,
+      final String responseMessage) {
+    $form().runOnUiThread(new Runnable() {
+      public void run() {
+        MapFeatureContainerBase.this.LoadError(url, responseCode, responseMessage);
+      }
+    });
+  }
+
+  /**
+   * Reads the features of a GeoJSON feature collection from {@code content}. This must not be
+   * called on the UI thread. If {@code addFeatures} is false, GotFeatures is raised with the
+   * descriptions of the features. Otherwise the features are added to this container in batches
+   * on the UI thread and FeaturesAdded is raised once they all have been. Either way LoadProgress
+   * is raised as the document is read. Features added before the document turns out to be
+   * invalid, for example because a type that is not a collection follows the features, are
+   * removed again.
+   *
+   * @param url the url to report in events
+   * @param content the GeoJSON document
+   * @param addFeatures true to add the features to this container
+   * @throws IOException if the document cannot be read or is not well-formed JSON
+   * @throws IllegalStateException if the document is not a JSON object
+   * @throws IllegalArgumentException if the document contains a null value
+   */
   @SuppressWarnings("WeakerAccess")
-  protected void processGeoJSON(final String url, final String content) throws JSONException {
-    JSONObject parsedData = new JSONObject(stripBOM(content));
-    String type = parsedData.optString(GEOJSON_TYPE);
-    if (!GEOJSON_FEATURECOLLECTION.equals(type) && !GEOJSON_GEOMETRYCOLLECTION.equals(type)) {
+  protected void processGeoJSON(final String url, final Reader content, boolean addFeatures)
+      throws IOException {
+    GeoJSONReader reader = new GeoJSONReader(content);
+    FeatureLoader loader = addFeatures ? new FeatureAdder(url) : new FeatureLister(url);
+    boolean valid = false;
+    try {
+      YailList feature;
+      while ((feature = reader.nextFeature()) != null) {
+        loader.read(feature);
+      }
+      if (!reader.isFeatureCollection() || !reader.hasFeatures()) {
+        postLoadError(url, ERROR_CODE_MALFORMED_GEOJSON, ERROR_MALFORMED_GEOJSON);
+        return;
+      }
+      valid = true;
+      loader.finish();
+    } finally {
+      if (!valid) {
+        loader.abort();
+      }
+    }
+  }
+
+  /**
+   * Receives the features read from a GeoJSON document, on the thread reading it.
+   */
+  private abstract class FeatureLoader {
+    final String url;
+    int count = 0;
+    private long lastProgress = SystemClock.uptimeMillis();
+
+    FeatureLoader(String url) {
+      this.url = url;
+    }
+
+    abstract void read(YailList feature);
+
+    abstract void finish();
+
+    /**
+     * Called instead of {@link #finish()} if the document is not a valid feature collection or
+     * cannot be read to the end.
+     */
+    abstract void abort();
+
+    /**
+     * Returns true if LoadProgress has not been raised recently, in which case the caller
+     * should raise it.
+     */
+    boolean progressDue() {
+      long now = SystemClock.uptimeMillis();
+      if (now - lastProgress >= PROGRESS_INTERVAL_MS) {
+        lastProgress = now;
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Collects feature descriptions for GotFeatures.
+   */
+  private class FeatureLister extends FeatureLoader {
+    private final List<YailList> descriptions = new ArrayList<YailList>();
+
+    FeatureLister(String url) {
+      super(url);
+    }
+
+    @Override
+    void read(YailList feature) {
+      descriptions.add(feature);
+      count++;
+      if (progressDue()) {
+        final int read = count;
+        $form().runOnUiThread(new Runnable() {
+          public void run() {
+            LoadProgress(url, read);
+          }
+        });
+      }
+    }
+
+    @Override
+    void finish() {
       $form().runOnUiThread(new Runnable() {
         public void run() {
-          MapFeatureContainerBase.this.LoadError(url, ERROR_CODE_MALFORMED_GEOJSON,
-              ERROR_MALFORMED_GEOJSON);
+          MapFeatureContainerBase.this.GotFeatures(url, YailList.makeList(descriptions));
         }
       });
-      return;
     }
-    JSONArray features = parsedData.getJSONArray(GEOJSON_FEATURES);
-    final List<YailList> yailFeatures = new ArrayList<YailList>();
-    for (int i = 0; i < features.length(); i++) {
-      yailFeatures.add(jsonObjectToYail(features.getJSONObject(i)));
+
+    @Override
+    void abort() {
+      // Nothing has been added.
     }
-    $form().runOnUiThread(new Runnable() {
-      public void run() {
-        MapFeatureContainerBase.this.GotFeatures(url, YailList.makeList(yailFeatures));
-      }
-    });
   }
 
-  private YailList jsonObjectToYail(JSONObject object) throws JSONException {
-    List<YailList> pairs = new ArrayList<YailList>();
-    @SuppressWarnings("unchecked")  // json only allows String keys
-        Iterator<String> j = object.keys();
-    while (j.hasNext()) {
-      String key = j.next();
-      Object value = object.get(key);
-      if (value instanceof Boolean ||
-          value instanceof Integer ||
-          value instanceof Long ||
-          value instanceof Double ||
-          value instanceof String) {
-        pairs.add(YailList.makeList(new Object[] { key, value }));
-      } else if (value instanceof JSONArray) {
-        pairs.add(YailList.makeList(new Object[] { key, jsonArrayToYail((JSONArray) value)}));
-      } else if (value instanceof JSONObject) {
-        pairs.add(YailList.makeList(new Object[] { key, jsonObjectToYail((JSONObject) value)}));
-      } else {
-        Log.wtf(TAG, ERROR_UNKNOWN_TYPE);
-        throw new IllegalArgumentException(ERROR_UNKNOWN_TYPE);
+  /**
+   * Hands feature descriptions to the UI thread in batches, where they are turned into
+   * components for at most {@link #FRAME_BUDGET_MS} at a time.
+   */
+  private class FeatureAdder extends FeatureLoader implements Runnable {
+    private final BlockingQueue<List<YailList>> batches =
+        new ArrayBlockingQueue<List<YailList>>(MAX_PENDING_BATCHES);
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private volatile boolean finished = false;
+    private volatile boolean aborted = false;
+    private List<YailList> batch = new ArrayList<YailList>(FEATURE_BATCH_SIZE);
+
+    // Only used on the UI thread.
+    private final List<MapFeature> added = new ArrayList<MapFeature>();
+    private List<YailList> current = null;
+    private int next = 0;
+    private boolean completed = false;
+
+    FeatureAdder(String url) {
+      super(url);
+    }
+
+    @Override
+    void read(YailList feature) {
+      batch.add(feature);
+      if (batch.size() == FEATURE_BATCH_SIZE) {
+        hand(batch);
+        batch = new ArrayList<YailList>(FEATURE_BATCH_SIZE);
+      }
+    }
+
+    @Override
+    void finish() {
+      if (!batch.isEmpty()) {
+        hand(batch);
       }
+      finished = true;
+      schedule();
+    }
+
+    @Override
+    void abort() {
+      aborted = true;
+      batches.clear();
+      schedule();
     }
-    return YailList.makeList(pairs);
-  }
-
-  private YailList jsonArrayToYail(JSONArray array) throws JSONException {
-    List<Object> items = new ArrayList<Object>();
-    for (int i = 0; i < array.length(); i++) {
-      Object value = array.get(i);
-      if (value instanceof Boolean ||
-          value instanceof Integer ||
-          value instanceof Long ||
-          value instanceof Double ||
-          value instanceof String) {
-        items.add(value);
-      } else if (value instanceof JSONArray) {
-        items.add(jsonArrayToYail((JSONArray) value));
-      } else if (value instanceof JSONObject) {
-        items.add(jsonObjectToYail((JSONObject) value));
-      } else {
-        Log.wtf(TAG, ERROR_UNKNOWN_TYPE);
-        throw new IllegalArgumentException(ERROR_UNKNOWN_TYPE);
+
+    private void hand(List<YailList> features) {
+      try {
+        batches.put(features);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
       }
+      schedule();
     }
-    return YailList.makeList(items);
-  }
 
-  private static String stripBOM(String content) {
-    if (content.charAt(0) == '\uFEFF') {
-      return content.substring(1);
-    } else {
-      return content;
+    private void schedule() {
+      if (scheduled.compareAndSet(false, true)) {
+        androidUIHandler.post(this);
+      }
     }
-  }
 
+    @Override
+    public void run() {
+      if (aborted) {
+        removeAdded();
+        return;
+      }
+      long deadline = SystemClock.uptimeMillis() + FRAME_BUDGET_MS;
+      do {
+        if (current == null) {
+          current = batches.poll();
+          next = 0;
+          if (current == null) {
+            break;
+          }
+        }
+        YailList description = current.get(next++);
+        try {
+          added.add((MapFeature) processGeoJSONFeature(TAG, MapFeatureContainerBase.this,
+              description));
+        } catch (IllegalArgumentException e) {
+          Log.w(TAG, "Skipping invalid feature from " + url + ": " + e.getMessage());
+        }
+        count++;
+        if (next == current.size()) {
+          current = null;
+        }
+      } while (SystemClock.uptimeMillis() < deadline);
+      if (progressDue()) {
+        LoadProgress(url, count);
+      }
+      if (current != null || !batches.isEmpty()) {
+        // Let the map draw a frame before adding more.
+        androidUIHandler.post(this);
+        return;
+      }
+      scheduled.set(false);
+      if (aborted) {
+        // abort could not schedule this to run again while it was running.
+        removeAdded();
+      } else if (!batches.isEmpty()) {
+        // A batch arrived after the queue was found empty.
+        schedule();
+      } else if (finished && !completed) {
+        completed = true;
+        LoadProgress(url, count);
+        FeaturesAdded(url, YailList.makeList(added));
+      }
+    }
+
+    /**
+     * Removes the features added so far, once the document has turned out to be invalid.
+     */
+    private void removeAdded() {
+      for (MapFeature feature : added) {
+        removeFeature(feature);
+      }
+      added.clear();
+      current = null;
+      completed = true;
+    }
+  }
 }
@@ -18,8 +18,6 @@ import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 
-import android.os.Handler;
-
 import java.util.HashMap;
 import java.util.Map;
 
@@ -68,8 +66,7 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
   }
 
   private boolean detectColor;
-  private Handler handler;
-  private final Runnable sensorReader;
+  private final LegoCommandScheduler.Poller<byte[]> sensorReader;
 
   // Fields related to detecting color
   private int previousColor;
@@ -89,57 +86,64 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
    */
   public NxtColorSensor(ComponentContainer container) {
     super(container, "NxtColorSensor");
-    handler = new Handler();
     previousState = State.UNKNOWN;
     previousColor = Component.COLOR_NONE;
-    sensorReader = new Runnable() {
-      public void run() {
-        if (bluetooth != null && bluetooth.IsConnected()) {
-          if (detectColor) {
-            // Detecting color
-            SensorValue<Integer> sensorValue = getColorValue("");
-            if (sensorValue.valid) {
-              int currentColor = sensorValue.value;
-
-              if (currentColor != previousColor) {
-                ColorChanged(currentColor);
-              }
+    sensorReader = new LegoCommandScheduler.Poller<byte[]>() {
+      private LegoCommandScheduler.Reply request;
+
+      @Override
+      void startPoll() {
+        request = requestInputValues("", port);
+      }
+
+      @Override
+      byte[] finishPoll() {
+        return getInputValues("", request);
+      }
+
+      @Override
+      void handleSample(byte[] returnPackage) {
+        if (detectColor) {
+          // Detecting color
+          SensorValue<Integer> sensorValue = getColorValue(returnPackage);
+          if (sensorValue.valid) {
+            int currentColor = sensorValue.value;
 
-              previousColor = currentColor;
+            if (currentColor != previousColor) {
+              ColorChanged(currentColor);
             }
 
-          } else {
-            // Detecting light
-            SensorValue<Integer> sensorValue = getLightValue("");
-            if (sensorValue.valid) {
-              State currentState;
-              if (sensorValue.value < bottomOfRange) {
-                currentState = State.BELOW_RANGE;
-              } else if (sensorValue.value > topOfRange) {
-                currentState = State.ABOVE_RANGE;
-              } else {
-                currentState = State.WITHIN_RANGE;
-              }
+            previousColor = currentColor;
+          }
 
-              if (currentState != previousState) {
-                if (currentState == State.BELOW_RANGE && belowRangeEventEnabled) {
-                  BelowRange();
-                }
-                if (currentState == State.WITHIN_RANGE && withinRangeEventEnabled) {
-                  WithinRange();
-                }
-                if (currentState == State.ABOVE_RANGE && aboveRangeEventEnabled) {
-                  AboveRange();
-                }
-              }
+        } else {
+          // Detecting light
+          SensorValue<Integer> sensorValue = getLightValue(returnPackage);
+          if (sensorValue.valid) {
+            State currentState;
+            if (sensorValue.value < bottomOfRange) {
+              currentState = State.BELOW_RANGE;
+            } else if (sensorValue.value > topOfRange) {
+              currentState = State.ABOVE_RANGE;
+            } else {
+              currentState = State.WITHIN_RANGE;
+            }
 
-              previousState = currentState;
+            if (currentState != previousState) {
+              if (currentState == State.BELOW_RANGE && belowRangeEventEnabled) {
+                BelowRange();
+              }
+              if (currentState == State.WITHIN_RANGE && withinRangeEventEnabled) {
+                WithinRange();
+              }
+              if (currentState == State.ABOVE_RANGE && aboveRangeEventEnabled) {
+                AboveRange();
+              }
             }
+
+            previousState = currentState;
           }
         }
-        if (isHandlerNeeded()) {
-          handler.post(sensorReader);
-        }
       }
     };
 
@@ -216,12 +220,12 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling(sensorReader);
     }
     previousColor = Component.COLOR_NONE;
     previousState = State.UNKNOWN;
     if (!handlerWasNeeded && handlerIsNeeded) {
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -250,7 +254,10 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
   }
 
   private SensorValue<Integer> getColorValue(String functionName) {
-    byte[] returnPackage = getInputValues(functionName, port);
+    return getColorValue(getInputValues(functionName, port));
+  }
+
+  private SensorValue<Integer> getColorValue(byte[] returnPackage) {
     if (returnPackage != null) {
       boolean valid = getBooleanValueFromBytes(returnPackage, 4);
       if (valid) {
@@ -290,11 +297,11 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling(sensorReader);
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousColor = Component.COLOR_NONE;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -330,7 +337,10 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
   }
 
   private SensorValue<Integer> getLightValue(String functionName) {
-    byte[] returnPackage = getInputValues(functionName, port);
+    return getLightValue(getInputValues(functionName, port));
+  }
+
+  private SensorValue<Integer> getLightValue(byte[] returnPackage) {
     if (returnPackage != null) {
       boolean valid = getBooleanValueFromBytes(returnPackage, 4);
       if (valid) {
@@ -413,11 +423,11 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling(sensorReader);
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -455,11 +465,11 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling(sensorReader);
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -494,11 +504,11 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling(sensorReader);
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -557,7 +567,7 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
   @Override
   public void onDelete() {
-    handler.removeCallbacks(sensorReader);
+    stopPolling(sensorReader);
     super.onDelete();
   }
 }
@@ -17,8 +17,6 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 
-import android.os.Handler;
-
 /**
  * A component that provides a high-level interface to a light sensor on a LEGO
  * MINDSTORMS NXT robot.
@@ -38,8 +36,7 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
   private static final int DEFAULT_BOTTOM_OF_RANGE = 256;
   private static final int DEFAULT_TOP_OF_RANGE = 767;
 
-  private Handler handler;
-  private final Runnable sensorReader;
+  private final LegoCommandScheduler.Poller<byte[]> sensorReader;
   private State previousState;
   private int bottomOfRange;
   private int topOfRange;
@@ -53,39 +50,46 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
    */
   public NxtLightSensor(ComponentContainer container) {
     super(container, "NxtLightSensor");
-    handler = new Handler();
     previousState = State.UNKNOWN;
-    sensorReader = new Runnable() {
-      public void run() {
-        if (bluetooth != null && bluetooth.IsConnected()) {
-          SensorValue<Integer> sensorValue = getLightValue("");
-          if (sensorValue.valid) {
-            State currentState;
-            if (sensorValue.value < bottomOfRange) {
-              currentState = State.BELOW_RANGE;
-            } else if (sensorValue.value > topOfRange) {
-              currentState = State.ABOVE_RANGE;
-            } else {
-              currentState = State.WITHIN_RANGE;
-            }
+    sensorReader = new LegoCommandScheduler.Poller<byte[]>() {
+      private LegoCommandScheduler.Reply request;
 
-            if (currentState != previousState) {
-              if (currentState == State.BELOW_RANGE && belowRangeEventEnabled) {
-                BelowRange();
-              }
-              if (currentState == State.WITHIN_RANGE && withinRangeEventEnabled) {
-                WithinRange();
-              }
-              if (currentState == State.ABOVE_RANGE && aboveRangeEventEnabled) {
-                AboveRange();
-              }
-            }
+      @Override
+      void startPoll() {
+        request = requestInputValues("", port);
+      }
 
-            previousState = currentState;
+      @Override
+      byte[] finishPoll() {
+        return getInputValues("", request);
+      }
+
+      @Override
+      void handleSample(byte[] returnPackage) {
+        SensorValue<Integer> sensorValue = getLightValue(returnPackage);
+        if (sensorValue.valid) {
+          State currentState;
+          if (sensorValue.value < bottomOfRange) {
+            currentState = State.BELOW_RANGE;
+          } else if (sensorValue.value > topOfRange) {
+            currentState = State.ABOVE_RANGE;
+          } else {
+            currentState = State.WITHIN_RANGE;
           }
-        }
-        if (isHandlerNeeded()) {
-          handler.post(sensorReader);
+
+          if (currentState != previousState) {
+            if (currentState == State.BELOW_RANGE && belowRangeEventEnabled) {
+              BelowRange();
+            }
+            if (currentState == State.WITHIN_RANGE && withinRangeEventEnabled) {
+              WithinRange();
+            }
+            if (currentState == State.ABOVE_RANGE && aboveRangeEventEnabled) {
+              AboveRange();
+            }
+          }
+
+          previousState = currentState;
         }
       }
     };
@@ -156,7 +160,10 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
   }
 
   private SensorValue<Integer> getLightValue(String functionName) {
-    byte[] returnPackage = getInputValues(functionName, port);
+    return getLightValue(getInputValues(functionName, port));
+  }
+
+  private SensorValue<Integer> getLightValue(byte[] returnPackage) {
     if (returnPackage != null) {
       boolean valid = getBooleanValueFromBytes(returnPackage, 4);
       if (valid) {
@@ -239,11 +246,11 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling(sensorReader);
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -276,11 +283,11 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling(sensorReader);
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -313,11 +320,11 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling(sensorReader);
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -334,7 +341,7 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
   @Override
   public void onDelete() {
-    handler.removeCallbacks(sensorReader);
+    stopPolling(sensorReader);
     super.onDelete();
   }
 }
@@ -17,8 +17,6 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 
-import android.os.Handler;
-
 /**
  * A component that provides a high-level interface to a sound sensor on a LEGO
  * MINDSTORMS NXT robot.
@@ -38,8 +36,7 @@ public class NxtSoundSensor extends LegoMindstormsNxtSensor implements Deleteabl
   private static final int DEFAULT_BOTTOM_OF_RANGE = 256;
   private static final int DEFAULT_TOP_OF_RANGE = 767;
 
-  private Handler handler;
-  private final Runnable sensorReader;
+  private final LegoCommandScheduler.Poller<byte[]> sensorReader;
   private State previousState;
   private int bottomOfRange;
   private int topOfRange;
@@ -52,39 +49,46 @@ public class NxtSoundSensor extends LegoMindstormsNxtSensor implements Deleteabl
    */
   public NxtSoundSensor(ComponentContainer container) {
     super(container, "NxtSoundSensor");
-    handler = new Handler();
     previousState = State.UNKNOWN;
-    sensorReader = new Runnable() {
-      public void run() {
-        if (bluetooth != null && bluetooth.IsConnected()) {
-          SensorValue<Integer> sensorValue = getSoundValue("");
-          if (sensorValue.valid) {
-            State currentState;
-            if (sensorValue.value < bottomOfRange) {
-              currentState = State.BELOW_RANGE;
-            } else if (sensorValue.value > topOfRange) {
-              currentState = State.ABOVE_RANGE;
-            } else {
-              currentState = State.WITHIN_RANGE;
-            }
+    sensorReader = new LegoCommandScheduler.Poller<byte[]>() {
+      private LegoCommandScheduler.Reply request;
 
-            if (currentState != previousState) {
-              if (currentState == State.BELOW_RANGE && belowRangeEventEnabled) {
-                BelowRange();
-              }
-              if (currentState == State.WITHIN_RANGE && withinRangeEventEnabled) {
-                WithinRange();
-              }
-              if (currentState == State.ABOVE_RANGE && aboveRangeEventEnabled) {
-                AboveRange();
-              }
-            }
+      @Override
+      void startPoll() {
+        request = requestInputValues("", port);
+      }
 
-            previousState = currentState;
+      @Override
+      byte[] finishPoll() {
+        return getInputValues("", request);
+      }
+
+      @Override
+      void handleSample(byte[] returnPackage) {
+        SensorValue<Integer> sensorValue = getSoundValue(returnPackage);
+        if (sensorValue.valid) {
+          State currentState;
+          if (sensorValue.value < bottomOfRange) {
+            currentState = State.BELOW_RANGE;
+          } else if (sensorValue.value > topOfRange) {
+            currentState = State.ABOVE_RANGE;
+          } else {
+            currentState = State.WITHIN_RANGE;
           }
-        }
-        if (isHandlerNeeded()) {
-          handler.post(sensorReader);
+
+          if (currentState != previousState) {
+            if (currentState == State.BELOW_RANGE && belowRangeEventEnabled) {
+              BelowRange();
+            }
+            if (currentState == State.WITHIN_RANGE && withinRangeEventEnabled) {
+              WithinRange();
+            }
+            if (currentState == State.ABOVE_RANGE && aboveRangeEventEnabled) {
+              AboveRange();
+            }
+          }
+
+          previousState = currentState;
         }
       }
     };
@@ -131,7 +135,10 @@ public class NxtSoundSensor extends LegoMindstormsNxtSensor implements Deleteabl
   }
 
   private SensorValue<Integer> getSoundValue(String functionName) {
-    byte[] returnPackage = getInputValues(functionName, port);
+    return getSoundValue(getInputValues(functionName, port));
+  }
+
+  private SensorValue<Integer> getSoundValue(byte[] returnPackage) {
     if (returnPackage != null) {
       boolean valid = getBooleanValueFromBytes(returnPackage, 4);
       if (valid) {
@@ -214,11 +221,11 @@ public class NxtSoundSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling(sensorReader);
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -251,11 +258,11 @@ public class NxtSoundSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling(sensorReader);
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -288,11 +295,11 @@ public class NxtSoundSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling(sensorReader);
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -309,7 +316,7 @@ public class NxtSoundSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
   @Override
   public void onDelete() {
-    handler.removeCallbacks(sensorReader);
+    stopPolling(sensorReader);
     super.onDelete();
   }
 }
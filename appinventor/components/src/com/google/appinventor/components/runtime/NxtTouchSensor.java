@@ -17,8 +17,6 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 
-import android.os.Handler;
-
 /**
  * A component that provides a high-level interface to a touch sensor on a LEGO
  * MINDSTORMS NXT robot.
@@ -37,9 +35,8 @@ public class NxtTouchSensor extends LegoMindstormsNxtSensor implements Deleteabl
   private enum State { UNKNOWN, PRESSED, RELEASED }
   private static final String DEFAULT_SENSOR_PORT = "1";
 
-  private Handler handler;
   private State previousState;
-  private final Runnable sensorReader;
+  private final LegoCommandScheduler.Poller<byte[]> sensorReader;
   private boolean pressedEventEnabled;
   private boolean releasedEventEnabled;
 
@@ -48,29 +45,36 @@ public class NxtTouchSensor extends LegoMindstormsNxtSensor implements Deleteabl
    */
   public NxtTouchSensor(ComponentContainer container) {
     super(container, "NxtTouchSensor");
-    handler = new Handler();
     previousState = State.UNKNOWN;
-    sensorReader = new Runnable() {
-      public void run() {
-        if (bluetooth != null && bluetooth.IsConnected()) {
-          SensorValue<Boolean> sensorValue = getPressedValue("");
-          if (sensorValue.valid) {
-            State currentState = sensorValue.value ? State.PRESSED : State.RELEASED;
-
-            if (currentState != previousState) {
-              if (currentState == State.PRESSED && pressedEventEnabled) {
-                Pressed();
-              }
-              if (currentState == State.RELEASED && releasedEventEnabled) {
-                Released();
-              }
-            }
+    sensorReader = new LegoCommandScheduler.Poller<byte[]>() {
+      private LegoCommandScheduler.Reply request;
+
+      @Override
+      void startPoll() {
+        request = requestInputValues("", port);
+      }
+
+      @Override
+      byte[] finishPoll() {
+        return getInputValues("", request);
+      }
+
+      @Override
+      void handleSample(byte[] returnPackage) {
+        SensorValue<Boolean> sensorValue = getPressedValue(returnPackage);
+        if (sensorValue.valid) {
+          State currentState = sensorValue.value ? State.PRESSED : State.RELEASED;
 
-            previousState = currentState;
+          if (currentState != previousState) {
+            if (currentState == State.PRESSED && pressedEventEnabled) {
+              Pressed();
+            }
+            if (currentState == State.RELEASED && releasedEventEnabled) {
+              Released();
+            }
           }
-        }
-        if (isHandlerNeeded()) {
-          handler.post(sensorReader);
+
+          previousState = currentState;
         }
       }
     };
@@ -112,7 +116,10 @@ public class NxtTouchSensor extends LegoMindstormsNxtSensor implements Deleteabl
   }
 
   private SensorValue<Boolean> getPressedValue(String functionName) {
-    byte[] returnPackage = getInputValues(functionName, port);
+    return getPressedValue(getInputValues(functionName, port));
+  }
+
+  private SensorValue<Boolean> getPressedValue(byte[] returnPackage) {
     if (returnPackage != null) {
       boolean valid = getBooleanValueFromBytes(returnPackage, 4);
       if (valid) {
@@ -149,11 +156,11 @@ public class NxtTouchSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling(sensorReader);
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -186,11 +193,11 @@ public class NxtTouchSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling(sensorReader);
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -207,7 +214,7 @@ public class NxtTouchSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
   @Override
   public void onDelete() {
-    handler.removeCallbacks(sensorReader);
+    stopPolling(sensorReader);
     super.onDelete();
   }
 }
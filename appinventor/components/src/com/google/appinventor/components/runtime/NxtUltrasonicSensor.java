@@ -17,8 +17,6 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 
-import android.os.Handler;
-
 /**
  * A component that provides a high-level interface to an ultrasonic sensor on a LEGO
  * MINDSTORMS NXT robot.
@@ -38,8 +36,7 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
   private static final int DEFAULT_BOTTOM_OF_RANGE = 30;
   private static final int DEFAULT_TOP_OF_RANGE = 90;
 
-  private Handler handler;
-  private final Runnable sensorReader;
+  private final LegoCommandScheduler.Poller<SensorValue<Integer>> sensorReader;
   private State previousState;
   private int bottomOfRange;
   private int topOfRange;
@@ -52,39 +49,44 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
    */
   public NxtUltrasonicSensor(ComponentContainer container) {
     super(container, "NxtUltrasonicSensor");
-    handler = new Handler();
     previousState = State.UNKNOWN;
-    sensorReader = new Runnable() {
-      public void run() {
-        if (bluetooth != null && bluetooth.IsConnected()) {
-          SensorValue<Integer> sensorValue = getDistanceValue("");
-          if (sensorValue.valid) {
-            State currentState;
-            if (sensorValue.value < bottomOfRange) {
-              currentState = State.BELOW_RANGE;
-            } else if (sensorValue.value > topOfRange) {
-              currentState = State.ABOVE_RANGE;
-            } else {
-              currentState = State.WITHIN_RANGE;
-            }
+    sensorReader = new LegoCommandScheduler.Poller<SensorValue<Integer>>() {
+      @Override
+      void startPoll() {
+        // The I2C read takes several round trips, each depending on the last, so it
+        // is all done in finishPoll.
+      }
 
-            if (currentState != previousState) {
-              if (currentState == State.BELOW_RANGE && belowRangeEventEnabled) {
-                BelowRange();
-              }
-              if (currentState == State.WITHIN_RANGE && withinRangeEventEnabled) {
-                WithinRange();
-              }
-              if (currentState == State.ABOVE_RANGE && aboveRangeEventEnabled) {
-                AboveRange();
-              }
-            }
+      @Override
+      SensorValue<Integer> finishPoll() {
+        return getDistanceValue("");
+      }
 
-            previousState = currentState;
+      @Override
+      void handleSample(SensorValue<Integer> sensorValue) {
+        if (sensorValue.valid) {
+          State currentState;
+          if (sensorValue.value < bottomOfRange) {
+            currentState = State.BELOW_RANGE;
+          } else if (sensorValue.value > topOfRange) {
+            currentState = State.ABOVE_RANGE;
+          } else {
+            currentState = State.WITHIN_RANGE;
           }
-        }
-        if (isHandlerNeeded()) {
-          handler.post(sensorReader);
+
+          if (currentState != previousState) {
+            if (currentState == State.BELOW_RANGE && belowRangeEventEnabled) {
+              BelowRange();
+            }
+            if (currentState == State.WITHIN_RANGE && withinRangeEventEnabled) {
+              WithinRange();
+            }
+            if (currentState == State.ABOVE_RANGE && aboveRangeEventEnabled) {
+              AboveRange();
+            }
+          }
+
+          previousState = currentState;
         }
       }
     };
@@ -236,11 +238,11 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling(sensorReader);
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -273,11 +275,11 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling(sensorReader);
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -310,11 +312,11 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
 
     boolean handlerIsNeeded = isHandlerNeeded();
     if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+      stopPolling(sensorReader);
     }
     if (!handlerWasNeeded && handlerIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -331,7 +333,7 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
 
   @Override
   public void onDelete() {
-    handler.removeCallbacks(sensorReader);
+    stopPolling(sensorReader);
     super.onDelete();
   }
 }
@@ -18,6 +18,7 @@ import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.util.FroyoUtil;
 import com.google.appinventor.components.runtime.util.OrientationSensorUtil;
 import com.google.appinventor.components.runtime.util.SdkLevel;
+import com.google.appinventor.components.runtime.util.SensorSampler;
 
 import android.content.Context;
 import android.hardware.Sensor;
@@ -79,6 +80,10 @@ public class OrientationSensor extends AndroidNonvisibleComponent
   private final Sensor magneticFieldSensor;
   private boolean listening;
 
+  // Decides which readings are used to compute the orientation passed on in OrientationChanged
+  // events.
+  private final SensorSampler sampler = new SensorSampler();
+
   // Pre-allocated arrays to hold sensor data so that we don't cause so many garbage collections
   // while processing sensor events. All are used only in onSensorChanged.
   private final float[] accels = new float[DIMENSIONS];  // acceleration vector
@@ -119,10 +124,10 @@ public class OrientationSensor extends AndroidNonvisibleComponent
 
   private void startListening() {
     if (!listening) {
-      sensorManager.registerListener(this, accelerometerSensor,
-                                     SensorManager.SENSOR_DELAY_NORMAL);
-      sensorManager.registerListener(this, magneticFieldSensor,
-                                     SensorManager.SENSOR_DELAY_NORMAL);
+      SensorSampler.registerListener(sensorManager, this, accelerometerSensor,
+                                     SensorManager.SENSOR_DELAY_NORMAL, sampler.getInterval());
+      SensorSampler.registerListener(sensorManager, this, magneticFieldSensor,
+                                     SensorManager.SENSOR_DELAY_NORMAL, sampler.getInterval());
       listening = true;
     }
   }
@@ -133,6 +138,7 @@ public class OrientationSensor extends AndroidNonvisibleComponent
       listening = false;
 
       // Throw out sensor information that will go stale.
+      sampler.reset();
       accelsFilled = false;
       magsFilled = false;
     }
@@ -200,6 +206,36 @@ public class OrientationSensor extends AndroidNonvisibleComponent
     }
   }
 
+  /**
+   * SampleInterval property getter method.
+   *
+   * @return  minimum interval between OrientationChanged events in milliseconds
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "The minimum interval, in milliseconds, between OrientationChanged events. " +
+      "If 0, the event is triggered whenever the accelerometer or magnetic field sensor reports.")
+  public int SampleInterval() {
+    return sampler.getInterval();
+  }
+
+  /**
+   * SampleInterval property setter method.
+   *
+   * @param interval  minimum interval between OrientationChanged events in milliseconds
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+      defaultValue = "0")
+  @SimpleProperty
+  public void SampleInterval(int interval) {
+    sampler.setInterval(interval);
+    if (listening) {
+      // Register again so that the sensors can batch their readings over the new interval.
+      sensorManager.unregisterListener(this);
+      listening = false;
+      startListening();
+    }
+  }
+
   /**
    * Pitch property getter method (read-only property).
    *
@@ -354,8 +390,9 @@ public class OrientationSensor extends AndroidNonvisibleComponent
           return;
       }
 
-      // If we have both acceleration and magnetic information, recompute values.
-      if (accelsFilled && magsFilled) {
+      // If we have both acceleration and magnetic information, recompute values, but no more
+      // often than once per sample interval.
+      if (accelsFilled && magsFilled && sampler.isDue(sensorEvent.timestamp)) {
         SensorManager.getRotationMatrix(rotationMatrix,    // output
                                         inclinationMatrix, // output
                                         accels,
@@ -16,6 +16,7 @@ import com.google.appinventor.components.annotations.SimpleProperty;
 import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
+import com.google.appinventor.components.runtime.util.SensorWindow;
 
 import android.content.Context;
 import android.content.SharedPreferences;
@@ -53,30 +54,29 @@ public class Pedometer extends AndroidNonvisibleComponent
   private final SensorManager sensorManager;
 
   private int       stopDetectionTimeout = 2000;
-  private int       winPos = 0, intervalPos = 0;
+  private int       intervalPos = 0;
   private int       numStepsWithFilter = 0, numStepsRaw = 0;
   private float     lastValley = 0;
-  private float[]   lastValues = new float[WIN_SIZE];
   private float     strideLength = STRIDE_LENGTH;
   private float     totalDistance = 0;
   private long[]    stepInterval = new long[NUM_INTERVALS];
   private long      stepTimestamp = 0;
   private long      startTime = 0, prevStopClockTime = 0;
   private boolean   foundValley = false;
-  private boolean   startPeaking = false;
   private boolean   foundNonStep = true;
   private boolean   pedometerPaused = true;
 
-  private float[] avgWindow = new float[10];
-  private int avgPos = 0;
+  // The last WIN_SIZE smoothed readings, searched for peaks and valleys once it is full.
+  private final SensorWindow lastValues = new SensorWindow(WIN_SIZE);
+
+  // The last 10 magnitudes of the acceleration, whose mean is smoothed into lastValues.
+  private final SensorWindow avgWindow = new SensorWindow(10);
 
   /** Constructor. */
   public Pedometer(ComponentContainer container) {
     super(container.$form());
     context = container.$context();
     // some initialization
-    winPos = 0;
-    startPeaking = false;
     numStepsWithFilter = 0;
     numStepsRaw = 0;
 
@@ -330,27 +330,15 @@ public class Pedometer extends AndroidNonvisibleComponent
   /**
    * Checks if the current middle of the window is the local peak.
    */
-  private boolean isPeak() {
-    int mid = (winPos + WIN_SIZE / 2) % WIN_SIZE;
-    for (int i = 0; i < WIN_SIZE; i++) {
-      if (i != mid && lastValues[i] > lastValues[mid]) {
-        return false;
-      }
-    }
-    return true;
+  private boolean isPeak(float middle) {
+    return middle == lastValues.max();
   }
 
   /**
-   * Checks if the current middle of the window is the local peak.
+   * Checks if the current middle of the window is the local valley.
    */
-  private boolean isValley() {
-    int mid = (winPos + WIN_SIZE / 2) % WIN_SIZE;
-    for (int i = 0; i < WIN_SIZE; i++) {
-      if (i != mid && lastValues[i] < lastValues[mid]) {
-        return false;
-      }
-    }
-    return true;
+  private boolean isValley(float middle) {
+    return middle == lastValues.min();
   }
 
   // SensorEventListener implementation
@@ -369,12 +357,13 @@ public class Pedometer extends AndroidNonvisibleComponent
     float magnitude = 0;
     for (float v : values) magnitude += v * v;
     // Check if the middle reading within the current window represents
-    // a peak/valley.
-    int mid = (winPos + WIN_SIZE / 2) % WIN_SIZE;
+    // a peak/valley. Peak/valley detection starts once the window is full.
+    boolean startPeaking = lastValues.isFull();
+    float middle = startPeaking ? lastValues.get(WIN_SIZE / 2 - 1) : 0;
 
     // Peak is detected
-    if (startPeaking && isPeak()) {
-      if (foundValley && lastValues[mid] - lastValley > PEAK_VALLEY_RANGE) {
+    if (startPeaking && isPeak(middle)) {
+      if (foundValley && middle - lastValley > PEAK_VALLEY_RANGE) {
         // Step detected on axis k with maximum peak-valley range.
         long timestamp = System.currentTimeMillis();
         stepInterval[intervalPos] = timestamp - stepTimestamp;
@@ -398,37 +387,26 @@ public class Pedometer extends AndroidNonvisibleComponent
       }
     }
     // Valley is detected
-    if (startPeaking && isValley()) {
+    if (startPeaking && isValley(middle)) {
       foundValley = true;
-      lastValley = lastValues[mid];
+      lastValley = middle;
     }
     // Store latest accelerometer reading in the window.
-    avgWindow[avgPos] = magnitude;
-    avgPos = (avgPos + 1) % avgWindow.length;
-    lastValues[winPos] = 0;
-    for (float m : avgWindow) lastValues[winPos] += m;
-    lastValues[winPos] /= avgWindow.length;
-    if (startPeaking || winPos > 1) {
-      int i = winPos;
-      if (--i < 0) i += WIN_SIZE;
-      lastValues[winPos] += 2 * lastValues[i];
-      if (--i < 0) i += WIN_SIZE;
-      lastValues[winPos] += lastValues[i];
-      lastValues[winPos] /= 4;
-    } else if (!startPeaking && winPos == 1) {
-      lastValues[1] = (lastValues[1] + lastValues[0]) / 2f;
+    avgWindow.add(magnitude);
+    // Divided by the capacity rather than the number of readings, so the first few readings are
+    // averaged with zeros as they always have been.
+    float value = avgWindow.sum() / avgWindow.capacity();
+    if (lastValues.size() > 1) {
+      value = (value + 2 * lastValues.get(0) + lastValues.get(1)) / 4;
+    } else if (lastValues.size() == 1) {
+      value = (value + lastValues.get(0)) / 2f;
     }
+    lastValues.add(value);
 
     long elapsedTimestamp = System.currentTimeMillis();
     if (elapsedTimestamp - stepTimestamp > stopDetectionTimeout) {
       stepTimestamp = elapsedTimestamp;
     }
-    // Once the buffer is full, start peak/valley detection.
-    if (winPos == WIN_SIZE - 1 && !startPeaking) {
-      startPeaking = true;
-    }
-    // Increment position within the window.
-    winPos = (winPos + 1) % WIN_SIZE;
   }
 
   // Deleteable implementation
@@ -15,12 +15,17 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.errors.YailRuntimeError;
+import com.google.appinventor.components.runtime.util.GingerbreadUtil;
 import com.google.appinventor.components.runtime.util.JsonUtil;
+import com.google.appinventor.components.runtime.util.SdkLevel;
 
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import android.content.Context;
 import android.content.SharedPreferences;
@@ -63,7 +68,14 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
 
   public static final String DEFAULT_NAMESPACE="TinyDB1";
 
+  // The values read so far from each SharedPreferences, already converted from JSON, so that
+  // reading a tag again doesn't parse it again. All the TinyDBs with the same namespace get the
+  // same SharedPreferences from Android, and so share the same snapshot.
+  private static final Map<SharedPreferences, Snapshot> snapshots =
+      new WeakHashMap<SharedPreferences, Snapshot>();
+
   private SharedPreferences sharedPreferences;
+  private Snapshot snapshot;
   private String namespace;
 
   private Context context;  // this was a local in constructor and final not private
@@ -85,6 +97,15 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
   public void Namespace(String namespace) {
     this.namespace = namespace;
     sharedPreferences = context.getSharedPreferences(namespace, Context.MODE_PRIVATE);
+    synchronized (snapshots) {
+      snapshot = snapshots.get(sharedPreferences);
+      if (snapshot == null) {
+        snapshot = new Snapshot();
+        snapshots.put(sharedPreferences, snapshot);
+        // Values changed by anyone else who uses the same SharedPreferences are read again.
+        sharedPreferences.registerOnSharedPreferenceChangeListener(snapshot);
+      }
+    }
   }
 
   @SimpleProperty(description = "Namespace for storing data.")
@@ -105,7 +126,8 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
     final SharedPreferences.Editor sharedPrefsEditor = sharedPreferences.edit();
     try {
       sharedPrefsEditor.putString(tag, JsonUtil.getJsonRepresentation(valueToStore));
-      sharedPrefsEditor.commit();
+      save(sharedPrefsEditor);
+      snapshot.remove(tag);
     } catch (JSONException e) {
       throw new YailRuntimeError("Value failed to convert to JSON.", "JSON Creation Error.");
     }
@@ -122,10 +144,7 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
   @SimpleFunction
   public Object GetValue(final String tag, final Object valueIfTagNotThere) {
     try {
-      String value = sharedPreferences.getString(tag, "");
-      // If there's no entry with tag as a key then return the empty string.
-      //    was  return (value.length() == 0) ? "" : JsonUtil.getObjectFromJson(value);
-      return (value.length() == 0) ? valueIfTagNotThere : JsonUtil.getObjectFromJson(value);
+      return snapshot.getValue(sharedPreferences, tag, valueIfTagNotThere);
     } catch (JSONException e) {
       throw new YailRuntimeError("Value failed to convert from JSON.", "JSON Creation Error.");
     }
@@ -139,12 +158,7 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
    */
   @SimpleFunction
   public Object GetTags() {
-    List<String> keyList = new ArrayList<String>();
-    Map<String,?> keyValues = sharedPreferences.getAll();
-    // here is the simple way to get keys
-    keyList.addAll(keyValues.keySet());
-    java.util.Collections.sort(keyList);
-    return keyList;
+    return snapshot.getTags(sharedPreferences);
   }
 
   /**
@@ -155,7 +169,8 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
   public void ClearAll() {
     final SharedPreferences.Editor sharedPrefsEditor = sharedPreferences.edit();
     sharedPrefsEditor.clear();
-    sharedPrefsEditor.commit();
+    save(sharedPrefsEditor);
+    snapshot.clear();
   }
 
   /**
@@ -167,13 +182,93 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
   public void ClearTag(final String tag) {
     final SharedPreferences.Editor sharedPrefsEditor = sharedPreferences.edit();
     sharedPrefsEditor.remove(tag);
-    sharedPrefsEditor.commit();
+    save(sharedPrefsEditor);
+    snapshot.remove(tag);
   }
 
   @Override
   public void onDelete() {
     final SharedPreferences.Editor sharedPrefsEditor = sharedPreferences.edit();
     sharedPrefsEditor.clear();
-    sharedPrefsEditor.commit();
+    save(sharedPrefsEditor);
+    snapshot.clear();
+  }
+
+  /**
+   * Saves the changes in the editor. From Gingerbread on, the changes are seen by every reader
+   * at once and written to disk in the background, in the order they were made, rather than
+   * waiting for the disk on the UI thread. Android finishes writing them before the app is
+   * paused or stopped.
+   */
+  private static void save(SharedPreferences.Editor editor) {
+    if (SdkLevel.getLevel() >= SdkLevel.LEVEL_GINGERBREAD) {
+      GingerbreadUtil.applyPreferences(editor);
+    } else {
+      editor.commit();
+    }
+  }
+
+  /**
+   * The values read from one SharedPreferences, converted from JSON, and its sorted tags.
+   */
+  private static class Snapshot implements SharedPreferences.OnSharedPreferenceChangeListener {
+    // Stands for a tag that isn't stored.
+    private static final Object NOT_THERE = new Object();
+
+    private final Map<String, Object> values = new HashMap<String, Object>();
+    private List<String> tags = null;  // null until read again after a change
+
+    synchronized Object getValue(SharedPreferences sharedPreferences, String tag,
+        Object valueIfTagNotThere) throws JSONException {
+      Object value;
+      if (values.containsKey(tag)) {
+        value = values.get(tag);
+      } else {
+        String json = sharedPreferences.getString(tag, "");
+        // If there's no entry with tag as a key then return valueIfTagNotThere.
+        value = (json.length() == 0) ? NOT_THERE : JsonUtil.getObjectFromJson(json);
+        values.put(tag, value);
+      }
+      return (value == NOT_THERE) ? valueIfTagNotThere : copyLists(value);
+    }
+
+    synchronized List<String> getTags(SharedPreferences sharedPreferences) {
+      if (tags == null) {
+        tags = new ArrayList<String>(sharedPreferences.getAll().keySet());
+        Collections.sort(tags);
+      }
+      return new ArrayList<String>(tags);
+    }
+
+    synchronized void remove(String tag) {
+      values.remove(tag);
+      tags = null;
+    }
+
+    synchronized void clear() {
+      values.clear();
+      tags = null;
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+      remove(key);
+    }
+
+    /**
+     * Copies the lists in a value, so that changing what GetValue returned doesn't change the
+     * snapshot.
+     */
+    private static Object copyLists(Object value) {
+      if (value instanceof List) {
+        List<?> list = (List<?>) value;
+        List<Object> copy = new ArrayList<Object>(list.size());
+        for (Object item : list) {
+          copy.add(copyLists(item));
+        }
+        return copy;
+      }
+      return value;
+    }
   }
 }
@@ -23,14 +23,24 @@ import com.google.appinventor.components.runtime.util.AsyncCallbackPair;
 import com.google.appinventor.components.runtime.util.AsynchUtil;
 import com.google.appinventor.components.runtime.util.JsonUtil;
 import com.google.appinventor.components.runtime.util.WebServiceUtil;
+import com.google.appinventor.components.runtime.util.YailList;
 
 import android.os.Handler;
+import android.os.SystemClock;
 
+import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 import org.json.JSONArray;
 import org.json.JSONException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 // When the component is installed in App Inventor, the Javadoc
 // comments will become included in the automatically-generated system
 // documentation, except for lines starting with tags (such as @author).
@@ -74,10 +84,87 @@ public class TinyWebDB extends AndroidNonvisibleComponent implements Component {
   private static final String TAG_PARAMETER = "tag";
   private static final String VALUE_PARAMETER = "value";
   private static final String GETVALUE_COMMAND = "getvalue";
+  private static final String STOREVALUES_COMMAND = "storeavalues";
+  private static final String GETVALUES_COMMAND = "getvalues";
+  private static final String TAGS_PARAMETER = "tags";
+  private static final String VALUES_PARAMETER = "values";
+  private static final int MAX_CACHED_VALUES = 500;
 
   private String serviceURL;
   private Handler androidUIHandler;
 
+  // How long, in milliseconds, a value read from the Web service is
+  // used without asking the service again.  0 turns the cache off.
+  private volatile int cacheTimeToLive = 0;
+
+  // The values read from the Web service, by tag, least recently used
+  // first.  Guarded by itself.
+  private final Map<String, CachedValue> cache =
+      new LinkedHashMap<String, CachedValue>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedValue> eldest) {
+          return size() > MAX_CACHED_VALUES;
+        }
+      };
+
+  // Set once the Web service has answered the getvalues or storeavalues
+  // command as one it doesn't know, so that GetValues and StoreValues
+  // stop trying them.
+  private volatile boolean batchUnsupported = false;
+
+  /**
+   * A value read from the Web service, with the ETag the service sent
+   * with it (if any) and when it was last known to be current.
+   */
+  private static class CachedValue {
+    final Object value;
+    final String etag;
+    volatile long validatedAt;
+
+    CachedValue(Object value, String etag) {
+      this.value = value;
+      this.etag = etag;
+      this.validatedAt = SystemClock.elapsedRealtime();
+    }
+  }
+
+  /**
+   * Signals a failed Web service command, carrying the message to pass
+   * to WebServiceError.
+   */
+  private static class WebServiceException extends Exception {
+    WebServiceException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * An AsyncCallbackPair that keeps the result of a command posted
+   * with WebServiceUtil, which calls back on the posting thread, so
+   * that several commands can be posted one after another.
+   */
+  private static class CommandResult<T> implements AsyncCallbackPair<T> {
+    private T result;
+    private String failure;
+
+    public void onSuccess(T result) {
+      this.result = result;
+    }
+
+    public void onFailure(String message) {
+      if (failure == null) {
+        failure = message;
+      }
+    }
+
+    T get() throws WebServiceException {
+      if (failure != null) {
+        throw new WebServiceException(failure);
+      }
+      return result;
+    }
+  }
+
   /**
    * Creates a new TinyWebDB component.
    *
@@ -127,6 +214,35 @@ public class TinyWebDB extends AndroidNonvisibleComponent implements Component {
   @SimpleProperty
   public void ServiceURL(String url) {
     serviceURL = url;
+    // Values read from another service, and what it supports, no longer apply.
+    clearCache();
+    batchUnsupported = false;
+  }
+
+  /**
+   * Returns how long, in milliseconds, values read from the Web service are
+   * kept and reused.
+   */
+  @SimpleProperty(
+      category = PropertyCategory.BEHAVIOR)
+  public int CacheTimeToLive() {
+    return cacheTimeToLive;
+  }
+
+  /**
+   * Specifies how long, in milliseconds, a value read from the Web service is
+   * reused by GetValue and GetValues without asking the service again. After
+   * that the value is checked with the service, which only sends it again if
+   * it has changed. 0, the default, turns the cache off.
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+      defaultValue = "0")
+  @SimpleProperty
+  public void CacheTimeToLive(int milliseconds) {
+    cacheTimeToLive = Math.max(0, milliseconds);
+    if (cacheTimeToLive == 0) {
+      clearCache();
+    }
   }
 
   // StoreValue (and GetValue below) show how use the
@@ -172,7 +288,7 @@ public class TinyWebDB extends AndroidNonvisibleComponent implements Component {
   // WebServiceError, which will signal a WebServiceError event for the
   // application.
 
-  private void postStoreValue(String tag, Object valueToStore) {
+  private void postStoreValue(final String tag, Object valueToStore) {
     // The commented-out Log.w command writes a message to the
     // AppInventor Web server log.  It's useful to include these
     // commands to aid in debugging while the component is being
@@ -186,6 +302,8 @@ public class TinyWebDB extends AndroidNonvisibleComponent implements Component {
         // the result here will be the JSON-encoded list ["STORED", tag, value]
         // but the component ignores this
         // Log.w(LOG_TAG, "postStoreValue: got result " + result);
+        // A cached value for the tag is out of date now.
+        removeCachedValues(tag);
         androidUIHandler.post(new Runnable() {
             public void run() {
               // Signal an event to indicate that the value was
@@ -258,6 +376,32 @@ public class TinyWebDB extends AndroidNonvisibleComponent implements Component {
    */
   @SimpleFunction
   public void GetValue(final String tag) {
+    if (cacheTimeToLive > 0) {
+      final CachedValue cached = getCachedValue(tag, true);
+      if (cached != null) {
+        androidUIHandler.post(new Runnable() {
+          public void run() {
+            GotValue(tag, cached.value);
+          }
+        });
+        return;
+      }
+      AsynchUtil.runAsynchronously(new Runnable() {
+        public void run() {
+          try {
+            final Object value = fetchValue(tag);
+            androidUIHandler.post(new Runnable() {
+              public void run() {
+                GotValue(tag, value);
+              }
+            });
+          } catch (WebServiceException e) {
+            postWebServiceError(e.getMessage());
+          }
+        }
+      });
+      return;
+    }
     final Runnable call = new Runnable() { public void run() { postGetValue(tag); }};
     AsynchUtil.runAsynchronously(call);
   }
@@ -281,10 +425,7 @@ public class TinyWebDB extends AndroidNonvisibleComponent implements Component {
             // Log.w(LOG_TAG, "postGetValue: got result " + result);
             // The Web service is designed to return the JSON encoded list ["VALUE", tag, value]
             final String tagFromWebDB = result.getString(1);
-            String value = result.getString(2);
-            // If there's no entry with tag as a key then return the empty string.
-            final Object valueFromWebDB = (value.length() == 0) ? "" :
-                JsonUtil.getObjectFromJson(value);
+            final Object valueFromWebDB = decodeValue(result.getString(2));
             androidUIHandler.post(new Runnable() {
               public void run() {
                 // signal an event to indicate that a good value was returned.  Note
@@ -350,4 +491,304 @@ public class TinyWebDB extends AndroidNonvisibleComponent implements Component {
     // Log.w(LOG_TAG, "calling error event handler: " + message);
     EventDispatcher.dispatchEvent(this, "WebServiceError", message);
   }
+
+  // GetValues and StoreValues read or write several tags with a single
+  // command, getvalues or storeavalues, which the Web service is sent in
+  // place of one getvalue or storeavalue command per tag.  The tags and
+  // the JSON-encoded values go in the "tags" and "values" parameters as
+  // JSON arrays.  The service answers getvalues with
+  // ["VALUES", [[tag, value], ...]] and storeavalues with
+  // ["STORED", tags, values].  Services that predate these commands are
+  // sent one command per tag instead, as GetValue and StoreValue do.  A
+  // service is taken not to know a command if it answers 404 Not Found,
+  // or answers with anything other than the expected JSON array; any
+  // other failure is reported, since the command may have been carried
+  // out in part.
+
+  /**
+   * GetValues asks the Web service for the values stored under all of the
+   * given tags at once, and signals GotValues with them.  Values read within
+   * CacheTimeToLive are not asked for again.
+   *
+   * @param tags The list of tags whose values are to be retrieved.
+   */
+  @SimpleFunction
+  public void GetValues(YailList tags) {
+    final String[] tagArray = tags.toStringArray();
+    AsynchUtil.runAsynchronously(new Runnable() {
+      public void run() {
+        postGetValues(tagArray);
+      }
+    });
+  }
+
+  private void postGetValues(String[] tags) {
+    Map<String, Object> values = new HashMap<String, Object>();
+    List<String> uncached = new ArrayList<String>();
+    for (String tag : tags) {
+      CachedValue cached = cacheTimeToLive > 0 ? getCachedValue(tag, true) : null;
+      if (cached != null) {
+        values.put(tag, cached.value);
+      } else if (!uncached.contains(tag)) {
+        uncached.add(tag);
+      }
+    }
+    try {
+      if (!uncached.isEmpty()) {
+        values.putAll(fetchValues(uncached));
+      }
+    } catch (WebServiceException e) {
+      postWebServiceError(e.getMessage());
+      return;
+    }
+    List<YailList> pairs = new ArrayList<YailList>();
+    for (String tag : tags) {
+      // A tag missing from the service's answer has no value, for which
+      // GetValue would give the empty string.
+      Object value = values.get(tag);
+      pairs.add(YailList.makeList(new Object[] { tag, value == null ? "" : value }));
+    }
+    final YailList tagsAndValues = YailList.makeList(pairs);
+    androidUIHandler.post(new Runnable() {
+      public void run() {
+        GotValues(tagsAndValues);
+      }
+    });
+  }
+
+  /**
+   * Indicates that a GetValues server request has succeeded.
+   *
+   * @param tagsAndValues a list with a pair of tag and value for each
+   * tag that was asked for, in the same order.
+   */
+  @SimpleEvent
+  public void GotValues(YailList tagsAndValues) {
+    EventDispatcher.dispatchEvent(this, "GotValues", tagsAndValues);
+  }
+
+  /**
+   * StoreValues asks the Web service to store several values at once, and
+   * signals ValuesStored when they have been stored.
+   *
+   * @param tagsAndValues A list of pairs, each a tag and the value to store
+   * under it.  Values can be any type of value (e.g. number, text, boolean
+   * or list).
+   */
+  @SimpleFunction
+  public void StoreValues(YailList tagsAndValues) {
+    final String[] tags = new String[tagsAndValues.size()];
+    final String[] values = new String[tagsAndValues.size()];
+    for (int i = 0; i < tags.length; i++) {
+      Object pair = tagsAndValues.getObject(i);
+      if (!(pair instanceof YailList) || ((YailList) pair).size() != 2) {
+        throw new YailRuntimeError("StoreValues expects a list of pairs of tag and value.",
+            "Invalid List");
+      }
+      tags[i] = ((YailList) pair).getString(0);
+      try {
+        values[i] = JsonUtil.getJsonRepresentation(((YailList) pair).getObject(1));
+      } catch (JSONException e) {
+        throw new YailRuntimeError("Value failed to convert to JSON.", "JSON Creation Error.");
+      }
+    }
+    AsynchUtil.runAsynchronously(new Runnable() {
+      public void run() {
+        postStoreValues(tags, values);
+      }
+    });
+  }
+
+  private void postStoreValues(String[] tags, String[] values) {
+    try {
+      storeValues(tags, values);
+    } catch (WebServiceException e) {
+      postWebServiceError(e.getMessage());
+      return;
+    }
+    removeCachedValues(tags);
+    androidUIHandler.post(new Runnable() {
+      public void run() {
+        ValuesStored();
+      }
+    });
+  }
+
+  /**
+   * Event indicating that a StoreValues server request has succeeded.
+   */
+  @SimpleEvent
+  public void ValuesStored() {
+    EventDispatcher.dispatchEvent(this, "ValuesStored");
+  }
+
+  // The procedures below run on the background thread and post their
+  // commands one after another, each returning once its command has
+  // been answered.
+
+  /**
+   * Reads the value stored under tag, sending the ETag of a cached value
+   * so that the service only sends the value again if it has changed.
+   */
+  private Object fetchValue(String tag) throws WebServiceException {
+    CachedValue cached = cacheTimeToLive > 0 ? getCachedValue(tag, false) : null;
+    CommandResult<WebServiceUtil.ConditionalResponse> command =
+        new CommandResult<WebServiceUtil.ConditionalResponse>();
+    WebServiceUtil.getInstance().postConditionalCommand(serviceURL, GETVALUE_COMMAND,
+        Lists.<NameValuePair>newArrayList(new BasicNameValuePair(TAG_PARAMETER, tag)),
+        cached == null ? null : cached.etag, command);
+    WebServiceUtil.ConditionalResponse response = command.get();
+    if (response.isNotModified()) {
+      cached.validatedAt = SystemClock.elapsedRealtime();
+      return cached.value;
+    }
+    Object value;
+    try {
+      // The Web service is designed to return the JSON encoded list ["VALUE", tag, value]
+      value = decodeValue(new JSONArray(response.getBody()).getString(2));
+    } catch (JSONException e) {
+      throw new WebServiceException("The Web server returned a garbled value " +
+          "for the tag " + tag + ".");
+    }
+    putCachedValue(tag, value, response.getETag());
+    return value;
+  }
+
+  private Map<String, Object> fetchValues(List<String> tags) throws WebServiceException {
+    Map<String, Object> values = new HashMap<String, Object>();
+    if (!batchUnsupported) {
+      JSONArray result = postBatchCommand(GETVALUES_COMMAND,
+          Lists.<NameValuePair>newArrayList(
+              new BasicNameValuePair(TAGS_PARAMETER, new JSONArray(tags).toString())),
+          "VALUES");
+      if (result != null) {
+        try {
+          JSONArray pairs = result.getJSONArray(1);
+          for (int i = 0; i < pairs.length(); i++) {
+            JSONArray pair = pairs.getJSONArray(i);
+            String tag = pair.getString(0);
+            Object value = decodeValue(pair.getString(1));
+            putCachedValue(tag, value, null);
+            values.put(tag, value);
+          }
+        } catch (JSONException e) {
+          throw new WebServiceException("The Web server returned garbled values " +
+              "for the tags " + tags + ".");
+        }
+        return values;
+      }
+      batchUnsupported = true;
+    }
+    for (String tag : tags) {
+      values.put(tag, fetchValue(tag));
+    }
+    return values;
+  }
+
+  private void storeValues(String[] tags, String[] values) throws WebServiceException {
+    if (!batchUnsupported) {
+      JSONArray result = postBatchCommand(STOREVALUES_COMMAND,
+          Lists.<NameValuePair>newArrayList(
+              new BasicNameValuePair(TAGS_PARAMETER, new JSONArray(Arrays.asList(tags)).toString()),
+              new BasicNameValuePair(VALUES_PARAMETER,
+                  new JSONArray(Arrays.asList(values)).toString())),
+          "STORED");
+      if (result != null) {
+        return;
+      }
+      batchUnsupported = true;
+    }
+    for (int i = 0; i < tags.length; i++) {
+      CommandResult<String> command = new CommandResult<String>();
+      WebServiceUtil.getInstance().postCommand(serviceURL, STOREAVALUE_COMMAND,
+          Lists.<NameValuePair>newArrayList(
+              new BasicNameValuePair(TAG_PARAMETER, tags[i]),
+              new BasicNameValuePair(VALUE_PARAMETER, values[i])),
+          command);
+      command.get();
+    }
+  }
+
+  /**
+   * Posts a getvalues or storeavalues command and returns the service's
+   * answer, a JSON array starting with expectedTag, or null if the
+   * service doesn't know the command.
+   */
+  private JSONArray postBatchCommand(String commandName, List<NameValuePair> params,
+      String expectedTag) throws WebServiceException {
+    CommandResult<WebServiceUtil.Response> command =
+        new CommandResult<WebServiceUtil.Response>();
+    WebServiceUtil.getInstance().postCommandReturningResponse(serviceURL, commandName, params,
+        command);
+    WebServiceUtil.Response response = command.get();
+    if (response.getStatus() == HttpStatus.SC_NOT_FOUND) {
+      return null;
+    }
+    if (response.getStatus() >= 300) {
+      throw new WebServiceException("The Web server failed the " + commandName +
+          " command with HTTP status " + response.getStatus() + ".");
+    }
+    try {
+      JSONArray result = new JSONArray(response.getBody());
+      if (expectedTag.equals(result.optString(0))) {
+        return result;
+      }
+    } catch (JSONException e) {
+      // Not the answer of a service that knows the command, such as an
+      // HTML page.
+    }
+    return null;
+  }
+
+  private void postWebServiceError(final String message) {
+    androidUIHandler.post(new Runnable() {
+      public void run() {
+        WebServiceError(message);
+      }
+    });
+  }
+
+  // If there's no entry with tag as a key then the Web service returns
+  // the empty string, which is passed on as is.
+  private static Object decodeValue(String value) throws JSONException {
+    return (value.length() == 0) ? "" : JsonUtil.getObjectFromJson(value);
+  }
+
+  /**
+   * Returns the cached value for tag, or null if there is none.  If
+   * freshOnly is true, values older than CacheTimeToLive count as none.
+   */
+  private CachedValue getCachedValue(String tag, boolean freshOnly) {
+    CachedValue cached;
+    synchronized (cache) {
+      cached = cache.get(tag);
+    }
+    if (cached != null && freshOnly
+        && SystemClock.elapsedRealtime() - cached.validatedAt >= cacheTimeToLive) {
+      return null;
+    }
+    return cached;
+  }
+
+  private void putCachedValue(String tag, Object value, String etag) {
+    if (cacheTimeToLive > 0) {
+      synchronized (cache) {
+        cache.put(tag, new CachedValue(value, etag));
+      }
+    }
+  }
+
+  private void removeCachedValues(String... tags) {
+    synchronized (cache) {
+      for (String tag : tags) {
+        cache.remove(tag);
+      }
+    }
+  }
+
+  private void clearCache() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
 }
@@ -23,15 +23,19 @@ import com.google.appinventor.components.runtime.collect.Lists;
 import com.google.appinventor.components.runtime.collect.Maps;
 import com.google.appinventor.components.runtime.errors.PermissionException;
 import com.google.appinventor.components.runtime.util.AsynchUtil;
+import com.google.appinventor.components.runtime.util.CsvUtil;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.FileUtil;
 import com.google.appinventor.components.runtime.util.GingerbreadUtil;
+import com.google.appinventor.components.runtime.util.IOUtils;
 import com.google.appinventor.components.runtime.util.JsonUtil;
 import com.google.appinventor.components.runtime.util.MediaUtil;
 import com.google.appinventor.components.runtime.util.SdkLevel;
+import com.google.appinventor.components.runtime.util.WebResponseCache;
 import com.google.appinventor.components.runtime.util.YailList;
 
 import android.app.Activity;
+import android.content.Context;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -41,12 +45,19 @@ import org.json.XML;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.CookieHandler;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
@@ -57,6 +68,7 @@ import java.net.URLEncoder;
 import java.net.URLDecoder;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 /**
  * The Original Web component provided functions for HTTP GET and POST requests.
@@ -135,6 +147,8 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     final String responseFileName;
     final Map<String, List<String>> requestHeaders;
     final Map<String, List<String>> cookies;
+    final WebResponseCache responseCache;   // null if responses aren't cached
+    final int downloadGeneration;
 
     CapturedProperties(Web web) throws MalformedURLException, InvalidRequestHeadersException {
       urlString = web.urlString;
@@ -155,11 +169,124 @@ public class Web extends AndroidNonvisibleComponent implements Component {
         }
       }
       cookies = cookiesTemp;
+      responseCache = (web.cacheResponses && web.activity != null)
+          ? getResponseCache(web.activity)
+          : null;
+      downloadGeneration = web.downloadGeneration;
+    }
+  }
+
+  /**
+   * The Response class holds the status, content type and body of a response, which may have
+   * come from the response cache rather than from the connection.
+   */
+  private static class Response {
+    final int responseCode;
+    final String responseType;
+    final InputStream content;
+    final long contentLength;   // -1 if not known
+
+    Response(int responseCode, String responseType, InputStream content, long contentLength) {
+      this.responseCode = responseCode;
+      this.responseType = responseType;
+      this.content = content;
+      this.contentLength = contentLength;
+    }
+  }
+
+  /**
+   * The Download class keeps track of a response being saved to a named file. The response is
+   * written to a partial file next to the named file, which is renamed once all of the response
+   * has arrived. If the download is interrupted or cancelled, the partial file is kept along with
+   * the ETag or Last-Modified date of the response, so that the next request saved to the same
+   * file can ask for just the rest of the response with a Range request.
+   */
+  private static class Download {
+    final File file;
+    final File partFile;
+    final File validatorFile;
+    final long resumeFrom;     // 0 if the download starts from the beginning
+    final String validator;    // null if the download starts from the beginning
+
+    Download(File file) {
+      this.file = file;
+      partFile = new File(file.getPath() + ".part");
+      validatorFile = new File(file.getPath() + ".part.validator");
+      String savedValidator = null;
+      if (partFile.length() > 0 && validatorFile.exists()) {
+        try {
+          savedValidator = readText(validatorFile);
+        } catch (IOException e) {
+          // Start from the beginning.
+        }
+      }
+      validator = savedValidator;
+      resumeFrom = (savedValidator != null) ? partFile.length() : 0;
+    }
+
+    void addRangeHeaders(HttpURLConnection connection) {
+      if (resumeFrom > 0) {
+        connection.setRequestProperty("Range", "bytes=" + resumeFrom + "-");
+        // If the response has changed since, the server sends all of the new response instead.
+        connection.setRequestProperty("If-Range", validator);
+      }
+    }
+
+    /*
+     * Remembers the validator of the response, if it has one that If-Range can use, and returns
+     * how many bytes of the response are already in the partial file.
+     */
+    long start(HttpURLConnection connection, int responseCode) throws IOException {
+      String etag = connection.getHeaderField("ETag");
+      String newValidator = (etag != null && !etag.startsWith("W/"))
+          ? etag
+          : connection.getHeaderField("Last-Modified");
+      if (newValidator != null && (responseCode == HttpURLConnection.HTTP_OK
+          || responseCode == HttpURLConnection.HTTP_PARTIAL)) {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(validatorFile), "UTF-8");
+        try {
+          writer.write(newValidator);
+        } finally {
+          writer.close();
+        }
+      } else {
+        validatorFile.delete();
+      }
+      if (resumeFrom > 0 && responseCode == HttpURLConnection.HTTP_PARTIAL) {
+        // The Content-Range header is "bytes first-last/total".
+        String range = connection.getHeaderField("Content-Range");
+        if (range == null || !range.startsWith("bytes " + resumeFrom + "-")) {
+          partFile.delete();
+          validatorFile.delete();
+          throw new IOException("Unexpected Content-Range " + range);
+        }
+        return resumeFrom;
+      }
+      return 0;
+    }
+
+    void finish() throws IOException {
+      validatorFile.delete();
+      if (!partFile.renameTo(file)) {
+        throw new IOException("Unable to rename " + partFile.getAbsolutePath());
+      }
     }
   }
 
   private static final String LOG_TAG = "Web";
 
+  // The size of the buffer responses are copied to files through.
+  private static final int DOWNLOAD_BUFFER_SIZE = 0x10000;
+
+  // How many bytes are saved between DownloadProgress events.
+  private static final int DOWNLOAD_PROGRESS_INTERVAL = 256 * 1024;
+
+  // How many bytes of response bodies the response cache keeps at most.
+  private static final long RESPONSE_CACHE_BYTES = 10 * 1024 * 1024;
+
+  // The response cache shared by all Web components, created when first needed.
+  private static WebResponseCache responseCache;
+
   private static final Map<String, String> mimeTypeToExtension;
   static {
     mimeTypeToExtension = Maps.newHashMap();
@@ -186,6 +313,9 @@ public class Web extends AndroidNonvisibleComponent implements Component {
   private YailList requestHeaders = new YailList();
   private boolean saveResponse;
   private String responseFileName = "";
+  private boolean cacheResponses;
+  // Incremented by CancelDownloads. Downloads started before that stop.
+  private volatile int downloadGeneration;
 
   /**
    * Creates a new Web component.
@@ -286,7 +416,9 @@ public class Web extends AndroidNonvisibleComponent implements Component {
    * Returns whether the response should be saved in a file.
    */
   @SimpleProperty(category = PropertyCategory.BEHAVIOR,
-      description = "Whether the response should be saved in a file.")
+      description = "Whether the response should be saved in a file. If a GET request saved to " +
+      "a named file is interrupted or cancelled, the next GET request saved to the same file " +
+      "asks the server for just the rest of the response.")
   public boolean SaveResponse() {
     return saveResponse;
   }
@@ -325,6 +457,28 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     this.responseFileName = responseFileName;
   }
 
+  /**
+   * Returns whether responses to GET requests should be cached.
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "Whether the responses to GET requests should be kept on the device. A kept " +
+      "response is only used after the server answers that it has not changed, which saves " +
+      "transferring it again. Only responses that come with an ETag or Last-Modified header are " +
+      "kept.")
+  public boolean CacheResponses() {
+    return cacheResponses;
+  }
+
+  /**
+   * Specifies whether responses to GET requests should be cached.
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+      defaultValue = "false")
+  @SimpleProperty
+  public void CacheResponses(boolean cacheResponses) {
+    this.cacheResponses = cacheResponses;
+  }
+
   @SimpleFunction(description = "Clears all cookies for this Web component.")
   public void ClearCookies() {
     if (cookieHandler != null) {
@@ -335,6 +489,17 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     }
   }
 
+  /**
+   * Stops saving the responses of the requests that have been made to files. A download to a
+   * named file can be resumed later by making the same GET request again.
+   */
+  @SimpleFunction(description = "Stops saving the responses of the requests that have been " +
+      "made to files. The GotFile event is not triggered for them. A GET request saved to a " +
+      "named file can be resumed by making it again.")
+  public void CancelDownloads() {
+    downloadGeneration++;
+  }
+
   /**
    * Performs an HTTP GET request using the Url property and retrieves the
    * response.<br>
@@ -373,6 +538,40 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     });
   }
 
+  /**
+   * Performs an HTTP GET request using the Url property and parses the response as a CSV table.
+   * The response is parsed one row at a time as it is received, without first reading it into a
+   * single text value. The GotCsvTable event is triggered when the table has been read.
+   */
+  @SimpleFunction(description = "Performs an HTTP GET request using the Url property and " +
+      "parses the response as a CSV table, one row at a time as it is received.<br>" +
+      "The GotCsvTable event will be triggered with the table. The SaveResponse property is " +
+      "not used.")
+  public void GetCsvTable() {
+    final String METHOD = "GetCsvTable";
+    // Capture property values in local variables before running asynchronously.
+    final CapturedProperties webProps = capturePropertyValues(METHOD);
+    if (webProps == null) {
+      // capturePropertyValues has already called form.dispatchErrorOccurredEvent
+      return;
+    }
+
+    AsynchUtil.runAsynchronously(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          performCsvRequest(webProps, METHOD);
+        } catch (PermissionException e) {
+          form.dispatchPermissionDeniedEvent(Web.this, METHOD, e);
+        } catch (Exception e) {
+          Log.e(LOG_TAG, "ERROR_UNABLE_TO_GET", e);
+          form.dispatchErrorOccurredEvent(Web.this, METHOD,
+              ErrorMessages.ERROR_WEB_UNABLE_TO_GET, webProps.urlString);
+        }
+      }
+    });
+  }
+
   /**
    * Performs an HTTP POST request using the Url property and the specified text.
    *
@@ -629,6 +828,21 @@ public class Web extends AndroidNonvisibleComponent implements Component {
         responseContent);
   }
 
+  /**
+   * Event indicating that a GetCsvTable request has finished.
+   *
+   * @param url the URL used for the request
+   * @param responseCode the response code from the server
+   * @param responseType the mime type of the response
+   * @param table the rows of the response, each a list of cells
+   */
+  @SimpleEvent(description = "Event indicating that a GetCsvTable request has finished. table " +
+      "is the response parsed as CSV, a list of rows that are each a list of cells.")
+  public void GotCsvTable(String url, int responseCode, String responseType, YailList table) {
+    // invoke the application's "GotCsvTable" event handler.
+    EventDispatcher.dispatchEvent(this, "GotCsvTable", url, responseCode, responseType, table);
+  }
+
   /**
    * Event indicating that a request has finished.
    *
@@ -643,6 +857,22 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     EventDispatcher.dispatchEvent(this, "GotFile", url, responseCode, responseType, fileName);
   }
 
+  /**
+   * Event indicating how much of a response has been saved to a file. It is triggered as the
+   * response arrives and once more when all of it has been saved.
+   *
+   * @param url the URL used for the request
+   * @param bytesRead how many bytes of the response have been saved, including any saved before
+   *                  the download was resumed
+   * @param totalBytes the size of the response in bytes, or -1 if the server didn't say
+   */
+  @SimpleEvent(description = "Event indicating how much of a response that is being saved to a " +
+      "file has arrived. totalBytes is -1 if the server didn't give the size of the response.")
+  public void DownloadProgress(String url, long bytesRead, long totalBytes) {
+    // invoke the application's "DownloadProgress" event handler.
+    EventDispatcher.dispatchEvent(this, "DownloadProgress", url, bytesRead, totalBytes);
+  }
+
 
   /**
    * Converts a list of two-element sublists, representing name and value pairs, to a
@@ -872,9 +1102,22 @@ public class Web extends AndroidNonvisibleComponent implements Component {
   private void performRequest(final CapturedProperties webProps, byte[] postData, String postFile, String httpVerb)
       throws IOException {
 
+    // A GET response saved to a named file can be resumed if it is interrupted.
+    Download download = (webProps.saveResponse && httpVerb.equals("GET")
+        && !TextUtils.isEmpty(webProps.responseFileName))
+        ? new Download(FileUtil.getExternalFile(webProps.responseFileName))
+        : null;
+    boolean resuming = download != null && download.resumeFrom > 0;
+
     // Open the connection.
-    HttpURLConnection connection = openConnection(webProps, httpVerb);
+    WebResponseCache.Entry cached = resuming ? null : getCachedResponse(webProps, httpVerb);
+    HttpURLConnection connection = openConnection(webProps, httpVerb, cached);
     if (connection != null) {
+      if (resuming) {
+        download.addRangeHeaders(connection);
+      }
+      Response response = null;
+      boolean finished = false;
       try {
         if (postData != null) {
           writeRequestData(connection, postData);
@@ -883,13 +1126,20 @@ public class Web extends AndroidNonvisibleComponent implements Component {
         }
 
         // Get the response.
-        final int responseCode = connection.getResponseCode();
-        final String responseType = getResponseType(connection);
-        processResponseCookies(connection);
-
-        if (saveResponse) {
-          final String path = saveResponseContent(connection, webProps.responseFileName,
-              responseType);
+        response = getResponse(connection, webProps, cached);
+        // The rest of a resumed response completes the whole response.
+        final int responseCode =
+            (resuming && response.responseCode == HttpURLConnection.HTTP_PARTIAL)
+            ? HttpURLConnection.HTTP_OK
+            : response.responseCode;
+        final String responseType = response.responseType;
+
+        if (webProps.saveResponse) {
+          final String path = saveResponseContent(connection, webProps, response, download);
+          if (path == null) {
+            // The download was cancelled.
+            return;
+          }
 
           // Dispatch the event.
           activity.runOnUiThread(new Runnable() {
@@ -899,7 +1149,7 @@ public class Web extends AndroidNonvisibleComponent implements Component {
             }
           });
         } else {
-          final String responseContent = getResponseContent(connection);
+          final String responseContent = getResponseContent(response);
 
           // Dispatch the event.
           activity.runOnUiThread(new Runnable() {
@@ -909,25 +1159,151 @@ public class Web extends AndroidNonvisibleComponent implements Component {
             }
           });
         }
+        finished = true;
+
+      } finally {
+        closeResponse(connection, response, finished);
+      }
+    }
+  }
+
+  /*
+   * Performs an HTTP GET request and parses the response as CSV while it is being read.
+   * Like performRequest, this is always run on a different thread than the event thread.
+   *
+   * @param webProps the captured property values needed for the request
+   * @param functionName the name of the function, used when dispatching errors
+   *
+   * @throws IOException
+   */
+  private void performCsvRequest(final CapturedProperties webProps, String functionName)
+      throws IOException {
+    WebResponseCache.Entry cached = getCachedResponse(webProps, "GET");
+    HttpURLConnection connection = openConnection(webProps, "GET", cached);
+    if (connection != null) {
+      Response response = null;
+      boolean finished = false;
+      try {
+        response = getResponse(connection, webProps, cached);
+        final int responseCode = response.responseCode;
+        final String responseType = response.responseType;
+
+        final YailList table;
+        Reader reader = getResponseReader(response);
+        try {
+          table = CsvUtil.fromCsvTable(reader);
+        } catch (IOException e) {
+          throw e;
+        } catch (Exception e) {
+          form.dispatchErrorOccurredEvent(this, functionName,
+              ErrorMessages.ERROR_WEB_CSV_TEXT_DECODE_FAILED, webProps.urlString, e.getMessage());
+          return;
+        } finally {
+          reader.close();
+        }
+        finished = true;
 
+        // Dispatch the event.
+        activity.runOnUiThread(new Runnable() {
+          @Override
+          public void run() {
+            GotCsvTable(webProps.urlString, responseCode, responseType, table);
+          }
+        });
       } finally {
-        connection.disconnect();
+        closeResponse(connection, response, finished);
       }
     }
   }
 
+  /*
+   * Returns the response cached for a request, or null if responses aren't cached, the request
+   * isn't a GET, the request headers already make it conditional or there is no cached response
+   * for its URL.
+   */
+  private static WebResponseCache.Entry getCachedResponse(CapturedProperties webProps,
+      String httpVerb) {
+    if (webProps.responseCache == null || !httpVerb.equals("GET")
+        || hasRequestHeader(webProps, "If-None-Match")
+        || hasRequestHeader(webProps, "If-Modified-Since")) {
+      return null;
+    }
+    return webProps.responseCache.get(webProps.urlString);
+  }
+
+  private static synchronized WebResponseCache getResponseCache(Context context) {
+    if (responseCache == null) {
+      responseCache = new WebResponseCache(new File(context.getCacheDir(), "Web"),
+          RESPONSE_CACHE_BYTES);
+    }
+    return responseCache;
+  }
+
+  /*
+   * Waits for the response to a request. If the server answers that the cached response is still
+   * current, the cached response is returned. Otherwise, the body is read from the connection,
+   * unzipped if the server compressed it, and kept in the response cache if it can be.
+   */
+  private Response getResponse(HttpURLConnection connection, CapturedProperties webProps,
+      WebResponseCache.Entry cached) throws IOException {
+    int responseCode = connection.getResponseCode();
+    String responseType = getResponseType(connection);
+    processResponseCookies(connection);
+
+    if (cached != null && responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+      // The 304 response has no body, but reading it lets the connection be reused.
+      IOUtils.closeQuietly(LOG_TAG, getConnectionStream(connection));
+      return new Response(cached.responseCode, cached.contentType, cached.openBody(), -1);
+    }
+
+    InputStream content = getConnectionStream(connection);
+    long contentLength = getContentLength(connection);
+    if (content == null) {
+      content = new ByteArrayInputStream(new byte[0]);
+    } else if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+      // The length given is the length of the compressed body.
+      contentLength = -1;
+      try {
+        content = new GZIPInputStream(content, 0x1000);
+      } catch (EOFException e) {
+        // The body is empty.
+        content = new ByteArrayInputStream(new byte[0]);
+      }
+    }
+    if (webProps.responseCache != null && responseCode == HttpURLConnection.HTTP_OK) {
+      content = webProps.responseCache.put(webProps.urlString, connection, responseType, content);
+    }
+    return new Response(responseCode, responseType, content, contentLength);
+  }
+
+  /*
+   * Closes the body of a response. Once the whole body has been read, closing it returns the
+   * connection to the pool of connections kept alive, so that the next request to the same server
+   * can reuse it. If the request failed, the connection is disconnected instead.
+   */
+  private static void closeResponse(HttpURLConnection connection, Response response,
+      boolean finished) {
+    if (response != null) {
+      IOUtils.closeQuietly(LOG_TAG, response.content);
+    }
+    if (!finished) {
+      connection.disconnect();
+    }
+  }
+
   /**
    * Open a connection to the resource and set the HTTP action to PUT or DELETE if it is one of
    * them. GET would be the default, and POST is set in writeRequestData or writeRequestFile
    * @param webProps the properties of the connection, set as properties in the component
    * @param httpVerb One of GET/POST/PUT/DELETE
+   * @param cached the cached response to revalidate, or null
    * @return a HttpURL Connection
    * @throws IOException
    * @throws ClassCastException
    * @throws ProtocolException thrown if the method in setRequestMethod is not correct
    */
-  private static HttpURLConnection openConnection(CapturedProperties webProps, String httpVerb)
-      throws IOException, ClassCastException, ProtocolException {
+  private static HttpURLConnection openConnection(CapturedProperties webProps, String httpVerb,
+      WebResponseCache.Entry cached) throws IOException, ClassCastException, ProtocolException {
 
     HttpURLConnection connection = (HttpURLConnection) webProps.url.openConnection();
 
@@ -955,9 +1331,30 @@ public class Web extends AndroidNonvisibleComponent implements Component {
       }
     }
 
+    // Ask for a compressed response, unless the request headers already say which encodings are
+    // accepted. getResponse unzips it. Responses saved to files are asked for uncompressed, so
+    // that their length and byte ranges are those of the file.
+    if (!hasRequestHeader(webProps, "Accept-Encoding")) {
+      connection.setRequestProperty("Accept-Encoding", webProps.saveResponse ? "identity" : "gzip");
+    }
+
+    // Ask the server to answer 304 Not Modified if the cached response is still current.
+    if (cached != null) {
+      cached.addValidators(connection);
+    }
+
     return connection;
   }
 
+  private static boolean hasRequestHeader(CapturedProperties webProps, String name) {
+    for (String header : webProps.requestHeaders.keySet()) {
+      if (header.equalsIgnoreCase(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private static void writeRequestData(HttpURLConnection connection, byte[] postData)
       throws IOException {
     // According to the documentation at
@@ -1025,17 +1422,34 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     }
   }
 
-  private static String getResponseContent(HttpURLConnection connection) throws IOException {
-    // Use the content encoding to convert bytes to characters.
-    String encoding = connection.getContentEncoding();
-    if (encoding == null) {
-      encoding = "UTF-8";
+  private static Reader getResponseReader(Response response) throws IOException {
+    // Use the charset of the content type to convert bytes to characters.
+    return new InputStreamReader(response.content, getCharset(response.responseType));
+  }
+
+  /*
+   * Returns the charset named in a content type such as "text/html; charset=ISO-8859-1", or UTF-8
+   * if none is named.
+   */
+  private static String getCharset(String responseType) {
+    for (String parameter : responseType.split(";")) {
+      parameter = parameter.trim();
+      if (parameter.regionMatches(true, 0, "charset=", 0, 8)) {
+        String charset = parameter.substring(8).trim().replace("\"", "");
+        if (charset.length() > 0) {
+          return charset;
+        }
+      }
     }
-    InputStreamReader reader = new InputStreamReader(getConnectionStream(connection), encoding);
+    return "UTF-8";
+  }
+
+  private static String getResponseContent(Response response) throws IOException {
+    Reader reader = getResponseReader(response);
     try {
-      int contentLength = connection.getContentLength();
-      StringBuilder sb = (contentLength != -1)
-          ? new StringBuilder(contentLength)
+      long contentLength = response.contentLength;
+      StringBuilder sb = (contentLength != -1 && contentLength <= Integer.MAX_VALUE)
+          ? new StringBuilder((int) contentLength)
           : new StringBuilder();
       char[] buf = new char[1024];
       int read;
@@ -1048,33 +1462,126 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     }
   }
 
-  private static String saveResponseContent(HttpURLConnection connection,
-      String responseFileName, String responseType) throws IOException {
-    File file = createFile(responseFileName, responseType);
+  /*
+   * Saves the body of a response to a file, through a buffer, triggering DownloadProgress events
+   * as it arrives. If the response is being saved to a named file, it is written to the partial
+   * file of the download first, after the part that was saved before if the download was resumed.
+   *
+   * @return the full path of the saved file, or null if the download was cancelled
+   */
+  private String saveResponseContent(HttpURLConnection connection, CapturedProperties webProps,
+      Response response, Download download) throws IOException {
+    File file;
+    File target;
+    long bytesRead = 0;
+    if (download != null) {
+      file = download.file;
+      target = download.partFile;
+      bytesRead = download.start(connection, response.responseCode);
+    } else {
+      file = createFile(webProps.responseFileName, response.responseType);
+      target = file;
+    }
+    long totalBytes = getTotalBytes(connection, response, bytesRead);
 
-    BufferedInputStream in = new BufferedInputStream(getConnectionStream(connection), 0x1000);
+    // Where the last DownloadProgress event was triggered, or where the download started.
+    long progressAt = bytesRead;
+    boolean progressSent = false;
+    OutputStream out = new FileOutputStream(target, bytesRead > 0);
     try {
-      BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(file), 0x1000);
-      try {
-        // Copy the contents from the input stream to the output stream.
-        while (true) {
-          int b = in.read();
-          if (b == -1) {
-            break;
-          }
-          out.write(b);
+      byte[] buffer = new byte[DOWNLOAD_BUFFER_SIZE];
+      int count;
+      while ((count = response.content.read(buffer)) != -1) {
+        if (downloadGeneration != webProps.downloadGeneration) {
+          return null;
+        }
+        out.write(buffer, 0, count);
+        bytesRead += count;
+        if (bytesRead - progressAt >= DOWNLOAD_PROGRESS_INTERVAL) {
+          dispatchDownloadProgress(webProps.urlString, bytesRead, totalBytes);
+          progressAt = bytesRead;
+          progressSent = true;
         }
-        out.flush();
-      } finally {
-        out.close();
       }
     } finally {
-      in.close();
+      out.close();
+    }
+    if (totalBytes != -1 && bytesRead < totalBytes) {
+      // The connection was closed early. A download can be resumed from the partial file.
+      throw new IOException("Received " + bytesRead + " of " + totalBytes + " bytes");
+    }
+    if (!progressSent || progressAt != bytesRead) {
+      dispatchDownloadProgress(webProps.urlString, bytesRead, totalBytes);
     }
 
+    if (download != null) {
+      download.finish();
+    }
     return file.getAbsolutePath();
   }
 
+  private void dispatchDownloadProgress(final String url, final long bytesRead,
+      final long totalBytes) {
+    activity.runOnUiThread(new Runnable() {
+      @Override
+      public void run() {
+        DownloadProgress(url, bytesRead, totalBytes);
+      }
+    });
+  }
+
+  /*
+   * Returns the size of the whole response, counting the bytesBefore saved before a download was
+   * resumed, or -1 if the server didn't give it.
+   */
+  private static long getTotalBytes(HttpURLConnection connection, Response response,
+      long bytesBefore) {
+    if (bytesBefore > 0) {
+      // The Content-Range header is "bytes first-last/total", and total may be "*".
+      String range = connection.getHeaderField("Content-Range");
+      int slash = range.lastIndexOf('/');
+      if (slash != -1) {
+        try {
+          return Long.parseLong(range.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+          // Fall back on the Content-Length.
+        }
+      }
+    }
+    return (response.contentLength != -1) ? bytesBefore + response.contentLength : -1;
+  }
+
+  /*
+   * Returns the Content-Length of a response, or -1 if it isn't known. Unlike
+   * HttpURLConnection.getContentLength, this works for responses larger than 2 GB.
+   */
+  private static long getContentLength(HttpURLConnection connection) {
+    String length = connection.getHeaderField("Content-Length");
+    if (length != null) {
+      try {
+        return Long.parseLong(length.trim());
+      } catch (NumberFormatException e) {
+        // The length isn't known.
+      }
+    }
+    return -1;
+  }
+
+  private static String readText(File file) throws IOException {
+    Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+    try {
+      StringBuilder sb = new StringBuilder();
+      char[] buf = new char[1024];
+      int read;
+      while ((read = reader.read(buf)) != -1) {
+        sb.append(buf, 0, read);
+      }
+      return sb.toString();
+    } finally {
+      reader.close();
+    }
+  }
+
   private static InputStream getConnectionStream(HttpURLConnection connection) {
     // According to the Android reference documentation for HttpURLConnection: If the HTTP response
     // indicates that an error occurred, getInputStream() will throw an IOException. Use
@@ -1,6 +1,6 @@
 // -*- mode: java; c-basic-offset: 2; -*-
 // Copyright 2009-2011 Google, All Rights reserved
-// Copyright 2011-2012 MIT, All rights reserved
+// Copyright 2011-2018 MIT, All rights reserved
 // Released under the Apache License, Version 2.0
 // http://www.apache.org/licenses/LICENSE-2.0
 
@@ -8,22 +8,63 @@ package com.google.appinventor.components.runtime.util;
 
 import android.os.Handler;
 
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Utilities for handling asynchronous calls.
  *
+ * <p>{@link #runAsynchronously(Runnable)} runs each call on a thread of its own, as it always
+ * has, but reuses threads that have finished their last call rather than starting a new one
+ * each time. Since it never makes a call wait for a thread, a call that blocks for a long time,
+ * such as accepting a Bluetooth connection, can't hold up any other.
+ *
+ * <p>Callers that know their work finishes can opt in to one of two shared, bounded pools
+ * instead. The I/O pool, used by {@link #runIo(Runnable)}, is meant for work that mostly waits,
+ * such as network requests with a timeout and file access. The computation pool, used by
+ * {@link #runComputation(Runnable)}, has one thread per processor and is meant for work that
+ * keeps the processor busy, such as decoding or parsing data that is already in memory. Calls
+ * beyond the size of a pool wait in its queue. Idle threads exit after a while, so an app that
+ * is not doing background work holds no threads.
+ *
  * @author markf@google.com (Mark Friedman)
  */
 
 public class AsynchUtil {
 
+  // Calls to runIo beyond this many at once wait in a queue rather than starting more threads.
+  private static final int IO_THREADS = 16;
+  private static final int COMPUTATION_THREADS =
+      Math.max(2, Runtime.getRuntime().availableProcessors());
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  private static final ThreadPoolExecutor asyncExecutor = newCachedExecutor("AsynchUtil-");
+  private static final ThreadPoolExecutor ioExecutor =
+      newExecutor("AsynchUtil-io-", IO_THREADS);
+  private static final ThreadPoolExecutor computationExecutor =
+      newExecutor("AsynchUtil-computation-", COMPUTATION_THREADS);
+
+  // Serial queues for runSerially, keyed weakly so that a component that goes away does not
+  // keep its queue alive.
+  private static final Map<Object, SerialExecutor> serialExecutors =
+      new WeakHashMap<Object, SerialExecutor>();
+
   /**
    * Make an asynchronous call in a separate thread.
    * @param call a {@link Runnable} to run in the thread.
    */
   public static void runAsynchronously(final Runnable call) {
-    Thread thread = new Thread(call);
-    thread.start();
+    asyncExecutor.execute(call);
   }
+
   /**
    * Make an asynchronous call in a separate thread, with a callback that's run on the current
    * Android UI thread.
@@ -34,7 +75,110 @@ public class AsynchUtil {
   public static void runAsynchronously(final Handler androidUIHandler,
                                        final Runnable call,
                                        final Runnable callback) {
-    Runnable runnable = new Runnable() {
+    asyncExecutor.execute(withCallback(androidUIHandler, call, callback));
+  }
+
+  /**
+   * Make an asynchronous call on the I/O pool. Only use this for calls that are sure to finish,
+   * for example network requests with a timeout, since a call that blocks holds one of the pool's
+   * few threads and the calls queued behind it wait.
+   * @param call a {@link Runnable} to run in the thread.
+   */
+  public static void runIo(final Runnable call) {
+    ioExecutor.execute(call);
+  }
+
+  /**
+   * Make an asynchronous call on the I/O pool, with a callback that's run on the current Android
+   * UI thread. See {@link #runIo(Runnable)} for which calls may use the pool.
+   * @param androidUIHandler  the Handler from the current Android context
+   * @param call a {@link Runnable} to run in the thread.
+   * @param callback a {@link Runnable} to run in the Android UI thread when the call above returns
+   */
+  public static void runIo(final Handler androidUIHandler,
+                           final Runnable call,
+                           final Runnable callback) {
+    ioExecutor.execute(withCallback(androidUIHandler, call, callback));
+  }
+
+  /**
+   * Make an asynchronous call on the computation pool. Use this rather than
+   * {@link #runAsynchronously(Runnable)} for work that does not wait on the network or on
+   * storage, so that it does not hold up, or get held up by, I/O.
+   * @param call a {@link Runnable} to run in the thread.
+   */
+  public static void runComputation(final Runnable call) {
+    computationExecutor.execute(call);
+  }
+
+  /**
+   * Make an asynchronous call on the computation pool, with a callback that's run on the current
+   * Android UI thread.
+   * @param androidUIHandler  the Handler from the current Android context
+   * @param call a {@link Runnable} to run in the thread.
+   * @param callback a {@link Runnable} to run in the Android UI thread when the call above returns
+   */
+  public static void runComputation(final Handler androidUIHandler,
+                                    final Runnable call,
+                                    final Runnable callback) {
+    computationExecutor.execute(withCallback(androidUIHandler, call, callback));
+  }
+
+  /**
+   * Make an asynchronous call, as {@link #runAsynchronously(Runnable)} does, that runs only after
+   * every earlier call made with the same {@code key} has finished. Calls made with different
+   * keys may still run at the same time, so a call that blocks only holds up those behind it with
+   * the same key. Components use themselves as the key when the order of their operations
+   * matters, for example when appending to a file.
+   * @param key the object whose calls must run one at a time, in order
+   * @param call a {@link Runnable} to run in the thread.
+   */
+  public static void runSerially(final Object key, final Runnable call) {
+    SerialExecutor executor;
+    synchronized (serialExecutors) {
+      executor = serialExecutors.get(key);
+      if (executor == null) {
+        executor = new SerialExecutor(asyncExecutor);
+        serialExecutors.put(key, executor);
+      }
+    }
+    executor.execute(call);
+  }
+
+  /**
+   * Returns the number of calls waiting for a thread in the I/O pool.
+   */
+  public static int getIoQueueDepth() {
+    return ioExecutor.getQueue().size();
+  }
+
+  /**
+   * Returns the number of calls waiting for a thread in the computation pool.
+   */
+  public static int getComputationQueueDepth() {
+    return computationExecutor.getQueue().size();
+  }
+
+  /**
+   * Returns the number of calls that are running.
+   */
+  public static int getActiveCount() {
+    return asyncExecutor.getActiveCount() + ioExecutor.getActiveCount()
+        + computationExecutor.getActiveCount();
+  }
+
+  /**
+   * Returns the number of calls that have finished since the app started.
+   */
+  public static long getCompletedCount() {
+    return asyncExecutor.getCompletedTaskCount() + ioExecutor.getCompletedTaskCount()
+        + computationExecutor.getCompletedTaskCount();
+  }
+
+  private static Runnable withCallback(final Handler androidUIHandler,
+                                       final Runnable call,
+                                       final Runnable callback) {
+    return new Runnable() {
       public void run() {
         call.run();
         if (callback != null) {
@@ -46,7 +190,67 @@ public class AsynchUtil {
         }
       }
     };
-    Thread thread = new Thread(runnable);
-    thread.start();
+  }
+
+  private static ThreadPoolExecutor newExecutor(String namePrefix, int threads) {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+        KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        newThreadFactory(namePrefix));
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  // Starts a thread for each call that finds no idle thread, so no call ever waits for another.
+  private static ThreadPoolExecutor newCachedExecutor(String namePrefix) {
+    return new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+        KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+        newThreadFactory(namePrefix));
+  }
+
+  private static ThreadFactory newThreadFactory(final String namePrefix) {
+    return new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        return new Thread(runnable, namePrefix + count.incrementAndGet());
+      }
+    };
+  }
+
+  /**
+   * Runs the calls given to it one at a time, in order, on another executor.
+   */
+  private static class SerialExecutor implements Executor {
+    private final ArrayDeque<Runnable> pending = new ArrayDeque<Runnable>();
+    private final Executor executor;
+    private Runnable active;
+
+    SerialExecutor(Executor executor) {
+      this.executor = executor;
+    }
+
+    @Override
+    public synchronized void execute(final Runnable call) {
+      pending.add(new Runnable() {
+        public void run() {
+          try {
+            call.run();
+          } finally {
+            scheduleNext();
+          }
+        }
+      });
+      if (active == null) {
+        scheduleNext();
+      }
+    }
+
+    private synchronized void scheduleNext() {
+      active = pending.poll();
+      if (active != null) {
+        executor.execute(active);
+      }
+    }
   }
 }
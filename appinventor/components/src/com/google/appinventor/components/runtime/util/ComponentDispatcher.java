@@ -0,0 +1,182 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import gnu.lists.LList;
+import gnu.mapping.Symbol;
+import gnu.mapping.Values;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Calls component methods and property accessors without reflection.
+ *
+ * <p>For every component, ComponentDispatchGenerator writes a subclass named
+ * {@code <package>.dispatch.<Component>Dispatcher} that numbers the component's methods and
+ * property accessors and calls each one directly. The YAIL runtime asks
+ * {@link #getInvoker(Object, Object, int)} for an {@link Invoker} the first time it calls a
+ * given name on a given class of component, and the answer is cached, so later calls cost a
+ * hash lookup and a switch. When a component has no generated dispatcher, as with extensions,
+ * getInvoker returns null and the runtime falls back to Kawa's reflective invoke.
+ */
+public abstract class ComponentDispatcher {
+
+  /**
+   * The value returned for a void method, which is what Kawa's invoke returns for one.
+   */
+  protected static final Object VOID = Values.empty;
+
+  private static final Object[] NO_ARGS = new Object[0];
+
+  private static final String DISPATCH_PACKAGE = "dispatch";
+  private static final String DISPATCHER_SUFFIX = "Dispatcher";
+
+  // Invokers by component class, then by name. Only used from the UI thread in practice, but
+  // guarded anyway since the cost is negligible next to the call.
+  private static final Map<Class<?>, ClassInvokers> invokersByClass =
+      new HashMap<Class<?>, ClassInvokers>();
+
+  /**
+   * Returns the id of the method or property accessor with the given name that takes the given
+   * number of arguments, or -1 if there is none. Property getters take no arguments and
+   * setters take one.
+   */
+  protected abstract int lookup(String name, int arity);
+
+  /**
+   * Calls the method or property accessor with the given id, as returned by
+   * {@link #lookup(String, int)}, on {@code component}.
+   */
+  protected abstract Object invoke(Object component, int id, Object[] args) throws Exception;
+
+  /**
+   * A method or property accessor of one class of component, bound to a dispatcher.
+   */
+  public static final class Invoker {
+    private final ComponentDispatcher dispatcher;
+    private final int id;
+    private final int arity;
+    // The invoker for the same name with a different number of arguments, if any.
+    private Invoker next;
+
+    private Invoker(ComponentDispatcher dispatcher, int id, int arity) {
+      this.dispatcher = dispatcher;
+      this.id = id;
+      this.arity = arity;
+    }
+
+    /**
+     * Calls the method on {@code component} with the (already coerced) arguments in
+     * {@code args}.
+     */
+    public Object invoke(Object component, LList args) throws Exception {
+      return dispatcher.invoke(component, id, arity == 0 ? NO_ARGS : args.toArray());
+    }
+  }
+
+  private static final class ClassInvokers {
+    final ComponentDispatcher dispatcher;
+    final Map<String, Invoker> byName = new HashMap<String, Invoker>();
+
+    ClassInvokers(ComponentDispatcher dispatcher) {
+      this.dispatcher = dispatcher;
+    }
+  }
+
+  /**
+   * Returns the invoker for the method or property accessor {@code name} taking {@code arity}
+   * arguments on {@code component}, or null if the component's class has no generated
+   * dispatcher or the dispatcher does not know the name.
+   *
+   * @param component the component
+   * @param name the method or property name, as a String or a Scheme symbol
+   * @param arity the number of arguments
+   */
+  public static Invoker getInvoker(Object component, Object name, int arity) {
+    if (component == null) {
+      return null;
+    }
+    String methodName = name instanceof Symbol ? ((Symbol) name).getName() : name.toString();
+    synchronized (invokersByClass) {
+      Class<?> componentClass = component.getClass();
+      ClassInvokers invokers = invokersByClass.get(componentClass);
+      if (invokers == null) {
+        invokers = new ClassInvokers(loadDispatcher(componentClass));
+        invokersByClass.put(componentClass, invokers);
+      }
+      Invoker first = invokers.byName.get(methodName);
+      for (Invoker invoker = first; invoker != null; invoker = invoker.next) {
+        if (invoker.arity == arity) {
+          return invoker.id < 0 ? null : invoker;
+        }
+      }
+      // Remember misses as well, so that classes without a dispatcher don't pay for the lookup
+      // on every call.
+      int id = invokers.dispatcher == null ? -1 : invokers.dispatcher.lookup(methodName, arity);
+      Invoker invoker = new Invoker(invokers.dispatcher, id, arity);
+      invoker.next = first;
+      invokers.byName.put(methodName, invoker);
+      return id < 0 ? null : invoker;
+    }
+  }
+
+  private static ComponentDispatcher loadDispatcher(Class<?> componentClass) {
+    String className = componentClass.getName();
+    int lastDot = className.lastIndexOf('.');
+    String dispatcherName = className.substring(0, lastDot + 1) + DISPATCH_PACKAGE + "."
+        + className.substring(lastDot + 1) + DISPATCHER_SUFFIX;
+    try {
+      // The dispatcher is compiled alongside the component, so look for it where the
+      // component was loaded from.
+      return (ComponentDispatcher) Class.forName(dispatcherName, true,
+          componentClass.getClassLoader()).newInstance();
+    } catch (ClassNotFoundException e) {
+      return null;
+    } catch (InstantiationException e) {
+      return null;
+    } catch (IllegalAccessException e) {
+      return null;
+    }
+  }
+
+  // Argument conversions used by the generated dispatchers. These accept the values produced
+  // by the runtime's coercions, which are Kawa numbers and strings, and convert them the same
+  // way Kawa's invoke does.
+
+  protected static int toInt(Object arg) {
+    return ((Number) arg).intValue();
+  }
+
+  protected static long toLong(Object arg) {
+    return ((Number) arg).longValue();
+  }
+
+  protected static short toShort(Object arg) {
+    return ((Number) arg).shortValue();
+  }
+
+  protected static byte toByte(Object arg) {
+    return ((Number) arg).byteValue();
+  }
+
+  protected static float toFloat(Object arg) {
+    return ((Number) arg).floatValue();
+  }
+
+  protected static double toDouble(Object arg) {
+    return ((Number) arg).doubleValue();
+  }
+
+  protected static boolean toBoolean(Object arg) {
+    // As in Scheme, everything other than false is true.
+    return !Boolean.FALSE.equals(arg);
+  }
+
+  protected static String toText(Object arg) {
+    return arg == null ? null : arg.toString();
+  }
+}
@@ -14,7 +14,7 @@ import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.NoSuchElementException;
 
 /**
  * Static methods to convert between CSV-formatted strings and YailLists.
@@ -27,7 +27,16 @@ public final class CsvUtil {
   }
 
   public static YailList fromCsvTable(String csvString) throws Exception {
-    CsvParser csvParser = new CsvParser(new StringReader(csvString));
+    return fromCsvTable(new StringReader(csvString));
+  }
+
+  /**
+   * Reads a CSV table from the given reader, one row at a time. The text is
+   * never held in memory as a whole; only the rows that have been read so far.
+   * The reader is not closed.
+   */
+  public static YailList fromCsvTable(Reader csvReader) throws Exception {
+    CsvParser csvParser = new CsvParser(csvReader);
     ArrayList<YailList> csvList = new ArrayList<YailList>();
     while (csvParser.hasNext()) {
       csvList.add(YailList.makeList(csvParser.next()));
@@ -62,8 +71,8 @@ public final class CsvUtil {
   // all rows have same number of elements?
   public static String toCsvTable(YailList csvList) {
     StringBuilder csvStringBuilder = new StringBuilder();
-    for (Object rowObj : csvList.toArray()) {
-      makeCsvRow((YailList) rowObj, csvStringBuilder);
+    for (Iterator<Object> rows = csvList.itemIterator(); rows.hasNext(); ) {
+      makeCsvRow((YailList) rows.next(), csvStringBuilder);
       // http://tools.ietf.org/html/rfc4180 suggests that CSV lines should be
       // terminated
       // by CRLF, hence the \r\n.
@@ -74,41 +83,60 @@ public final class CsvUtil {
 
   private static void makeCsvRow(YailList row, StringBuilder csvStringBuilder) {
     String fieldDelim = "";
-    for (Object fieldObj : row.toArray()) {
-      String field = fieldObj.toString();
-      field = field.replaceAll("\"", "\"\"");
-      csvStringBuilder.append(fieldDelim).append("\"").append(field).append("\"");
+    for (Iterator<Object> fields = row.itemIterator(); fields.hasNext(); ) {
+      csvStringBuilder.append(fieldDelim);
+      appendCsvField(fields.next().toString(), csvStringBuilder);
       fieldDelim = ",";
     }
   }
 
-  /*
-   * Note: The CsvParser class was adapted from
-   * java/com/google/devtools/ode/server/util/CsvParser.java, which in turn was
-   * copied from: java/com/google/collaboration/tables/util/CsvParser.java
-   *
+  /**
+   * Appends a field to the row being built, quoting it only if it has to be.
+   * Empty fields are always quoted, since an unquoted empty field at the end of
+   * a row would be lost when the row is read back.
    */
-  private static class CsvParser implements Iterator<List<String>> {
-    /**
-     * Escaped quotes in quoted cells are doubled.
-     */
-    private final Pattern ESCAPED_QUOTE_PATTERN = Pattern.compile("\"\"");
+  private static void appendCsvField(String field, StringBuilder csvStringBuilder) {
+    int length = field.length();
+    boolean needsQuotes = length == 0;
+    for (int i = 0; i < length && !needsQuotes; i++) {
+      char c = field.charAt(i);
+      needsQuotes = c == '"' || c == ',' || c == '\n' || c == '\r';
+    }
+    if (!needsQuotes) {
+      csvStringBuilder.append(field);
+      return;
+    }
+    csvStringBuilder.append('"');
+    for (int i = 0; i < length; i++) {
+      char c = field.charAt(i);
+      if (c == '"') {
+        // Escaped quotes in quoted cells are doubled.
+        csvStringBuilder.append('"');
+      }
+      csvStringBuilder.append(c);
+    }
+    csvStringBuilder.append('"');
+  }
 
-    /**
-     * Character buffer for cell parsing. The size limits the largest parsable
-     * cell. Specifically, if an unquoted cell and its trailing delimiter exceed
-     * this limit, the cell will be split at the limit. Moreover, a quoted large
-     * cell will cause a syntax error as when we reach end-of-file without
-     * reading a closing quote.
-     */
-    private final char[] buf = new char[10240];
+  /**
+   * Reads rows of CSV text from a Reader, one row per call to {@link #next()}.
+   * Cells may be of any length. Leading and trailing whitespace is trimmed
+   * from every cell, quoted or not.
+   *
+   * <p>Iterator cannot throw checked exceptions, so if the text is malformed
+   * or the reader fails, hasNext() returns false and the problem is reported
+   * by {@link #throwAnyProblem()}.
+   */
+  public static class CsvParser implements Iterator<List<String>> {
+    // Returned by readCell when the cell could not be parsed.
+    private static final int ERROR = -2;
 
     private final Reader in;
 
+    private final char[] buf = new char[8192];
+
     /**
-     * The beginning of the currently parsed cell in {@code buf}. Everything
-     * before it is discarded during compaction. The beginning includes the
-     * quote for a quoted cell.
+     * The next character to read from {@code buf}.
      */
     private int pos;
 
@@ -123,19 +151,19 @@ public final class CsvUtil {
     private boolean opened = true;
 
     /**
-     * Length of a successfully parsed cell. For a quoted cell this includes the
-     * closing quote. Set whenever parsing of a cell succeeds. The value should
-     * be ignored when cell parsing fails, but is set to -1 to help debugging.
+     * Holds the contents of the cell being read.
      */
-    private int cellLength = -1;
+    private final StringBuilder cell = new StringBuilder();
 
     /**
-     * Length of a successfully parsed cell including its trailing delimiter.
-     * Set whenever parsing of a cell with trailing delimiter succeeds. The
-     * value should be ignored when cell parsing fails, but is set to -1 to help
-     * debugging.
+     * The row returned by the next call to next(), if hasNext() has read it.
      */
-    private int delimitedCellLength = -1;
+    private ArrayList<String> nextRow;
+
+    /**
+     * Set once the last row has been read or an error was found.
+     */
+    private boolean done;
 
     /**
      * Last exception encountered. Saved here to properly implement {@code
@@ -143,186 +171,143 @@ public final class CsvUtil {
      */
     private Exception lastException;
 
-    private long previouslyRead;
-
     public CsvParser(Reader in) {
       this.in = in;
     }
 
-    public void skip(long charPosition) throws IOException {
-      while (charPosition > 0) {
-        int n = in.read(buf, 0, Math.min((int) charPosition, buf.length));
-        if (n < 0) {
-          break;
-        }
-        previouslyRead += n;
-        charPosition -= n;
-      }
-    }
-
     public boolean hasNext() {
-      if (limit == 0) {
-        fill();
+      if (nextRow == null && !done) {
+        nextRow = readRow();
+        if (nextRow == null) {
+          done = true;
+        }
       }
-      return (pos < limit || indexAfterCompactionAndFilling(pos) < limit) && lookingAtCell();
+      return nextRow != null;
     }
 
     public ArrayList<String> next() {
-      ArrayList<String> result = Lists.newArrayList();
-      boolean trailingComma;
-      boolean haveMoreData;
-      do {
-        // Invariant: pos < limit && lookingAtCell() from hasNext() or previous
-        // iteration
-        if (buf[pos] != '"') {
-          // trim the string tokens we pull from the CSV entries, since it's common to include
-          // leading an trailing spaces here
-          result.add(new String(buf, pos, cellLength).trim());
-        } else {
-          String cell = new String(buf, pos + 1, cellLength - 2);
-          result.add(ESCAPED_QUOTE_PATTERN.matcher(cell).replaceAll("\"").trim());
-        }
-        trailingComma = delimitedCellLength > 0 && buf[pos + delimitedCellLength - 1] == ',';
-        pos += delimitedCellLength;
-        delimitedCellLength = cellLength = -1;
-        haveMoreData = pos < limit || indexAfterCompactionAndFilling(pos) < limit;
-      } while (trailingComma && haveMoreData && lookingAtCell());
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      ArrayList<String> result = nextRow;
+      nextRow = null;
       return result;
     }
 
-    public long getCharPosition() {
-      return previouslyRead + pos;
-    }
-
     /**
-     * Compacts and fills the buffer. Returns the possibly shifted index for the
-     * given index.
+     * Reads the next row, or returns null if there are no more rows. A row that
+     * ends in a syntax error is returned with the cells read before the error,
+     * after which no more rows are read.
      */
-    private int indexAfterCompactionAndFilling(int i) {
-      if (pos > 0) {
-        i = compact(i);
+    private ArrayList<String> readRow() {
+      if (peek() == -1) {
+        return null;
       }
-      fill();
-      return i;
-    }
-
-    /**
-     * Moves the contents between {@code pos} and {@code limit} to the beginning
-     * of {@code buf}. Returns the new position of the given index.
-     */
-    private int compact(int i) {
-      int oldPos = pos;
-      pos = 0;
-      int toMove = limit - oldPos;
-      if (toMove > 0) {
-        System.arraycopy(buf, oldPos, buf, 0, toMove);
+      ArrayList<String> row = new ArrayList<String>();
+      while (true) {
+        int end = readCell(row);
+        if (end == ERROR) {
+          done = true;
+          return row.isEmpty() ? null : row;
+        } else if (end != ',' || peek() == -1) {
+          // A trailing comma at the very end of the text does not start another cell.
+          return row;
+        }
       }
-      limit -= oldPos;
-      previouslyRead += oldPos;
-      return i - oldPos;
     }
 
     /**
-     * Fills {@code buf} from the reader.
+     * Reads one cell and its delimiter, adding the trimmed cell to row.
+     * Returns ',' if the cell ended with a comma, '\n' if it ended the line
+     * (\n, \r\n or a lone \r), -1 at the end of the text, or ERROR.
      */
-    private void fill() {
-      int toFill = buf.length - limit;
-      while (opened && toFill > 0) {
-        try {
-          int n = in.read(buf, limit, toFill);
-          if (n == -1) {
-            opened = false;
-          } else {
-            limit += n;
-            toFill -= n;
+    private int readCell(List<String> row) {
+      cell.setLength(0);
+      int c = read();
+      if (c == '"') {
+        while (true) {
+          c = read();
+          if (c == -1) {
+            lastException = new IllegalArgumentException("Syntax Error. unclosed quoted cell");
+            return ERROR;
+          } else if (c == '"') {
+            if (peek() != '"') {
+              break;
+            }
+            // Escaped quotes in quoted cells are doubled.
+            read();
           }
-        } catch (IOException e) {
-          lastException = e;
-          opened = false;
+          cell.append((char) c);
+        }
+        // Tolerate whitespace between the closing quote and the delimiter.
+        do {
+          c = read();
+        } while (c == ' ' || c == '\t');
+        if (c != -1 && c != ',' && c != '\n' && c != '\r') {
+          lastException = new IOException(
+              "Syntax Error: non-whitespace between closing quote and delimiter or end");
+          return ERROR;
+        }
+      } else {
+        while (c != -1 && c != ',' && c != '\n' && c != '\r') {
+          if (c == '"') {
+            lastException = new IllegalArgumentException("Syntax Error: quote in unquoted cell");
+            return ERROR;
+          }
+          cell.append((char) c);
+          c = read();
         }
       }
+      // trim the string tokens we pull from the CSV entries, since it's common to include
+      // leading an trailing spaces here
+      row.add(cell.toString().trim());
+      if (c == '\r') {
+        // In standard CSV \r\n terminates a cell. However, Macintosh uses
+        // one \r instead of \n.
+        if (peek() == '\n') {
+          read();
+        }
+        return '\n';
+      }
+      return c;
     }
 
-    private boolean lookingAtCell() {
-      return (buf[pos] == '"' ? findUnescapedEndQuote(pos + 1) : findUnquotedCellEnd(pos));
-    }
-
-    private boolean findUnescapedEndQuote(int i) {
-      for (; i < limit || (i = indexAfterCompactionAndFilling(i)) < limit; i++) {
-        if (buf[i] == '"') {
-          i = checkedIndex(i + 1);
-          if (i == limit || buf[i] != '"') {
-            cellLength = i - pos;
-            return findDelimOrEnd(i);
-          }
-        }
+    private int read() {
+      int c = peek();
+      if (c != -1) {
+        pos++;
       }
-      lastException = new IllegalArgumentException("Syntax Error. unclosed quoted cell");
-      return false;
+      return c;
     }
 
-    /**
-     * Determines that we are looking at the end of a cell, tolerating some
-     * whitespace. Called after consuming the end quote of a quoted cell.
-     */
-    private boolean findDelimOrEnd(int i) {
-      for (; i < limit || (i = indexAfterCompactionAndFilling(i)) < limit; i++) {
-        switch (buf[i]) {
-          case ' ':
-          case '\t':
-            // whitespace after closing quote
-            continue;
-          case '\r':
-            // In standard CSV \r\n terminates a cell. However, Macintosh uses
-            // one \r instead of \n.
-            int j = checkedIndex(i + 1);
-            delimitedCellLength = (buf[j] == '\n' ? checkedIndex(j + 1) : j) - pos;
-            return true;
-          case ',':
-          case '\n':
-            delimitedCellLength = (checkedIndex(i + 1) - pos);
-            return true;
-          default:
-            lastException = new IOException(
-                "Syntax Error: non-whitespace between closing quote and delimiter or end");
-            return false;
+    private int peek() {
+      if (pos == limit) {
+        fill();
+        if (pos == limit) {
+          return -1;
         }
       }
-      delimitedCellLength = (limit - pos);
-      return true;
+      return buf[pos];
     }
 
     /**
-     * Returns the given index, after trying to read its corresponding buffered
-     * character. The resulting index will be shifted if compaction was
-     * triggered.
+     * Refills {@code buf} from the reader once it has been consumed.
      */
-    private int checkedIndex(int i) {
-      return i < limit ? i : indexAfterCompactionAndFilling(i);
-    }
-
-    private boolean findUnquotedCellEnd(int i) {
-      for (; i < limit || (i = indexAfterCompactionAndFilling(i)) < limit; i++) {
-        switch (buf[i]) {
-          case ',':
-          case '\n':
-            cellLength = i - pos;
-            delimitedCellLength = cellLength + 1;
-            return true;
-          case '\r':
-            // In standard CSV \r\n terminates a cell. However, Macintosh uses
-            // one \r instead of \n.
-            cellLength = i - pos;
-            int j = checkedIndex(i + 1);
-            delimitedCellLength = (buf[j] == '\n' ? checkedIndex(j + 1) : j) - pos;
-            return true;
-          case '"':
-            lastException = new IllegalArgumentException("Syntax Error: quote in unquoted cell");
-            return false;
+    private void fill() {
+      pos = limit = 0;
+      while (opened && limit == 0) {
+        try {
+          int n = in.read(buf, 0, buf.length);
+          if (n == -1) {
+            opened = false;
+          } else {
+            limit = n;
+          }
+        } catch (IOException e) {
+          lastException = e;
+          opened = false;
         }
       }
-      delimitedCellLength = cellLength = (limit - pos);
-      return true;
     }
 
     public void remove() {
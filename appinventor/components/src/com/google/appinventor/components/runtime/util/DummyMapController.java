@@ -22,6 +22,8 @@ import com.google.appinventor.components.runtime.util.MapFactory.MapType;
 
 import android.view.View;
 
+import java.io.InputStream;
+
 class DummyMapController implements MapController {
 
   public View getView() {
@@ -257,4 +259,49 @@ class DummyMapController implements MapController {
   public int getOverlayCount() {
     throw new UnsupportedOperationException();
   }
+
+  @Override
+  public void setTileCacheSize(long bytes) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public long getTileCacheSize() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void clearTileCache() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void addTileArchive(String name, InputStream archive) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public int countTiles(BoundingBox boundingBox, int minZoom, int maxZoom) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void prefetchTiles(BoundingBox boundingBox, int minZoom, int maxZoom) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void cancelTilePrefetch() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void setClusterMarkersEnabled(boolean enabled) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean isClusterMarkersEnabled() {
+    throw new UnsupportedOperationException();
+  }
 }
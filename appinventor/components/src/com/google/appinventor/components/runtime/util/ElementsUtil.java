@@ -8,6 +8,8 @@ package com.google.appinventor.components.runtime.util;
 
 import com.google.appinventor.components.runtime.errors.YailRuntimeError;
 
+import java.util.Iterator;
+
 /**
  * Utilities for Components that display a number of options on Screen such as ListPicker,
  * Spinner, and ListView.
@@ -62,10 +64,11 @@ public class ElementsUtil {
     // If multiple Selections have the same SelectionIndex, use the first.
     // If none do, arbitrarily set the SelectionIndex to its default value
     // of 0.
-    for (int i = 0; i < items.size(); i++) {
+    int index = 1;
+    for (Iterator<Object> it = items.itemIterator(); it.hasNext(); index++) {
       // The comparison is case-sensitive to be consistent with yail-equal?.
-      if (items.getString(i).equals(value)) {
-        return i + 1;
+      if (it.next().toString().equals(value)) {
+        return index;
       }
     }
     return 0;
@@ -136,6 +136,7 @@ public final class ErrorMessages {
   public static final int ERROR_WEB_BUILD_REQUEST_DATA_NOT_TWO_ELEMENTS = 1113;
   public static final int ERROR_WEB_UNABLE_TO_DELETE = 1114;
   public static final int ERROR_WEB_XML_TEXT_DECODE_FAILED = 1115;
+  public static final int ERROR_WEB_CSV_TEXT_DECODE_FAILED = 1117; // 1116 is used below
   // Contact picker (and PhoneNumberPicker) errors
   public static final int ERROR_PHONE_UNSUPPORTED_CONTACT_PICKER = 1107;
   public static final int ERROR_PHONE_UNSUPPORTED_SEARCH_IN_CONTACT_PICKING = 1108;
@@ -175,6 +176,8 @@ public final class ErrorMessages {
   public static final int ERROR_CANNOT_WRITE_TO_FILE = 2104;
   public static final int ERROR_CANNOT_DELETE_ASSET = 2105;
   public static final int ERROR_CANNOT_WRITE_ASSET = 2106;
+  public static final int ERROR_CANNOT_PARSE_CSV_FILE = 2107;
+  public static final int ERROR_INVALID_CHUNK_SIZE = 2108;
 
   // Yandex.Translate errors
   public static final int ERROR_TRANSLATE_NO_KEY_FOUND = 2201;
@@ -240,6 +243,9 @@ public final class ErrorMessages {
   public static final int ERROR_INVALID_LATITUDE_IN_POINT_AT_INDEX = 3418;
   public static final int ERROR_INVALID_LONGITUDE_IN_POINT_AT_INDEX = 3419;
   public static final int ERROR_EXPECTED_ARRAY_AT_INDEX = 3420;
+  public static final int ERROR_INVALID_ZOOM_RANGE = 3421;
+  public static final int ERROR_TOO_MANY_TILES_TO_PREFETCH = 3422;
+  public static final int ERROR_UNABLE_TO_LOAD_TILE_ARCHIVE = 3423;
 
   // Phone Call Errors
   public static final int ERROR_NO_CALL_PERMISSION = 3501;
@@ -468,6 +474,8 @@ public final class ErrorMessages {
         "Unable to decode the HTML text: %s");
     errorMessages.put(ERROR_WEB_XML_TEXT_DECODE_FAILED,
         "Unable to decode the XML text: %s");
+    errorMessages.put(ERROR_WEB_CSV_TEXT_DECODE_FAILED,
+        "Unable to decode the CSV text from the URL %s: %s");
     errorMessages.put(ERROR_WEB_MALFORMED_URL,
         "The specified URL is not valid: %s");
     errorMessages.put(ERROR_WEB_REQUEST_HEADER_NOT_LIST,
@@ -535,6 +543,8 @@ public final class ErrorMessages {
     errorMessages.put(ERROR_CANNOT_WRITE_TO_FILE, "Cannot write to file %s");
     errorMessages.put(ERROR_CANNOT_DELETE_ASSET, "Cannot delete asset file at %s");
     errorMessages.put(ERROR_CANNOT_WRITE_ASSET, "Cannot write asset file at %s");
+    errorMessages.put(ERROR_CANNOT_PARSE_CSV_FILE, "The file %s could not be read as CSV: %s");
+    errorMessages.put(ERROR_INVALID_CHUNK_SIZE, "The chunk size %s is not a positive number");
     //Yandex.Translate translate Errors
     errorMessages.put(ERROR_TRANSLATE_NO_KEY_FOUND, "Missing API key for the Yandex.Translate " +
         "service.");
@@ -607,6 +617,13 @@ public final class ErrorMessages {
         "Invalid longitude %2$s in point at index %1$d. Expected a value between [-180, 180].");
     errorMessages.put(ERROR_EXPECTED_ARRAY_AT_INDEX,
         "Expected an array of values at index %1$d, but got %2$s.");
+    errorMessages.put(ERROR_INVALID_ZOOM_RANGE,
+        "Invalid zoom range %1$d to %2$d. Expected zoom levels between 1 and %3$d.");
+    errorMessages.put(ERROR_TOO_MANY_TILES_TO_PREFETCH,
+        "Prefetching %1$d tiles is more than the limit of %2$d. Choose a smaller area or " +
+        "fewer zoom levels.");
+    errorMessages.put(ERROR_UNABLE_TO_LOAD_TILE_ARCHIVE,
+        "Unable to load the tile archive %1$s: %2$s");
     errorMessages.put(ERROR_NO_CALL_PERMISSION,
         "You do not have permission to make phone calls.");
   }
@@ -0,0 +1,136 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import com.google.appinventor.components.runtime.util.MapFactory.MapCircle;
+import com.google.appinventor.components.runtime.util.MapFactory.MapFeature;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.quadtree.Quadtree;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A spatial index of the features on a map, used to find the features in an area without
+ * looking at every feature.
+ *
+ * <p>Features are kept in a JTS {@link Quadtree} keyed by the envelope of their geometry. Adding
+ * or moving a feature only marks it as pending, and pending features are put into the tree by
+ * the next query. Loading many features at once, or moving a feature many times between
+ * queries, therefore costs one insertion per feature rather than computing its geometry each
+ * time.
+ */
+public class FeatureIndex {
+  private final Quadtree tree = new Quadtree();
+
+  // The envelope each feature was inserted into the tree with, which is needed to remove it.
+  private final Map<MapFeature, Envelope> envelopes = new HashMap<MapFeature, Envelope>();
+
+  // Features that have been added or moved since the last query.
+  private final Set<MapFeature> pending = new LinkedHashSet<MapFeature>();
+
+  /**
+   * Adds a feature to the index.
+   */
+  public synchronized void add(MapFeature feature) {
+    if (!envelopes.containsKey(feature)) {
+      pending.add(feature);
+    }
+  }
+
+  /**
+   * Adds many features to the index.
+   */
+  public synchronized void addAll(Collection<? extends MapFeature> features) {
+    for (MapFeature feature : features) {
+      add(feature);
+    }
+  }
+
+  /**
+   * Removes a feature from the index. Does nothing if the feature is not in the index.
+   */
+  public synchronized void remove(MapFeature feature) {
+    pending.remove(feature);
+    Envelope envelope = envelopes.remove(feature);
+    if (envelope != null) {
+      tree.remove(envelope, feature);
+    }
+  }
+
+  /**
+   * Tells the index that a feature's geometry has changed. Does nothing if the feature is not in
+   * the index.
+   */
+  public synchronized void update(MapFeature feature) {
+    Envelope envelope = envelopes.remove(feature);
+    if (envelope != null) {
+      tree.remove(envelope, feature);
+      pending.add(feature);
+    }
+  }
+
+  /**
+   * Removes every feature from the index.
+   */
+  public synchronized void clear() {
+    for (Map.Entry<MapFeature, Envelope> entry : envelopes.entrySet()) {
+      tree.remove(entry.getValue(), entry.getKey());
+    }
+    envelopes.clear();
+    pending.clear();
+  }
+
+  /**
+   * Returns the number of features in the index.
+   */
+  public synchronized int size() {
+    return envelopes.size() + pending.size();
+  }
+
+  /**
+   * Returns the features whose bounding boxes intersect the given envelope, whose x values are
+   * longitudes and y values latitudes. The features' geometries may not themselves intersect
+   * the envelope, so callers that need an exact answer must check each feature.
+   */
+  public synchronized List<MapFeature> query(Envelope envelope) {
+    flush();
+    List<MapFeature> result = new ArrayList<MapFeature>();
+    // The tree returns every item in the nodes that overlap the envelope, so filter them.
+    for (Object item : tree.query(envelope)) {
+      MapFeature feature = (MapFeature) item;
+      if (envelopes.get(feature).intersects(envelope)) {
+        result.add(feature);
+      }
+    }
+    return result;
+  }
+
+  private void flush() {
+    for (MapFeature feature : pending) {
+      Envelope envelope = envelopeOf(feature);
+      tree.insert(envelope, feature);
+      envelopes.put(feature, envelope);
+    }
+    pending.clear();
+  }
+
+  private static Envelope envelopeOf(MapFeature feature) {
+    Envelope envelope = new Envelope(feature.getGeometry().getEnvelopeInternal());
+    if (feature instanceof MapCircle) {
+      // A circle's geometry is only its center, so widen the envelope by its radius.
+      double latitudeRadius = ((MapCircle) feature).Radius() / GeometryUtil.ONE_DEG_IN_METERS;
+      double cosLatitude = Math.cos(Math.toRadians(envelope.centre().y));
+      envelope.expandBy(cosLatitude > 0.01 ? latitudeRadius / cosLatitude : 180, latitudeRadius);
+    }
+    return envelope;
+  }
+}
@@ -0,0 +1,181 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the features of a GeoJSON FeatureCollection one at a time from a stream.
+ *
+ * <p>Only the feature being read is held in memory, so a large document can be loaded without
+ * first reading it into a String and parsing it into a tree. Each feature is returned as a list
+ * of (key, value) pairs in the form accepted by
+ * {@link GeoJSONUtil#processGeoJSONFeature(String, MapFactory.MapFeatureContainer, YailList)}.
+ * JSON objects become lists of pairs, arrays become lists, and numbers become Integers, Longs or
+ * Doubles.</p>
+ */
+public final class GeoJSONReader implements Closeable {
+  private static final String GEOJSON_TYPE = "type";
+  private static final String GEOJSON_FEATURECOLLECTION = "FeatureCollection";
+  private static final String GEOJSON_GEOMETRYCOLLECTION = "GeometryCollection";
+  private static final String GEOJSON_FEATURES = "features";
+  private static final String ERROR_UNKNOWN_TYPE = "Unrecognized/invalid type in JSON object";
+
+  private final JsonReader reader;
+  private String type = null;
+  private boolean started = false;
+  private boolean inFeatures = false;
+  private boolean hasFeatures = false;
+
+  /**
+   * Creates a reader for the GeoJSON document in {@code in}. A leading byte order mark is
+   * skipped.
+   */
+  public GeoJSONReader(Reader in) throws IOException {
+    BufferedReader buffered = new BufferedReader(in);
+    buffered.mark(1);
+    if (buffered.read() != '\uFEFF') {
+      buffered.reset();
+    }
+    reader = new JsonReader(buffered);
+  }
+
+  /**
+   * Returns the next feature in the document, or null if there are no more.
+   *
+   * @throws IOException if the document cannot be read or is not well-formed JSON
+   * @throws IllegalStateException if the document is not a JSON object
+   * @throws IllegalArgumentException if a feature contains a null value
+   */
+  public YailList nextFeature() throws IOException {
+    if (!started) {
+      started = true;
+      reader.beginObject();
+      if (!findFeatures()) {
+        return null;
+      }
+    }
+    if (!inFeatures) {
+      return null;
+    }
+    if (reader.hasNext()) {
+      Object feature = readValue();
+      if (!(feature instanceof YailList)) {
+        throw new IllegalArgumentException(ERROR_UNKNOWN_TYPE);
+      }
+      return (YailList) feature;
+    }
+    reader.endArray();
+    inFeatures = false;
+    // The type may follow the features.
+    findFeatures();
+    return null;
+  }
+
+  /**
+   * Returns true if the document is a FeatureCollection or GeometryCollection. Before the last
+   * feature has been read, this is only known if the document gave its type ahead of its
+   * features.
+   */
+  public boolean isFeatureCollection() {
+    return GEOJSON_FEATURECOLLECTION.equals(type) || GEOJSON_GEOMETRYCOLLECTION.equals(type);
+  }
+
+  /**
+   * Returns true if the document had a features array, which may have been empty.
+   */
+  public boolean hasFeatures() {
+    return hasFeatures;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  /**
+   * Reads the members of the top-level object up to the start of the features array. Returns
+   * true if positioned in the features array, or false if the object ended first or has a type
+   * other than a collection.
+   */
+  private boolean findFeatures() throws IOException {
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (GEOJSON_TYPE.equals(name) && reader.peek() == JsonToken.STRING) {
+        type = reader.nextString();
+        if (!isFeatureCollection()) {
+          return false;
+        }
+      } else if (GEOJSON_FEATURES.equals(name) && !hasFeatures
+          && reader.peek() == JsonToken.BEGIN_ARRAY) {
+        reader.beginArray();
+        inFeatures = true;
+        hasFeatures = true;
+        return true;
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return false;
+  }
+
+  private Object readValue() throws IOException {
+    switch (reader.peek()) {
+      case BEGIN_OBJECT:
+        List<YailList> pairs = new ArrayList<YailList>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+          String key = reader.nextName();
+          pairs.add(YailList.makeList(new Object[] { key, readValue() }));
+        }
+        reader.endObject();
+        return YailList.makeList(pairs);
+      case BEGIN_ARRAY:
+        List<Object> items = new ArrayList<Object>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+          items.add(readValue());
+        }
+        reader.endArray();
+        return YailList.makeList(items);
+      case STRING:
+        return reader.nextString();
+      case NUMBER:
+        return parseNumber(reader.nextString());
+      case BOOLEAN:
+        return reader.nextBoolean();
+      default:
+        throw new IllegalArgumentException(ERROR_UNKNOWN_TYPE);
+    }
+  }
+
+  /**
+   * Converts a JSON number to the type org.json would have given it.
+   */
+  private static Number parseNumber(String number) {
+    if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+      try {
+        long value = Long.parseLong(number);
+        if (value == (int) value) {
+          return (int) value;
+        }
+        return value;
+      } catch (NumberFormatException e) {
+        // Too large for a long, so fall through to a double.
+      }
+    }
+    return Double.valueOf(number);
+  }
+}
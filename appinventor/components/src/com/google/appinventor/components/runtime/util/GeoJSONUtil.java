@@ -677,11 +677,9 @@ public final class GeoJSONUtil {
     i.next();
     while (i.hasNext()) {
       YailList coordinate = (YailList) i.next();
-      Object temp = coordinate.get(1);
-      Pair p = (Pair) coordinate.getCdr();
-      p.setCar(coordinate.get(2));
-      p = (Pair) p.getCdr();
-      p.setCar(temp);
+      Object temp = coordinate.getObject(0);
+      coordinate.setObject(0, coordinate.getObject(1));
+      coordinate.setObject(1, temp);
     }
     return coordinates;
   }
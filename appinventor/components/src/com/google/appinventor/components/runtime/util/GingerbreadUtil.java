@@ -9,6 +9,7 @@ package com.google.appinventor.components.runtime.util;
 import android.app.Activity;
 import android.content.Intent;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.nfc.NdefMessage;
 import android.nfc.NdefRecord;
 import android.nfc.NfcAdapter;
@@ -63,6 +64,16 @@ public class GingerbreadUtil {
     return false;
   }
 
+  /**
+   * Writes the changes in the given editor to the in-memory preferences at once and to disk in
+   * the background.
+   *
+   * @param editor the editor whose changes should be saved
+   */
+  public static void applyPreferences(SharedPreferences.Editor editor) {
+    editor.apply();
+  }
+
   /**
    * Creates a new NfcAdapter instance.
    */
@@ -23,8 +23,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -40,6 +42,7 @@ public class JsonUtil {
 
   private static final String BINFILE_DIR = "/AppInventorBinaries";
   private static final String LOG_TAG = "JsonUtil";
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
   /**
    * Prevent instantiation.
@@ -167,46 +170,103 @@ public class JsonUtil {
   }
 
   public static String getJsonRepresentation(Object value) throws JSONException {
+    StringBuilder sb = new StringBuilder();
+    appendJsonRepresentation(sb, value);
+    return sb.toString();
+  }
+
+  /**
+   * Appends the JSON representation of value to sb. Nested lists are
+   * written into the same buffer rather than being converted to
+   * intermediate Strings.
+   *
+   * @param sb The buffer to append to.
+   * @param value The value to convert.
+   * @throws JSONException if value contains a number that cannot be
+   * represented in JSON (NaN or infinity).
+   */
+  public static void appendJsonRepresentation(StringBuilder sb, Object value)
+      throws JSONException {
     if (value == null || value.equals(null)) {
-      return "null";
+      sb.append("null");
+    } else if (value instanceof FString) {
+      appendQuoted(sb, value.toString());
+    } else if (value instanceof YailList) {
+      appendJsonArray(sb, ((YailList) value).itemIterator());
+    } else if (value instanceof IntFraction) {
+      // The Json tokener used in getObjectFromJson cannot handle
+      // fractions.  So we Json encode fractions by first converting
+      // them to doubles. This is an example of value with Kawa type any
+      // being exposed to the rest of App Inventor by the value being
+      // passed to a component method, in this case TinyDB or TinyWebDB
+      // StoreValue.  See the "warning" comment in runtime.scm at
+      // call-component-method.
+      sb.append(JSONObject.numberToString((Number) ((IntFraction)value).doubleValue()));
+    } else if (value instanceof Number) {
+      sb.append(JSONObject.numberToString((Number) value));
+    } else if (value instanceof Boolean) {
+      sb.append(value.toString());
+    } else if (value instanceof List) {
+      appendJsonArray(sb, ((List<?>) value).iterator());
+    } else if (value.getClass().isArray()) {
+      appendJsonArray(sb, Arrays.asList((Object[]) value).iterator());
+    } else {
+      appendQuoted(sb, value.toString());
     }
-    if (value instanceof FString) {
-      return JSONObject.quote(value.toString());
-    }
-    if (value instanceof YailList) {
-      return ((YailList) value).toJSONString();
-    }
-    // The Json tokener used in getObjectFromJson cannot handle
-    // fractions.  So we Json encode fractions by first converting
-    // them to doubles. This is an example of value with Kawa type any
-    // being exposed to the rest of App Inventor by the value being
-    // passed to a component method, in this case TinyDB or TinyWebDB
-    // StoreValue.  See the "warning" comment in runtime.scm at
-    // call-component-method.
-    if (value instanceof IntFraction) {
-      return JSONObject.numberToString((Number) ((IntFraction)value).doubleValue());
-    }
-    if (value instanceof Number) {
-      return JSONObject.numberToString((Number) value);
-    }
-    if (value instanceof Boolean) {
-      return value.toString();
-    }
-    if (value instanceof List) {
-      value = ((List)value).toArray();
-    }
-    if (value.getClass().isArray()) {
-      StringBuilder sb = new StringBuilder();
-      sb.append("[");
-      String separator = "";
-      for (Object o: (Object[]) value) {
-        sb.append(separator).append(getJsonRepresentation(o));
-        separator = ",";
+  }
+
+  private static void appendJsonArray(StringBuilder sb, Iterator<?> items)
+      throws JSONException {
+    sb.append('[');
+    if (items.hasNext()) {
+      appendJsonRepresentation(sb, items.next());
+      while (items.hasNext()) {
+        sb.append(',');
+        appendJsonRepresentation(sb, items.next());
       }
-      sb.append("]");
-      return sb.toString();
     }
-    return JSONObject.quote(value.toString());
+    sb.append(']');
+  }
+
+  /**
+   * Appends text to sb as a quoted JSON string. The escaping is the same as
+   * that of JSONObject.quote on Android, so stored values are unchanged.
+   */
+  private static void appendQuoted(StringBuilder sb, String text) {
+    sb.append('"');
+    for (int i = 0, length = text.length(); i < length; i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '"':
+        case '\\':
+        case '/':
+          sb.append('\\').append(c);
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        case '\b':
+          sb.append("\\b");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\f':
+          sb.append("\\f");
+          break;
+        default:
+          if (c <= 0x1F) {
+            sb.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+          } else {
+            sb.append(c);
+          }
+          break;
+      }
+    }
+    sb.append('"');
   }
 
   public static Object getObjectFromJson(String jsonString) throws JSONException {
@@ -216,21 +276,357 @@ public class JsonUtil {
       // We handle this case explicitly since nextValue() appears to throw an error
       // when given the empty string.
       return "";
-    } else {
-      final Object value = (new JSONTokener(jsonString)).nextValue();
-      // Note that the JSONTokener may return a value equals() to null.
-      if (value == null || value.equals(null)) {
-        return null;
-      } else if ((value instanceof String) ||
-          (value instanceof Number) ||
-          (value instanceof Boolean)) {
-        return value;
-      } else if (value instanceof JSONArray) {
-        return getListFromJsonArray((JSONArray)value);
-      } else if (value instanceof JSONObject) {
-        return getListFromJsonObject((JSONObject)value);
+    }
+    try {
+      return new JsonReader(jsonString).readDocument();
+    } catch (JsonReader.UnsupportedSyntaxException e) {
+      // The text is not strict JSON. The org.json tokener accepts a number of
+      // extensions (comments, single quotes, unquoted strings, ...), so let it
+      // decide what the text means.
+      return getObjectFromJsonTokener(jsonString);
+    }
+  }
+
+  private static Object getObjectFromJsonTokener(String jsonString) throws JSONException {
+    final Object value = (new JSONTokener(jsonString)).nextValue();
+    // Note that the JSONTokener may return a value equals() to null.
+    if (value == null || value.equals(null)) {
+      return null;
+    } else if ((value instanceof String) ||
+        (value instanceof Number) ||
+        (value instanceof Boolean)) {
+      return value;
+    } else if (value instanceof JSONArray) {
+      return getListFromJsonArray((JSONArray)value);
+    } else if (value instanceof JSONObject) {
+      return getListFromJsonObject((JSONObject)value);
+    }
+    throw new JSONException("Invalid JSON string.");
+  }
+
+  /**
+   * A single pass reader for strict JSON text. It produces the same values as
+   * running the text through JSONTokener and then getListFromJsonArray /
+   * getListFromJsonObject, but builds the lists directly without first
+   * building a tree of JSONArray and JSONObject. Anything outside of strict
+   * JSON raises UnsupportedSyntaxException so the caller can fall back on
+   * the (more lenient) org.json tokener.
+   */
+  private static class JsonReader {
+
+    /**
+     * Thrown when the reader encounters text that is not strict JSON.
+     */
+    static class UnsupportedSyntaxException extends Exception {
+      @Override
+      public synchronized Throwable fillInStackTrace() {
+        // Only used for control flow, so there is no point in recording the stack.
+        return this;
+      }
+    }
+
+    private static final UnsupportedSyntaxException UNSUPPORTED =
+        new UnsupportedSyntaxException();
+
+    // Marker for a JSON null, which converts to "null" inside of lists.
+    private static final Object NULL = new Object();
+
+    private final String text;
+    private final int length;
+    private int pos;
+    private final StringBuilder buffer = new StringBuilder();
+
+    JsonReader(String text) {
+      this.text = text;
+      this.length = text.length();
+    }
+
+    /**
+     * Reads the whole text as a single top-level value. Top-level values are
+     * not passed through convertJsonItem, matching getObjectFromJson.
+     */
+    Object readDocument() throws UnsupportedSyntaxException {
+      Object value;
+      skipWhitespace();
+      if (pos < length && text.charAt(pos) == '"') {
+        value = readString();
+      } else {
+        value = readValue();
+        if (value == NULL) {
+          value = null;
+        }
+      }
+      skipWhitespace();
+      if (pos != length) {
+        throw UNSUPPORTED;
+      }
+      return value;
+    }
+
+    /**
+     * Reads a value and converts it the way convertJsonItem would, except
+     * that null is returned as NULL.
+     */
+    private Object readValue() throws UnsupportedSyntaxException {
+      skipWhitespace();
+      if (pos >= length) {
+        throw UNSUPPORTED;
+      }
+      char c = text.charAt(pos);
+      switch (c) {
+        case '[':
+          return readArray();
+        case '{':
+          return readObject();
+        case '"': {
+          String value = readString();
+          if (value.equalsIgnoreCase("true")) {
+            return true;
+          } else if (value.equalsIgnoreCase("false")) {
+            return false;
+          }
+          return value;
+        }
+        case 't':
+          expectLiteral("true");
+          return true;
+        case 'f':
+          expectLiteral("false");
+          return false;
+        case 'n':
+          expectLiteral("null");
+          return NULL;
+        default:
+          if (c == '-' || (c >= '0' && c <= '9')) {
+            return readNumber();
+          }
+          throw UNSUPPORTED;
+      }
+    }
+
+    private List<Object> readArray() throws UnsupportedSyntaxException {
+      List<Object> result = new ArrayList<Object>();
+      pos++;  // '['
+      skipWhitespace();
+      if (pos < length && text.charAt(pos) == ']') {
+        pos++;
+        return result;
+      }
+      while (true) {
+        result.add(itemValue(readValue()));
+        skipWhitespace();
+        if (pos >= length) {
+          throw UNSUPPORTED;
+        }
+        char c = text.charAt(pos++);
+        if (c == ']') {
+          return result;
+        } else if (c != ',') {
+          throw UNSUPPORTED;
+        }
+      }
+    }
+
+    private List<Object> readObject() throws UnsupportedSyntaxException {
+      // Later duplicates of a key replace earlier ones, as in JSONObject.
+      Map<String, Object> members = new HashMap<String, Object>();
+      pos++;  // '{'
+      skipWhitespace();
+      if (pos < length && text.charAt(pos) == '}') {
+        pos++;
+      } else {
+        while (true) {
+          skipWhitespace();
+          if (pos >= length || text.charAt(pos) != '"') {
+            throw UNSUPPORTED;
+          }
+          String key = readString();
+          skipWhitespace();
+          if (pos >= length || text.charAt(pos) != ':') {
+            throw UNSUPPORTED;
+          }
+          pos++;
+          members.put(key, itemValue(readValue()));
+          skipWhitespace();
+          if (pos >= length) {
+            throw UNSUPPORTED;
+          }
+          char c = text.charAt(pos++);
+          if (c == '}') {
+            break;
+          } else if (c != ',') {
+            throw UNSUPPORTED;
+          }
+        }
+      }
+      List<String> keys = new ArrayList<String>(members.keySet());
+      Collections.sort(keys);
+      List<Object> result = new ArrayList<Object>(keys.size());
+      for (String key : keys) {
+        List<Object> pair = new ArrayList<Object>(2);
+        pair.add(key);
+        pair.add(members.get(key));
+        result.add(pair);
+      }
+      return result;
+    }
+
+    private static Object itemValue(Object value) {
+      return value == NULL ? "null" : value;
+    }
+
+    private String readString() throws UnsupportedSyntaxException {
+      pos++;  // opening quote
+      // Fast path: strings without escapes are taken directly from the text.
+      int start = pos;
+      while (pos < length) {
+        char c = text.charAt(pos);
+        if (c == '"') {
+          return text.substring(start, pos++);
+        } else if (c == '\\') {
+          break;
+        } else if (c < 0x20) {
+          throw UNSUPPORTED;
+        }
+        pos++;
+      }
+      buffer.setLength(0);
+      buffer.append(text, start, pos);
+      while (pos < length) {
+        char c = text.charAt(pos++);
+        if (c == '"') {
+          return buffer.toString();
+        } else if (c < 0x20) {
+          throw UNSUPPORTED;
+        } else if (c != '\\') {
+          buffer.append(c);
+          continue;
+        }
+        if (pos >= length) {
+          throw UNSUPPORTED;
+        }
+        c = text.charAt(pos++);
+        switch (c) {
+          case '"':
+          case '\\':
+          case '/':
+            buffer.append(c);
+            break;
+          case 'b':
+            buffer.append('\b');
+            break;
+          case 'f':
+            buffer.append('\f');
+            break;
+          case 'n':
+            buffer.append('\n');
+            break;
+          case 'r':
+            buffer.append('\r');
+            break;
+          case 't':
+            buffer.append('\t');
+            break;
+          case 'u':
+            if (pos + 4 > length) {
+              throw UNSUPPORTED;
+            }
+            int code = 0;
+            for (int end = pos + 4; pos < end; pos++) {
+              int digit = Character.digit(text.charAt(pos), 16);
+              if (digit < 0) {
+                throw UNSUPPORTED;
+              }
+              code = (code << 4) | digit;
+            }
+            buffer.append((char) code);
+            break;
+          default:
+            throw UNSUPPORTED;
+        }
+      }
+      throw UNSUPPORTED;
+    }
+
+    private Number readNumber() throws UnsupportedSyntaxException {
+      int start = pos;
+      boolean integral = true;
+      if (text.charAt(pos) == '-') {
+        pos++;
+      }
+      int digitsStart = pos;
+      skipDigits();
+      int intDigits = pos - digitsStart;
+      if (intDigits == 0 || (intDigits > 1 && text.charAt(digitsStart) == '0')) {
+        // Leading zeros are read as octal by the org.json tokener.
+        throw UNSUPPORTED;
+      }
+      if (pos < length && text.charAt(pos) == '.') {
+        integral = false;
+        pos++;
+        if (skipDigits() == 0) {
+          throw UNSUPPORTED;
+        }
+      }
+      if (pos < length && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+        integral = false;
+        pos++;
+        if (pos < length && (text.charAt(pos) == '+' || text.charAt(pos) == '-')) {
+          pos++;
+        }
+        if (skipDigits() == 0) {
+          throw UNSUPPORTED;
+        }
+      }
+      if (pos < length && isLiteralChar(text.charAt(pos))) {
+        // Something like 0x1F or 12abc, which the tokener treats specially.
+        throw UNSUPPORTED;
+      }
+      String number = text.substring(start, pos);
+      if (integral) {
+        try {
+          long value = Long.parseLong(number);
+          if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return (int) value;
+          }
+          return value;
+        } catch (NumberFormatException e) {
+          // Too large for a long, so fall through and read it as a double.
+        }
+      }
+      return Double.valueOf(number);
+    }
+
+    private int skipDigits() {
+      int start = pos;
+      while (pos < length && text.charAt(pos) >= '0' && text.charAt(pos) <= '9') {
+        pos++;
+      }
+      return pos - start;
+    }
+
+    private void expectLiteral(String literal) throws UnsupportedSyntaxException {
+      if (!text.startsWith(literal, pos)) {
+        throw UNSUPPORTED;
+      }
+      pos += literal.length();
+      if (pos < length && isLiteralChar(text.charAt(pos))) {
+        throw UNSUPPORTED;
+      }
+    }
+
+    private static boolean isLiteralChar(char c) {
+      return Character.isLetterOrDigit(c) || c == '.' || c == '_' || c == '+' || c == '-';
+    }
+
+    private void skipWhitespace() {
+      while (pos < length) {
+        char c = text.charAt(pos);
+        if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+          return;
+        }
+        pos++;
       }
-      throw new JSONException("Invalid JSON string.");
     }
   }
 
@@ -10,6 +10,9 @@ import java.util.Collections;
 import java.util.List;
 
 import android.content.Intent;
+import android.hardware.Sensor;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
 import android.os.Build;
 import android.provider.Telephony.Sms.Intents;
 import android.telephony.SmsMessage;
@@ -69,4 +72,18 @@ public final class KitkatUtil {
       return view.getHeight();
     }
   }
+
+  /**
+   * Registers a listener for a sensor, letting the sensor keep its readings in its hardware queue
+   * for up to maxReportLatencyUs and deliver them in a batch. Sensors without a hardware queue
+   * deliver each reading as it is taken.
+   *
+   * @param samplingPeriodUs a SensorManager.SENSOR_DELAY_ constant or a period in microseconds
+   * @param maxReportLatencyUs how long readings may be held before they are delivered
+   * @return whether the listener was registered
+   */
+  public static boolean registerSensorListener(SensorManager sensorManager,
+      SensorEventListener listener, Sensor sensor, int samplingPeriodUs, int maxReportLatencyUs) {
+    return sensorManager.registerListener(listener, sensor, samplingPeriodUs, maxReportLatencyUs);
+  }
 }
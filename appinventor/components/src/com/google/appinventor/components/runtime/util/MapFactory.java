@@ -5,6 +5,8 @@
 
 package com.google.appinventor.components.runtime.util;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 import com.google.appinventor.components.runtime.Component;
@@ -120,6 +122,24 @@ public final class MapFactory {
      * @param feature The map feature the user has released from dragging.
      */
     void onFeatureStopDrag(MapFeature feature);
+
+    /**
+     * onTilePrefetchProgress is raised periodically while tiles requested by
+     * {@link MapController#prefetchTiles(BoundingBox, int, int)} are downloaded.
+     *
+     * @param completed The number of tiles handled so far.
+     * @param total The number of tiles being prefetched.
+     */
+    void onTilePrefetchProgress(int completed, int total);
+
+    /**
+     * onTilePrefetchComplete is raised when a prefetch started by
+     * {@link MapController#prefetchTiles(BoundingBox, int, int)} has finished.
+     *
+     * @param total The number of tiles that were prefetched.
+     * @param failed The number of tiles that could not be downloaded.
+     */
+    void onTilePrefetchComplete(int total, int failed);
   }
 
   /**
@@ -524,6 +544,78 @@ public final class MapFactory {
      * @return the rotation
      */
     float getRotation();
+
+    /**
+     * Sets the number of bytes that map tiles saved on the device may use. When the cache grows
+     * past this size, the tiles that were downloaded longest ago are removed.
+     *
+     * @param bytes the size of the tile cache in bytes
+     */
+    void setTileCacheSize(long bytes);
+
+    /**
+     * Gets the number of bytes that map tiles saved on the device may use.
+     *
+     * @return the size of the tile cache in bytes
+     */
+    long getTileCacheSize();
+
+    /**
+     * Removes all map tiles saved on the device.
+     */
+    void clearTileCache();
+
+    /**
+     * Adds a tile archive, such as a ZIP, SQLite, GEMF or MBTiles file, from which the map reads
+     * tiles before downloading them. The archive is copied to the device. This method reads the
+     * archive and should not be called on the UI thread.
+     *
+     * @param name the file name of the archive, whose extension determines its format
+     * @param archive the contents of the archive
+     * @throws IOException if the archive cannot be copied or its format is not supported
+     */
+    void addTileArchive(String name, InputStream archive) throws IOException;
+
+    /**
+     * Counts the tiles that cover a bounding box over a range of zoom levels.
+     *
+     * @param boundingBox the area to cover
+     * @param minZoom the lowest zoom level
+     * @param maxZoom the highest zoom level
+     * @return the number of tiles
+     */
+    int countTiles(BoundingBox boundingBox, int minZoom, int maxZoom);
+
+    /**
+     * Downloads into the tile cache, in the background, the tiles that cover a bounding box over
+     * a range of zoom levels. Progress is reported to the map's {@link MapEventListener}s.
+     *
+     * @param boundingBox the area to cover
+     * @param minZoom the lowest zoom level
+     * @param maxZoom the highest zoom level
+     */
+    void prefetchTiles(BoundingBox boundingBox, int minZoom, int maxZoom);
+
+    /**
+     * Stops any tile prefetches that are in progress.
+     */
+    void cancelTilePrefetch();
+
+    /**
+     * Sets whether markers close together on the screen are drawn as a single cluster showing
+     * how many markers it holds. Clusters are recomputed for each zoom level, and tapping one
+     * zooms the map in to show its markers.
+     *
+     * @param enabled true if markers should be clustered, otherwise false
+     */
+    void setClusterMarkersEnabled(boolean enabled);
+
+    /**
+     * Gets whether markers close together on the screen are drawn as clusters.
+     *
+     * @return true if markers are clustered, otherwise false
+     */
+    boolean isClusterMarkersEnabled();
   }
 
   /**
@@ -0,0 +1,305 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.view.MotionEvent;
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.util.TileSystem;
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.Projection;
+import org.osmdroid.views.overlay.Marker;
+import org.osmdroid.views.overlay.Overlay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Draws many markers as a single overlay, grouping markers that are close together on the screen
+ * into clusters.
+ *
+ * <p>The world is divided into square cells a fixed number of pixels across at each zoom level,
+ * and the markers in each cell form a cluster. A cluster of one marker is drawn as the marker
+ * itself and a cluster of several is drawn as a badge showing how many markers it holds. Tapping
+ * a badge zooms the map in far enough to split the cluster up. Clusters are computed once per
+ * zoom level and kept until a marker is added, removed or moved, so panning costs only the
+ * drawing of the clusters on screen. At the map's highest zoom level every marker is drawn on
+ * its own.</p>
+ *
+ * <p>Markers added to this overlay must not also be added to the map's overlay manager.</p>
+ */
+class MarkerClusterOverlay extends Overlay {
+  private static final int CELL_SIZE_DP = 64;
+  private static final float BADGE_RADIUS_DP = 16;
+  private static final float BADGE_RADIUS_PER_DIGIT_DP = 4;
+  private static final float BADGE_STROKE_DP = 2;
+  private static final float BADGE_TEXT_DP = 13;
+  private static final int BADGE_COLOR = 0xFF2196F3;
+  private static final int BADGE_TEXT_COLOR = 0xFFFFFFFF;
+
+  /**
+   * A group of markers in the same grid cell at one zoom level.
+   */
+  static class Cluster {
+    final List<Marker> markers = new ArrayList<Marker>();
+    // The extent of the markers in world pixels at the cluster's zoom level.
+    int minX = Integer.MAX_VALUE;
+    int minY = Integer.MAX_VALUE;
+    int maxX = Integer.MIN_VALUE;
+    int maxY = Integer.MIN_VALUE;
+    private long sumX;
+    private long sumY;
+    GeoPoint position;
+    // Where the cluster was last drawn, in the canvas coordinates of the projection.
+    final Point drawnAt = new Point();
+    float drawnRadius;
+
+    private void add(Marker marker, Point pixel) {
+      markers.add(marker);
+      minX = Math.min(minX, pixel.x);
+      minY = Math.min(minY, pixel.y);
+      maxX = Math.max(maxX, pixel.x);
+      maxY = Math.max(maxY, pixel.y);
+      sumX += pixel.x;
+      sumY += pixel.y;
+    }
+
+    int size() {
+      return markers.size();
+    }
+  }
+
+  private final int cellSize;
+  private final float density;
+  private final Paint badgeFill = new Paint(Paint.ANTI_ALIAS_FLAG);
+  private final Paint badgeStroke = new Paint(Paint.ANTI_ALIAS_FLAG);
+  private final Paint badgeText = new Paint(Paint.ANTI_ALIAS_FLAG);
+  private final Set<Marker> markers = new LinkedHashSet<Marker>();
+  private Map<Integer, List<Cluster>> clustersByZoom = new HashMap<Integer, List<Cluster>>();
+  // The clusters drawn by the last call to draw, which taps are tested against.
+  private List<Cluster> drawn = Collections.emptyList();
+
+  MarkerClusterOverlay(Context context) {
+    super(context);
+    density = context.getResources().getDisplayMetrics().density;
+    cellSize = Math.max(1, Math.round(CELL_SIZE_DP * density));
+    badgeFill.setColor(BADGE_COLOR);
+    badgeFill.setStyle(Paint.Style.FILL);
+    badgeStroke.setColor(BADGE_TEXT_COLOR);
+    badgeStroke.setStyle(Paint.Style.STROKE);
+    badgeStroke.setStrokeWidth(BADGE_STROKE_DP * density);
+    badgeText.setColor(BADGE_TEXT_COLOR);
+    badgeText.setTextAlign(Paint.Align.CENTER);
+    badgeText.setTextSize(BADGE_TEXT_DP * density);
+    badgeText.setTypeface(Typeface.DEFAULT_BOLD);
+  }
+
+  synchronized void add(Marker marker) {
+    if (markers.add(marker)) {
+      invalidateClusters();
+    }
+  }
+
+  synchronized void remove(Marker marker) {
+    if (markers.remove(marker)) {
+      invalidateClusters();
+    }
+  }
+
+  synchronized boolean contains(Marker marker) {
+    return markers.contains(marker);
+  }
+
+  /**
+   * Removes every marker from the overlay and returns them, in the order they were added.
+   */
+  synchronized List<Marker> removeAll() {
+    List<Marker> removed = new ArrayList<Marker>(markers);
+    markers.clear();
+    invalidateClusters();
+    return removed;
+  }
+
+  synchronized int size() {
+    return markers.size();
+  }
+
+  /**
+   * Discards the computed clusters. This must be called when a marker in the overlay moves.
+   */
+  synchronized void invalidateClusters() {
+    clustersByZoom = new HashMap<Integer, List<Cluster>>();
+  }
+
+  /**
+   * Returns the clusters of markers at the given zoom level, computing them if needed. The
+   * returned list must not be modified.
+   *
+   * @param zoom the zoom level
+   * @param maxZoom the highest zoom level of the map, at which markers are not clustered
+   */
+  synchronized List<Cluster> getClusters(int zoom, int maxZoom) {
+    List<Cluster> clusters = clustersByZoom.get(zoom);
+    if (clusters == null) {
+      clusters = computeClusters(zoom, zoom >= maxZoom ? 1 : cellSize);
+      clustersByZoom.put(zoom, clusters);
+    }
+    return clusters;
+  }
+
+  private List<Cluster> computeClusters(int zoom, int cell) {
+    Map<Long, Cluster> cells = new HashMap<Long, Cluster>();
+    List<Cluster> clusters = new ArrayList<Cluster>();
+    Point pixel = new Point();
+    for (Marker marker : markers) {
+      GeoPoint position = marker.getPosition();
+      TileSystem.LatLongToPixelXY(position.getLatitude(), position.getLongitude(), zoom, pixel);
+      Cluster cluster;
+      if (cell == 1) {
+        // Not clustering, so every marker is drawn on its own.
+        cluster = new Cluster();
+      } else {
+        long key = ((long) (pixel.x / cell) << 32) | (pixel.y / cell);
+        cluster = cells.get(key);
+        if (cluster == null) {
+          cluster = new Cluster();
+          cells.put(key, cluster);
+        }
+      }
+      if (cluster.markers.isEmpty()) {
+        clusters.add(cluster);
+      }
+      cluster.add(marker, pixel);
+    }
+    for (Cluster cluster : clusters) {
+      int n = cluster.size();
+      cluster.position = TileSystem.PixelXYToLatLong((int) (cluster.sumX / n),
+          (int) (cluster.sumY / n), zoom, null);
+    }
+    return clusters;
+  }
+
+  @Override
+  public void draw(Canvas canvas, MapView mapView, boolean shadow) {
+    if (shadow) {
+      return;
+    }
+    List<Cluster> clusters = getClusters(mapView.getZoomLevel(), mapView.getMaxZoomLevel());
+    Projection projection = mapView.getProjection();
+    Rect visible = new Rect(projection.getIntrinsicScreenRect());
+    // Leave room for markers that are partly on screen, and for the corners of a rotated map.
+    int margin = cellSize;
+    if (mapView.getMapOrientation() != 0) {
+      margin += Math.max(visible.width(), visible.height()) / 2;
+    }
+    visible.inset(-margin, -margin);
+    List<Cluster> drawnNow = new ArrayList<Cluster>();
+    Point point = new Point();
+    for (Cluster cluster : clusters) {
+      projection.toPixels(cluster.position, point);
+      if (!visible.contains(point.x, point.y)) {
+        continue;
+      }
+      if (cluster.size() == 1) {
+        cluster.markers.get(0).draw(canvas, mapView, false);
+      } else {
+        drawBadge(canvas, cluster, point);
+      }
+      drawnNow.add(cluster);
+    }
+    drawn = drawnNow;
+  }
+
+  private void drawBadge(Canvas canvas, Cluster cluster, Point point) {
+    String count = Integer.toString(cluster.size());
+    float radius = (BADGE_RADIUS_DP + BADGE_RADIUS_PER_DIGIT_DP * (count.length() - 1)) * density;
+    canvas.drawCircle(point.x, point.y, radius, badgeFill);
+    canvas.drawCircle(point.x, point.y, radius, badgeStroke);
+    // Center the text vertically on the badge.
+    float baseline = point.y - (badgeText.descent() + badgeText.ascent()) / 2;
+    canvas.drawText(count, point.x, baseline, badgeText);
+    cluster.drawnAt.set(point.x, point.y);
+    cluster.drawnRadius = radius;
+  }
+
+  @Override
+  public boolean onSingleTapConfirmed(MotionEvent event, MapView mapView) {
+    Rect screen = mapView.getProjection().getIntrinsicScreenRect();
+    float x = event.getX() + screen.left;
+    float y = event.getY() + screen.top;
+    List<Cluster> clusters = drawn;
+    // Test from the top, which was drawn last.
+    for (int i = clusters.size() - 1; i >= 0; i--) {
+      Cluster cluster = clusters.get(i);
+      if (cluster.size() == 1) {
+        if (cluster.markers.get(0).onSingleTapConfirmed(event, mapView)) {
+          return true;
+        }
+      } else {
+        float dx = x - cluster.drawnAt.x;
+        float dy = y - cluster.drawnAt.y;
+        if (dx * dx + dy * dy <= cluster.drawnRadius * cluster.drawnRadius) {
+          expand(cluster, mapView);
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean onLongPress(MotionEvent event, MapView mapView) {
+    List<Cluster> clusters = drawn;
+    for (int i = clusters.size() - 1; i >= 0; i--) {
+      Cluster cluster = clusters.get(i);
+      if (cluster.size() == 1 && cluster.markers.get(0).onLongPress(event, mapView)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean onTouchEvent(MotionEvent event, MapView mapView) {
+    // Lets a marker that is being dragged follow the touch.
+    List<Cluster> clusters = drawn;
+    for (int i = clusters.size() - 1; i >= 0; i--) {
+      Cluster cluster = clusters.get(i);
+      if (cluster.size() == 1 && cluster.markers.get(0).onTouchEvent(event, mapView)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Centers the map on a cluster and zooms in until its markers are spread over more than one
+   * cell, or as far as the map allows.
+   */
+  void expand(Cluster cluster, MapView mapView) {
+    int zoom = mapView.getZoomLevel();
+    int maxZoom = mapView.getMaxZoomLevel();
+    int span = Math.max(cluster.maxX - cluster.minX, cluster.maxY - cluster.minY);
+    int target = maxZoom;
+    if (span > 0) {
+      // Each zoom level doubles the distance between the markers.
+      int levels = (int) Math.ceil(Math.log((double) cellSize / span) / Math.log(2));
+      target = Math.min(maxZoom, zoom + Math.max(1, levels));
+    }
+    mapView.getController().setZoom(target);
+    mapView.getController().setCenter(cluster.position);
+  }
+}
@@ -11,6 +11,7 @@ import com.google.appinventor.components.runtime.ReplForm;
 import com.google.appinventor.components.runtime.errors.PermissionException;
 
 import android.Manifest;
+import android.app.ActivityManager;
 import android.content.Context;
 import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
@@ -21,7 +22,11 @@ import android.media.MediaPlayer;
 import android.media.SoundPool;
 import android.net.Uri;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.Contacts;
+import android.support.v4.util.LruCache;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.Display;
 import android.view.WindowManager;
@@ -38,7 +43,9 @@ import java.io.InputStream;
 import java.lang.reflect.Array;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -57,6 +64,20 @@ public class MediaUtil {
   // tempFileMap maps cached media (assets, etc) to their respective temp files.
   private static final Map<String, File> tempFileMap = new HashMap<String, File>();
 
+  // The bitmap cache gets this fraction of the app's memory class.
+  private static final int BITMAP_CACHE_FRACTION = 8;
+
+  // Decoded images, created on first use since its size depends on the device.
+  private static volatile BitmapCache bitmapCache;
+
+  // Requests waiting for an image that is being loaded, by cache key.
+  private static final Map<String, List<AsyncCallbackPair<BitmapDrawable>>> pendingBitmapLoads =
+      new HashMap<String, List<AsyncCallbackPair<BitmapDrawable>>>();
+
+  // Delivers images found in the bitmap cache, so that they arrive after the request returns
+  // just as loaded images do. Created on first use, since it needs the main looper.
+  private static volatile Handler mainHandler;
+
   // this class is used by getBitmapDrawable so it can call the asynchronous version
   // (getBitMapDrawableAsync) and await the result (blocking the UI Thread :-()
   private static class Synchronizer<T> {
@@ -381,7 +402,9 @@ public class MediaUtil {
           syncer.wakeup(result);
         }
       };
-    getBitmapDrawableAsync(form, mediaPath, continuation);
+    // A cached image is passed on straight away rather than posted to the UI thread, which is
+    // blocked here until the result arrives.
+    getBitmapDrawableAsync(form, mediaPath, continuation, false);
     syncer.waitfor();
     BitmapDrawable result = (BitmapDrawable) syncer.getResult();
     if (result == null) {
@@ -401,19 +424,63 @@ public class MediaUtil {
    *
    * <p/>If mediaPath is null or empty, null is returned.
    *
+   * <p/>Images from assets and files are kept in a cache, so setting the same picture on many
+   * components, or switching between pictures, decodes each image only once. Images from URLs
+   * and content providers are not cached, since they may change between requests.
+   *
    * @param form the Form
    * @param mediaPath the path to the media
    * @param continuation An AsyncCallbackPair that will receive a
    * BitmapDrawable on success. On exception or failure the appropriate
-   * handler will be triggered.
+   * handler will be triggered. An image found in the cache is posted to the
+   * UI thread, not passed on before this method returns.
    */
   public static void getBitmapDrawableAsync(final Form form, final String mediaPath, final AsyncCallbackPair<BitmapDrawable> continuation) {
+    getBitmapDrawableAsync(form, mediaPath, continuation, true);
+  }
+
+  /**
+   * Loads the image specified by mediaPath, passing a cached image to the continuation on the UI
+   * thread if postCached is true and on the calling thread otherwise.
+   */
+  private static void getBitmapDrawableAsync(final Form form, final String mediaPath,
+      final AsyncCallbackPair<BitmapDrawable> continuation, boolean postCached) {
     if (mediaPath == null || mediaPath.length() == 0) {
       continuation.onSuccess(null);
       return;
     }
 
     final MediaSource mediaSource = determineMediaSource(form, mediaPath);
+    final String cacheKey = bitmapCacheKey(form, mediaPath, mediaSource);
+
+    if (cacheKey != null) {
+      Bitmap cached = getBitmapCache(form).get(cacheKey);
+      if (cached != null) {
+        final BitmapDrawable drawable = newBitmapDrawable(form, cached);
+        if (postCached) {
+          getMainHandler().post(new Runnable() {
+            @Override
+            public void run() {
+              continuation.onSuccess(drawable);
+            }
+          });
+        } else {
+          continuation.onSuccess(drawable);
+        }
+        return;
+      }
+      // If the same image is already being loaded, wait for that rather than loading it again.
+      synchronized (pendingBitmapLoads) {
+        List<AsyncCallbackPair<BitmapDrawable>> waiting = pendingBitmapLoads.get(cacheKey);
+        if (waiting != null) {
+          waiting.add(continuation);
+          return;
+        }
+        waiting = new ArrayList<AsyncCallbackPair<BitmapDrawable>>();
+        waiting.add(continuation);
+        pendingBitmapLoads.put(cacheKey, waiting);
+      }
+    }
 
     Runnable loadImage = new Runnable() {
       @Override
@@ -424,21 +491,16 @@ public class MediaUtil {
         // cached previously.
 
         Log.d(LOG_TAG, "mediaPath = " + mediaPath);
-        InputStream is = null;
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        byte[] buf = new byte[4096];
-        int read;
         try {
-          // copy the input stream to an in-memory buffer
-          is = openMedia(form, mediaPath, mediaSource);
-          while ((read = is.read(buf)) > 0) {
-            bos.write(buf, 0, read);
+          Bitmap bitmap = decodeBitmap(form, mediaPath, mediaSource);
+          if (bitmap == null) {
+            bitmapLoadFailed(cacheKey, continuation, "Unable to decode image " + mediaPath + ".");
+            return;
           }
-          buf = bos.toByteArray();
+          bitmapLoaded(form, cacheKey, continuation, bitmap);
         } catch (PermissionException e) {
-          continuation.onFailure("PERMISSION_DENIED:" + e.getPermissionNeeded());
-          return;
-        } catch(IOException e) {
+          bitmapLoadFailed(cacheKey, continuation, "PERMISSION_DENIED:" + e.getPermissionNeeded());
+        } catch (IOException e) {
           if (mediaSource == MediaSource.CONTACT_URI) {
             // There's no photo for this contact, return a placeholder image.
             BitmapDrawable drawable = new BitmapDrawable(form.getResources(),
@@ -448,81 +510,217 @@ public class MediaUtil {
             return;
           }
           Log.d(LOG_TAG, "IOException reading file.", e);
-          continuation.onFailure(e.getMessage());
-          return;
-        } finally {
-          if (is != null) {
-            try {
-              is.close();
-            } catch(IOException e) {
-              // suppress error on close
-              Log.w(LOG_TAG, "Unexpected error on close", e);
-            }
-          }
-          is = null;
-          try {
-            bos.close();
-          } catch(IOException e) {
-            // Should never fail to close a ByteArrayOutputStream
-          }
-          bos = null;
-        }
-        ByteArrayInputStream bis = new ByteArrayInputStream(buf);
-        read = buf.length;
-        buf = null;
-        try {
-          bis.mark(read);
-          BitmapFactory.Options options = getBitmapOptions(form, bis, mediaPath);
-          bis.reset();
-          BitmapDrawable originalBitmapDrawable = new BitmapDrawable(form.getResources(), decodeStream(bis, null, options));
-          // If options.inSampleSize == 1, then the image was not unreasonably large and may represent
-          // the actual size the user intended for the image. However we still have to scale it by
-          // the device density.
-          // However if we *did* sample the image to make it smaller, then that means that the image
-          // was not sized specifically for the application. In that case it makes no sense to
-          // scale it, so we don't.
-          // When we scale the image we do the following steps:
-          //   1. set the density in the returned bitmap drawable.
-          //   2. calculate scaled width and height
-          //   3. create a scaled bitmap with the scaled measures
-          //   4. create a new bitmap drawable with the scaled bitmap
-          //   5. set the density in the scaled bitmap.
-
-          originalBitmapDrawable.setTargetDensity(form.getResources().getDisplayMetrics());
-          if ((options.inSampleSize != 1) || (form.deviceDensity() == 1.0f)) {
-            continuation.onSuccess(originalBitmapDrawable);
-            return;
-          }
-          int scaledWidth = (int) (form.deviceDensity() * originalBitmapDrawable.getIntrinsicWidth());
-          int scaledHeight = (int) (form.deviceDensity() * originalBitmapDrawable.getIntrinsicHeight());
-          Log.d(LOG_TAG, "form.deviceDensity() = " + form.deviceDensity());
-          Log.d(LOG_TAG, "originalBitmapDrawable.getIntrinsicWidth() = " + originalBitmapDrawable.getIntrinsicWidth());
-          Log.d(LOG_TAG, "originalBitmapDrawable.getIntrinsicHeight() = " + originalBitmapDrawable.getIntrinsicHeight());
-          Bitmap scaledBitmap = Bitmap.createScaledBitmap(originalBitmapDrawable.getBitmap(),
-              scaledWidth, scaledHeight, false);
-          BitmapDrawable scaledBitmapDrawable = new BitmapDrawable(form.getResources(), scaledBitmap);
-          scaledBitmapDrawable.setTargetDensity(form.getResources().getDisplayMetrics());
-          originalBitmapDrawable = null; // So it will get GC'd on the next line
-          System.gc();                   // We likely used a lot of memory, so gc now.
-          continuation.onSuccess(scaledBitmapDrawable);
-        } catch(Exception e) {
+          bitmapLoadFailed(cacheKey, continuation, e.getMessage());
+        } catch (Exception e) {
           Log.w(LOG_TAG, "Exception while loading media.", e);
-          continuation.onFailure(e.getMessage());
-        } finally {
-          if (bis != null) {
-            try {
-              bis.close();
-            } catch(IOException e) {
-              // suppress error on close
-              Log.w(LOG_TAG, "Unexpected error on close", e);
-            }
-          }
+          bitmapLoadFailed(cacheKey, continuation, e.getMessage());
         }
       }
     };
     AsynchUtil.runAsynchronously(loadImage);
   }
 
+  // Bitmap cache
+
+  /**
+   * Removes all images from the bitmap cache.
+   */
+  public static void clearBitmapCache() {
+    BitmapCache cache = bitmapCache;
+    if (cache != null) {
+      cache.evictAll();
+    }
+  }
+
+  private static Handler getMainHandler() {
+    Handler handler = mainHandler;
+    if (handler == null) {
+      synchronized (MediaUtil.class) {
+        if (mainHandler == null) {
+          mainHandler = new Handler(Looper.getMainLooper());
+        }
+        handler = mainHandler;
+      }
+    }
+    return handler;
+  }
+
+  private static BitmapCache getBitmapCache(Form form) {
+    BitmapCache cache = bitmapCache;
+    if (cache == null) {
+      synchronized (MediaUtil.class) {
+        if (bitmapCache == null) {
+          ActivityManager activityManager =
+              (ActivityManager) form.getSystemService(Context.ACTIVITY_SERVICE);
+          int memoryClass = Math.max(1, activityManager.getMemoryClass());
+          int maxBytes = memoryClass * 1024 * 1024 / BITMAP_CACHE_FRACTION;
+          bitmapCache = new BitmapCache(maxBytes);
+        }
+        cache = bitmapCache;
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Returns the key under which the image at mediaPath is cached, or null if it should not be
+   * cached. The key includes everything that affects the decoded bitmap: where the image comes
+   * from (and, for files, when it was last changed), the size it is sampled down to fit, and the
+   * density it is scaled to.
+   */
+  private static String bitmapCacheKey(Form form, String mediaPath, MediaSource mediaSource) {
+    String source;
+    try {
+      switch (mediaSource) {
+        case ASSET:
+          source = "asset:" + mediaPath;
+          break;
+        case REPL_ASSET:
+          source = fileCacheKey(replAssetPath(mediaPath));
+          break;
+        case SDCARD:
+          source = fileCacheKey(mediaPath);
+          break;
+        case FILE_URL:
+          source = fileCacheKey(fileUrlToFilePath(mediaPath));
+          break;
+        default:
+          return null;
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    int[] maxSize = getMaxImageSize(form);
+    return source + "|" + maxSize[0] + "x" + maxSize[1] + "@" + form.deviceDensity();
+  }
+
+  private static String fileCacheKey(String path) {
+    File file = new File(path);
+    return "file:" + file.getAbsolutePath() + ":" + file.lastModified() + ":" + file.length();
+  }
+
+  private static BitmapDrawable newBitmapDrawable(Form form, Bitmap bitmap) {
+    BitmapDrawable drawable = new BitmapDrawable(form.getResources(), bitmap);
+    drawable.setTargetDensity(form.getResources().getDisplayMetrics());
+    return drawable;
+  }
+
+  /**
+   * Caches a newly loaded bitmap and passes it to every request that was waiting for it.
+   */
+  private static void bitmapLoaded(Form form, String cacheKey,
+      AsyncCallbackPair<BitmapDrawable> continuation, Bitmap bitmap) {
+    if (cacheKey == null) {
+      continuation.onSuccess(newBitmapDrawable(form, bitmap));
+      return;
+    }
+    getBitmapCache(form).put(cacheKey, bitmap);
+    List<AsyncCallbackPair<BitmapDrawable>> waiting;
+    synchronized (pendingBitmapLoads) {
+      waiting = pendingBitmapLoads.remove(cacheKey);
+    }
+    if (waiting == null) {
+      continuation.onSuccess(newBitmapDrawable(form, bitmap));
+      return;
+    }
+    for (AsyncCallbackPair<BitmapDrawable> callback : waiting) {
+      // Each caller gets its own drawable, since drawables carry state such as their bounds.
+      callback.onSuccess(newBitmapDrawable(form, bitmap));
+    }
+  }
+
+  /**
+   * Reports a failed load to every request that was waiting for it.
+   */
+  private static void bitmapLoadFailed(String cacheKey,
+      AsyncCallbackPair<BitmapDrawable> continuation, String message) {
+    List<AsyncCallbackPair<BitmapDrawable>> waiting = null;
+    if (cacheKey != null) {
+      synchronized (pendingBitmapLoads) {
+        waiting = pendingBitmapLoads.remove(cacheKey);
+      }
+    }
+    if (waiting == null) {
+      continuation.onFailure(message);
+      return;
+    }
+    for (AsyncCallbackPair<BitmapDrawable> callback : waiting) {
+      callback.onFailure(message);
+    }
+  }
+
+  /**
+   * A least-recently-used cache of decoded bitmaps, limited by the number of bytes they use.
+   */
+  private static class BitmapCache extends LruCache<String, Bitmap> {
+    BitmapCache(int maxBytes) {
+      super(maxBytes);
+    }
+
+    @Override
+    protected int sizeOf(String key, Bitmap bitmap) {
+      // Bitmap.getByteCount needs API level 12.
+      return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+  }
+
+  /**
+   * Decodes the image at mediaPath, sampled down if it is much larger than the screen and
+   * otherwise scaled to the screen density, or returns null if the data is not an image.
+   *
+   * <p>The image is read twice, once for its size and once to decode it at the size it will be
+   * shown. Except for images from the internet, which are read into memory once since reading
+   * them again could give a different image, neither pass keeps a copy of the encoded data, and
+   * the decoder produces the final bitmap directly rather than a full-size one to be scaled.
+   */
+  private static Bitmap decodeBitmap(Form form, String mediaPath, MediaSource mediaSource)
+      throws IOException {
+    if (mediaSource == MediaSource.URL) {
+      byte[] data = readMedia(form, mediaPath, mediaSource);
+      BitmapFactory.Options options =
+          getBitmapOptions(form, new ByteArrayInputStream(data), mediaPath);
+      return decodeStream(new ByteArrayInputStream(data), null, options);
+    }
+    BitmapFactory.Options options;
+    InputStream is = openMedia(form, mediaPath, mediaSource);
+    try {
+      options = getBitmapOptions(form, is, mediaPath);
+    } finally {
+      closeQuietly(is);
+    }
+    is = openMedia(form, mediaPath, mediaSource);
+    try {
+      return decodeStream(is, null, options);
+    } finally {
+      closeQuietly(is);
+    }
+  }
+
+  private static byte[] readMedia(Form form, String mediaPath, MediaSource mediaSource)
+      throws IOException {
+    InputStream is = openMedia(form, mediaPath, mediaSource);
+    try {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      byte[] buf = new byte[4096];
+      int read;
+      while ((read = is.read(buf)) > 0) {
+        bos.write(buf, 0, read);
+      }
+      return bos.toByteArray();
+    } finally {
+      closeQuietly(is);
+    }
+  }
+
+  private static void closeQuietly(InputStream is) {
+    try {
+      is.close();
+    } catch (IOException e) {
+      // suppress error on close
+      Log.w(LOG_TAG, "Unexpected error on close", e);
+    }
+  }
+
   private static Bitmap decodeStream(InputStream is, Rect outPadding, BitmapFactory.Options opts) {
     // We wrap a FlushedInputStream around the given InputStream. This works around a problem in
     // BitmapFactory.decodeStream where it fails to load the image if the InputStream's skip method
@@ -564,6 +762,34 @@ public class MediaUtil {
     int imageWidth = options.outWidth;
     int imageHeight = options.outHeight;
 
+    int[] maxSize = getMaxImageSize(form);
+    int maxWidth = maxSize[0];
+    int maxHeight = maxSize[1];
+
+    int sampleSize = 1;
+    while ((imageWidth / sampleSize > maxWidth) && (imageHeight / sampleSize > maxHeight)) {
+      sampleSize *= 2;
+    }
+    options = new BitmapFactory.Options();
+    Log.d(LOG_TAG, "getBitmapOptions: sampleSize = " + sampleSize + " mediaPath = " + mediaPath
+      + " maxWidth = " + maxWidth + " maxHeight = " + maxHeight);
+    options.inSampleSize = sampleSize;
+    // If the image was not sampled down, it was not unreasonably large and may be the size the
+    // user intended, so treat it as a medium density image and have the decoder scale it to the
+    // device density. If it *was* sampled down, it was not sized specifically for the
+    // application, so scaling it makes no sense.
+    if (sampleSize == 1 && form.deviceDensity() != 1.0f) {
+      options.inScaled = true;
+      options.inDensity = DisplayMetrics.DENSITY_DEFAULT;
+      options.inTargetDensity = form.getResources().getDisplayMetrics().densityDpi;
+    }
+    return options;
+  }
+
+  /**
+   * Returns the width and height beyond which images are sampled down when they are loaded.
+   */
+  private static int[] getMaxImageSize(Form form) {
     // Get the screen size.
     Display display = ((WindowManager) form.getSystemService(Context.WINDOW_SERVICE)).
         getDefaultDisplay();
@@ -583,17 +809,7 @@ public class MediaUtil {
       maxWidth = (int) (display.getWidth() / form.deviceDensity());
       maxHeight = (int) (display.getHeight() / form.deviceDensity());
     }
-
-    int sampleSize = 1;
-    while ((imageWidth / sampleSize > maxWidth) && (imageHeight / sampleSize > maxHeight)) {
-      sampleSize *= 2;
-    }
-    options = new BitmapFactory.Options();
-    Log.d(LOG_TAG, "getBitmapOptions: sampleSize = " + sampleSize + " mediaPath = " + mediaPath
-      + " maxWidth = " + maxWidth + " maxHeight = " + maxHeight +
-      " display width = " + display.getWidth() + " display height = " + display.getHeight());
-    options.inSampleSize = sampleSize;
-    return options;
+    return new int[] { maxWidth, maxHeight };
   }
 
   // SoundPool related methods
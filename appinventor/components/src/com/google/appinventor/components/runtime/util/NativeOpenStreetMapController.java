@@ -9,6 +9,7 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Picture;
+import android.graphics.Point;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.PictureDrawable;
@@ -16,6 +17,7 @@ import android.location.Location;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.support.v4.util.LruCache;
 import android.support.v4.view.ViewCompat;
 import android.util.DisplayMetrics;
 import android.util.Log;
@@ -48,6 +50,11 @@ import org.osmdroid.events.MapListener;
 import org.osmdroid.events.ScrollEvent;
 import org.osmdroid.events.ZoomEvent;
 import org.osmdroid.tileprovider.MapTile;
+import org.osmdroid.tileprovider.MapTileProviderBasic;
+import org.osmdroid.tileprovider.cachemanager.CacheManager;
+import org.osmdroid.tileprovider.modules.ArchiveFileFactory;
+import org.osmdroid.tileprovider.modules.IFilesystemCache;
+import org.osmdroid.tileprovider.modules.SqlTileWriter;
 import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
 import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
@@ -70,8 +77,10 @@ import org.osmdroid.views.overlay.mylocation.IMyLocationProvider;
 import org.osmdroid.views.overlay.mylocation.MyLocationNewOverlay;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -91,6 +100,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
   /* end copied from SVG */
 
   private static final String TAG = NativeOpenStreetMapController.class.getSimpleName();
+  private static final int MAX_MARKER_ICONS = 64;
   private boolean caches;
   private final Form form;
   private RelativeLayout containerView;
@@ -109,6 +119,14 @@ class NativeOpenStreetMapController implements MapController, MapListener {
   private boolean ready = false;
   private ZoomControlView zoomControls = null;
   private float lastAzimuth = Float.NaN;
+  private Set<CacheManager> tilePrefetches = new HashSet<CacheManager>();
+  private final MarkerClusterOverlay markerClusters;
+  private boolean clusterMarkers = false;
+
+  // Marker icons rendered from SVG, by asset and style, so that markers that look the same share
+  // one drawable rather than each rendering its own. Raster icons are shared by MediaUtil.
+  private final LruCache<String, Drawable> markerIcons =
+      new LruCache<String, Drawable>(MAX_MARKER_ICONS);
 
   private static class AppInventorLocationSensorAdapter implements IMyLocationProvider,
       LocationSensor.LocationSensorListener {
@@ -293,6 +311,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
     });
     zoomControls = new ZoomControlView(view);
     userLocation = new MyLocationNewOverlay(locationProvider, view);
+    markerClusters = new MarkerClusterOverlay(form);
 
     containerView = new RelativeLayout(form);
     containerView.setClipChildren(true);
@@ -525,6 +544,10 @@ class NativeOpenStreetMapController implements MapController, MapListener {
           public void onMarkerDragEnd(Marker marker) {
             IGeoPoint point = marker.getPosition();
             aiMarker.updateLocation(point.getLatitude(), point.getLongitude());
+            if (markerClusters.contains(marker)) {
+              // The marker's clusters were computed for where it was before the drag.
+              markerClusters.invalidateClusters();
+            }
             for (MapEventListener listener : eventListeners) {
               listener.onFeatureStopDrag(aiMarker);
             }
@@ -699,8 +722,10 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void removeFeature(MapFeature aiFeature) {
-    view.getOverlayManager().remove(featureOverlays.get(aiFeature));
-    featureOverlays.remove(aiFeature);
+    OverlayWithIW overlay = featureOverlays.remove(aiFeature);
+    if (overlay != null) {
+      hideOverlay(overlay);
+    }
   }
 
   @Override
@@ -708,6 +733,9 @@ class NativeOpenStreetMapController implements MapController, MapListener {
     Marker marker = (Marker)featureOverlays.get(aiMarker);
     if (marker != null) {
       marker.setPosition(new GeoPoint(aiMarker.Latitude(), aiMarker.Longitude()));
+      if (markerClusters.contains(marker)) {
+        markerClusters.invalidateClusters();
+      }
       view.invalidate();
     }
   }
@@ -857,6 +885,8 @@ class NativeOpenStreetMapController implements MapController, MapListener {
     if (marker == null) {
       return;  // not yet initialized
     }
+    // The asset may have been replaced, so render it again.
+    markerIcons.remove(markerIconKey(aiMarker, aiMarker.ImageAsset()));
     getMarkerDrawable(aiMarker, new AsyncCallbackPair<Drawable>() {
       @Override
       public void onFailure(String message) {
@@ -903,6 +933,13 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   private void getMarkerDrawableVector(MapMarker aiMarker,
       AsyncCallbackPair<Drawable> callback) {
+    final String markerAsset = aiMarker.ImageAsset();
+    final String iconKey = markerIconKey(aiMarker, markerAsset);
+    Drawable icon = markerIcons.get(iconKey);
+    if (icon != null) {
+      callback.onSuccess(icon);
+      return;
+    }
     SVG markerSvg = null;
     if (defaultMarkerSVG == null) {
       try {
@@ -916,7 +953,6 @@ class NativeOpenStreetMapController implements MapController, MapListener {
         throw new IllegalStateException("Unable to load SVG from assets");
       }
     }
-    final String markerAsset = aiMarker.ImageAsset();
     if (markerAsset != null && markerAsset.length() != 0) {
       try {
         markerSvg = SVG.getFromAsset(view.getContext().getAssets(), markerAsset);
@@ -944,10 +980,13 @@ class NativeOpenStreetMapController implements MapController, MapListener {
       markerSvg = defaultMarkerSVG;
     }
     try {
-      callback.onSuccess(rasterizeSVG(aiMarker, markerSvg));
+      icon = rasterizeSVG(aiMarker, markerSvg);
     } catch(Exception e) {
       callback.onFailure(e.getMessage());
+      return;
     }
+    markerIcons.put(iconKey, icon);
+    callback.onSuccess(icon);
   }
 
   private void getMarkerDrawableRaster(final MapMarker aiMarker,
@@ -967,7 +1006,23 @@ class NativeOpenStreetMapController implements MapController, MapListener {
   }
 
   private Drawable getDefaultMarkerDrawable(MapMarker aiMarker) {
-    return rasterizeSVG(aiMarker, defaultMarkerSVG);
+    String iconKey = markerIconKey(aiMarker, null);
+    Drawable icon = markerIcons.get(iconKey);
+    if (icon == null) {
+      icon = rasterizeSVG(aiMarker, defaultMarkerSVG);
+      markerIcons.put(iconKey, icon);
+    }
+    return icon;
+  }
+
+  /**
+   * Returns the key of the rendered icon for the given SVG asset drawn in the style of the
+   * given marker. An empty or null asset is the default marker. Marker draws its icon with its
+   * own bounds and alpha each time, so one drawable can be shared by many markers.
+   */
+  private static String markerIconKey(MapMarker aiMarker, String asset) {
+    return (asset == null ? "" : asset) + "|" + aiMarker.Width() + "x" + aiMarker.Height()
+        + "|" + aiMarker.FillColor() + "|" + aiMarker.StrokeColor() + "|" + aiMarker.StrokeWidth();
   }
 
   private static float getBestGuessWidth(SVG.Svg svg) {
@@ -1125,7 +1180,12 @@ class NativeOpenStreetMapController implements MapController, MapListener {
   }
 
   protected void showOverlay(OverlayWithIW overlay) {
-    view.getOverlayManager().add(overlay);
+    if (clusterMarkers && overlay instanceof Marker) {
+      markerClusters.add((Marker) overlay);
+      view.invalidate();
+    } else {
+      view.getOverlayManager().add(overlay);
+    }
   }
 
   @Override
@@ -1134,12 +1194,19 @@ class NativeOpenStreetMapController implements MapController, MapListener {
   }
 
   protected void hideOverlay(OverlayWithIW overlay) {
+    if (overlay instanceof Marker) {
+      markerClusters.remove((Marker) overlay);
+      view.invalidate();
+    }
     view.getOverlayManager().remove(overlay);
   }
 
   @Override
   public boolean isFeatureVisible(MapFeature feature) {
     OverlayWithIW overlay = featureOverlays.get(feature);
+    if (overlay instanceof Marker && markerClusters.contains((Marker) overlay)) {
+      return true;
+    }
     return overlay != null && view.getOverlayManager().contains(overlay);
   }
 
@@ -1210,6 +1277,186 @@ class NativeOpenStreetMapController implements MapController, MapListener {
     return view.getMapOrientation();
   }
 
+  @Override
+  public void setTileCacheSize(long bytes) {
+    Configuration.getInstance().setTileFileSystemCacheMaxBytes(bytes);
+    // Trim well below the limit so that the cache is not trimmed again after every download.
+    Configuration.getInstance().setTileFileSystemCacheTrimBytes(bytes / 5 * 4);
+  }
+
+  @Override
+  public long getTileCacheSize() {
+    return Configuration.getInstance().getTileFileSystemCacheMaxBytes();
+  }
+
+  @Override
+  public void clearTileCache() {
+    final IFilesystemCache tileWriter = view.getTileProvider().getTileWriter();
+    view.getTileProvider().clearTileCache();
+    if (tileWriter instanceof SqlTileWriter) {
+      AsynchUtil.runAsynchronously(new Runnable() {
+        @Override
+        public void run() {
+          ((SqlTileWriter) tileWriter).purgeCache();
+        }
+      });
+    }
+    view.invalidate();
+  }
+
+  @Override
+  public void addTileArchive(String name, InputStream archive) throws IOException {
+    if (!caches) {
+      throw new IOException("No tile cache directory");
+    }
+    String fileName = new File(name).getName();
+    int dot = fileName.lastIndexOf('.');
+    if (dot < 0 || !ArchiveFileFactory.isFileExtensionRegistered(
+        fileName.substring(dot + 1).toLowerCase())) {
+      throw new IOException("Unsupported tile archive format: " + fileName);
+    }
+    // osmdroid reads every archive it finds in its base path. Copy to a temporary name first so
+    // that it never sees a partly written archive.
+    File archiveDir = Configuration.getInstance().getOsmdroidBasePath();
+    File partial = new File(archiveDir, fileName + ".part");
+    OutputStream out = new FileOutputStream(partial);
+    try {
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = archive.read(buffer)) > 0) {
+        out.write(buffer, 0, read);
+      }
+    } finally {
+      out.close();
+    }
+    if (!partial.renameTo(new File(archiveDir, fileName))) {
+      partial.delete();
+      throw new IOException("Unable to save tile archive " + fileName);
+    }
+    form.runOnUiThread(new Runnable() {
+      @Override
+      public void run() {
+        // The tile provider looks for archives when it is created, so replace it to pick up the
+        // new one.
+        view.setTileProvider(new MapTileProviderBasic(form.getApplicationContext(),
+            view.getTileProvider().getTileSource()));
+      }
+    });
+  }
+
+  @Override
+  public int countTiles(BoundingBox boundingBox, int minZoom, int maxZoom) {
+    long count = 0;
+    for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+      Point northWest = CacheManager.getMapTileFromCoordinates(boundingBox.getLatNorth(),
+          boundingBox.getLonWest(), zoom);
+      Point southEast = CacheManager.getMapTileFromCoordinates(boundingBox.getLatSouth(),
+          boundingBox.getLonEast(), zoom);
+      count += (long) (Math.abs(southEast.x - northWest.x) + 1)
+          * (Math.abs(southEast.y - northWest.y) + 1);
+    }
+    return (int) Math.min(count, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public void prefetchTiles(BoundingBox boundingBox, int minZoom, int maxZoom) {
+    // A CacheManager downloads from the tile source the map had when it was made, so make a new
+    // one for each prefetch in case the map type has changed.
+    CacheManager cacheManager = new CacheManager(view);
+    tilePrefetches.add(cacheManager);
+    cacheManager.downloadAreaAsyncNoUI(form, boundingBox, minZoom, maxZoom,
+        new TilePrefetchCallback(cacheManager));
+  }
+
+  @Override
+  public void cancelTilePrefetch() {
+    for (CacheManager cacheManager : tilePrefetches) {
+      cacheManager.cancelAllJobs();
+    }
+    tilePrefetches.clear();
+  }
+
+  @Override
+  public void setClusterMarkersEnabled(boolean enabled) {
+    if (enabled == clusterMarkers) {
+      return;
+    }
+    clusterMarkers = enabled;
+    if (enabled) {
+      // Move the visible markers from the overlay manager into the cluster overlay.
+      for (OverlayWithIW overlay : featureOverlays.values()) {
+        if (overlay instanceof Marker && view.getOverlayManager().contains(overlay)) {
+          view.getOverlayManager().remove(overlay);
+          markerClusters.add((Marker) overlay);
+        }
+      }
+      view.getOverlayManager().add(markerClusters);
+    } else {
+      view.getOverlayManager().remove(markerClusters);
+      for (Marker marker : markerClusters.removeAll()) {
+        view.getOverlayManager().add(marker);
+      }
+    }
+    view.invalidate();
+  }
+
+  @Override
+  public boolean isClusterMarkersEnabled() {
+    return clusterMarkers;
+  }
+
+  /**
+   * Reports the progress of a tile prefetch to the map's event listeners. The CacheManager calls
+   * it on the UI thread once for every tile, so progress is only passed on when at least one
+   * percent more of the tiles are done.
+   */
+  private class TilePrefetchCallback implements CacheManager.CacheManagerCallback {
+    private final CacheManager cacheManager;
+    private int total;
+    private int lastReported;
+
+    TilePrefetchCallback(CacheManager cacheManager) {
+      this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public void setPossibleTilesInArea(int total) {
+      this.total = total;
+    }
+
+    @Override
+    public void downloadStarted() {
+    }
+
+    @Override
+    public void updateProgress(int progress, int currentZoomLevel, int zoomMin, int zoomMax) {
+      if (progress < total && progress - lastReported < Math.max(1, total / 100)) {
+        return;
+      }
+      lastReported = progress;
+      for (MapEventListener listener : eventListeners) {
+        listener.onTilePrefetchProgress(progress, total);
+      }
+    }
+
+    @Override
+    public void onTaskComplete() {
+      finished(0);
+    }
+
+    @Override
+    public void onTaskFailed(int errors) {
+      finished(errors);
+    }
+
+    private void finished(int errors) {
+      tilePrefetches.remove(cacheManager);
+      for (MapEventListener listener : eventListeners) {
+        listener.onTilePrefetchComplete(total, errors);
+      }
+    }
+  }
+
   static class MultiPolygon extends Polygon {
 
     private List<Polygon> children = new ArrayList<Polygon>();
@@ -0,0 +1,145 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+
+/**
+ * Decides which readings of a three-axis sensor a component passes on to the app, so that the app
+ * can choose how often it hears from the sensor separately from how often the sensor reports.
+ *
+ * <p>With a sample interval of 0, every reading is passed on, as components always did. With a
+ * longer interval, a reading is passed on only once the interval has gone by since the last one
+ * that was, and what is passed on is the mean of the readings since then, so that nothing the
+ * sensor reported in between is lost. Readings are timed by their sensor timestamps rather than
+ * by when they arrive, since the sensor may hand over a batch of them at once.
+ *
+ * <p>A sampler allocates nothing once it has been created.
+ */
+public final class SensorSampler {
+  private static final long NANOS_PER_MILLI = 1000000L;
+
+  private int intervalMillis;
+  private boolean started;
+  private long lastDelivery;   // sensor timestamp of the last reading passed on
+
+  // Sums of the readings since the last one that was passed on.
+  private int count;
+  private double xSum;
+  private double ySum;
+  private double zSum;
+
+  // The values to pass on.
+  private float x;
+  private float y;
+  private float z;
+
+  /**
+   * Returns the sample interval in milliseconds.
+   */
+  public int getInterval() {
+    return intervalMillis;
+  }
+
+  /**
+   * Sets the sample interval in milliseconds. Intervals less than 0 are taken as 0.
+   */
+  public void setInterval(int intervalMillis) {
+    this.intervalMillis = Math.max(0, intervalMillis);
+    reset();
+  }
+
+  /**
+   * Adds a reading taken at the given sensor timestamp, in nanoseconds, and returns whether the
+   * component should pass it on now, in which case {@link #getX}, {@link #getY} and
+   * {@link #getZ} give the values to pass on.
+   */
+  public boolean add(float x, float y, float z, long timestamp) {
+    if (intervalMillis == 0) {
+      this.x = x;
+      this.y = y;
+      this.z = z;
+      return true;
+    }
+    xSum += x;
+    ySum += y;
+    zSum += z;
+    count++;
+    if (!isDue(timestamp)) {
+      return false;
+    }
+    this.x = (float) (xSum / count);
+    this.y = (float) (ySum / count);
+    this.z = (float) (zSum / count);
+    clearSums();
+    return true;
+  }
+
+  /**
+   * Returns whether a reading taken at the given sensor timestamp should be passed on, for
+   * components that compute what they pass on from more than one sensor rather than from the
+   * mean of the readings.
+   */
+  public boolean isDue(long timestamp) {
+    if (intervalMillis == 0) {
+      return true;
+    }
+    if (started && timestamp - lastDelivery < intervalMillis * NANOS_PER_MILLI) {
+      return false;
+    }
+    started = true;
+    lastDelivery = timestamp;
+    return true;
+  }
+
+  public float getX() {
+    return x;
+  }
+
+  public float getY() {
+    return y;
+  }
+
+  public float getZ() {
+    return z;
+  }
+
+  /**
+   * Forgets the readings added so far, so that the next reading is passed on.
+   */
+  public void reset() {
+    started = false;
+    clearSums();
+  }
+
+  private void clearSums() {
+    count = 0;
+    xSum = 0;
+    ySum = 0;
+    zSum = 0;
+  }
+
+  /**
+   * Registers a listener for a sensor at the given rate. If the component passes on readings only
+   * once per sample interval, the sensor is also allowed to hold on to its readings for up to an
+   * interval and hand them over together, on devices that can, rather than waking the processor
+   * for each one.
+   *
+   * @param rate a SensorManager.SENSOR_DELAY_ constant
+   * @param intervalMillis the sample interval in milliseconds
+   * @return whether the listener was registered
+   */
+  public static boolean registerListener(SensorManager sensorManager,
+      SensorEventListener listener, Sensor sensor, int rate, int intervalMillis) {
+    if (intervalMillis > 0 && SdkLevel.getLevel() >= SdkLevel.LEVEL_KITKAT) {
+      return KitkatUtil.registerSensorListener(sensorManager, listener, sensor, rate,
+          (int) Math.min(Integer.MAX_VALUE, intervalMillis * 1000L));
+    }
+    return sensorManager.registerListener(listener, sensor, rate);
+  }
+}
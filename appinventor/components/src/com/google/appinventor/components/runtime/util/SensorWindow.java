@@ -0,0 +1,163 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+/**
+ * The most recent readings of one axis of a sensor, kept in a ring of floats so that adding a
+ * reading doesn't allocate. The mean, minimum and maximum of the readings in the window are kept
+ * up to date as readings are added, so asking for them costs the same however large the window is.
+ *
+ * <p>The minimum and maximum are tracked with monotonic queues: the maximum queue holds, oldest
+ * first, the readings that are larger than every reading added after them, so its head is the
+ * largest reading in the window. Each reading enters and leaves each queue at most once.
+ */
+public final class SensorWindow {
+  private final float[] values;
+
+  // Slots in values of the readings that can still become the maximum or minimum of the window,
+  // oldest first. Each is a ring with the same capacity as values.
+  private final int[] maxima;
+  private final int[] minima;
+  private int maxHead;
+  private int maxCount;
+  private int minHead;
+  private int minCount;
+
+  private int next;     // the slot the next reading goes in, which holds the oldest once full
+  private int size;     // how many readings are in the window
+  private double sum;   // the sum of the readings in the window
+
+  /**
+   * Creates a window that holds the given number of readings.
+   */
+  public SensorWindow(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    values = new float[capacity];
+    maxima = new int[capacity];
+    minima = new int[capacity];
+  }
+
+  /**
+   * Adds a reading to the window, pushing out the oldest reading if the window is full.
+   */
+  public void add(float value) {
+    int capacity = values.length;
+    if (size == capacity) {
+      // The oldest reading leaves the window, and the queues if it is at their heads.
+      sum -= values[next];
+      if (maxCount > 0 && maxima[maxHead] == next) {
+        maxHead = wrap(maxHead + 1);
+        maxCount--;
+      }
+      if (minCount > 0 && minima[minHead] == next) {
+        minHead = wrap(minHead + 1);
+        minCount--;
+      }
+    } else {
+      size++;
+    }
+    values[next] = value;
+    sum += value;
+
+    // Readings smaller than this one can't be the maximum while this one is in the window.
+    while (maxCount > 0 && values[maxima[wrap(maxHead + maxCount - 1)]] < value) {
+      maxCount--;
+    }
+    maxima[wrap(maxHead + maxCount)] = next;
+    maxCount++;
+    while (minCount > 0 && values[minima[wrap(minHead + minCount - 1)]] > value) {
+      minCount--;
+    }
+    minima[wrap(minHead + minCount)] = next;
+    minCount++;
+
+    next++;
+    if (next == capacity) {
+      next = 0;
+      // Add the sum up again once per lap so that rounding errors don't build up.
+      sum = 0;
+      for (int i = 0; i < size; i++) {
+        sum += values[i];
+      }
+    }
+  }
+
+  /**
+   * Returns how many readings can be held in the window.
+   */
+  public int capacity() {
+    return values.length;
+  }
+
+  /**
+   * Returns how many readings are in the window.
+   */
+  public int size() {
+    return size;
+  }
+
+  public boolean isFull() {
+    return size == values.length;
+  }
+
+  /**
+   * Returns a reading in the window by its age: 0 is the newest reading, 1 the one before it, and
+   * so on.
+   */
+  public float get(int age) {
+    if (age < 0 || age >= size) {
+      throw new IndexOutOfBoundsException("age " + age + " with " + size + " readings");
+    }
+    int slot = next - 1 - age;
+    return values[slot < 0 ? slot + values.length : slot];
+  }
+
+  /**
+   * Returns the sum of the readings in the window, or 0 if it is empty.
+   */
+  public float sum() {
+    return (float) sum;
+  }
+
+  /**
+   * Returns the mean of the readings in the window, or 0 if it is empty.
+   */
+  public float mean() {
+    return (size == 0) ? 0 : (float) (sum / size);
+  }
+
+  /**
+   * Returns the largest reading in the window, or 0 if it is empty.
+   */
+  public float max() {
+    return (maxCount == 0) ? 0 : values[maxima[maxHead]];
+  }
+
+  /**
+   * Returns the smallest reading in the window, or 0 if it is empty.
+   */
+  public float min() {
+    return (minCount == 0) ? 0 : values[minima[minHead]];
+  }
+
+  /**
+   * Removes all of the readings from the window.
+   */
+  public void clear() {
+    next = 0;
+    size = 0;
+    sum = 0;
+    maxHead = maxCount = 0;
+    minHead = minCount = 0;
+  }
+
+  // Brings an index into a ring back into range, for indexes less than twice the capacity.
+  private int wrap(int index) {
+    return (index >= values.length) ? index - values.length : index;
+  }
+}
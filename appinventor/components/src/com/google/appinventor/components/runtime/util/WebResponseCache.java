@@ -0,0 +1,353 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An on-disk cache of responses to HTTP GET requests that can be revalidated. A response is kept
+ * only if it came with an ETag or a Last-Modified header. The next request for the same URL sends
+ * them back in If-None-Match and If-Modified-Since, and when the server answers 304 Not Modified
+ * the body is read from the cache instead of being transferred again.
+ *
+ * <p>Each response is kept in two files named after a hash of its URL: the body, and a small JSON
+ * file with the validators, response code and content type. When the bodies add up to more than
+ * the cache's size, the ones used least recently are removed.
+ */
+public final class WebResponseCache {
+  private static final String LOG_TAG = "WebResponseCache";
+
+  private static final String BODY_SUFFIX = ".body";
+  private static final String META_SUFFIX = ".meta";
+
+  private final File directory;
+  private final long maxBytes;
+
+  /**
+   * A response kept in the cache.
+   */
+  public static final class Entry {
+    public final int responseCode;
+    public final String contentType;
+    public final String etag;           // may be null
+    public final String lastModified;   // may be null
+    private final File body;
+
+    private Entry(int responseCode, String contentType, String etag, String lastModified,
+        File body) {
+      this.responseCode = responseCode;
+      this.contentType = contentType;
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.body = body;
+    }
+
+    /**
+     * Adds the If-None-Match and If-Modified-Since headers that ask the server to answer 304 Not
+     * Modified if this response is still current.
+     */
+    public void addValidators(HttpURLConnection connection) {
+      if (etag != null) {
+        connection.setRequestProperty("If-None-Match", etag);
+      }
+      if (lastModified != null) {
+        connection.setRequestProperty("If-Modified-Since", lastModified);
+      }
+    }
+
+    /**
+     * Opens the cached body, after a server has answered that it is still current.
+     */
+    public InputStream openBody() throws IOException {
+      body.setLastModified(System.currentTimeMillis());
+      return new FileInputStream(body);
+    }
+  }
+
+  /**
+   * Creates a cache that keeps its files in the given directory.
+   *
+   * @param directory the directory, which is created if needed
+   * @param maxBytes how many bytes of bodies to keep at most
+   */
+  public WebResponseCache(File directory, long maxBytes) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns the response cached for the given URL, or null if there isn't one.
+   */
+  public synchronized Entry get(String url) {
+    String key = keyOf(url);
+    File meta = new File(directory, key + META_SUFFIX);
+    File body = new File(directory, key + BODY_SUFFIX);
+    if (!meta.exists() || !body.exists()) {
+      return null;
+    }
+    try {
+      JSONObject json = new JSONObject(readText(meta));
+      if (!url.equals(json.getString("url"))) {
+        return null;
+      }
+      return new Entry(json.getInt("responseCode"), json.optString("contentType", ""),
+          json.has("etag") ? json.getString("etag") : null,
+          json.has("lastModified") ? json.getString("lastModified") : null, body);
+    } catch (IOException e) {
+      Log.w(LOG_TAG, "Unable to read the cached response for " + url, e);
+    } catch (JSONException e) {
+      Log.w(LOG_TAG, "Unable to read the cached response for " + url, e);
+    }
+    return null;
+  }
+
+  /**
+   * Returns a stream that reads the body of a response from the given stream and, if the response
+   * can be revalidated later, keeps a copy of it. The copy is added to the cache once the whole
+   * body has been read, and thrown away if the stream is closed before then.
+   *
+   * @param url the URL that was requested
+   * @param connection the connection the response came on
+   * @param responseType the content type of the response
+   * @param in the body of the response
+   */
+  public InputStream put(String url, HttpURLConnection connection, String responseType,
+      InputStream in) {
+    String etag = connection.getHeaderField("ETag");
+    String lastModified = connection.getHeaderField("Last-Modified");
+    String cacheControl = connection.getHeaderField("Cache-Control");
+    if (connection.getRequestMethod().equals("GET")
+        && (etag != null || lastModified != null)
+        && (cacheControl == null || !cacheControl.toLowerCase().contains("no-store"))
+        && fits(connection.getHeaderField("Content-Length"))) {
+      try {
+        JSONObject meta = new JSONObject();
+        meta.put("url", url);
+        meta.put("responseCode", connection.getResponseCode());
+        meta.put("contentType", responseType);
+        meta.putOpt("etag", etag);
+        meta.putOpt("lastModified", lastModified);
+        if (directory.isDirectory() || directory.mkdirs()) {
+          File temp = File.createTempFile("response", ".tmp", directory);
+          return new CachingInputStream(in, url, meta, temp);
+        }
+      } catch (IOException e) {
+        Log.w(LOG_TAG, "Unable to cache the response for " + url, e);
+      } catch (JSONException e) {
+        Log.w(LOG_TAG, "Unable to cache the response for " + url, e);
+      }
+    } else {
+      remove(url);
+    }
+    return in;
+  }
+
+  /*
+   * Returns whether a response of the given Content-Length can be kept. A response whose length
+   * isn't given is kept, and removed again if it turns out to be too large.
+   */
+  private boolean fits(String contentLength) {
+    if (contentLength != null) {
+      try {
+        return Long.parseLong(contentLength.trim()) <= maxBytes;
+      } catch (NumberFormatException e) {
+        // The length isn't known.
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Removes the response cached for the given URL, if there is one.
+   */
+  public synchronized void remove(String url) {
+    String key = keyOf(url);
+    new File(directory, key + META_SUFFIX).delete();
+    new File(directory, key + BODY_SUFFIX).delete();
+  }
+
+  private synchronized void add(String url, JSONObject meta, File temp) throws IOException {
+    String key = keyOf(url);
+    File metaFile = new File(directory, key + META_SUFFIX);
+    File bodyFile = new File(directory, key + BODY_SUFFIX);
+    metaFile.delete();
+    bodyFile.delete();
+    if (!temp.renameTo(bodyFile)) {
+      throw new IOException("Unable to rename " + temp);
+    }
+    Writer writer = new OutputStreamWriter(new FileOutputStream(metaFile), "UTF-8");
+    try {
+      writer.write(meta.toString());
+    } finally {
+      writer.close();
+    }
+    trim();
+  }
+
+  /**
+   * Removes the responses used least recently until the bodies fit in maxBytes.
+   */
+  private void trim() {
+    File[] bodies = directory.listFiles();
+    if (bodies == null) {
+      return;
+    }
+    long total = 0;
+    for (File file : bodies) {
+      if (file.getName().endsWith(BODY_SUFFIX)) {
+        total += file.length();
+      }
+    }
+    if (total <= maxBytes) {
+      return;
+    }
+    Arrays.sort(bodies, new Comparator<File>() {
+      @Override
+      public int compare(File a, File b) {
+        long difference = a.lastModified() - b.lastModified();
+        return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+      }
+    });
+    for (File file : bodies) {
+      if (total <= maxBytes) {
+        break;
+      }
+      String name = file.getName();
+      if (name.endsWith(BODY_SUFFIX)) {
+        total -= file.length();
+        String key = name.substring(0, name.length() - BODY_SUFFIX.length());
+        new File(directory, key + META_SUFFIX).delete();
+        file.delete();
+      }
+    }
+  }
+
+  /**
+   * A stream that copies what is read from it to a temporary file, and adds the file to the cache
+   * when the end of the stream is reached.
+   */
+  private class CachingInputStream extends FilterInputStream {
+    private final String url;
+    private final JSONObject meta;
+    private final File temp;
+    private OutputStream copy;
+
+    CachingInputStream(InputStream in, String url, JSONObject meta, File temp)
+        throws IOException {
+      super(in);
+      this.url = url;
+      this.meta = meta;
+      this.temp = temp;
+      copy = new FileOutputStream(temp);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b == -1) {
+        finish(true);
+      } else if (copy != null) {
+        copy.write(b);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int count = super.read(buffer, offset, length);
+      if (count == -1) {
+        finish(true);
+      } else if (copy != null) {
+        copy.write(buffer, offset, count);
+      }
+      return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      // Skipped bytes would be missing from the copy.
+      finish(false);
+      return super.skip(n);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+      finish(false);
+      super.close();
+    }
+
+    private void finish(boolean complete) {
+      if (copy == null) {
+        return;
+      }
+      try {
+        copy.close();
+        if (complete) {
+          add(url, meta, temp);
+        }
+      } catch (IOException e) {
+        Log.w(LOG_TAG, "Unable to cache the response for " + url, e);
+      } finally {
+        copy = null;
+        temp.delete();
+      }
+    }
+  }
+
+  private static String readText(File file) throws IOException {
+    InputStream in = new FileInputStream(file);
+    try {
+      ByteArrayOutputStream text = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      int count;
+      while ((count = in.read(buffer)) != -1) {
+        text.write(buffer, 0, count);
+      }
+      return text.toString("UTF-8");
+    } finally {
+      in.close();
+    }
+  }
+
+  private static String keyOf(String url) {
+    try {
+      StringBuilder hex = new StringBuilder();
+      for (byte b : MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"))) {
+        hex.append(String.format("%02x", b & 0xFF));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
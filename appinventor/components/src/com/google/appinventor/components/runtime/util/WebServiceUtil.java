@@ -8,9 +8,14 @@ package com.google.appinventor.components.runtime.util;
 
 import android.util.Log;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpPost;
@@ -25,6 +30,7 @@ import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.protocol.HTTP;
+import org.apache.http.util.EntityUtils;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -49,6 +55,68 @@ public class WebServiceUtil {
   private static HttpClient httpClient = null;
   private static Object httpClientSynchronizer = new Object();
 
+  /**
+   * The response to a conditional post command: either the response String and the validator
+   * the server sent with it, or an indication that the copy the caller already has is current.
+   */
+  public static class ConditionalResponse {
+    private final String body;
+    private final String etag;
+
+    ConditionalResponse(String body, String etag) {
+      this.body = body;
+      this.etag = etag;
+    }
+
+    /**
+     * Returns true if the server replied 304 Not Modified to the validator sent with the command.
+     */
+    public boolean isNotModified() {
+      return body == null;
+    }
+
+    /**
+     * Returns the response String, or null if {@link #isNotModified()}.
+     */
+    public String getBody() {
+      return body;
+    }
+
+    /**
+     * Returns the ETag the server sent with the response, or null if it sent none.
+     */
+    public String getETag() {
+      return etag;
+    }
+  }
+
+  /**
+   * The HTTP status and body of the response to a post command.
+   */
+  public static class Response {
+    private final int status;
+    private final String body;
+
+    Response(int status, String body) {
+      this.status = status;
+      this.body = body;
+    }
+
+    /**
+     * Returns the HTTP status code of the response.
+     */
+    public int getStatus() {
+      return status;
+    }
+
+    /**
+     * Returns the response String, which is empty if the response had no body.
+     */
+    public String getBody() {
+      return body;
+    }
+  }
+
   private WebServiceUtil(){
   }
 
@@ -174,4 +242,110 @@ public class WebServiceUtil {
       callback.onFailure("Communication with the web service timed out.");
     }
   }
+
+  /**
+   * Make a post command to serviceURL with params and return the
+   * response whatever its HTTP status, so that the caller can tell a
+   * server that doesn't know the command from one that failed.
+   *
+   * @param serviceURL The URL of the server to post to.
+   * @param commandName The path to the command.
+   * @param params A List of NameValuePairs to send as parameters
+   * with the post.
+   * @param callback A callback function that accepts a Response on
+   * success, and is told of failure only if no response arrived.
+   */
+  public void postCommandReturningResponse(final String serviceURL, final String commandName,
+      List<NameValuePair> params, AsyncCallbackPair<Response> callback) {
+    Log.d(LOG_TAG, "Posting " + commandName + " to " + serviceURL + " with arguments " + params);
+
+    if (serviceURL == null || serviceURL.equals("")) {
+      callback.onFailure("No service url to post command to.");
+      return;
+    }
+    final HttpPost httpPost = new HttpPost(serviceURL + "/" + commandName);
+
+    if (params == null) {
+      params = new ArrayList<NameValuePair>();
+    }
+    try {
+      httpPost.setEntity(new UrlEncodedFormEntity(params, HTTP.UTF_8));
+      httpPost.setHeader("Accept", "application/json");
+      HttpResponse response = httpClient.execute(httpPost);
+      HttpEntity entity = response.getEntity();
+      // Reading the entity releases the connection for the next command.
+      String body = entity == null ? "" : EntityUtils.toString(entity, HTTP.UTF_8);
+      callback.onSuccess(new Response(response.getStatusLine().getStatusCode(), body));
+    } catch (UnsupportedEncodingException e) {
+      Log.w(LOG_TAG, e);
+      callback.onFailure("Failed to encode params for web service call.");
+    } catch (ClientProtocolException e) {
+      Log.w(LOG_TAG, e);
+      callback.onFailure("Communication with the web service encountered a protocol exception.");
+    } catch (IOException e) {
+      Log.w(LOG_TAG, e);
+      callback.onFailure("Communication with the web service timed out.");
+    }
+  }
+
+  /**
+   * Make a post command to serviceURL with params, sending etag in an
+   * If-None-Match header so that the server can answer 304 Not Modified
+   * instead of sending a value the caller already has.
+   *
+   * @param serviceURL The URL of the server to post to.
+   * @param commandName The path to the command.
+   * @param params A List of NameValuePairs to send as parameters
+   * with the post.
+   * @param etag The ETag of the response the caller already has, or
+   * null to post the command unconditionally.
+   * @param callback A callback function that accepts a
+   * ConditionalResponse on success.
+   */
+  public void postConditionalCommand(final String serviceURL, final String commandName,
+      List<NameValuePair> params, String etag, AsyncCallbackPair<ConditionalResponse> callback) {
+    Log.d(LOG_TAG, "Posting " + commandName + " to " + serviceURL + " with arguments " + params
+        + " if none match " + etag);
+
+    if (serviceURL == null || serviceURL.equals("")) {
+      callback.onFailure("No service url to post command to.");
+      return;
+    }
+    final HttpPost httpPost = new HttpPost(serviceURL + "/" + commandName);
+
+    if (params == null) {
+      params = new ArrayList<NameValuePair>();
+    }
+    try {
+      httpPost.setEntity(new UrlEncodedFormEntity(params, HTTP.UTF_8));
+      httpPost.setHeader("Accept", "application/json");
+      if (etag != null) {
+        httpPost.setHeader("If-None-Match", etag);
+      }
+      HttpResponse response = httpClient.execute(httpPost);
+      int status = response.getStatusLine().getStatusCode();
+      HttpEntity entity = response.getEntity();
+      // Reading the entity releases the connection for the next command.
+      String body = entity == null ? "" : EntityUtils.toString(entity, HTTP.UTF_8);
+      if (status == HttpStatus.SC_NOT_MODIFIED && etag != null) {
+        callback.onSuccess(new ConditionalResponse(null, etag));
+        return;
+      }
+      if (status >= 300) {
+        throw new HttpResponseException(status, response.getStatusLine().getReasonPhrase());
+      }
+      Header etagHeader = response.getFirstHeader("ETag");
+      callback.onSuccess(new ConditionalResponse(body,
+          etagHeader == null ? null : etagHeader.getValue()));
+    } catch (UnsupportedEncodingException e) {
+      Log.w(LOG_TAG, e);
+      callback.onFailure("Failed to encode params for web service call.");
+    } catch (ClientProtocolException e) {
+      Log.w(LOG_TAG, e);
+      callback.onFailure("Communication with the web service encountered a protocol exception.");
+    } catch (IOException e) {
+      Log.w(LOG_TAG, e);
+      callback.onFailure("Communication with the web service timed out.");
+    }
+  }
 }
@@ -13,8 +13,11 @@ import gnu.lists.Pair;
 
 import org.json.JSONException;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import android.util.Log;
 
@@ -23,11 +26,29 @@ import android.util.Log;
  * by the Kawa framework. YailList is the main list primitive used
  * by App Inventor components.
  *
+ * <p>Like the Kawa lists it is built on, a YailList may be read from several
+ * threads at once, but must not be changed while another thread is using it.
+ *
  */
 public class YailList extends Pair {
 
   private static final String LOG_TAG = "YailList";
 
+  // Lists longer than this are indexed; shorter ones are quicker to walk.
+  private static final int MIN_INDEXED_SIZE = 16;
+
+  // The pairs holding the items, in order, so that getting, replacing and appending items does
+  // not have to walk a long list. The index is built the first time a long list needs it, and the
+  // methods below that change the structure of the list keep it up to date. The runtime makes
+  // every structural change through them; Index.describes() catches the common ways of going
+  // around them. An index is complete before it is stored here, and each method reads this field
+  // once, so threads reading the list at the same time never see one half built.
+  private transient volatile Index index;
+
+  // Whether the pairs may be shared with a copy made by copy(true). The list copies them before
+  // its first change.
+  private transient volatile boolean shared;
+
   // Component writers take note!
   // If you want to pass back a list to the blocks language, the
   // straightforward way to do this is simply to pass
@@ -102,14 +123,24 @@ public class YailList extends Pair {
    */
 
   public String[] toStringArray() {
-    int size = this.size();
-    String[] objects = new String[size];
-    for (int i = 1; i <= size; i++) {
-      objects[i - 1] = YailListElementToString(get(i));
+    String[] objects = new String[size()];
+    int i = 0;
+    for (Iterator<Object> it = itemIterator(); it.hasNext(); ) {
+      objects[i++] = YailListElementToString(it.next());
     }
     return objects;
   }
 
+  /**
+   * Return an iterator over the items of this YailList, not including the
+   * list header. Because the list is a chain of pairs, {@link #getObject(int)}
+   * has to walk from the front on every call; loops that visit every item
+   * should use this iterator instead so that they run in linear time.
+   */
+  public Iterator<Object> itemIterator() {
+    return new ItemIterator(cdr);
+  }
+
   /**
    * Convert a YailList element to a string.  This is the same as
    * toString except in the case of numbers, which we convert to strings using
@@ -133,19 +164,7 @@ public class YailList extends Pair {
    */
   public String toJSONString() {
     try {
-      StringBuilder json = new StringBuilder();
-      String separator = "";
-      json.append('[');
-      int size = this.size();
-      for (int i = 1; i <= size; i++) {
-        Object value = get(i);
-        json.append(separator).append(JsonUtil.getJsonRepresentation(value));
-        separator = ",";
-      }
-      json.append(']');
-
-      return json.toString();
-
+      return JsonUtil.getJsonRepresentation(this);
     } catch (JSONException e) {
       throw new YailRuntimeError("List failed to convert to JSON.", "JSON Creation Error.");
     }
@@ -156,7 +175,8 @@ public class YailList extends Pair {
    */
   @Override
   public int size() {
-    return super.size() - 1;
+    Index index = index();
+    return index == null ? countItems() : index.size;
   }
 
   /**
@@ -184,6 +204,300 @@ public class YailList extends Pair {
    * Return the Object at the given index.
    */
   public Object getObject(int index) {
-    return get(index + 1);
+    return pair(index(), index, false).getCar();
+  }
+
+  /**
+   * Return the element at the given position, counting the list header as
+   * position 0, as {@link Pair#get(int)} does.
+   */
+  @Override
+  public Object get(int index) {
+    return index == 0 ? car : getObject(index - 1);
+  }
+
+  /**
+   * Replace the Object at the given index.
+   */
+  public void setObject(int index, Object value) {
+    unshare();
+    pair(index(), index, false).setCar(value);
+  }
+
+  /**
+   * Add the given objects to the end of this YailList, in order. The list
+   * of objects is copied, so the two lists do not share any pairs.
+   */
+  public void addAll(LList objects) {
+    // Count the objects first: they may be this list, or a tail of it, which
+    // grows as we append to it.
+    int count = 0;
+    for (Object rest = objects; rest instanceof Pair; rest = ((Pair) rest).getCdr()) {
+      count++;
+    }
+    Object rest = objects;
+    for (int i = 0; i < count; i++) {
+      Pair pair = (Pair) rest;
+      addObject(pair.getCar());
+      rest = pair.getCdr();
+    }
+  }
+
+  /**
+   * Add an Object to the end of this YailList.
+   */
+  public void addObject(Object value) {
+    unshare();
+    Index index = index();
+    insertObject(index, index == null ? countItems() : index.size, value);
+  }
+
+  /**
+   * Insert an Object so that it has the given index, moving the Object at
+   * that index, and those after it, one place along.
+   */
+  public void insertObject(int index, Object value) {
+    unshare();
+    insertObject(index(), index, value);
+  }
+
+  private void insertObject(Index index, int i, Object value) {
+    Pair next = pair(index, i, true);
+    Pair pair = new Pair(value, next == null ? LList.Empty : next);
+    if (i == 0) {
+      cdr = pair;
+    } else {
+      pair(index, i - 1, false).setCdr(pair);
+    }
+    if (index != null) {
+      index.insert(i, pair);
+    }
+  }
+
+  /**
+   * Remove the Object at the given index.
+   */
+  public void removeObject(int index) {
+    unshare();
+    Index current = index();
+    Object next = pair(current, index, false).getCdr();
+    if (index == 0) {
+      cdr = next;
+    } else {
+      pair(current, index - 1, false).setCdr(next);
+    }
+    if (current != null) {
+      current.remove(index);
+    }
+  }
+
+  /**
+   * Replace the items of this YailList with the given chain of pairs.
+   */
+  public void setContents(Object contents) {
+    cdr = contents;
+    index = null;
+    shared = false;
+  }
+
+  /**
+   * Return a deep copy of this YailList: a new list whose items are the same,
+   * except that items that are YailLists are themselves copied.
+   */
+  public YailList copy() {
+    return copy(false);
+  }
+
+  /**
+   * Return a deep copy of this YailList, as {@link #copy()} does.
+   *
+   * <p>If {@code shareStructure} is true, a list none of whose items are lists
+   * is copied without making any pairs: the copy shares this list's pairs,
+   * and whichever of the two lists is changed first copies them then. This
+   * relies on every change going through the methods of this class, as the
+   * runtime's are.
+   */
+  public YailList copy(boolean shareStructure) {
+    if (shareStructure && !containsLists()) {
+      YailList copy = new YailList(cdr);
+      copy.shared = true;
+      shared = true;
+      return copy;
+    }
+    YailList copy = new YailList();
+    Pair last = null;
+    for (Object rest = cdr; rest instanceof Pair; rest = ((Pair) rest).getCdr()) {
+      Object item = ((Pair) rest).getCar();
+      Pair pair = new Pair(item instanceof YailList ? ((YailList) item).copy(shareStructure) : item,
+          LList.Empty);
+      if (last == null) {
+        copy.cdr = pair;
+      } else {
+        last.setCdr(pair);
+      }
+      last = pair;
+    }
+    return copy;
+  }
+
+  private boolean containsLists() {
+    for (Object rest = cdr; rest instanceof Pair; rest = ((Pair) rest).getCdr()) {
+      if (((Pair) rest).getCar() instanceof YailList) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Gives this list pairs of its own if it may share them with a copy.
+  private void unshare() {
+    if (!shared) {
+      return;
+    }
+    Object first = LList.Empty;
+    Pair last = null;
+    for (Object rest = cdr; rest instanceof Pair; rest = ((Pair) rest).getCdr()) {
+      Pair pair = new Pair(((Pair) rest).getCar(), LList.Empty);
+      if (last == null) {
+        first = pair;
+      } else {
+        last.setCdr(pair);
+      }
+      last = pair;
+    }
+    cdr = first;
+    index = null;
+    shared = false;
+  }
+
+  /**
+   * Returns the pair holding the item at index i, using the index if there is
+   * one. If {@code end} is true, i may also be the size of the list, for which
+   * null is returned.
+   */
+  private Pair pair(Index index, int i, boolean end) {
+    int size = index == null ? countItems() : index.size;
+    if (i < 0 || i > size || (i == size && !end)) {
+      throw new IndexOutOfBoundsException("index " + i + " out of range 0.." + size);
+    }
+    if (i == size) {
+      return null;
+    } else if (index != null) {
+      return index.pairs[i];
+    }
+    Object rest = cdr;
+    while (i-- > 0) {
+      rest = ((Pair) rest).getCdr();
+    }
+    return (Pair) rest;
+  }
+
+  private int countItems() {
+    int size = 0;
+    for (Object rest = cdr; rest instanceof Pair; rest = ((Pair) rest).getCdr()) {
+      size++;
+    }
+    return size;
+  }
+
+  /**
+   * Returns the index of this list, building it if the list is long enough to
+   * need one, or null if it isn't.
+   */
+  private Index index() {
+    Index current = index;
+    if (current != null && current.describes(cdr)) {
+      return current;
+    }
+    int size = 0;
+    for (Object rest = cdr; rest instanceof Pair && size <= MIN_INDEXED_SIZE;
+        rest = ((Pair) rest).getCdr()) {
+      size++;
+    }
+    if (size <= MIN_INDEXED_SIZE) {
+      index = null;
+      return null;
+    }
+    size = countItems();
+    Pair[] pairs = new Pair[size];
+    int i = 0;
+    for (Object rest = cdr; rest instanceof Pair; rest = ((Pair) rest).getCdr()) {
+      pairs[i++] = (Pair) rest;
+    }
+    current = new Index(pairs, size);
+    index = current;
+    return current;
+  }
+
+  /**
+   * The pairs of a list, in order.
+   */
+  private static final class Index {
+    private Pair[] pairs;
+    private int size;
+
+    Index(Pair[] pairs, int size) {
+      this.pairs = pairs;
+      this.size = size;
+    }
+
+    /**
+     * Checks, in constant time, that this index still describes the list
+     * whose first pair is given: that it starts there and that its last pair
+     * is still the end of the list.
+     */
+    boolean describes(Object first) {
+      if (size == 0) {
+        return first == LList.Empty;
+      }
+      return first == pairs[0] && pairs[size - 1].getCdr() == LList.Empty;
+    }
+
+    void insert(int i, Pair pair) {
+      if (size == pairs.length) {
+        pairs = Arrays.copyOf(pairs, Math.max(MIN_INDEXED_SIZE, size * 2));
+      }
+      System.arraycopy(pairs, i, pairs, i + 1, size - i);
+      pairs[i] = pair;
+      size++;
+    }
+
+    void remove(int i) {
+      System.arraycopy(pairs, i + 1, pairs, i, size - i - 1);
+      pairs[--size] = null;
+    }
+  }
+
+  /**
+   * Walks the cdr chain of a YailList one pair at a time. The chain is read
+   * lazily, so changes made by the runtime (e.g., set-car!) to items that have
+   * not been reached yet are visible to the iterator.
+   */
+  private static class ItemIterator implements Iterator<Object> {
+    private Object next;
+
+    ItemIterator(Object first) {
+      next = first;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next instanceof Pair;
+    }
+
+    @Override
+    public Object next() {
+      if (!(next instanceof Pair)) {
+        throw new NoSuchElementException();
+      }
+      Pair pair = (Pair) next;
+      next = pair.getCdr();
+      return pair.getCar();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
   }
 }
@@ -0,0 +1,197 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.scripts;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Tool to generate, for each component, a subclass of
+ * {@link com.google.appinventor.components.runtime.util.ComponentDispatcher} that calls the
+ * component's methods and property accessors directly, so that the YAIL runtime does not have
+ * to find them by reflection on every call.
+ *
+ * <p>The dispatcher for {@code com.example.Foo} is {@code com.example.dispatch.FooDispatcher}.
+ * Each getter, setter and method gets an integer id, and the generated code switches on the
+ * id and calls the Java method with its arguments converted to the declared parameter types.
+ */
+public final class ComponentDispatchGenerator extends ComponentProcessor {
+  private static final String DISPATCH_PACKAGE = "dispatch";
+  private static final String DISPATCHER_SUFFIX = "Dispatcher";
+  private static final String BASE_CLASS =
+      "com.google.appinventor.components.runtime.util.ComponentDispatcher";
+
+  /**
+   * One callable entry in a dispatcher: a property getter or setter, or a method.
+   */
+  private static final class Entry {
+    final String name;
+    final List<String> parameterTypes;
+    final String returnType;  // null for void
+
+    Entry(String name, List<String> parameterTypes, String returnType) {
+      this.name = name;
+      this.parameterTypes = parameterTypes;
+      this.returnType = returnType;
+    }
+  }
+
+  @Override
+  protected void outputResults() throws IOException {
+    for (ComponentInfo component : components.values()) {
+      if (component.getExternal()) {
+        continue;
+      }
+      outputDispatcher(component);
+    }
+  }
+
+  private void outputDispatcher(ComponentInfo component) throws IOException {
+    List<Entry> entries = new ArrayList<Entry>();
+    for (Property property : component.properties.values()) {
+      if (property.isReadable()) {
+        entries.add(new Entry(property.name, new ArrayList<String>(), property.getType()));
+      }
+      if (property.isWritable()) {
+        List<String> parameterTypes = new ArrayList<String>();
+        parameterTypes.add(property.getSetterType());
+        entries.add(new Entry(property.name, parameterTypes, null));
+      }
+    }
+    for (Method method : component.methods.values()) {
+      List<String> parameterTypes = new ArrayList<String>();
+      for (Parameter parameter : method.parameters) {
+        parameterTypes.add(parameter.type);
+      }
+      entries.add(new Entry(method.name, parameterTypes, method.getReturnType()));
+    }
+
+    // Group the ids by arity for the lookup method. The runtime finds an entry by its name and
+    // number of arguments only, so two entries that share both cannot be told apart.
+    Map<Integer, Map<String, Integer>> idsByArity = new TreeMap<Integer, Map<String, Integer>>();
+    for (int id = 0; id < entries.size(); id++) {
+      Entry entry = entries.get(id);
+      Map<String, Integer> ids = idsByArity.get(entry.parameterTypes.size());
+      if (ids == null) {
+        ids = new TreeMap<String, Integer>();
+        idsByArity.put(entry.parameterTypes.size(), ids);
+      }
+      if (ids.containsKey(entry.name)) {
+        messager.printMessage(Diagnostic.Kind.ERROR, "In component " + component.name
+            + ": more than one property or method named " + entry.name + " takes "
+            + entry.parameterTypes.size() + " argument(s), so calls to it cannot be dispatched");
+        return;
+      }
+      ids.put(entry.name, id);
+    }
+
+    int lastDot = component.type.lastIndexOf('.');
+    String packageName = component.type.substring(0, lastDot + 1) + DISPATCH_PACKAGE;
+    String className = component.name + DISPATCHER_SUFFIX;
+
+    StringBuilder sb = new StringBuilder();
+    sb.append("// Generated by ComponentDispatchGenerator. Do not edit.\n\n");
+    sb.append("package ").append(packageName).append(";\n\n");
+    sb.append("@SuppressWarnings({\"deprecation\", \"static-access\"})\n");
+    sb.append("public final class ").append(className).append(" extends ")
+        .append(BASE_CLASS).append(" {\n");
+
+    sb.append("  @Override\n");
+    sb.append("  protected int lookup(String name, int arity) {\n");
+    sb.append("    switch (arity) {\n");
+    for (Map.Entry<Integer, Map<String, Integer>> arity : idsByArity.entrySet()) {
+      sb.append("      case ").append(arity.getKey()).append(":\n");
+      sb.append("        switch (name) {\n");
+      for (Map.Entry<String, Integer> id : arity.getValue().entrySet()) {
+        sb.append("          case \"").append(id.getKey()).append("\": return ")
+            .append(id.getValue()).append(";\n");
+      }
+      sb.append("        }\n");
+      sb.append("        break;\n");
+    }
+    sb.append("    }\n");
+    sb.append("    return -1;\n");
+    sb.append("  }\n\n");
+
+    sb.append("  @Override\n");
+    sb.append("  protected Object invoke(Object component, int id, Object[] args)"
+        + " throws Exception {\n");
+    sb.append("    ").append(component.type).append(" c = (").append(component.type)
+        .append(") component;\n");
+    sb.append("    switch (id) {\n");
+    for (int id = 0; id < entries.size(); id++) {
+      Entry entry = entries.get(id);
+      StringBuilder call = new StringBuilder("c.").append(entry.name).append("(");
+      for (int i = 0; i < entry.parameterTypes.size(); i++) {
+        if (i > 0) {
+          call.append(", ");
+        }
+        call.append(convertArgument(entry.parameterTypes.get(i), "args[" + i + "]"));
+      }
+      call.append(")");
+      sb.append("      case ").append(id).append(":\n");
+      if (entry.returnType == null) {
+        sb.append("        ").append(call).append(";\n");
+        sb.append("        return VOID;\n");
+      } else {
+        sb.append("        return ").append(call).append(";\n");
+      }
+    }
+    sb.append("      default:\n");
+    sb.append("        throw new IllegalArgumentException(\"No method with id \" + id);\n");
+    sb.append("    }\n");
+    sb.append("  }\n");
+    sb.append("}\n");
+
+    JavaFileObject src = processingEnv.getFiler()
+        .createSourceFile(packageName + "." + className);
+    Writer writer = src.openWriter();
+    try {
+      writer.write(sb.toString());
+      writer.flush();
+    } finally {
+      writer.close();
+    }
+    messager.printMessage(Diagnostic.Kind.NOTE, "Wrote file " + src.toUri());
+  }
+
+  /**
+   * Returns the Java expression that converts {@code arg}, a coerced value from the YAIL
+   * runtime, to {@code type}.
+   */
+  private static String convertArgument(String type, String arg) {
+    if (type.equals("int")) {
+      return "toInt(" + arg + ")";
+    } else if (type.equals("long")) {
+      return "toLong(" + arg + ")";
+    } else if (type.equals("short")) {
+      return "toShort(" + arg + ")";
+    } else if (type.equals("byte")) {
+      return "toByte(" + arg + ")";
+    } else if (type.equals("float")) {
+      return "toFloat(" + arg + ")";
+    } else if (type.equals("double")) {
+      return "toDouble(" + arg + ")";
+    } else if (type.equals("boolean")) {
+      return "toBoolean(" + arg + ")";
+    } else if (type.equals("java.lang.String")) {
+      return "toText(" + arg + ")";
+    } else if (type.equals("java.lang.Object")) {
+      return arg;
+    }
+    // Casts to a generic type would be unchecked, so cast to its erasure.
+    int typeArguments = type.indexOf('<');
+    String erasure = typeArguments < 0 ? type : type.substring(0, typeArguments);
+    return "(" + erasure + ") " + arg;
+  }
+}
@@ -357,6 +357,7 @@ public abstract class ComponentProcessor extends AbstractProcessor {
     private boolean userVisible;
     private boolean deprecated;
     private String type;
+    private String setterType;
     private boolean readable;
     private boolean writable;
     private String componentInfoName;
@@ -376,6 +377,7 @@ public abstract class ComponentProcessor extends AbstractProcessor {
     public Property clone() {
       Property that = new Property(name, description, propertyCategory, userVisible, deprecated);
       that.type = type;
+      that.setterType = setterType;
       that.readable = readable;
       that.writable = writable;
       that.componentInfoName = componentInfoName;
@@ -436,6 +438,16 @@ public abstract class ComponentProcessor extends AbstractProcessor {
       return type;
     }
 
+    /**
+     * Returns the Java type of the parameter of this property's setter. This is usually the same
+     * as {@link #getType()}, which is taken from the getter when there is one.
+     *
+     * @return the setter's parameter type, or null if the property is read-only
+     */
+    protected String getSetterType() {
+      return setterType;
+    }
+
     /**
      * Returns whether this property is readable (has a getter).
      *
@@ -1078,6 +1090,9 @@ public abstract class ComponentProcessor extends AbstractProcessor {
       property.type = typeMirror.toString();
       updateComponentTypes(typeMirror);
     }
+    if (property.writable) {
+      property.setterType = property.type;
+    }
 
     property.componentInfoName = componentInfoName;
 
@@ -1318,6 +1333,9 @@ public abstract class ComponentProcessor extends AbstractProcessor {
                 newProperty.propertyCategory + " in component " +
                 componentInfo.name);
           }
+          if (newProperty.writable) {
+            priorProperty.setterType = newProperty.setterType;
+          }
           priorProperty.readable = priorProperty.readable || newProperty.readable;
           priorProperty.writable = priorProperty.writable || newProperty.writable;
           priorProperty.userVisible = priorProperty.userVisible && newProperty.userVisible;
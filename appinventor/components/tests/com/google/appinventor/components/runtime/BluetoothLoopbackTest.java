@@ -0,0 +1,157 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import com.google.appinventor.components.runtime.shadows.ShadowAsynchUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher.assertEventFired;
+import static com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher.assertEventFiredAny;
+import static com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher.assertEventNotFired;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests receiving and sending in the background over a {@link LoopbackBluetoothSocket}.
+ */
+public class BluetoothLoopbackTest extends RobolectricTestBase {
+  private static final long TIMEOUT_MS = 5000;
+
+  private BluetoothClient client;
+  private LoopbackBluetoothSocket socket;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    client = new BluetoothClient(getForm());
+    socket = new LoopbackBluetoothSocket();
+  }
+
+  @After
+  public void tearDown() {
+    client.Disconnect();
+  }
+
+  @Test
+  public void testDataReceivedAtThreshold() throws Exception {
+    client.ReceiveInBackground(true);
+    client.ReceiveThreshold(4);
+    client.setConnection(socket);
+    client.SendText("ab");
+    waitForBytes(2);
+    runAllEvents();
+    assertEventNotFired(client, "DataReceived");
+    client.SendText("cd");
+    waitForBytes(4);
+    runAllEvents();
+    assertEventFired(client, "DataReceived", 4);
+    assertEquals("abcd", client.ReceiveText(4));
+    assertEquals(0, client.BytesAvailableToReceive());
+  }
+
+  @Test
+  public void testDataReceivedAtDelimiter() throws Exception {
+    client.ReceiveInBackground(true);
+    client.ReceiveThreshold(-1);
+    client.DelimiterByte(10);
+    client.setConnection(socket);
+    socket.deliver("partial".getBytes("UTF-8"));
+    waitForBytes(7);
+    runAllEvents();
+    assertEventNotFired(client, "DataReceived");
+    socket.deliver(" line\n".getBytes("UTF-8"));
+    waitForBytes(13);
+    runAllEvents();
+    assertEventFiredAny(client, "DataReceived");
+    assertEquals("partial line", client.ReceiveText(-1));
+  }
+
+  @Test
+  public void testReceiveInBackgroundWhileConnected() throws Exception {
+    client.setConnection(socket);
+    client.ReceiveInBackground(true);
+    socket.deliver(new byte[] { 1, 2, 3 });
+    waitForBytes(3);
+    assertEquals(0x0201, client.ReceiveUnsigned2ByteNumber());
+    assertEquals(3, client.ReceiveUnsigned1ByteNumber());
+  }
+
+  @Test
+  public void testSendInBackgroundKeepsOrder() throws Exception {
+    client.SendInBackground(true);
+    client.ReceiveInBackground(true);
+    client.setConnection(socket);
+    for (int i = 0; i < 200; i++) {
+      client.Send1ByteNumber(Integer.toString(i));
+    }
+    // Nothing is written until the queued writes run.
+    assertEquals(0, client.BytesAvailableToReceive());
+    ShadowAsynchUtil.runAllPendingRunnables();
+    waitForBytes(200);
+    List<Integer> received = client.ReceiveUnsignedBytes(200);
+    for (int i = 0; i < 200; i++) {
+      assertEquals(i, (int) received.get(i));
+    }
+  }
+
+  @Test
+  public void testEndOfStream() throws Exception {
+    client.ReceiveInBackground(true);
+    client.setConnection(socket);
+    socket.deliver(new byte[] { 42 });
+    waitForBytes(1);
+    socket.close();
+    assertEquals(42, client.ReceiveUnsigned1ByteNumber());
+    assertEquals(0, client.ReceiveUnsigned1ByteNumber());
+  }
+
+  /**
+   * Streams bytes from the device while the app receives them, and checks that every byte
+   * arrives once and in order.
+   */
+  @Test
+  public void testReceiveWhileDeviceStreams() throws Exception {
+    final int total = 64 * 1024;
+    final int chunk = 64;
+    client.ReceiveInBackground(true);
+    client.setConnection(socket);
+    Thread device = new Thread(new Runnable() {
+      public void run() {
+        byte[] bytes = new byte[chunk];
+        for (int sent = 0; sent < total; sent += chunk) {
+          for (int i = 0; i < chunk; i++) {
+            bytes[i] = (byte) (sent + i);
+          }
+          socket.deliver(bytes);
+        }
+      }
+    });
+    device.start();
+    int received = 0;
+    while (received < total) {
+      List<Integer> bytes = client.ReceiveUnsignedBytes(Math.min(4096, total - received));
+      for (int b : bytes) {
+        assertEquals(received & 0xFF, b);
+        received++;
+      }
+    }
+    device.join();
+    assertEquals(0, client.BytesAvailableToReceive());
+  }
+
+  private void waitForBytes(int count) {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (client.BytesAvailableToReceive() < count) {
+      assertTrue("Timed out waiting for " + count + " bytes",
+          System.currentTimeMillis() < deadline);
+      Thread.yield();
+    }
+  }
+}
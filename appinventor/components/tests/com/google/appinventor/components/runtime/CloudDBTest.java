@@ -0,0 +1,182 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher.assertEventFired;
+import static com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher.assertEventFiredAny;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that CloudDB sends the operations waiting for Redis as one pipeline and folds stores to
+ * the same tag together, using a {@link FakeRedisServer}.
+ */
+public class CloudDBTest extends RobolectricTestBase {
+  private static final long TIMEOUT_MS = 10000;
+
+  private FakeRedisServer server;
+  private CloudDB db;
+  private CountDownLatch paused;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    try {
+      server = new FakeRedisServer();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    db = new CloudDB(getForm());
+    db.ProjectID("test");
+    db.Token("secret");
+    db.UseSSL(false);
+    db.RedisServer("127.0.0.1");
+    db.RedisPort(server.getPort());
+  }
+
+  @After
+  public void tearDown() {
+    db.onDestroy();
+    runAllEvents();
+    server.stop();
+  }
+
+  @Test
+  public void testBurstIsSentInOnePipeline() {
+    pauseBackground();
+    db.StoreValue("a", "a1");
+    db.StoreValue("a", "a2");
+    db.StoreValue("a", "a3");
+    db.StoreValue("b", "b1");
+    db.GetValue("a", "none");
+    db.GetValue("c", "none");
+    resumeBackground();
+    waitForEvent("GotValue", "c", "none");
+    assertEventFired(db, "GotValue", "a", "a3");
+    assertEquals("\"a3\"", server.getValue("test:a"));
+    assertEquals("\"b1\"", server.getValue("test:b"));
+    // One store for each tag, and one round trip for everything after logging in.
+    assertEquals(1, server.getCommandCount("EVAL"));
+    assertEquals(1, server.getCommandCount("EVALSHA"));
+    assertEquals(1, roundTripsAfterLogin());
+    // Every value stored is still published, in order.
+    List<String> published = server.getPublished();
+    assertEquals("[\"a\",[\"\\\"a1\\\"\",\"\\\"a2\\\"\",\"\\\"a3\\\"\"]]", published.get(0));
+  }
+
+  @Test
+  public void testStoresAreNotFoldedAcrossOtherOperations() {
+    pauseBackground();
+    db.StoreValue("a", "a1");
+    db.GetValue("a", "none");
+    db.StoreValue("a", "a2");
+    db.ClearTag("b");
+    db.AppendValueToList("list", "x");
+    db.AppendValueToList("list", "y");
+    db.GetValue("list", "none");
+    resumeBackground();
+    waitForEvent("GotValue", "list", Arrays.asList("x", "y"));
+    assertEventFired(db, "GotValue", "a", "a1");
+    assertEquals("\"a2\"", server.getValue("test:a"));
+    assertEquals(4, server.getCommandCount("EVAL") + server.getCommandCount("EVALSHA"));
+    assertEquals(1, roundTripsAfterLogin());
+  }
+
+  @Test
+  public void testErrorInOneOperation() {
+    pauseBackground();
+    db.StoreValue("a", "text");
+    db.AppendValueToList("a", "x");
+    db.StoreValue("b", "b1");
+    db.GetValue("b", "none");
+    resumeBackground();
+    waitForEvent("GotValue", "b", "b1");
+    assertEventFiredAny(db, "CloudDBError");
+    assertEquals("\"text\"", server.getValue("test:a"));
+  }
+
+  @Test
+  public void testScriptsAreSentInFullOnce() {
+    db.StoreValue("a", "a1");
+    db.AppendValueToList("list", "x");
+    db.GetValue("a", "none");
+    waitForEvent("GotValue", "a", "a1");
+    db.StoreValue("a", "a2");
+    db.AppendValueToList("list", "y");
+    db.GetValue("a", "none");
+    waitForEvent("GotValue", "a", "a2");
+    // The store and append scripts.
+    assertEquals(2, server.getCommandCount("EVAL"));
+    assertEquals(2, server.getCommandCount("EVALSHA"));
+  }
+
+  @Test
+  public void testStoresAreNotMovedAheadOfOtherTags() {
+    pauseBackground();
+    db.StoreValue("a", "a1");
+    db.StoreValue("b", "b1");
+    db.StoreValue("a", "a2");
+    db.GetValue("a", "none");
+    resumeBackground();
+    waitForEvent("GotValue", "a", "a2");
+    assertEquals(3, server.getCommandCount("EVAL") + server.getCommandCount("EVALSHA"));
+    assertEquals(Arrays.asList("[\"a\",[\"\\\"a1\\\"\"]]", "[\"b\",[\"\\\"b1\\\"\"]]",
+        "[\"a\",[\"\\\"a2\\\"\"]]"), server.getPublished());
+  }
+
+  /**
+   * Holds up CloudDB's background thread so that the operations that follow are all waiting
+   * when it resumes.
+   */
+  private void pauseBackground() {
+    paused = new CountDownLatch(1);
+    db.getBackground().submit(new Runnable() {
+      public void run() {
+        try {
+          paused.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+  }
+
+  private void resumeBackground() {
+    paused.countDown();
+  }
+
+  /**
+   * Returns the round trips taken other than to log in. Jedis waits for the answer to each AUTH
+   * it sends before sending anything else.
+   */
+  private int roundTripsAfterLogin() {
+    return server.getRoundTrips() - server.getCommandCount("AUTH");
+  }
+
+  private void waitForEvent(String eventName, Object... args) {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (true) {
+      runAllEvents();
+      try {
+        assertEventFired(db, eventName, args);
+        return;
+      } catch (AssertionError e) {
+        if (System.currentTimeMillis() > deadline) {
+          throw e;
+        }
+      }
+      Thread.yield();
+    }
+  }
+}
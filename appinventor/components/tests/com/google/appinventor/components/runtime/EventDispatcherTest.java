@@ -0,0 +1,140 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests EventDispatcher against a dispatch delegate that, like Form, binds component names to
+ * components late and only runs a handler when the name refers to the component that raised the
+ * event.
+ */
+public class EventDispatcherTest extends TestCase {
+  private static final int BUTTONS = 40;
+
+  private FakeForm form;
+  private FakeComponent[] buttons;
+
+  /**
+   * A component whose events go to the fake form.
+   */
+  private class FakeComponent implements Component {
+    @Override
+    public HandlesEventDispatching getDispatchDelegate() {
+      return form;
+    }
+  }
+
+  private static class FakeForm implements HandlesEventDispatching {
+    final Map<String, Component> environment = new HashMap<String, Component>();
+    final Map<String, Integer> handled = new HashMap<String, Integer>();
+    int delegateCalls;
+    boolean failHandlers;
+
+    @Override
+    public boolean canDispatchEvent(Component component, String eventName) {
+      return true;
+    }
+
+    @Override
+    public boolean dispatchEvent(Component component, String componentName, String eventName,
+        Object[] args) {
+      delegateCalls++;
+      if (environment.get(componentName) != component) {
+        return false;
+      }
+      String key = componentName + "." + eventName;
+      Integer count = handled.get(key);
+      handled.put(key, count == null ? 1 : count + 1);
+      // Form returns false when the handler throws.
+      return !failHandlers;
+    }
+
+    @Override
+    public void dispatchErrorOccurredEvent(Component component, String functionName,
+        int errorCode, Object... args) {
+    }
+
+    int handled(String key) {
+      Integer count = handled.get(key);
+      return count == null ? 0 : count;
+    }
+  }
+
+  @Override
+  public void setUp() {
+    form = new FakeForm();
+    buttons = new FakeComponent[BUTTONS];
+    for (int i = 0; i < BUTTONS; i++) {
+      buttons[i] = new FakeComponent();
+      form.environment.put("Button" + i, buttons[i]);
+      EventDispatcher.registerEventForDelegation(form, "Button" + i, "Click");
+    }
+  }
+
+  @Override
+  public void tearDown() {
+    EventDispatcher.removeDispatchDelegate(form);
+  }
+
+  public void testDispatchGoesToOneClosure() {
+    assertTrue(EventDispatcher.dispatchEvent(buttons[7], "Click"));
+    assertEquals(1, form.handled("Button7.Click"));
+    form.delegateCalls = 0;
+    for (int i = 0; i < 100; i++) {
+      assertTrue(EventDispatcher.dispatchEvent(buttons[7], "Click"));
+    }
+    assertEquals(101, form.handled("Button7.Click"));
+    assertEquals(100, form.delegateCalls);
+  }
+
+  public void testUnregisteredEventIsNotDispatched() {
+    assertFalse(EventDispatcher.dispatchEvent(buttons[3], "LongClick"));
+    EventDispatcher.dispatchEvent(buttons[3], "Click");
+    EventDispatcher.unregisterEventForDelegation(form, "Button3", "Click");
+    assertFalse(EventDispatcher.dispatchEvent(buttons[3], "Click"));
+    assertEquals(1, form.handled("Button3.Click"));
+  }
+
+  public void testNamesAreBoundLate() {
+    EventDispatcher.dispatchEvent(buttons[1], "Click");
+    // Swap the components that Button1 and Button2 refer to, as the REPL can.
+    form.environment.put("Button1", buttons[2]);
+    form.environment.put("Button2", buttons[1]);
+    assertTrue(EventDispatcher.dispatchEvent(buttons[1], "Click"));
+    assertEquals(1, form.handled("Button1.Click"));
+    assertEquals(1, form.handled("Button2.Click"));
+  }
+
+  public void testFailedHandlerRunsOnce() {
+    EventDispatcher.dispatchEvent(buttons[5], "Click");
+    form.failHandlers = true;
+    assertFalse(EventDispatcher.dispatchEvent(buttons[5], "Click"));
+    assertEquals(2, form.handled("Button5.Click"));
+  }
+
+  /**
+   * Clicks every button on a form with many buttons and counts how many times the dispatch
+   * delegate was asked to handle an event. Before closures were resolved per component, each
+   * click asked the delegate once for every button.
+   */
+  public void testDispatchCostOnManyComponentForm() {
+    int rounds = 10;
+    for (int round = 0; round < rounds; round++) {
+      for (FakeComponent button : buttons) {
+        EventDispatcher.dispatchEvent(button, "Click");
+      }
+    }
+    // Only the first click on each button looks through all the closures.
+    assertTrue(form.delegateCalls < rounds * BUTTONS + BUTTONS * BUTTONS);
+    for (int i = 0; i < BUTTONS; i++) {
+      assertEquals(rounds, form.handled("Button" + i + ".Click"));
+    }
+  }
+}
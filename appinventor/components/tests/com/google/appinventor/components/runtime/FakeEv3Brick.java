@@ -0,0 +1,123 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import com.google.appinventor.components.runtime.util.Ev3Constants;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * A LEGO MINDSTORMS EV3 that a BluetoothClient can be connected to in tests. It answers the
+ * direct commands sent by the EV3 components, reporting sensor percentages set by the test, and
+ * can delay the replies for each sensor port by a different amount, so that replies arrive in a
+ * different order than their commands were sent.
+ */
+public class FakeEv3Brick extends LoopbackBluetoothSocket {
+  private final ByteArrayOutputStream incoming = new ByteArrayOutputStream();
+  private final int[] percentages = new int[4];
+  private final long[] replyDelaysMs = new long[4];
+  private final List<Integer> replyCounters = new ArrayList<Integer>();
+  private final List<Long> readTimes = new ArrayList<Long>();
+  private final Timer timer = new Timer("FakeEv3Brick", true);
+
+  /**
+   * Sets the value that READY_PCT reports for the sensor on the given port (0 to 3).
+   */
+  public synchronized void setSensorPercentage(int port, int percentage) {
+    percentages[port] = percentage;
+  }
+
+  /**
+   * Sets how long the brick waits before replying to a command that reads the given port. Other
+   * commands are still received and answered while the reply is waiting.
+   */
+  public synchronized void setReplyDelay(int port, long replyDelayMs) {
+    replyDelaysMs[port] = replyDelayMs;
+  }
+
+  /**
+   * Returns the message counters of the replies sent so far, in the order they were sent.
+   */
+  public synchronized List<Integer> getReplyCounters() {
+    return new ArrayList<Integer>(replyCounters);
+  }
+
+  /**
+   * Returns the times, from {@link System#currentTimeMillis()}, at which sensor reads were
+   * received.
+   */
+  public synchronized List<Long> getReadTimes() {
+    return new ArrayList<Long>(readTimes);
+  }
+
+  @Override
+  protected synchronized void received(byte[] bytes, int offset, int length) {
+    incoming.write(bytes, offset, length);
+    byte[] buffered = incoming.toByteArray();
+    int start = 0;
+    while (buffered.length - start >= 2) {
+      // The length counts the message counter as well as the command.
+      int packetLength = (buffered[start] & 0xFF) | ((buffered[start + 1] & 0xFF) << 8);
+      if (buffered.length - start - 2 < packetLength) {
+        break;
+      }
+      int counter = (buffered[start + 2] & 0xFF) | ((buffered[start + 3] & 0xFF) << 8);
+      byte[] command = new byte[packetLength - 2];
+      System.arraycopy(buffered, start + 4, command, 0, command.length);
+      handle(counter, command);
+      start += 2 + packetLength;
+    }
+    incoming.reset();
+    incoming.write(buffered, start, buffered.length - start);
+  }
+
+  private void handle(final int counter, byte[] command) {
+    if (command[0] == Ev3Constants.DirectCommandType.DIRECT_COMMAND_NO_REPLY) {
+      return;
+    }
+    int globalAllocation = (command[1] & 0xFF) | ((command[2] & 0x03) << 8);
+    byte[] globals = new byte[globalAllocation];
+    long replyDelayMs = 0;
+    if (command[3] == Ev3Constants.Opcode.INPUT_DEVICE
+        && command[4] == Ev3Constants.InputDeviceSubcode.READY_PCT) {
+      // The layer and port are sent as one-byte constants.
+      int port = command[6];
+      readTimes.add(System.currentTimeMillis());
+      globals[0] = (byte) percentages[port];
+      replyDelayMs = replyDelaysMs[port];
+    }
+    final byte[] packet = new byte[globals.length + 5];
+    putUWORD(packet, 0, globals.length + 3);
+    putUWORD(packet, 2, counter);
+    packet[4] = Ev3Constants.DirectReplyType.DIRECT_REPLY;
+    System.arraycopy(globals, 0, packet, 5, globals.length);
+
+    if (replyDelayMs == 0) {
+      reply(counter, packet);
+    } else {
+      timer.schedule(new TimerTask() {
+        @Override
+        public void run() {
+          reply(counter, packet);
+        }
+      }, replyDelayMs);
+    }
+  }
+
+  private synchronized void reply(int counter, byte[] packet) {
+    replyCounters.add(counter);
+    deliver(packet);
+  }
+
+  private static void putUWORD(byte[] bytes, int offset, int value) {
+    bytes[offset] = (byte) (value & 0xFF);
+    bytes[offset + 1] = (byte) ((value >> 8) & 0xFF);
+  }
+}
@@ -0,0 +1,127 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * A LEGO MINDSTORMS NXT that a BluetoothClient can be connected to in tests. It answers the
+ * direct commands sent by the NXT components, reporting sensor values set by the test, and can
+ * delay its replies to stand in for the latency of a Bluetooth link.
+ */
+public class FakeNxtBrick extends LoopbackBluetoothSocket {
+  private static final int GETINPUTVALUES = 0x07;
+
+  private final ByteArrayOutputStream incoming = new ByteArrayOutputStream();
+  private final int[] normalizedValues = new int[4];
+  private final int[] scaledValues = new int[4];
+  private final List<Integer> opcodes = new ArrayList<Integer>();
+  private final Timer timer = new Timer("FakeNxtBrick", true);
+  private long replyDelayMs = 0;
+  private int awaitingReply = 0;
+  private int maxAwaitingReply = 0;
+
+  /**
+   * Sets the values that GETINPUTVALUES reports for the sensor on the given port (0 to 3).
+   */
+  public synchronized void setSensorValue(int port, int normalizedValue, int scaledValue) {
+    normalizedValues[port] = normalizedValue;
+    scaledValues[port] = scaledValue;
+  }
+
+  /**
+   * Sets how long the brick waits before sending each reply. Later commands are still received
+   * while earlier replies are waiting.
+   */
+  public synchronized void setReplyDelay(long replyDelayMs) {
+    this.replyDelayMs = replyDelayMs;
+  }
+
+  /**
+   * Returns the opcodes of the commands received so far, in order.
+   */
+  public synchronized List<Integer> getOpcodes() {
+    return new ArrayList<Integer>(opcodes);
+  }
+
+  /**
+   * Returns the most commands that were waiting for replies at the same time.
+   */
+  public synchronized int getMaxAwaitingReply() {
+    return maxAwaitingReply;
+  }
+
+  @Override
+  protected synchronized void received(byte[] bytes, int offset, int length) {
+    incoming.write(bytes, offset, length);
+    byte[] buffered = incoming.toByteArray();
+    int start = 0;
+    while (buffered.length - start >= 2) {
+      int telegramLength = (buffered[start] & 0xFF) | ((buffered[start + 1] & 0xFF) << 8);
+      if (buffered.length - start - 2 < telegramLength) {
+        break;
+      }
+      byte[] telegram = new byte[telegramLength];
+      System.arraycopy(buffered, start + 2, telegram, 0, telegramLength);
+      handle(telegram);
+      start += 2 + telegramLength;
+    }
+    incoming.reset();
+    incoming.write(buffered, start, buffered.length - start);
+  }
+
+  private void handle(byte[] telegram) {
+    int opcode = telegram[1] & 0xFF;
+    opcodes.add(opcode);
+    if ((telegram[0] & 0x80) != 0) {
+      return;  // no response
+    }
+    byte[] reply;
+    if (opcode == GETINPUTVALUES) {
+      int port = telegram[2];
+      reply = new byte[16];
+      reply[3] = (byte) port;
+      reply[4] = 1;  // valid
+      putUWORD(reply, 10, normalizedValues[port]);
+      putUWORD(reply, 12, scaledValues[port]);
+    } else {
+      reply = new byte[3];
+    }
+    reply[0] = 0x02;  // reply telegram
+    reply[1] = (byte) opcode;
+    reply[2] = 0;  // success
+    final byte[] packet = new byte[reply.length + 2];
+    putUWORD(packet, 0, reply.length);
+    System.arraycopy(reply, 0, packet, 2, reply.length);
+
+    awaitingReply++;
+    maxAwaitingReply = Math.max(maxAwaitingReply, awaitingReply);
+    if (replyDelayMs == 0) {
+      reply(packet);
+    } else {
+      timer.schedule(new TimerTask() {
+        @Override
+        public void run() {
+          reply(packet);
+        }
+      }, replyDelayMs);
+    }
+  }
+
+  private synchronized void reply(byte[] packet) {
+    awaitingReply--;
+    deliver(packet);
+  }
+
+  private static void putUWORD(byte[] bytes, int offset, int value) {
+    bytes[offset] = (byte) (value & 0xFF);
+    bytes[offset + 1] = (byte) ((value >> 8) & 0xFF);
+  }
+}
@@ -0,0 +1,302 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONTokener;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A Redis server that runs in the test process and understands the commands CloudDB sends: AUTH,
+ * GET, DEL, PUBLISH and EVAL or EVALSHA of the CloudDB Lua scripts, which it carries out in Java.
+ * It counts the commands it receives and the round trips taken to answer them, and can wait
+ * before each answer to stand in for the latency of a real network.
+ *
+ * <p>A round trip is counted each time the server answers everything a client has sent so far,
+ * so the commands of one pipeline count as one round trip.
+ */
+public class FakeRedisServer {
+  private final ServerSocket serverSocket;
+  private final Map<String, String> values = new HashMap<String, String>();
+  private final Set<String> scripts = new HashSet<String>();
+  private final Map<String, Integer> commandCounts = new HashMap<String, Integer>();
+  private final List<String> published = new ArrayList<String>();
+  private final List<Socket> clients = new ArrayList<Socket>();
+  private long latencyMs = 0;
+  private int roundTrips = 0;
+
+  public FakeRedisServer() throws IOException {
+    serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    Thread acceptor = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            final Socket client = serverSocket.accept();
+            synchronized (FakeRedisServer.this) {
+              clients.add(client);
+            }
+            Thread thread = new Thread(new Runnable() {
+              @Override
+              public void run() {
+                serve(client);
+              }
+            }, "FakeRedisServer-client");
+            thread.setDaemon(true);
+            thread.start();
+          }
+        } catch (IOException e) {
+          // The server was stopped.
+        }
+      }
+    }, "FakeRedisServer");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  public synchronized void stop() {
+    try {
+      serverSocket.close();
+      for (Socket client : clients) {
+        client.close();
+      }
+    } catch (IOException e) {
+      // Already closed.
+    }
+  }
+
+  /**
+   * Sets how long the server waits before answering the commands it has received.
+   */
+  public synchronized void setLatency(long latencyMs) {
+    this.latencyMs = latencyMs;
+  }
+
+  public synchronized String getValue(String key) {
+    return values.get(key);
+  }
+
+  /**
+   * Returns how many times the given command (in upper case) has been received.
+   */
+  public synchronized int getCommandCount(String command) {
+    Integer count = commandCounts.get(command);
+    return count == null ? 0 : count;
+  }
+
+  public synchronized int getRoundTrips() {
+    return roundTrips;
+  }
+
+  /**
+   * Returns the messages published so far, in order.
+   */
+  public synchronized List<String> getPublished() {
+    return new ArrayList<String>(published);
+  }
+
+  private void serve(Socket client) {
+    try {
+      InputStream in = new BufferedInputStream(client.getInputStream());
+      OutputStream out = client.getOutputStream();
+      while (true) {
+        List<String> command = readCommand(in);
+        if (command == null) {
+          break;
+        }
+        long latency;
+        synchronized (this) {
+          latency = latencyMs;
+        }
+        if (latency > 0) {
+          Thread.sleep(latency);
+        }
+        ByteArrayOutputStream replies = new ByteArrayOutputStream();
+        execute(command, replies);
+        // Answer the rest of a pipeline together with its first command.
+        while (in.available() > 0) {
+          command = readCommand(in);
+          if (command == null) {
+            break;
+          }
+          execute(command, replies);
+        }
+        synchronized (this) {
+          roundTrips++;
+        }
+        out.write(replies.toByteArray());
+        out.flush();
+      }
+    } catch (IOException e) {
+      // The client went away.
+    } catch (InterruptedException e) {
+      // Stopping.
+    } finally {
+      try {
+        client.close();
+      } catch (IOException e) {
+        // Already closed.
+      }
+    }
+  }
+
+  private static List<String> readCommand(InputStream in) throws IOException {
+    String header = readLine(in);
+    if (header == null) {
+      return null;
+    }
+    if (header.charAt(0) != '*') {
+      throw new IOException("Expected an array, got " + header);
+    }
+    int count = Integer.parseInt(header.substring(1));
+    List<String> args = new ArrayList<String>(count);
+    for (int i = 0; i < count; i++) {
+      String length = readLine(in);
+      byte[] bytes = new byte[Integer.parseInt(length.substring(1))];
+      int read = 0;
+      while (read < bytes.length) {
+        int n = in.read(bytes, read, bytes.length - read);
+        if (n < 0) {
+          return null;
+        }
+        read += n;
+      }
+      readLine(in);
+      args.add(new String(bytes, "UTF-8"));
+    }
+    return args;
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int c;
+    while ((c = in.read()) != '\n') {
+      if (c < 0) {
+        return null;
+      }
+      if (c != '\r') {
+        line.append((char) c);
+      }
+    }
+    return line.toString();
+  }
+
+  private synchronized void execute(List<String> command, ByteArrayOutputStream out)
+      throws IOException {
+    String name = command.get(0).toUpperCase();
+    Integer count = commandCounts.get(name);
+    commandCounts.put(name, count == null ? 1 : count + 1);
+    if (name.equals("AUTH") || name.equals("QUIT")) {
+      simple(out, "+OK");
+    } else if (name.equals("GET")) {
+      bulk(out, values.get(command.get(1)));
+    } else if (name.equals("DEL")) {
+      simple(out, ":" + (values.remove(command.get(1)) == null ? 0 : 1));
+    } else if (name.equals("PUBLISH")) {
+      published.add(command.get(2));
+      simple(out, ":0");
+    } else if (name.equals("EVAL")) {
+      scripts.add(sha1(command.get(1)));
+      evalScript(command, out);
+    } else if (name.equals("EVALSHA")) {
+      if (scripts.contains(command.get(1))) {
+        evalScript(command, out);
+      } else {
+        simple(out, "-NOSCRIPT No matching script. Please use EVAL.");
+      }
+    } else {
+      simple(out, "-ERR unknown command '" + name + "'");
+    }
+  }
+
+  /**
+   * Carries out one of CloudDB's scripts, which are told apart by their number of arguments:
+   * the store script takes a value, the values to publish and the project, the append script
+   * takes an item and the project, and the remove first script takes only the project.
+   */
+  private void evalScript(List<String> command, ByteArrayOutputStream out) throws IOException {
+    String tag = command.get(3);
+    List<String> argv = command.subList(4, command.size());
+    String project = argv.get(argv.size() - 1);
+    String key = project + ":" + tag;
+    try {
+      if (argv.size() == 3) {
+        published.add(new JSONArray().put(tag).put(new JSONArray(argv.get(1))).toString());
+        values.put(key, argv.get(0));
+        simple(out, "+OK");
+      } else if (argv.size() == 2) {
+        String current = values.get(key);
+        JSONArray list = current == null ? new JSONArray() : new JSONArray(current);
+        list.put(new JSONTokener(argv.get(0)).nextValue());
+        values.put(key, list.toString());
+        published.add(new JSONArray().put(tag).put(new JSONArray().put(list.toString()))
+            .toString());
+        bulk(out, list.toString());
+      } else {
+        JSONArray list = new JSONArray(values.get(key));
+        Object first = list.get(0);
+        JSONArray rest = new JSONArray();
+        for (int i = 1; i < list.length(); i++) {
+          rest.put(list.get(i));
+        }
+        values.put(key, rest.toString());
+        bulk(out, new JSONArray().put(first).toString().replaceAll("^\\[|\\]$", ""));
+      }
+    } catch (JSONException e) {
+      simple(out, "-ERR Error running script: You can only append to a list");
+    }
+  }
+
+  private static void simple(ByteArrayOutputStream out, String reply) throws IOException {
+    out.write((reply + "\r\n").getBytes("UTF-8"));
+  }
+
+  private static void bulk(ByteArrayOutputStream out, String value) throws IOException {
+    if (value == null) {
+      simple(out, "$-1");
+    } else {
+      byte[] bytes = value.getBytes("UTF-8");
+      simple(out, "$" + bytes.length);
+      out.write(bytes);
+      simple(out, "");
+    }
+  }
+
+  private static String sha1(String script) {
+    try {
+      StringBuilder hex = new StringBuilder();
+      for (byte b : MessageDigest.getInstance("SHA-1").digest(script.getBytes("UTF-8"))) {
+        hex.append(String.format("%02x", b & 0xFF));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,209 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A TinyWebDB Web service that runs in the test process. It answers the getvalue and storeavalue
+ * commands, with an ETag for each tag so that reads can be revalidated, and the getvalues and
+ * storeavalues commands unless a test turns them off to stand in for an older service, or makes
+ * them fail. Tags with no value are answered with the empty string, or can be left out of the
+ * getvalues answer.
+ */
+public class FakeTinyWebDBService {
+  private final HttpServer server;
+  private final Map<String, String> values = new HashMap<String, String>();
+  private final Map<String, Integer> versions = new HashMap<String, Integer>();
+  private final Map<String, Integer> requestCounts = new HashMap<String, Integer>();
+  private boolean batchSupported = true;
+  private boolean missingTagsOmitted = false;
+  private int batchFailureStatus = 0;
+  private String unknownCommandBody = null;
+  private int notModifiedCount = 0;
+
+  public FakeTinyWebDBService() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        try {
+          respond(exchange);
+        } catch (JSONException e) {
+          send(exchange, 400, "");
+        } finally {
+          exchange.close();
+        }
+      }
+    });
+    server.start();
+  }
+
+  /**
+   * Returns the URL to give TinyWebDB.ServiceURL.
+   */
+  public String getUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  public void stop() {
+    server.stop(0);
+  }
+
+  /**
+   * Stores the JSON-encoded value under tag, as if another app had stored it.
+   */
+  public synchronized void putValue(String tag, String jsonValue) {
+    values.put(tag, jsonValue);
+    Integer version = versions.get(tag);
+    versions.put(tag, version == null ? 1 : version + 1);
+  }
+
+  public synchronized String getValue(String tag) {
+    return values.get(tag);
+  }
+
+  /**
+   * Sets whether the getvalues and storeavalues commands are answered. When they aren't, the
+   * service replies 404 Not Found to them.
+   */
+  public synchronized void setBatchSupported(boolean batchSupported) {
+    this.batchSupported = batchSupported;
+  }
+
+  /**
+   * Makes the getvalues and storeavalues commands fail with the given HTTP status without doing
+   * anything, or answer normally again if the status is 0.
+   */
+  public synchronized void setBatchFailureStatus(int status) {
+    batchFailureStatus = status;
+  }
+
+  /**
+   * Sets the body of a 200 OK reply to commands the service doesn't know, as some services send
+   * a page of their own instead of replying 404 Not Found. If body is null, they are answered 404.
+   */
+  public synchronized void setUnknownCommandBody(String body) {
+    unknownCommandBody = body;
+  }
+
+  /**
+   * Sets whether tags with no value are left out of the answer to getvalues.
+   */
+  public synchronized void setMissingTagsOmitted(boolean missingTagsOmitted) {
+    this.missingTagsOmitted = missingTagsOmitted;
+  }
+
+  /**
+   * Returns how many times the given command has been posted.
+   */
+  public synchronized int getRequestCount(String command) {
+    Integer count = requestCounts.get(command);
+    return count == null ? 0 : count;
+  }
+
+  /**
+   * Returns how many getvalue commands were answered 304 Not Modified.
+   */
+  public synchronized int getNotModifiedCount() {
+    return notModifiedCount;
+  }
+
+  private synchronized void respond(HttpExchange exchange) throws IOException, JSONException {
+    String command = exchange.getRequestURI().getPath().replaceAll("^/+", "");
+    Integer count = requestCounts.get(command);
+    requestCounts.put(command, count == null ? 1 : count + 1);
+    Map<String, String> params = parseForm(exchange.getRequestBody());
+    boolean batch = command.equals("getvalues") || command.equals("storeavalues");
+    if (batch && batchSupported && batchFailureStatus != 0) {
+      send(exchange, batchFailureStatus, "");
+    } else if (command.equals("getvalue")) {
+      String tag = params.get("tag");
+      Integer version = versions.get(tag);
+      String etag = "\"" + tag + "-" + (version == null ? 0 : version) + "\"";
+      if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+        notModifiedCount++;
+        exchange.sendResponseHeaders(304, -1);
+        return;
+      }
+      exchange.getResponseHeaders().set("ETag", etag);
+      send(exchange, 200, new JSONArray().put("VALUE").put(tag).put(valueOf(tag)).toString());
+    } else if (command.equals("storeavalue")) {
+      putValue(params.get("tag"), params.get("value"));
+      send(exchange, 200, new JSONArray().put("STORED").put(params.get("tag"))
+          .put(params.get("value")).toString());
+    } else if (command.equals("getvalues") && batchSupported) {
+      JSONArray tags = new JSONArray(params.get("tags"));
+      JSONArray pairs = new JSONArray();
+      for (int i = 0; i < tags.length(); i++) {
+        if (missingTagsOmitted && !values.containsKey(tags.getString(i))) {
+          continue;
+        }
+        pairs.put(new JSONArray().put(tags.getString(i)).put(valueOf(tags.getString(i))));
+      }
+      send(exchange, 200, new JSONArray().put("VALUES").put(pairs).toString());
+    } else if (command.equals("storeavalues") && batchSupported) {
+      JSONArray tags = new JSONArray(params.get("tags"));
+      JSONArray storedValues = new JSONArray(params.get("values"));
+      for (int i = 0; i < tags.length(); i++) {
+        putValue(tags.getString(i), storedValues.getString(i));
+      }
+      send(exchange, 200, new JSONArray().put("STORED").put(tags).put(storedValues).toString());
+    } else if (unknownCommandBody != null) {
+      send(exchange, 200, unknownCommandBody);
+    } else {
+      send(exchange, 404, "");
+    }
+  }
+
+  private String valueOf(String tag) {
+    String value = values.get(tag);
+    return value == null ? "" : value;
+  }
+
+  private static Map<String, String> parseForm(InputStream in) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int n;
+    while ((n = in.read(buffer)) != -1) {
+      body.write(buffer, 0, n);
+    }
+    Map<String, String> params = new HashMap<String, String>();
+    for (String param : body.toString("UTF-8").split("&")) {
+      int equals = param.indexOf('=');
+      if (equals > 0) {
+        params.put(URLDecoder.decode(param.substring(0, equals), "UTF-8"),
+            URLDecoder.decode(param.substring(equals + 1), "UTF-8"));
+      }
+    }
+    return params;
+  }
+
+  private static void send(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes("UTF-8");
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+    if (bytes.length > 0) {
+      OutputStream out = exchange.getResponseBody();
+      out.write(bytes);
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,212 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A Web server that runs in the test process and serves the documents a test gives it. Each
+ * document has an ETag that changes whenever the document does, and a request that sends back the
+ * current ETag in If-None-Match is answered 304 Not Modified. Documents are compressed for clients
+ * that accept gzip, unless a test turns that off. A request for the rest of a document with Range
+ * and If-Range is answered 206 Partial Content if the document hasn't changed, and a test can have
+ * the server close the connection part way through a response.
+ *
+ * <p>The server counts the requests it answers, the connections they came on and the bytes of
+ * the bodies it sends.
+ */
+public class FakeWebServer {
+  private final HttpServer server;
+  private final Map<String, byte[]> documents = new HashMap<String, byte[]>();
+  private final Map<String, String> contentTypes = new HashMap<String, String>();
+  private final Map<String, Integer> versions = new HashMap<String, Integer>();
+  private final Set<InetSocketAddress> clients = new HashSet<InetSocketAddress>();
+  private boolean gzipEnabled = true;
+  private long interruptAfter = -1;
+  private int requestCount = 0;
+  private int notModifiedCount = 0;
+  private int partialCount = 0;
+  private long bytesSent = 0;
+
+  public FakeWebServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        try {
+          respond(exchange);
+        } finally {
+          exchange.close();
+        }
+      }
+    });
+    server.start();
+  }
+
+  /**
+   * Returns the URL of the document at the given path, which starts with a slash.
+   */
+  public String getUrl(String path) {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+  }
+
+  public void stop() {
+    server.stop(0);
+  }
+
+  /**
+   * Serves the given text as UTF-8 at path, replacing what was there before.
+   */
+  public synchronized void putDocument(String path, String contentType, String text)
+      throws IOException {
+    putDocument(path, contentType, text.getBytes("UTF-8"));
+  }
+
+  /**
+   * Serves the given bytes at path, replacing what was there before.
+   */
+  public synchronized void putDocument(String path, String contentType, byte[] document) {
+    documents.put(path, document);
+    contentTypes.put(path, contentType);
+    Integer version = versions.get(path);
+    versions.put(path, version == null ? 1 : version + 1);
+  }
+
+  /**
+   * Sets whether documents are compressed for clients that accept gzip.
+   */
+  public synchronized void setGzipEnabled(boolean gzipEnabled) {
+    this.gzipEnabled = gzipEnabled;
+  }
+
+  /**
+   * Makes the server close the connection after sending the given number of bytes of the next
+   * response's body.
+   */
+  public synchronized void interruptAfter(long bytes) {
+    interruptAfter = bytes;
+  }
+
+  public synchronized int getRequestCount() {
+    return requestCount;
+  }
+
+  /**
+   * Returns how many TCP connections the requests answered so far came on.
+   */
+  public synchronized int getConnectionCount() {
+    return clients.size();
+  }
+
+  /**
+   * Returns how many requests were answered 304 Not Modified.
+   */
+  public synchronized int getNotModifiedCount() {
+    return notModifiedCount;
+  }
+
+  /**
+   * Returns how many requests were answered 206 Partial Content.
+   */
+  public synchronized int getPartialCount() {
+    return partialCount;
+  }
+
+  /**
+   * Returns how many bytes of response bodies were sent, after any compression.
+   */
+  public synchronized long getBytesSent() {
+    return bytesSent;
+  }
+
+  private synchronized void respond(HttpExchange exchange) throws IOException {
+    requestCount++;
+    clients.add(exchange.getRemoteAddress());
+    drain(exchange.getRequestBody());
+    String path = exchange.getRequestURI().getPath();
+    byte[] document = documents.get(path);
+    if (document == null) {
+      exchange.sendResponseHeaders(404, -1);
+      return;
+    }
+    String etag = "\"" + path + "-" + versions.get(path) + "\"";
+    exchange.getResponseHeaders().set("ETag", etag);
+    if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+      notModifiedCount++;
+      exchange.sendResponseHeaders(304, -1);
+      return;
+    }
+    exchange.getResponseHeaders().set("Content-Type", contentTypes.get(path));
+    exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+    String range = exchange.getRequestHeaders().getFirst("Range");
+    String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+    if (range != null && range.matches("bytes=\\d+-")
+        && (ifRange == null || ifRange.equals(etag))) {
+      int first = Integer.parseInt(range.substring(6, range.length() - 1));
+      partialCount++;
+      exchange.getResponseHeaders().set("Content-Range",
+          "bytes " + first + "-" + (document.length - 1) + "/" + document.length);
+      send(exchange, 206, document, first);
+      return;
+    }
+    String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+    if (gzipEnabled && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+      gzip.write(document);
+      gzip.close();
+      document = compressed.toByteArray();
+      exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+    }
+    send(exchange, 200, document, 0);
+  }
+
+  private void send(HttpExchange exchange, int status, byte[] document, int first)
+      throws IOException {
+    int length = document.length - first;
+    exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+    if (length > 0) {
+      OutputStream out = exchange.getResponseBody();
+      if (interruptAfter >= 0 && interruptAfter < length) {
+        out.write(document, first, (int) interruptAfter);
+        out.flush();
+        bytesSent += interruptAfter;
+        interruptAfter = -1;
+        // Closing the exchange before the whole body has been sent closes the connection.
+        return;
+      }
+      int sent = 0;
+      while (sent < length) {
+        int count = Math.min(length - sent, 0x10000);
+        out.write(document, first + sent, count);
+        sent += count;
+      }
+      out.close();
+    }
+    bytesSent += length;
+  }
+
+  private static void drain(InputStream in) throws IOException {
+    byte[] buffer = new byte[1024];
+    while (in.read(buffer) != -1) {
+      // Read the whole request body so that the connection can be reused.
+    }
+  }
+}
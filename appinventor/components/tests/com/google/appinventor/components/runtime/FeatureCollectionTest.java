@@ -5,6 +5,7 @@
 
 package com.google.appinventor.components.runtime;
 
+import com.google.appinventor.components.runtime.shadows.ShadowAsynchUtil;
 import com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.MapFactory.MapFeature;
@@ -14,6 +15,9 @@ import org.junit.Test;
 import org.robolectric.shadow.api.Shadow;
 import org.robolectric.shadows.ShadowView;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.util.Collections;
 
 import static com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher.assertEventFired;
@@ -36,6 +40,7 @@ public class FeatureCollectionTest extends MapTestBase {
   @Test
   public void testFeaturesFromGeoJSON() {
     collection.FeaturesFromGeoJSON("{\"type\":\"FeatureCollection\",\"features\":[{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[-71.0,42]}}]}");
+    ShadowAsynchUtil.runAllPendingRunnables();
     runAllEvents();
     ShadowEventDispatcher.assertEventFiredAny(collection, "GotFeatures");
   }
@@ -43,15 +48,57 @@ public class FeatureCollectionTest extends MapTestBase {
   @Test
   public void testFeaturesFromGeoJSONBadInput() {
     collection.FeaturesFromGeoJSON("[bad]");
+    ShadowAsynchUtil.runAllPendingRunnables();
+    runAllEvents();
     ShadowEventDispatcher.assertErrorOccurred(ErrorMessages.ERROR_INVALID_GEOJSON);
   }
 
   @Test
   public void testFeaturesFromGeoJSONInvalidType() {
     collection.FeaturesFromGeoJSON("{\"type\": \"Garbage\"}");
+    ShadowAsynchUtil.runAllPendingRunnables();
+    runAllEvents();
     ShadowEventDispatcher.assertEventFiredAny(collection, "LoadError");
   }
 
+  @Test
+  public void testAddFeaturesFromURL() throws IOException {
+    StringBuilder geojson = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+    for (int i = 0; i < 250; i++) {
+      if (i > 0) {
+        geojson.append(',');
+      }
+      geojson.append("{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",")
+          .append("\"coordinates\":[-71.0,").append(i % 90).append("]}}");
+    }
+    geojson.append("]}");
+    String url = writeGeoJSON(geojson.toString());
+    collection.AddFeaturesFromURL(url);
+    ShadowAsynchUtil.runAllPendingRunnables();
+    runAllEvents();
+    assertEquals(250, collection.Features().size());
+    assertEventFiredAny(collection, "FeaturesAdded");
+    assertEventFired(collection, "LoadProgress", url, 250);
+    assertEquals(url, collection.Source());
+  }
+
+  @Test
+  public void testAddFeaturesFromURLInvalidTypeAfterFeatures() throws IOException {
+    int mapFeatures = getMap().Features().size();
+    String url = writeGeoJSON("{\"features\":["
+        + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[-71.0,42]}},"
+        + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[-71.0,43]}}"
+        + "],\"type\":\"Garbage\"}");
+    collection.AddFeaturesFromURL(url);
+    ShadowAsynchUtil.runAllPendingRunnables();
+    runAllEvents();
+    // The features read before the type are not left on the map.
+    assertEquals(0, collection.Features().size());
+    assertEquals(mapFeatures, getMap().Features().size());
+    assertEventFiredAny(collection, "LoadError");
+    ShadowEventDispatcher.assertEventNotFired(collection, "FeaturesAdded");
+  }
+
   @Test
   public void testSourceSetter() {
     collection.Source("foo.geojson");
@@ -209,10 +256,23 @@ public class FeatureCollectionTest extends MapTestBase {
   public void testGeoJSONWithBOM() {
     ShadowEventDispatcher.clearEvents();
     collection.FeaturesFromGeoJSON("\uFEFF{\"type\":\"FeatureCollection\",\"features\":[]}");
+    ShadowAsynchUtil.runAllPendingRunnables();
     runAllEvents();
     assertEventFiredAny(collection, "GotFeatures");
   }
 
+  /**
+   * Writes a GeoJSON document to a temporary file and returns its URL.
+   */
+  private static String writeGeoJSON(String geojson) throws IOException {
+    File file = File.createTempFile("features", ".geojson");
+    file.deleteOnExit();
+    FileWriter writer = new FileWriter(file);
+    writer.write(geojson);
+    writer.close();
+    return file.toURI().toString();
+  }
+
   private void testFeatureListSetter(MapFeature feature) {
     ShadowView view = Shadow.extract(getMap().getView());
     view.clearWasInvalidated();
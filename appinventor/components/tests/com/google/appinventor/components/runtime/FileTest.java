@@ -0,0 +1,231 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import android.Manifest;
+import com.google.appinventor.components.runtime.shadows.ShadowAsynchUtil;
+import com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher;
+import com.google.appinventor.components.runtime.util.ErrorMessages;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.shadows.ShadowApplication;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher.assertEventFired;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the chunked reads, appends and copies of {@link File} on temporary files, including
+ * ones larger than a chunk or progress report.
+ */
+public class FileTest extends RobolectricTestBase {
+  private RecordingFile file;
+
+  /**
+   * A File that keeps the chunks and progress it is given, in order.
+   */
+  private static class RecordingFile extends File {
+    final List<String> chunks = new ArrayList<String>();
+    final List<long[]> progress = new ArrayList<long[]>();
+    boolean keepChunks = true;
+    long charsRead = 0;
+    int longestChunk = 0;
+    boolean gotLastChunk = false;
+
+    RecordingFile(ComponentContainer container) {
+      super(container);
+    }
+
+    @Override
+    public void GotChunk(String fileName, String text, boolean lastChunk) {
+      if (keepChunks) {
+        chunks.add(text);
+      }
+      charsRead += text.length();
+      longestChunk = Math.max(longestChunk, text.length());
+      gotLastChunk = lastChunk;
+      super.GotChunk(fileName, text, lastChunk);
+    }
+
+    @Override
+    public void FileProgress(String fileName, long bytesDone, long totalBytes) {
+      progress.add(new long[] { bytesDone, totalBytes });
+      super.FileProgress(fileName, bytesDone, totalBytes);
+    }
+  }
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    ShadowApplication.getInstance().grantPermissions(Manifest.permission.READ_EXTERNAL_STORAGE,
+        Manifest.permission.WRITE_EXTERNAL_STORAGE);
+    file = new RecordingFile(getForm());
+  }
+
+  @Test
+  public void testReadInChunks() throws IOException {
+    writeText("lines.txt", "ab\r\ncd\r\r\nef\rg\n");
+    file.ReadInChunks("lines.txt", 3);
+    runFileOperations();
+    assertEquals(Arrays.asList("ab\n", "cd\r", "\nef", "\rg\n"), file.chunks);
+    assertTrue(file.gotLastChunk);
+    // The whole file is 14 bytes, and it is all read by the last chunk.
+    long[] last = file.progress.get(file.progress.size() - 1);
+    assertArrayEquals(new long[] { 14, 14 }, last);
+  }
+
+  @Test
+  public void testReadInChunksOfEmptyFile() throws IOException {
+    writeText("empty.txt", "");
+    file.ReadInChunks("empty.txt", 10);
+    runFileOperations();
+    assertEquals(Arrays.asList(""), file.chunks);
+    assertTrue(file.gotLastChunk);
+  }
+
+  @Test
+  public void testReadInChunksRejectsChunkSize() {
+    file.ReadInChunks("lines.txt", 0);
+    ShadowEventDispatcher.assertErrorOccurred(ErrorMessages.ERROR_INVALID_CHUNK_SIZE);
+  }
+
+  @Test
+  public void testReadFromNormalizesLineEndings() throws IOException {
+    writeText("lines.txt", "ab\r\ncd\r\r\nef\rg\r");
+    file.ReadFrom("lines.txt");
+    runFileOperations();
+    assertEventFired(file, "GotText", "ab\ncd\r\nef\rg\r");
+  }
+
+  @Test
+  public void testAppendsAndCopyInOrder() throws IOException {
+    StringBuilder expected = new StringBuilder("start\n");
+    file.SaveFile("start\n", "log.txt");
+    for (int i = 0; i < 100; i++) {
+      file.AppendToFile("line " + i + "\n", "log.txt");
+      expected.append("line ").append(i).append("\n");
+    }
+    file.CopyFile("log.txt", "copy.txt");
+    file.AppendToFile("more\n", "log.txt");
+    runFileOperations();
+    assertEquals(expected + "more\n", readText("log.txt"));
+    assertEquals(expected.toString(), readText("copy.txt"));
+    assertEventFired(file, "AfterFileSaved", "copy.txt");
+  }
+
+  @Test
+  public void testCopyFileToItself() throws IOException {
+    writeText("self.txt", "unchanged\n");
+    file.CopyFile("self.txt", "./self.txt");
+    runFileOperations();
+    assertEquals("unchanged\n", readText("self.txt"));
+    assertEventFired(file, "AfterFileSaved", "./self.txt");
+  }
+
+  /**
+   * Copies a 4 MB file, which reports progress after each megabyte.
+   */
+  @Test
+  public void testCopyLargeFile() throws Exception {
+    final int megabytes = 4;
+    java.io.File source = new java.io.File(getForm().getFilesDir(), "big.bin");
+    OutputStream out = new FileOutputStream(source);
+    byte[] block = new byte[1024 * 1024];
+    new Random(1).nextBytes(block);
+    for (int i = 0; i < megabytes; i++) {
+      out.write(block);
+    }
+    out.close();
+
+    file.CopyFile("big.bin", "big-copy.bin");
+    runFileOperations();
+
+    java.io.File copy = new java.io.File(getForm().getFilesDir(), "big-copy.bin");
+    assertArrayEquals(digest(source), digest(copy));
+    assertEventFired(file, "AfterFileSaved", "big-copy.bin");
+    assertTrue(file.progress.size() > megabytes);
+    long done = 0;
+    for (long[] progress : file.progress) {
+      assertTrue(progress[0] >= done && progress[0] <= done + block.length);
+      assertEquals(source.length(), progress[1]);
+      done = progress[0];
+    }
+    assertEquals(source.length(), done);
+  }
+
+  /**
+   * Reads a 4 MB text file in 64K chunks, none of them longer than asked for.
+   */
+  @Test
+  public void testReadLargeFileInChunks() throws Exception {
+    final int lines = 64 * 1024;
+    final String line = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcd\r\n";
+    Writer writer = new OutputStreamWriter(
+        new FileOutputStream(new java.io.File(getForm().getFilesDir(), "big.txt")), "UTF-8");
+    for (int i = 0; i < lines; i++) {
+      writer.write(line);
+    }
+    writer.close();
+
+    file.keepChunks = false;
+    file.ReadInChunks("big.txt", 65536);
+    runFileOperations();
+
+    assertTrue(file.gotLastChunk);
+    assertEquals((long) lines * (line.length() - 1), file.charsRead);
+    assertEquals(65536, file.longestChunk);
+  }
+
+  private void runFileOperations() {
+    ShadowAsynchUtil.runAllPendingRunnables();
+    runAllEvents();
+  }
+
+  private void writeText(String name, String text) throws IOException {
+    Writer writer = new OutputStreamWriter(
+        new FileOutputStream(new java.io.File(getForm().getFilesDir(), name)), "UTF-8");
+    writer.write(text);
+    writer.close();
+  }
+
+  private String readText(String name) throws IOException {
+    InputStream in = new FileInputStream(new java.io.File(getForm().getFilesDir(), name));
+    StringBuilder text = new StringBuilder();
+    byte[] buffer = new byte[4096];
+    int length;
+    while ((length = in.read(buffer)) > 0) {
+      text.append(new String(buffer, 0, length, "UTF-8"));
+    }
+    in.close();
+    return text.toString();
+  }
+
+  private static byte[] digest(java.io.File file) throws Exception {
+    MessageDigest digest = MessageDigest.getInstance("SHA-1");
+    InputStream in = new FileInputStream(file);
+    byte[] buffer = new byte[65536];
+    int length;
+    while ((length = in.read(buffer)) > 0) {
+      digest.update(buffer, 0, length);
+    }
+    in.close();
+    return digest.digest();
+  }
+}
@@ -0,0 +1,231 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import com.google.appinventor.components.runtime.util.Ev3BinaryParser;
+import com.google.appinventor.components.runtime.util.Ev3Constants;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher.assertEventFired;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests sending direct commands and polling sensors through a {@link LegoCommandScheduler}
+ * connected to a {@link FakeNxtBrick} or a {@link FakeEv3Brick}, and that its threads stop
+ * while the connection is closed.
+ */
+public class LegoCommandSchedulerTest extends RobolectricTestBase {
+  private static final long TIMEOUT_MS = 5000;
+  private static final int GETINPUTVALUES = 0x07;
+
+  private BluetoothClient client;
+  private BluetoothClient ev3Client;
+  private FakeNxtBrick brick;
+  private FakeEv3Brick ev3Brick;
+  private NxtTouchSensor touchSensor;
+  private NxtLightSensor lightSensor;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    client = new BluetoothClient(getForm());
+    brick = new FakeNxtBrick();
+    ev3Client = new BluetoothClient(getForm());
+    ev3Brick = new FakeEv3Brick();
+    touchSensor = new NxtTouchSensor(getForm());
+    touchSensor.BluetoothClient(client);
+    lightSensor = new NxtLightSensor(getForm());
+    lightSensor.BluetoothClient(client);
+  }
+
+  @After
+  public void tearDown() {
+    touchSensor.onDelete();
+    lightSensor.onDelete();
+    client.Disconnect();
+    ev3Client.Disconnect();
+  }
+
+  @Test
+  public void testRepliesMatchCommands() throws Exception {
+    brick.setSensorValue(0, 1023, 1);
+    brick.setSensorValue(2, 600, 60);
+    client.setConnection(brick);
+    assertTrue(touchSensor.IsPressed());
+    assertEquals(600, lightSensor.GetLightLevel());
+    // Each sensor's input mode is set on connecting, before it is read.
+    assertEquals(0x05, (int) brick.getOpcodes().get(0));
+    assertEquals(0x05, (int) brick.getOpcodes().get(1));
+  }
+
+  @Test
+  public void testPipelinesCommands() throws Exception {
+    brick.setReplyDelay(5);
+    client.setConnection(brick);
+    for (int port = 0; port < 4; port++) {
+      brick.setSensorValue(port, 100 * port, port);
+    }
+    LegoCommandScheduler scheduler =
+        LegoCommandScheduler.forConnection(client, LegoCommandScheduler.Protocol.NXT);
+    LegoCommandScheduler.Reply[] replies = new LegoCommandScheduler.Reply[20];
+    for (int i = 0; i < replies.length; i++) {
+      replies[i] = scheduler.submit("", getInputValues(i % 4), true);
+    }
+    for (int i = 0; i < replies.length; i++) {
+      byte[] reply = replies[i].await();
+      assertEquals(i % 4, reply[3]);
+      assertEquals(100 * (i % 4), (reply[10] & 0xFF) | ((reply[11] & 0xFF) << 8));
+    }
+    assertTrue(brick.getMaxAwaitingReply() > 1);
+    assertTrue(brick.getMaxAwaitingReply() <= 4);
+  }
+
+  @Test
+  public void testPollCycleRaisesEvents() throws Exception {
+    brick.setReplyDelay(5);
+    brick.setSensorValue(0, 1023, 1);
+    brick.setSensorValue(2, 100, 10);
+    client.setConnection(brick);
+    touchSensor.PressedEventEnabled(true);
+    lightSensor.BelowRangeEventEnabled(true);
+    waitForEvent(touchSensor, "Pressed");
+    waitForEvent(lightSensor, "BelowRange");
+    // Both sensors were read in the same cycle, so their commands were sent together.
+    assertTrue(brick.getMaxAwaitingReply() >= 2);
+  }
+
+  @Test
+  public void testDisconnectFailsOutstandingCommands() throws Exception {
+    brick.setReplyDelay(60000);
+    client.setConnection(brick);
+    LegoCommandScheduler.Reply reply =
+        LegoCommandScheduler.forConnection(client, LegoCommandScheduler.Protocol.NXT)
+            .submit("", getInputValues(0), true);
+    client.Disconnect();
+    assertNull(reply.await());
+  }
+
+  @Test
+  public void testThreadsStopOnDisconnectAndRestartOnConnect() throws Exception {
+    brick.setSensorValue(0, 1023, 1);
+    client.setConnection(brick);
+    touchSensor.PressedEventEnabled(true);
+    LegoCommandScheduler scheduler =
+        LegoCommandScheduler.forConnection(client, LegoCommandScheduler.Protocol.NXT);
+    scheduler.submit("", getInputValues(0), true).await();
+    assertEquals(3, scheduler.getThreadCount());
+
+    client.Disconnect();
+    waitForThreadCount(scheduler, 0);
+
+    client.setConnection(brick);
+    byte[] reply = scheduler.submit("", getInputValues(0), true).await();
+    assertEquals(0, reply[3]);
+    waitForThreadCount(scheduler, 3);
+  }
+
+  @Test
+  public void testThreadsStopWhenNeverConnected() throws Exception {
+    LegoCommandScheduler scheduler =
+        LegoCommandScheduler.forConnection(client, LegoCommandScheduler.Protocol.NXT);
+    assertNull(scheduler.submit("", getInputValues(0), true).await());
+    waitForThreadCount(scheduler, 0);
+  }
+
+  @Test
+  public void testEv3RepliesMatchMessageCounters() throws Exception {
+    for (int port = 0; port < 4; port++) {
+      ev3Brick.setSensorPercentage(port, 10 * (port + 1));
+      // The last command is answered first.
+      ev3Brick.setReplyDelay(port, 150 - 50 * port);
+    }
+    ev3Client.setConnection(ev3Brick);
+    LegoCommandScheduler scheduler =
+        LegoCommandScheduler.forConnection(ev3Client, LegoCommandScheduler.Protocol.EV3);
+    LegoCommandScheduler.Reply[] replies = new LegoCommandScheduler.Reply[4];
+    for (int port = 0; port < 4; port++) {
+      replies[port] = scheduler.submit("", readPercentage(port), true);
+    }
+    for (int port = 0; port < 4; port++) {
+      assertArrayEquals(new byte[] { Ev3Constants.DirectReplyType.DIRECT_REPLY,
+          (byte) (10 * (port + 1)) }, replies[port].await());
+    }
+    assertEquals(Arrays.asList(replies[3].sequence, replies[2].sequence, replies[1].sequence,
+        replies[0].sequence), ev3Brick.getReplyCounters());
+  }
+
+  @Test
+  public void testEv3PollInterval() throws Exception {
+    Ev3TouchSensor ev3TouchSensor = new Ev3TouchSensor(getForm());
+    try {
+      ev3TouchSensor.BluetoothClient(ev3Client);
+      ev3Client.setConnection(ev3Brick);
+      long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+      while (ev3Brick.getReadTimes().size() < 6) {
+        assertTrue(System.currentTimeMillis() < deadline);
+        runAllEvents();
+        Thread.yield();
+      }
+      List<Long> readTimes = ev3Brick.getReadTimes();
+      long interval = LegoCommandScheduler.Protocol.EV3.pollIntervalMs;
+      for (int i = 1; i < readTimes.size(); i++) {
+        // Allow for the clock's granularity.
+        long elapsed = readTimes.get(i) - readTimes.get(i - 1);
+        assertTrue("Polled again after " + elapsed + " ms", elapsed >= interval - 5);
+      }
+    } finally {
+      ev3TouchSensor.onDelete();
+    }
+  }
+
+  private static byte[] getInputValues(int port) {
+    return new byte[] { 0x00, GETINPUTVALUES, (byte) port };
+  }
+
+  /**
+   * Returns the command the EV3 sensor components send to read a sensor as a percentage.
+   */
+  private static byte[] readPercentage(int port) {
+    return Ev3BinaryParser.encodeDirectCommand(Ev3Constants.Opcode.INPUT_DEVICE, true, 1, 0,
+        "ccccccg", Ev3Constants.InputDeviceSubcode.READY_PCT, (byte) 0, (byte) port, (byte) 0,
+        (byte) -1, (byte) 1, (byte) 0);
+  }
+
+  private static void waitForThreadCount(LegoCommandScheduler scheduler, int count)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (scheduler.getThreadCount() != count) {
+      if (System.currentTimeMillis() > deadline) {
+        assertEquals(count, scheduler.getThreadCount());
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  private void waitForEvent(Component component, String eventName) {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (true) {
+      runAllEvents();
+      try {
+        assertEventFired(component, eventName);
+        return;
+      } catch (AssertionError e) {
+        if (System.currentTimeMillis() > deadline) {
+          throw e;
+        }
+      }
+      Thread.yield();
+    }
+  }
+}
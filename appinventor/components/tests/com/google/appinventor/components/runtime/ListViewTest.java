@@ -0,0 +1,142 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import android.text.Spannable;
+import android.text.style.ForegroundColorSpan;
+import android.view.ViewGroup;
+import android.widget.Adapter;
+import android.widget.EditText;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+import com.google.appinventor.components.runtime.util.YailList;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher.assertEventFired;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the ListView component.
+ */
+public class ListViewTest extends RobolectricTestBase {
+
+  private ListView listView;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    listView = new ListView(getForm());
+    listView.ShowFilterBar(true);
+  }
+
+  @Test
+  public void testRowsShowElements() {
+    listView.ElementsFromString("apple,banana,cherry");
+    listView.TextColor(Component.COLOR_RED);
+    assertEquals(Arrays.asList("apple", "banana", "cherry"), rows());
+    TextView row = (TextView) getAdapter().getView(1, null, new FrameLayout(getForm()));
+    assertEquals("banana", row.getText().toString());
+    assertEquals(Component.COLOR_RED, row.getCurrentTextColor());
+  }
+
+  @Test
+  public void testFilterKeepsOriginalIndex() {
+    listView.ElementsFromString("apple,banana,blueberry");
+    filter("b");
+    assertEquals(Arrays.asList("banana", "blueberry"), rows());
+    listView.onItemClick(null, null, 1, 1);
+    assertEquals("blueberry", listView.Selection());
+    assertEquals(3, listView.SelectionIndex());
+    assertEventFired(listView, "AfterPicking");
+  }
+
+  @Test
+  public void testLongerAndShorterFilter() {
+    listView.ElementsFromString("apple,banana,blueberry,black currant");
+    filter("b");
+    assertEquals(Arrays.asList("banana", "blueberry", "black currant"), rows());
+    filter("bl");
+    assertEquals(Arrays.asList("blueberry", "black currant"), rows());
+    // Words after the first match too.
+    filter("cu");
+    assertEquals(Arrays.asList("black currant"), rows());
+    filter("");
+    assertEquals(Arrays.asList("apple", "banana", "blueberry", "black currant"), rows());
+  }
+
+  @Test
+  public void testAppendWhileFiltered() {
+    listView.Elements(list("apple", "banana", "blueberry"));
+    filter("b");
+    listView.Elements(list("apple", "banana", "blueberry", "cherry", "boysenberry"));
+    // The old matches are kept until the filter has looked at the new items.
+    assertEquals(Arrays.asList("banana", "blueberry"), rows());
+    runAllEvents();
+    assertEquals(Arrays.asList("banana", "blueberry", "boysenberry"), rows());
+    listView.onItemClick(null, null, 2, 2);
+    assertEquals("boysenberry", listView.Selection());
+    assertEquals(5, listView.SelectionIndex());
+  }
+
+  @Test
+  public void testChangeWhileFiltered() {
+    listView.Elements(list("apple", "banana", "blueberry"));
+    filter("b");
+    listView.Elements(list("apple", "cranberry", "blueberry"));
+    runAllEvents();
+    assertEquals(Arrays.asList("blueberry"), rows());
+    listView.onItemClick(null, null, 0, 0);
+    assertEquals(3, listView.SelectionIndex());
+  }
+
+  @SuppressWarnings("deprecation")
+  @Test
+  public void testItemsToColoredText() {
+    listView.ElementsFromString("apple,banana");
+    listView.TextColor(Component.COLOR_BLUE);
+    Spannable[] text = listView.itemsToColoredText();
+    assertEquals(2, text.length);
+    assertEquals("banana", text[1].toString());
+    ForegroundColorSpan[] colors = text[1].getSpans(0, text[1].length(),
+        ForegroundColorSpan.class);
+    assertEquals(1, colors.length);
+    assertEquals(Component.COLOR_BLUE, colors[0].getForegroundColor());
+  }
+
+  private Adapter getAdapter() {
+    return ((android.widget.ListView) ((ViewGroup) listView.getView()).getChildAt(1))
+        .getAdapter();
+  }
+
+  /**
+   * Returns the text of the rows the ListView shows.
+   */
+  private List<String> rows() {
+    Adapter adapter = getAdapter();
+    List<String> rows = new ArrayList<String>();
+    for (int i = 0; i < adapter.getCount(); i++) {
+      rows.add((String) adapter.getItem(i));
+    }
+    return rows;
+  }
+
+  /**
+   * Types {@code text} into the filter bar and waits for the rows to be filtered.
+   */
+  private void filter(String text) {
+    ((EditText) ((ViewGroup) listView.getView()).getChildAt(0)).setText(text);
+    runAllEvents();
+  }
+
+  private static YailList list(String... items) {
+    return YailList.makeList(items);
+  }
+}
@@ -0,0 +1,130 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A stand-in for android.bluetooth.BluetoothSocket that BluetoothConnectionBase can be connected
+ * to through BluetoothReflection. By default the device on the other end echoes every byte it
+ * is sent. Subclasses can override {@link #received(byte[], int, int)} to act as a particular
+ * device, and tests can call {@link #deliver(byte[])} to have the device send bytes of its own.
+ */
+public class LoopbackBluetoothSocket {
+  private final Incoming incoming = new Incoming();
+
+  private final OutputStream outgoing = new OutputStream() {
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      if (incoming.isClosed()) {
+        throw new IOException("socket closed");
+      }
+      received(bytes, offset, length);
+    }
+  };
+
+  public InputStream getInputStream() {
+    return incoming;
+  }
+
+  public OutputStream getOutputStream() {
+    return outgoing;
+  }
+
+  public void close() {
+    incoming.close();
+  }
+
+  /**
+   * Sends bytes from the device to the app.
+   */
+  public void deliver(byte[] bytes) {
+    incoming.add(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Called with the bytes the app writes to the device. Echoes them back.
+   */
+  protected void received(byte[] bytes, int offset, int length) {
+    incoming.add(bytes, offset, length);
+  }
+
+  /**
+   * The bytes sent by the device and not yet read by the app. Reading blocks until a byte
+   * arrives and fails once the socket is closed, as a Bluetooth socket's stream does.
+   */
+  private static class Incoming extends InputStream {
+    private byte[] bytes = new byte[1024];
+    private int head = 0;
+    private int count = 0;
+    private boolean closed = false;
+
+    synchronized void add(byte[] source, int offset, int length) {
+      if (count + length > bytes.length) {
+        byte[] grown = new byte[Math.max(bytes.length * 2, count + length)];
+        for (int i = 0; i < count; i++) {
+          grown[i] = bytes[(head + i) % bytes.length];
+        }
+        bytes = grown;
+        head = 0;
+      }
+      for (int i = 0; i < length; i++) {
+        bytes[(head + count + i) % bytes.length] = source[offset + i];
+      }
+      count += length;
+      notifyAll();
+    }
+
+    synchronized boolean isClosed() {
+      return closed;
+    }
+
+    @Override
+    public synchronized int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public synchronized int read(byte[] buffer, int offset, int length) throws IOException {
+      while (count == 0) {
+        if (closed) {
+          throw new IOException("socket closed");
+        }
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          throw new IOException(e.getMessage());
+        }
+      }
+      int n = Math.min(length, count);
+      for (int i = 0; i < n; i++) {
+        buffer[offset + i] = bytes[(head + i) % bytes.length];
+      }
+      head = (head + n) % bytes.length;
+      count -= n;
+      return n;
+    }
+
+    @Override
+    public synchronized int available() {
+      return count;
+    }
+
+    @Override
+    public synchronized void close() {
+      closed = true;
+      notifyAll();
+    }
+  }
+}
@@ -6,7 +6,13 @@
 package com.google.appinventor.components.runtime;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Point;
+import android.graphics.Rect;
 import android.hardware.Sensor;
+import android.view.MotionEvent;
+import android.view.ViewGroup;
 import com.google.appinventor.components.runtime.shadows.ShadowAsynchUtil;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.GeometryUtil;
@@ -14,7 +20,10 @@ import com.google.appinventor.components.runtime.util.YailList;
 import org.easymock.EasyMock;
 import org.junit.Before;
 import org.junit.Test;
+import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.overlay.Overlay;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.shadow.api.Shadow;
 import org.robolectric.shadows.ShadowSensorManager;
@@ -24,6 +33,7 @@ import java.io.IOException;
 import java.util.Collections;
 
 import static com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher.assertErrorOccurred;
+import static com.google.appinventor.components.runtime.util.GeometryUtil.ONE_DEG_IN_METERS;
 import static com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher.assertEventFired;
 import static com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher.assertEventFiredAny;
 import static org.easymock.EasyMock.expect;
@@ -223,6 +233,49 @@ public class MapTest extends MapTestBase {
     assertErrorOccurred(ErrorMessages.ERROR_EXCEPTION_DURING_MAP_SAVE);
   }
 
+  @Test
+  public void testTileCacheSize() {
+    map.TileCacheSize(25);
+    assertEquals(25, map.TileCacheSize());
+  }
+
+  @Test
+  public void testPrefetchTilesInvalidZoomRange() {
+    map.PrefetchTiles(defaultBoundingBox(), 12, 10);
+    assertErrorOccurred(ErrorMessages.ERROR_INVALID_ZOOM_RANGE);
+  }
+
+  @Test
+  public void testPrefetchTooManyTiles() {
+    YailList world = YailList.makeList(new Object[] {
+        YailList.makeList(new Object[] { 80.0, -179.0 }),
+        YailList.makeList(new Object[] { -80.0, 179.0 })
+    });
+    map.PrefetchTiles(world, 1, 18);
+    assertErrorOccurred(ErrorMessages.ERROR_TOO_MANY_TILES_TO_PREFETCH);
+  }
+
+  @Test
+  public void testCountTiles() {
+    // A box around 0,0 touches the four tiles that meet there at every zoom level above 0.
+    assertEquals(8, map.getController().countTiles(
+        new BoundingBox(0.1, 0.1, -0.1, -0.1), 1, 2));
+  }
+
+  @Test
+  public void testOnTilePrefetchProgress() {
+    map.onTilePrefetchProgress(5, 10);
+    runAllEvents();
+    assertEventFired(map, "TilePrefetchProgress", 5, 10);
+  }
+
+  @Test
+  public void testOnTilePrefetchComplete() {
+    map.onTilePrefetchComplete(10, 1);
+    runAllEvents();
+    assertEventFired(map, "TilePrefetchComplete", 10, 1);
+  }
+
   @Test
   public void testCreateMarker() {
     Marker marker = map.CreateMarker(4.0, -4.0);
@@ -335,6 +388,161 @@ public class MapTest extends MapTestBase {
     assertEquals(0, map.Features().size());
   }
 
+  @Test
+  public void testFeaturesInBoundingBox() {
+    Marker inside = map.CreateMarker(0.5, 0.5);
+    map.CreateMarker(2.0, 2.0);
+    Rectangle overlapping = makeRectangle(map, 3.0, 0.5, 0.5, 3.0);
+    Circle circle = makeCircle(map, 0.0, 1.5, ONE_DEG_IN_METERS);  // reaches into the box
+    makeCircle(map, 0.0, 3.0, ONE_DEG_IN_METERS);  // does not
+    YailList result = map.FeaturesInBoundingBox(defaultBoundingBox());
+    assertEquals(3, result.size());
+    assertTrue(result.contains(inside));
+    assertTrue(result.contains(overlapping));
+    assertTrue(result.contains(circle));
+  }
+
+  @Test
+  public void testFeaturesNearPoint() {
+    Marker far = map.CreateMarker(0.0, 0.02);
+    Marker near = map.CreateMarker(0.0, 0.01);
+    map.CreateMarker(0.0, 0.05);
+    YailList result = map.FeaturesNearPoint(0.0, 0.0, 3000);
+    assertEquals(2, result.size());
+    assertEquals(near, result.getObject(0));
+    assertEquals(far, result.getObject(1));
+  }
+
+  @Test
+  public void testFeatureIndexFollowsChanges() {
+    Marker marker = map.CreateMarker(0.0, 0.0);
+    assertEquals(1, map.FeaturesNearPoint(0.0, 0.0, 10).size());
+    marker.SetLocation(10.0, 10.0);
+    assertEquals(0, map.FeaturesNearPoint(0.0, 0.0, 10).size());
+    assertEquals(1, map.FeaturesNearPoint(10.0, 10.0, 10).size());
+    map.removeFeature(marker);
+    assertEquals(0, map.FeaturesNearPoint(10.0, 10.0, 10).size());
+  }
+
+  /**
+   * Places a grid of markers and checks that small queries only find the markers inside them.
+   */
+  @Test
+  public void testFeatureQueriesOnManyMarkers() {
+    int side = 50;
+    for (int i = 0; i < side; i++) {
+      for (int j = 0; j < side; j++) {
+        map.CreateMarker(i * 0.01, j * 0.01);
+      }
+    }
+    YailList box = YailList.makeList(new Object[] {
+        YailList.makeList(new Object[] { 0.095, -0.005 }),
+        YailList.makeList(new Object[] { -0.005, 0.095 })
+    });
+    assertEquals(100, map.FeaturesInBoundingBox(box).size());
+    YailList near = map.FeaturesNearPoint(0.25, 0.25, 100);
+    assertEquals(1, near.size());
+    assertEquals(0.25, ((Marker) near.getObject(0)).Latitude(), 1e-9);
+    assertEquals(0.25, ((Marker) near.getObject(0)).Longitude(), 1e-9);
+  }
+
+  @Test
+  public void testClusterMarkers() {
+    Marker before = map.CreateMarker(0.0, 0.0);
+    map.ClusterMarkers(true);
+    assertTrue(map.ClusterMarkers());
+    Marker after = map.CreateMarker(0.0, 0.001);
+    // The markers are drawn by one overlay, next to the touch overlay.
+    assertEquals(2, map.getController().getOverlayCount());
+    assertTrue(map.getController().isFeatureVisible(before));
+    assertTrue(map.getController().isFeatureVisible(after));
+    map.ClusterMarkers(false);
+    assertFalse(map.ClusterMarkers());
+    assertEquals(3, map.getController().getOverlayCount());
+    assertTrue(map.getController().isFeatureVisible(before));
+    assertTrue(map.getController().isFeatureVisible(after));
+  }
+
+  @Test
+  public void testClusteredMarkerVisibility() {
+    map.ClusterMarkers(true);
+    Marker marker = map.CreateMarker(0.0, 0.0);
+    marker.Visible(false);
+    assertFalse(map.getController().isFeatureVisible(marker));
+    marker.Visible(true);
+    assertTrue(map.getController().isFeatureVisible(marker));
+    map.removeFeature(marker);
+    assertFalse(map.getController().isFeatureVisible(marker));
+    // Markers that were hidden or removed are not brought back when clustering is turned off.
+    map.ClusterMarkers(false);
+    assertEquals(1, map.getController().getOverlayCount());
+  }
+
+  @Test
+  public void testClusterBadgeTapExpands() {
+    map.ClusterMarkers(true);
+    map.ZoomLevel(13);
+    map.CenterFromString("10, 10.00025");
+    // A few pixels apart at zoom level 13, so the markers are drawn as one badge.
+    map.CreateMarker(10.0, 10.0);
+    map.CreateMarker(10.0, 10.0005);
+    MapView view = getMapView();
+    Overlay clusters = getClusterOverlay(view);
+    drawClusters(view);
+    assertTrue(clusters.onSingleTapConfirmed(eventAt(view, MotionEvent.ACTION_UP, 10.0, 10.00025, 0),
+        view));
+    assertTrue(map.ZoomLevel() > 13);
+    // Zoomed in, the markers are drawn apart and there is no badge between them.
+    drawClusters(view);
+    assertFalse(clusters.onSingleTapConfirmed(eventAt(view, MotionEvent.ACTION_UP, 10.0, 10.00025,
+        0), view));
+  }
+
+  @Test
+  public void testClustersFollowMovedMarker() {
+    map.ClusterMarkers(true);
+    map.ZoomLevel(13);
+    map.CenterFromString("10, 10.00025");
+    map.CreateMarker(10.0, 10.0);
+    Marker marker = map.CreateMarker(10.0, 11.0);
+    MapView view = getMapView();
+    drawClusters(view);
+    marker.SetLocation(10.0, 10.0005);
+    drawClusters(view);
+    assertTrue(getClusterOverlay(view).onSingleTapConfirmed(
+        eventAt(view, MotionEvent.ACTION_UP, 10.0, 10.00025, 0), view));
+    assertTrue(map.ZoomLevel() > 13);
+  }
+
+  @Test
+  public void testClustersFollowDraggedMarker() {
+    map.ClusterMarkers(true);
+    map.ZoomLevel(13);
+    map.CenterFromString("10, 10.006");
+    // About 70 pixels apart at zoom level 13, so each marker is drawn on its own.
+    map.CreateMarker(10.0, 10.0);
+    Marker marker = map.CreateMarker(10.0, 10.012);
+    marker.Draggable(true);
+    MapView view = getMapView();
+    Overlay clusters = getClusterOverlay(view);
+    drawClusters(view);
+    // Drag the second marker onto the first. The touches are just above the markers' anchors,
+    // which are at the bottom of their icons.
+    assertTrue(clusters.onLongPress(eventAt(view, MotionEvent.ACTION_DOWN, 10.0, 10.012, -1),
+        view));
+    assertTrue(clusters.onTouchEvent(eventAt(view, MotionEvent.ACTION_MOVE, 10.0, 10.0, -1),
+        view));
+    assertTrue(clusters.onTouchEvent(eventAt(view, MotionEvent.ACTION_UP, 10.0, 10.0, -1), view));
+    runAllEvents();
+    assertEventFired(marker, "StopDrag");
+    assertEquals(10.0, marker.Longitude(), 1e-3);
+    // The markers now form a cluster, and tapping its badge zooms in.
+    drawClusters(view);
+    assertTrue(clusters.onSingleTapConfirmed(eventAt(view, MotionEvent.ACTION_UP, 10.0, 10.0, -1),
+        view));
+    assertTrue(map.ZoomLevel() > 13);
+  }
+
   /**
    * Tests that setting the feature list to an empty list results in clearing out of the overlays
    * in the map.
@@ -346,4 +554,41 @@ public class MapTest extends MapTestBase {
     assertEquals(0, map.Features().size());
     assertEquals(1, map.getController().getOverlayCount());
   }
+
+  private MapView getMapView() {
+    return (MapView) ((ViewGroup) map.getView()).getChildAt(0);
+  }
+
+  /**
+   * Gets the overlay that draws clustered markers, which is added after the touch overlay.
+   */
+  private static Overlay getClusterOverlay(MapView view) {
+    return view.getOverlays().get(view.getOverlays().size() - 1);
+  }
+
+  /**
+   * Draws the clustered markers, which records where the clusters are on screen for taps.
+   */
+  private static void drawClusters(MapView view) {
+    Canvas canvas = new Canvas(Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888));
+    getClusterOverlay(view).draw(canvas, view, false);
+  }
+
+  /**
+   * Creates a touch event at the screen position of a point on the map, moved down by
+   * {@code dy} pixels.
+   */
+  private static MotionEvent eventAt(MapView view, int action, double latitude, double longitude,
+      int dy) {
+    Point point = view.getProjection().toPixels(new GeoPoint(latitude, longitude), null);
+    Rect screen = view.getProjection().getIntrinsicScreenRect();
+    return MotionEvent.obtain(0, 0, action, point.x - screen.left, point.y - screen.top + dy, 0);
+  }
+
+  private static YailList defaultBoundingBox() {
+    return YailList.makeList(new Object[] {
+        YailList.makeList(new Object[] { NORTH_LAT, WEST_LON }),
+        YailList.makeList(new Object[] { SOUTH_LAT, EAST_LON })
+    });
+  }
 }
@@ -0,0 +1,282 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the sensor components pass on readings no more often than their SampleInterval
+ * asks, by feeding them synthetic streams of readings and counting the events they dispatch and
+ * the bytes they allocate.
+ */
+public class SensorSamplingTest extends RobolectricTestBase {
+  private static final long MILLIS = 1000000L;  // nanoseconds in a millisecond
+  private static final float DELTA = .001f;
+
+  private Sensor accelerometer;
+  private Sensor magneticField;
+  private Sensor gyroscope;
+  private SensorEvent event;
+
+  private static class CountingAccelerometer extends AccelerometerSensor {
+    int changes;
+    int shakes;
+    float lastXAccel;
+
+    CountingAccelerometer(ComponentContainer container) {
+      super(container);
+    }
+
+    @Override
+    public void AccelerationChanged(float xAccel, float yAccel, float zAccel) {
+      changes++;
+      lastXAccel = xAccel;
+      super.AccelerationChanged(xAccel, yAccel, zAccel);
+    }
+
+    @Override
+    public void Shaking() {
+      shakes++;
+      super.Shaking();
+    }
+  }
+
+  private static class CountingGyroscope extends GyroscopeSensor {
+    int changes;
+    float lastXAngularVelocity;
+
+    CountingGyroscope(ComponentContainer container) {
+      super(container);
+    }
+
+    @Override
+    public void GyroscopeChanged(float xAngularVelocity, float yAngularVelocity,
+        float zAngularVelocity, long timestamp) {
+      changes++;
+      lastXAngularVelocity = xAngularVelocity;
+      super.GyroscopeChanged(xAngularVelocity, yAngularVelocity, zAngularVelocity, timestamp);
+    }
+  }
+
+  private static class CountingOrientation extends OrientationSensor {
+    int changes;
+
+    CountingOrientation(ComponentContainer container) {
+      super(container);
+    }
+
+    @Override
+    public void OrientationChanged(float azimuth, float pitch, float roll) {
+      changes++;
+      super.OrientationChanged(azimuth, pitch, roll);
+    }
+  }
+
+  private static class CountingPedometer extends Pedometer {
+    int steps;
+
+    CountingPedometer(ComponentContainer container) {
+      super(container);
+    }
+
+    @Override
+    public void SimpleStep(int simpleSteps, float distance) {
+      steps++;
+      super.SimpleStep(simpleSteps, distance);
+    }
+  }
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    accelerometer = sensor(Sensor.TYPE_ACCELEROMETER);
+    magneticField = sensor(Sensor.TYPE_MAGNETIC_FIELD);
+    gyroscope = sensor(Sensor.TYPE_GYROSCOPE);
+    event = ReflectionHelpers.callConstructor(SensorEvent.class,
+        ClassParameter.from(int.class, 3));
+  }
+
+  @Test
+  public void testAccelerometerPassesOnEveryReadingByDefault() {
+    CountingAccelerometer sensor = new CountingAccelerometer(getForm());
+    for (int i = 0; i < 200; i++) {
+      feed(sensor, accelerometer, i * 5 * MILLIS, i, 0, -9.8f);
+    }
+    assertEquals(200, sensor.changes);
+    assertEquals(199f, sensor.XAccel(), DELTA);
+  }
+
+  @Test
+  public void testAccelerometerSampleIntervalAveragesReadings() {
+    CountingAccelerometer sensor = new CountingAccelerometer(getForm());
+    sensor.SampleInterval(100);
+    // 50 seconds of readings every 5 ms.
+    for (int i = 0; i < 10000; i++) {
+      feed(sensor, accelerometer, i * 5 * MILLIS, i % 20, 1, -9.8f);
+    }
+    assertEquals(500, sensor.changes);
+    // Each event gives the mean of the 20 readings since the one before, while the properties
+    // give the latest reading.
+    assertEquals(9.5f, sensor.lastXAccel, DELTA);
+    assertEquals(19f, sensor.XAccel(), DELTA);
+    assertEquals(1f, sensor.YAccel(), DELTA);
+  }
+
+  @Test
+  public void testAccelerometerPropertiesGiveLatestReadingWhenSampled() {
+    CountingAccelerometer sensor = new CountingAccelerometer(getForm());
+    sensor.SampleInterval(100);
+    feed(sensor, accelerometer, 0, 2, 0, -9.8f);
+    feed(sensor, accelerometer, 50 * MILLIS, 4, 0, -9.8f);
+    feed(sensor, accelerometer, 100 * MILLIS, 6, 0, -9.8f);
+    assertEquals(2, sensor.changes);
+    assertEquals(5f, sensor.lastXAccel, DELTA);
+    assertEquals(6f, sensor.XAccel(), DELTA);
+  }
+
+  @Test
+  public void testShakingDetectedBetweenSamples() {
+    CountingAccelerometer sensor = new CountingAccelerometer(getForm());
+    sensor.SampleInterval(1000);
+    for (int i = 0; i < 20; i++) {
+      feed(sensor, accelerometer, i * 5 * MILLIS, 0, 0, -9.8f);
+    }
+    feed(sensor, accelerometer, 20 * 5 * MILLIS, 15, 0, -9.8f);
+    assertEquals(1, sensor.changes);
+    assertEquals(1, sensor.shakes);
+  }
+
+  @Test
+  public void testGyroscopeSampleInterval() {
+    CountingGyroscope sensor = new CountingGyroscope(getForm());
+    for (int i = 0; i < 100; i++) {
+      feed(sensor, gyroscope, i * 2 * MILLIS, 0, 0, 0);
+    }
+    assertEquals(100, sensor.changes);
+
+    sensor.changes = 0;
+    sensor.SampleInterval(50);
+    // 2 seconds of readings every 5 ms.
+    for (int i = 0; i < 400; i++) {
+      feed(sensor, gyroscope, (200 + i * 5) * MILLIS, (i % 2 == 0) ? 0.5f : 1.5f, 0, 0);
+    }
+    assertEquals(40, sensor.changes);
+    assertEquals(Math.toDegrees(1), sensor.lastXAngularVelocity, DELTA);
+    assertEquals(Math.toDegrees(1.5), sensor.XAngularVelocity(), DELTA);
+  }
+
+  @Test
+  public void testOrientationSampleInterval() {
+    CountingOrientation sensor = new CountingOrientation(getForm());
+    feedOrientation(sensor, 200);
+    // Every reading after the first from each sensor changes the orientation.
+    assertEquals(399, sensor.changes);
+
+    sensor = new CountingOrientation(getForm());
+    sensor.SampleInterval(100);
+    feedOrientation(sensor, 200);
+    assertEquals(20, sensor.changes);
+  }
+
+  @Test
+  public void testOrientationPassesOnReadingsOutOfOrderByDefault() {
+    CountingOrientation sensor = new CountingOrientation(getForm());
+    for (int i = 0; i < 200; i++) {
+      // Timestamps jump back and forth, as they may when a sensor hands over a batch.
+      long timestamp = (i % 2 == 0 ? 1000 - i : 1000 + i) * MILLIS;
+      feed(sensor, accelerometer, timestamp, 0.5f, 0.5f, 9.8f);
+      feed(sensor, magneticField, timestamp, 0, 30, -40);
+    }
+    assertEquals(399, sensor.changes);
+  }
+
+  @Test
+  public void testPedometerCountsSteps() {
+    CountingPedometer pedometer = new CountingPedometer(getForm());
+    // 30 seconds of walking at 1.8 steps a second, read 100 times a second.
+    for (int i = 0; i < 3000; i++) {
+      float z = (float) (9.8 + 4 * StrictMath.sin(2 * StrictMath.PI * 1.8 * i / 100));
+      feed(pedometer, accelerometer, i * 10 * MILLIS, 0, 0, z);
+    }
+    // Steps are found once the window of readings has filled, a second in.
+    assertEquals(52, pedometer.steps);
+    assertEquals(52, pedometer.SimpleSteps());
+  }
+
+  /**
+   * Feeds readings to an AccelerometerSensor and a GyroscopeSensor that only pass on one reading
+   * a minute, and checks that the readings that aren't passed on allocate nothing.
+   */
+  @Test
+  public void testReadingsBetweenSamplesDontAllocate() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+    Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+    allocations.setThreadAllocatedMemoryEnabled(true);
+
+    CountingAccelerometer accel = new CountingAccelerometer(getForm());
+    CountingGyroscope gyro = new CountingGyroscope(getForm());
+    accel.SampleInterval(60000);
+    gyro.SampleInterval(60000);
+    final int readings = 100000;
+    long threadId = Thread.currentThread().getId();
+    long allocated = 0;
+    // The first round warms up the JIT compiler.
+    for (int round = 0; round < 2; round++) {
+      long before = allocations.getThreadAllocatedBytes(threadId);
+      for (int i = 1; i <= readings; i++) {
+        long timestamp = (round * readings + i) * 100000L;  // every 0.1 ms, all within a minute
+        float value = (i % 7) * 0.1f;
+        feed(accel, accelerometer, timestamp, value, value, -9.8f);
+        feed(gyro, gyroscope, timestamp, value, value, value);
+      }
+      allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+    }
+    assertEquals(1, accel.changes);
+    assertEquals(1, gyro.changes);
+    // Boxing each reading into a LinkedList<Float> alone took 48 bytes an axis.
+    assertTrue(allocated < readings);
+  }
+
+  private void feedOrientation(OrientationSensor sensor, int count) {
+    for (int i = 0; i < count; i++) {
+      long timestamp = i * 10 * MILLIS;
+      feed(sensor, accelerometer, timestamp, 0.5f, 0.5f, 9.8f);
+      feed(sensor, magneticField, timestamp, 0, 30, -40);
+    }
+  }
+
+  private void feed(SensorEventListener listener, Sensor sensor, long timestamp, float x,
+      float y, float z) {
+    event.sensor = sensor;
+    event.timestamp = timestamp;
+    event.values[0] = x;
+    event.values[1] = y;
+    event.values[2] = z;
+    listener.onSensorChanged(event);
+  }
+
+  private static Sensor sensor(int type) {
+    Sensor sensor = Shadow.newInstanceOf(Sensor.class);
+    ReflectionHelpers.setField(sensor, "mType", type);
+    return sensor;
+  }
+}
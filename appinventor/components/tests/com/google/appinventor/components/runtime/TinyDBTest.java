@@ -0,0 +1,125 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import com.google.appinventor.components.runtime.util.JsonUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that {@link TinyDB} serves reads from its snapshot without missing changes, and that the
+ * stores it saves in the background reach the disk in order.
+ */
+public class TinyDBTest extends RobolectricTestBase {
+  private TinyDB db;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    db = new TinyDB(getForm());
+  }
+
+  @Test
+  public void testValuesRoundTrip() {
+    db.StoreValue("text", "hello");
+    db.StoreValue("number", 42);
+    db.StoreValue("list", Arrays.asList("a", "b"));
+    assertEquals("hello", db.GetValue("text", ""));
+    assertEquals(42, ((Number) db.GetValue("number", "")).intValue());
+    assertEquals(Arrays.asList("a", "b"), db.GetValue("list", ""));
+    assertEquals("missing", db.GetValue("other", "missing"));
+    assertEquals(Arrays.asList("list", "number", "text"), db.GetTags());
+  }
+
+  @Test
+  public void testChangingReturnedListLeavesSnapshotAlone() {
+    db.StoreValue("list", Arrays.asList("a", "b"));
+    @SuppressWarnings("unchecked")
+    List<Object> list = (List<Object>) db.GetValue("list", "");
+    list.add("c");
+    assertEquals(Arrays.asList("a", "b"), db.GetValue("list", ""));
+  }
+
+  @Test
+  public void testReadsSeeLaterChanges() {
+    TinyDB other = new TinyDB(getForm());
+    db.StoreValue("score", 1);
+    assertEquals(1, ((Number) other.GetValue("score", 0)).intValue());
+    db.StoreValue("score", 2);
+    assertEquals(2, ((Number) other.GetValue("score", 0)).intValue());
+    other.ClearTag("score");
+    assertEquals(0, db.GetValue("score", 0));
+    assertEquals(Collections.emptyList(), db.GetTags());
+
+    // Changes made to the same preferences without going through TinyDB are also seen.
+    assertEquals("none", db.GetValue("name", "none"));
+    getForm().getSharedPreferences(TinyDB.DEFAULT_NAMESPACE, Context.MODE_PRIVATE).edit()
+        .putString("name", "\"Ada\"").commit();
+    assertEquals("Ada", db.GetValue("name", "none"));
+    assertEquals(Arrays.asList("name"), db.GetTags());
+
+    db.ClearAll();
+    assertEquals("none", db.GetValue("name", "none"));
+  }
+
+  @Test
+  public void testStoresReachDiskInOrder() throws Exception {
+    db.StoreValue("a", 1);
+    db.StoreValue("b", 2);
+    db.ClearTag("a");
+    db.StoreValue("b", 3);
+    db.ClearAll();
+    db.StoreValue("a", 4);
+    db.StoreValue("c", 5);
+    db.ClearTag("c");
+    SharedPreferences onDisk = readFromDisk(TinyDB.DEFAULT_NAMESPACE);
+    assertEquals("4", onDisk.getString("a", ""));
+    assertEquals(1, onDisk.getAll().size());
+  }
+
+  /**
+   * Stores 500 tags, and checks that each reads back from the snapshot and that all of them are
+   * saved.
+   */
+  @Test
+  public void testManyStoresReadBackAndReachDisk() throws Exception {
+    final int count = 500;
+    final List<Object> value = Arrays.<Object>asList("player", 12, Arrays.asList(1.5, 2.5));
+    for (int i = 0; i < count; i++) {
+      db.StoreValue("tag" + i, value);
+    }
+    for (int i = 0; i < count; i++) {
+      assertEquals(value, db.GetValue("tag" + i, ""));
+    }
+    SharedPreferences onDisk = readFromDisk(TinyDB.DEFAULT_NAMESPACE);
+    assertEquals(count, onDisk.getAll().size());
+    assertEquals(JsonUtil.getJsonRepresentation(value), onDisk.getString("tag" + (count - 1), ""));
+  }
+
+  /**
+   * Waits for the preferences saved in the background to be written and then loads the given
+   * preferences afresh from their file.
+   */
+  private SharedPreferences readFromDisk(String name) throws Exception {
+    Class.forName("android.app.QueuedWork").getMethod("waitToFinish").invoke(null);
+    File file = (File) Context.class.getMethod("getSharedPrefsFile", String.class)
+        .invoke(getForm(), name);
+    Constructor<?> constructor = Class.forName("android.app.SharedPreferencesImpl")
+        .getDeclaredConstructor(File.class, int.class);
+    constructor.setAccessible(true);
+    return (SharedPreferences) constructor.newInstance(file, Context.MODE_PRIVATE);
+  }
+}
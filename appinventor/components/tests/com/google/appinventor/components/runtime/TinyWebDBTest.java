@@ -0,0 +1,202 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import com.google.appinventor.components.runtime.shadows.ShadowAsynchUtil;
+import com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher;
+import com.google.appinventor.components.runtime.util.YailList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher.assertEventFired;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the batched commands and the cache of {@link TinyWebDB} against a
+ * {@link FakeTinyWebDBService}.
+ */
+public class TinyWebDBTest extends RobolectricTestBase {
+  private FakeTinyWebDBService service;
+  private TinyWebDB db;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    try {
+      service = new FakeTinyWebDBService();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    service.putValue("alice", "\"12\"");
+    service.putValue("bob", "\"7\"");
+    db = new TinyWebDB(getForm());
+    db.ServiceURL(service.getUrl());
+  }
+
+  @After
+  public void tearDown() {
+    service.stop();
+  }
+
+  @Test
+  public void testGetValuesSendsOneCommand() {
+    db.GetValues(list("alice", "bob", "carol"));
+    runCommands();
+    assertEventFired(db, "GotValues",
+        list(list("alice", "12"), list("bob", "7"), list("carol", "")));
+    assertEquals(1, service.getRequestCount("getvalues"));
+    assertEquals(0, service.getRequestCount("getvalue"));
+  }
+
+  @Test
+  public void testStoreValuesSendsOneCommand() {
+    db.StoreValues(list(list("alice", "13"), list("dave", "3")));
+    runCommands();
+    assertEventFired(db, "ValuesStored");
+    assertEquals("\"13\"", service.getValue("alice"));
+    assertEquals("\"3\"", service.getValue("dave"));
+    assertEquals(1, service.getRequestCount("storeavalues"));
+    assertEquals(0, service.getRequestCount("storeavalue"));
+  }
+
+  @Test
+  public void testOlderServiceIsSentOneCommandPerTag() {
+    service.setBatchSupported(false);
+    db.GetValues(list("alice", "bob"));
+    runCommands();
+    assertEventFired(db, "GotValues", list(list("alice", "12"), list("bob", "7")));
+    assertEquals(2, service.getRequestCount("getvalue"));
+    db.StoreValues(list(list("alice", "13")));
+    db.GetValues(list("alice", "bob"));
+    runCommands();
+    assertEventFired(db, "ValuesStored");
+    assertEventFired(db, "GotValues", list(list("alice", "13"), list("bob", "7")));
+    // Once the service is known not to answer getvalues, neither batched command is sent again.
+    assertEquals(1, service.getRequestCount("getvalues"));
+    assertEquals(0, service.getRequestCount("storeavalues"));
+    assertEquals(1, service.getRequestCount("storeavalue"));
+  }
+
+  @Test
+  public void testUnknownCommandPageMeansOlderService() {
+    service.setBatchSupported(false);
+    service.setUnknownCommandBody("<html><body>No such command</body></html>");
+    db.GetValues(list("alice", "bob"));
+    runCommands();
+    assertEventFired(db, "GotValues", list(list("alice", "12"), list("bob", "7")));
+    db.StoreValues(list(list("alice", "13")));
+    runCommands();
+    assertEventFired(db, "ValuesStored");
+    assertEquals("\"13\"", service.getValue("alice"));
+    assertEquals(1, service.getRequestCount("getvalues"));
+    assertEquals(0, service.getRequestCount("storeavalues"));
+  }
+
+  @Test
+  public void testBatchFailureIsReported() {
+    service.setBatchFailureStatus(500);
+    db.GetValues(list("alice", "bob"));
+    runCommands();
+    assertEventFired(db, "WebServiceError",
+        "The Web server failed the getvalues command with HTTP status 500.");
+    db.StoreValues(list(list("alice", "13"), list("dave", "3")));
+    runCommands();
+    assertEventFired(db, "WebServiceError",
+        "The Web server failed the storeavalues command with HTTP status 500.");
+    // Nothing was sent one tag at a time, so nothing was stored in part.
+    assertEquals(0, service.getRequestCount("getvalue"));
+    assertEquals(0, service.getRequestCount("storeavalue"));
+    assertEquals("\"12\"", service.getValue("alice"));
+    assertEquals(null, service.getValue("dave"));
+    // The failure doesn't stop the batched commands being used once the service recovers.
+    service.setBatchFailureStatus(0);
+    db.StoreValues(list(list("alice", "13"), list("dave", "3")));
+    runCommands();
+    assertEventFired(db, "ValuesStored");
+    assertEquals(2, service.getRequestCount("storeavalues"));
+    assertEquals(0, service.getRequestCount("storeavalue"));
+  }
+
+  @Test
+  public void testCacheOffByDefault() {
+    db.GetValue("alice");
+    runCommands();
+    db.GetValue("alice");
+    runCommands();
+    assertEquals(2, service.getRequestCount("getvalue"));
+  }
+
+  @Test
+  public void testCacheReusesFreshValues() {
+    db.CacheTimeToLive(60000);
+    db.GetValue("alice");
+    runCommands();
+    ShadowEventDispatcher.clearEvents();
+    db.GetValue("alice");
+    db.GetValues(list("alice", "bob"));
+    runCommands();
+    assertEventFired(db, "GotValue", "alice", "12");
+    assertEquals(1, service.getRequestCount("getvalue"));
+    // Only the tag that isn't cached is asked for.
+    assertEquals(1, service.getRequestCount("getvalues"));
+    assertEventFired(db, "GotValues", list(list("alice", "12"), list("bob", "7")));
+  }
+
+  @Test
+  public void testCacheRevalidatesStaleValues() {
+    db.CacheTimeToLive(1000);
+    db.GetValue("alice");
+    runCommands();
+    advance(2000);
+    ShadowEventDispatcher.clearEvents();
+    db.GetValue("alice");
+    runCommands();
+    assertEventFired(db, "GotValue", "alice", "12");
+    assertEquals(2, service.getRequestCount("getvalue"));
+    assertEquals(1, service.getNotModifiedCount());
+
+    service.putValue("alice", "\"14\"");
+    advance(2000);
+    db.GetValue("alice");
+    runCommands();
+    assertEventFired(db, "GotValue", "alice", "14");
+    assertEquals(1, service.getNotModifiedCount());
+  }
+
+  @Test
+  public void testStoreValueReplacesCachedValue() {
+    db.CacheTimeToLive(60000);
+    db.GetValue("alice");
+    runCommands();
+    db.StoreValue("alice", "15");
+    runCommands();
+    db.GetValue("alice");
+    runCommands();
+    assertEventFired(db, "GotValue", "alice", "15");
+    assertEquals(2, service.getRequestCount("getvalue"));
+  }
+
+  @Test
+  public void testGetValuesGivesEmptyTextForTagsLeftOut() {
+    service.setMissingTagsOmitted(true);
+    db.GetValues(list("alice", "carol", "bob"));
+    runCommands();
+    assertEventFired(db, "GotValues",
+        list(list("alice", "12"), list("carol", ""), list("bob", "7")));
+  }
+
+  private void runCommands() {
+    ShadowAsynchUtil.runAllPendingRunnables();
+    runAllEvents();
+  }
+
+  private static YailList list(Object... items) {
+    return YailList.makeList(items);
+  }
+}
@@ -0,0 +1,175 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import com.google.appinventor.components.runtime.shadows.ShadowAsynchUtil;
+import com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher;
+import com.google.appinventor.components.runtime.util.YailList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher.assertEventFired;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that {@link Web} reuses its connections, unzips compressed responses and revalidates the
+ * responses it caches, against a {@link FakeWebServer} that counts connections and bytes sent.
+ */
+public class WebConnectionTest extends RobolectricTestBase {
+  private static final String TEXT_TYPE = "text/plain; charset=utf-8";
+
+  private FakeWebServer server;
+  private Web web;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    try {
+      server = new FakeWebServer();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    web = new Web(getForm());
+  }
+
+  @After
+  public void tearDown() {
+    server.stop();
+  }
+
+  @Test
+  public void testRequestsReuseConnection() throws IOException {
+    server.putDocument("/status", TEXT_TYPE, "ok");
+    web.Url(server.getUrl("/status"));
+    for (int i = 0; i < 5; i++) {
+      web.Get();
+      runRequests();
+    }
+    assertEventFired(web, "GotText", server.getUrl("/status"), 200, TEXT_TYPE, "ok");
+    assertEquals(5, server.getRequestCount());
+    assertEquals(1, server.getConnectionCount());
+  }
+
+  @Test
+  public void testCompressedResponseIsUnzipped() throws IOException {
+    String text = repeat("café au lait\n", 1000);
+    server.putDocument("/menu", TEXT_TYPE, text);
+    web.Url(server.getUrl("/menu"));
+    web.Get();
+    runRequests();
+    assertEventFired(web, "GotText", server.getUrl("/menu"), 200, TEXT_TYPE, text);
+    assertTrue(server.getBytesSent() < text.length() / 10);
+  }
+
+  @Test
+  public void testCompressedCsvResponseIsUnzipped() throws IOException {
+    server.putDocument("/table.csv", "text/csv", "a,b\n1,2\n");
+    web.Url(server.getUrl("/table.csv"));
+    web.GetCsvTable();
+    runRequests();
+    assertEventFired(web, "GotCsvTable", server.getUrl("/table.csv"), 200, "text/csv",
+        list(list("a", "b"), list("1", "2")));
+  }
+
+  @Test
+  public void testCacheOffByDefault() throws IOException {
+    server.putDocument("/status", TEXT_TYPE, "ok");
+    web.Url(server.getUrl("/status"));
+    web.Get();
+    runRequests();
+    web.Get();
+    runRequests();
+    assertEquals(0, server.getNotModifiedCount());
+  }
+
+  @Test
+  public void testCachedResponseIsRevalidated() throws IOException {
+    String url = server.getUrl("/scores");
+    server.putDocument("/scores", TEXT_TYPE, "alice 12");
+    web.CacheResponses(true);
+    web.Url(url);
+    web.Get();
+    runRequests();
+    long firstBytes = server.getBytesSent();
+
+    ShadowEventDispatcher.clearEvents();
+    web.Get();
+    runRequests();
+    // The server only answers that the response hasn't changed.
+    assertEventFired(web, "GotText", url, 200, TEXT_TYPE, "alice 12");
+    assertEquals(1, server.getNotModifiedCount());
+    assertEquals(firstBytes, server.getBytesSent());
+
+    server.putDocument("/scores", TEXT_TYPE, "alice 13");
+    web.Get();
+    runRequests();
+    assertEventFired(web, "GotText", url, 200, TEXT_TYPE, "alice 13");
+    assertEquals(1, server.getNotModifiedCount());
+    assertEquals(1, server.getConnectionCount());
+  }
+
+  /**
+   * Polls a 100 KB JSON document 20 times, first without compression or the cache and then with
+   * both, and checks the connections opened and bytes sent each way.
+   */
+  @Test
+  public void testPollingCost() throws IOException {
+    final int polls = 20;
+    StringBuilder json = new StringBuilder("[");
+    for (int i = 0; i < 2000; i++) {
+      json.append(i == 0 ? "" : ",").append("{\"id\":").append(i)
+          .append(",\"name\":\"player").append(i).append("\"}");
+    }
+    json.append("]");
+    server.putDocument("/players", "application/json", json.toString());
+    web.Url(server.getUrl("/players"));
+
+    server.setGzipEnabled(false);
+    for (int i = 0; i < polls; i++) {
+      web.Get();
+      runRequests();
+    }
+    long plainBytes = server.getBytesSent();
+    int plainConnections = server.getConnectionCount();
+
+    server.setGzipEnabled(true);
+    web.CacheResponses(true);
+    for (int i = 0; i < polls; i++) {
+      web.Get();
+      runRequests();
+    }
+    long cachedBytes = server.getBytesSent() - plainBytes;
+
+    assertEventFired(web, "GotText", server.getUrl("/players"), 200, "application/json",
+        json.toString());
+    assertEquals(polls - 1, server.getNotModifiedCount());
+    assertEquals(1, plainConnections);
+    assertEquals(1, server.getConnectionCount());
+    assertEquals(2 * polls, server.getRequestCount());
+    assertTrue(cachedBytes * 10 < plainBytes);
+  }
+
+  private void runRequests() {
+    ShadowAsynchUtil.runAllPendingRunnables();
+    runAllEvents();
+  }
+
+  private static String repeat(String text, int times) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < times; i++) {
+      sb.append(text);
+    }
+    return sb.toString();
+  }
+
+  private static YailList list(Object... items) {
+    return YailList.makeList(items);
+  }
+}
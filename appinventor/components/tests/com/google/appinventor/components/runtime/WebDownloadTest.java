@@ -0,0 +1,229 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import android.Manifest;
+import android.os.Environment;
+import com.google.appinventor.components.runtime.shadows.ShadowAsynchUtil;
+import com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher;
+import com.google.appinventor.components.runtime.util.ErrorMessages;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.shadows.ShadowApplication;
+import org.robolectric.shadows.ShadowEnvironment;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher.assertEventFired;
+import static com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher.assertEventNotFired;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that {@link Web} saves responses to files with progress events, can cancel them and
+ * resumes interrupted downloads with Range requests, against a {@link FakeWebServer}.
+ */
+public class WebDownloadTest extends RobolectricTestBase {
+  private static final int SIZE = 1024 * 1024;
+
+  private FakeWebServer server;
+  private RecordingWeb web;
+  private byte[] document;
+  private String url;
+
+  /**
+   * A Web that keeps the progress it is given, in order, and can cancel its downloads once they
+   * have passed a given number of bytes.
+   */
+  private static class RecordingWeb extends Web {
+    final List<long[]> progress = new ArrayList<long[]>();
+    long cancelAfter = -1;
+
+    RecordingWeb(ComponentContainer container) {
+      super(container);
+    }
+
+    @Override
+    public void DownloadProgress(String url, long bytesRead, long totalBytes) {
+      progress.add(new long[] { bytesRead, totalBytes });
+      if (cancelAfter >= 0 && bytesRead >= cancelAfter) {
+        cancelAfter = -1;
+        CancelDownloads();
+      }
+      super.DownloadProgress(url, bytesRead, totalBytes);
+    }
+  }
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    ShadowEnvironment.setExternalStorageState(Environment.MEDIA_MOUNTED);
+    ShadowApplication.getInstance().grantPermissions(Manifest.permission.READ_EXTERNAL_STORAGE,
+        Manifest.permission.WRITE_EXTERNAL_STORAGE);
+    try {
+      server = new FakeWebServer();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    document = randomBytes(SIZE);
+    server.putDocument("/data.bin", "application/octet-stream", document);
+    url = server.getUrl("/data.bin");
+    web = new RecordingWeb(getForm());
+    web.Url(url);
+    web.SaveResponse(true);
+    web.ResponseFileName("data.bin");
+  }
+
+  @After
+  public void tearDown() {
+    server.stop();
+  }
+
+  @Test
+  public void testSavesResponseWithProgress() throws IOException {
+    web.Get();
+    runRequests();
+    assertEventFired(web, "GotFile", url, 200, "application/octet-stream",
+        savedFile().getAbsolutePath());
+    assertArrayEquals(document, readBytes(savedFile()));
+    assertFalse(partFile().exists());
+    // One event for each 256 KB saved.
+    assertEquals(4, web.progress.size());
+    long previous = 0;
+    for (long[] progress : web.progress) {
+      assertTrue(progress[0] > previous);
+      assertEquals(SIZE, progress[1]);
+      previous = progress[0];
+    }
+    assertEquals(SIZE, previous);
+  }
+
+  @Test
+  public void testInterruptedDownloadResumes() throws IOException {
+    server.interruptAfter(300 * 1024);
+    web.Get();
+    runRequests();
+    ShadowEventDispatcher.assertErrorOccurred(ErrorMessages.ERROR_WEB_UNABLE_TO_GET);
+    assertEventNotFired(web, "GotFile");
+    assertEquals(300 * 1024, partFile().length());
+
+    web.progress.clear();
+    web.Get();
+    runRequests();
+    assertEventFired(web, "GotFile", url, 200, "application/octet-stream",
+        savedFile().getAbsolutePath());
+    assertArrayEquals(document, readBytes(savedFile()));
+    assertEquals(1, server.getPartialCount());
+    assertEquals(SIZE, server.getBytesSent());
+    // Progress counts the bytes saved before the download was resumed.
+    assertTrue(web.progress.get(0)[0] > 300 * 1024);
+    assertArrayEquals(new long[] { SIZE, SIZE }, web.progress.get(web.progress.size() - 1));
+  }
+
+  @Test
+  public void testChangedResponseIsSavedAgain() throws IOException {
+    server.interruptAfter(300 * 1024);
+    web.Get();
+    runRequests();
+    byte[] changed = randomBytes(SIZE / 2);
+    server.putDocument("/data.bin", "application/octet-stream", changed);
+
+    web.Get();
+    runRequests();
+    assertEquals(0, server.getPartialCount());
+    assertArrayEquals(changed, readBytes(savedFile()));
+  }
+
+  @Test
+  public void testCancelledDownloadResumes() throws IOException {
+    web.cancelAfter = 256 * 1024;
+    web.Get();
+    runRequests();
+    assertEventNotFired(web, "GotFile");
+    assertFalse(savedFile().exists());
+    assertTrue(partFile().length() >= 256 * 1024);
+    assertTrue(partFile().length() < SIZE);
+
+    web.Get();
+    runRequests();
+    assertArrayEquals(document, readBytes(savedFile()));
+    assertEquals(1, server.getPartialCount());
+  }
+
+  @Test
+  public void testGeneratedFileName() throws IOException {
+    web.ResponseFileName("");
+    web.Get();
+    runRequests();
+    ShadowEventDispatcher.assertEventFiredAny(web, "GotFile");
+    assertEquals(SIZE, web.progress.get(web.progress.size() - 1)[0]);
+  }
+
+  /**
+   * Saves an 8 MB response, and checks that it is saved whole with progress along the way.
+   */
+  @Test
+  public void testLargeResponseIsSaved() throws IOException {
+    final int size = 8 * 1024 * 1024;
+    byte[] large = randomBytes(size);
+    server.putDocument("/large.bin", "application/octet-stream", large);
+    web.Url(server.getUrl("/large.bin"));
+    web.ResponseFileName("large.bin");
+    web.Get();
+    runRequests();
+
+    java.io.File saved = new java.io.File(Environment.getExternalStorageDirectory(), "large.bin");
+    assertArrayEquals(large, readBytes(saved));
+    assertTrue(web.progress.size() > 1);
+    long previous = 0;
+    for (long[] progress : web.progress) {
+      assertTrue(progress[0] > previous);
+      previous = progress[0];
+    }
+    assertArrayEquals(new long[] { size, size }, web.progress.get(web.progress.size() - 1));
+  }
+
+  private java.io.File savedFile() {
+    return new java.io.File(Environment.getExternalStorageDirectory(), "data.bin");
+  }
+
+  private java.io.File partFile() {
+    return new java.io.File(Environment.getExternalStorageDirectory(), "data.bin.part");
+  }
+
+  private void runRequests() {
+    ShadowAsynchUtil.runAllPendingRunnables();
+    runAllEvents();
+  }
+
+  private static byte[] randomBytes(int size) {
+    byte[] bytes = new byte[size];
+    new Random(size).nextBytes(bytes);
+    return bytes;
+  }
+
+  private static byte[] readBytes(java.io.File file) throws IOException {
+    byte[] bytes = new byte[(int) file.length()];
+    InputStream in = new FileInputStream(file);
+    try {
+      int read = 0;
+      while (read < bytes.length) {
+        read += in.read(bytes, read, bytes.length - read);
+      }
+    } finally {
+      in.close();
+    }
+    return bytes;
+  }
+}
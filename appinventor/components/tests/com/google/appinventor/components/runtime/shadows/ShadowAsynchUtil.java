@@ -44,4 +44,35 @@ public class ShadowAsynchUtil {
     runnables.add(call);
     runnables.add(callback);
   }
+
+  @Implementation
+  public static void runIo(final Runnable call) {
+    runnables.add(call);
+  }
+
+  @Implementation
+  public static void runIo(final Handler androidUIHandler,
+                           final Runnable call,
+                           final Runnable callback) {
+    runnables.add(call);
+    runnables.add(callback);
+  }
+
+  @Implementation
+  public static void runComputation(final Runnable call) {
+    runnables.add(call);
+  }
+
+  @Implementation
+  public static void runComputation(final Handler androidUIHandler,
+                                    final Runnable call,
+                                    final Runnable callback) {
+    runnables.add(call);
+    runnables.add(callback);
+  }
+
+  @Implementation
+  public static void runSerially(final Object key, final Runnable call) {
+    runnables.add(call);
+  }
 }
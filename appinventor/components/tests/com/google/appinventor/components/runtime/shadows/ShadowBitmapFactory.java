@@ -0,0 +1,64 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.shadows;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the streams decoded by BitmapFactory, so that tests can check how an image was read,
+ * and otherwise decodes them as Robolectric's own shadow does.
+ */
+@Implements(BitmapFactory.class)
+public class ShadowBitmapFactory extends org.robolectric.shadows.ShadowBitmapFactory {
+
+  /**
+   * One call to decodeStream: the options it was given, and how many bytes of the stream were
+   * left to read when it was called.
+   */
+  public static class Decode {
+    public final boolean justBounds;
+    public final int sampleSize;
+    public final int available;
+
+    Decode(boolean justBounds, int sampleSize, int available) {
+      this.justBounds = justBounds;
+      this.sampleSize = sampleSize;
+      this.available = available;
+    }
+  }
+
+  private static final List<Decode> decodes = new ArrayList<Decode>();
+
+  public static List<Decode> getDecodes() {
+    return decodes;
+  }
+
+  public static void clearDecodes() {
+    decodes.clear();
+  }
+
+  @Implementation
+  public static Bitmap decodeStream(InputStream is, Rect outPadding, BitmapFactory.Options opts) {
+    int available;
+    try {
+      available = is.available();
+    } catch (IOException e) {
+      available = -1;
+    }
+    decodes.add(new Decode(opts != null && opts.inJustDecodeBounds,
+        opts == null ? 1 : opts.inSampleSize, available));
+    return org.robolectric.shadows.ShadowBitmapFactory.decodeStream(is, outPadding, opts);
+  }
+}
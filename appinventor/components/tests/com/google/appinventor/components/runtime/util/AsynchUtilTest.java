@@ -0,0 +1,114 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link AsynchUtil}.
+ */
+public class AsynchUtilTest {
+
+  private static final int CALLS = 200;
+
+  @Test
+  public void testBlockedCallsDontHoldUpOthers() throws InterruptedException {
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch blocked = new CountDownLatch(CALLS);
+    for (int i = 0; i < CALLS; i++) {
+      AsynchUtil.runAsynchronously(new Runnable() {
+        @Override
+        public void run() {
+          blocked.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+    }
+    final CountDownLatch done = new CountDownLatch(1);
+    AsynchUtil.runSerially(new Object(), new Runnable() {
+      @Override
+      public void run() {
+        done.countDown();
+      }
+    });
+    try {
+      // Every blocked call is running, and the call after them runs too.
+      assertTrue(blocked.await(10, TimeUnit.SECONDS));
+      assertTrue(done.await(10, TimeUnit.SECONDS));
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testIoCallsReuseThreads() throws InterruptedException {
+    final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+    final CountDownLatch done = new CountDownLatch(CALLS);
+    for (int i = 0; i < CALLS; i++) {
+      AsynchUtil.runIo(new Runnable() {
+        @Override
+        public void run() {
+          threads.add(Thread.currentThread());
+          done.countDown();
+        }
+      });
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertTrue("Too many threads: " + threads.size(), threads.size() <= 16);
+    assertEquals(0, AsynchUtil.getIoQueueDepth());
+  }
+
+  @Test
+  public void testRunSeriallyKeepsOrder() throws InterruptedException {
+    final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+    final CountDownLatch done = new CountDownLatch(CALLS);
+    Object key = new Object();
+    for (int i = 0; i < CALLS; i++) {
+      final int n = i;
+      AsynchUtil.runSerially(key, new Runnable() {
+        @Override
+        public void run() {
+          order.add(n);
+          done.countDown();
+        }
+      });
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    for (int i = 0; i < CALLS; i++) {
+      assertEquals(i, (int) order.get(i));
+    }
+  }
+
+  @Test
+  public void testComputation() throws InterruptedException {
+    final CountDownLatch done = new CountDownLatch(CALLS);
+    for (int i = 0; i < CALLS; i++) {
+      AsynchUtil.runComputation(new Runnable() {
+        @Override
+        public void run() {
+          done.countDown();
+        }
+      });
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(0, AsynchUtil.getComputationQueueDepth());
+  }
+}
@@ -10,7 +10,10 @@ import com.google.appinventor.components.runtime.util.YailList;
 
 import junit.framework.TestCase;
 
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Test CsvUtil methods (converting between YailLists and CSV-formatted strings.
@@ -141,12 +144,13 @@ public class CsvUtilTest extends TestCase {
       }
       list.add(YailList.makeList(row));
     }
-    String expectedCSVString = 
-      "\"field00\",\"field01\",\"field02\"\r\n" +
-      "\"field10\",\"field11\",\"field12\"\r\n" +
-      "\"field20\",\"field21\",\"field22\"\r\n" +
-      "\"field30\",\"field31\",\"field32\"\r\n" +
-      "\"field40\",\"field41\",\"field42\"\r\n";
+    // Fields are only quoted when they need to be.
+    String expectedCSVString =
+      "field00,field01,field02\r\n" +
+      "field10,field11,field12\r\n" +
+      "field20,field21,field22\r\n" +
+      "field30,field31,field32\r\n" +
+      "field40,field41,field42\r\n";
     assertEquals(expectedCSVString, CsvUtil.toCsvTable(YailList.makeList(list)));
   }    
 
@@ -168,7 +172,66 @@ public class CsvUtilTest extends TestCase {
     for (int j = 0; j < 3; ++j) {
       row.add("field" + j);
     }
-    String expectedCSVString = "\"field0\",\"field1\",\"field2\"";
+    String expectedCSVString = "field0,field1,field2";
     assertEquals(expectedCSVString, CsvUtil.toCsvRow(YailList.makeList(row)));
   }
+
+  public void testToCSVRowQuotesOnlyWhenNeeded() {
+    String[] row = {"plain", "with,comma", "with \"quote\"", "line1\nline2", ""};
+    String expectedCSVString =
+        "plain,\"with,comma\",\"with \"\"quote\"\"\",\"line1\nline2\",\"\"";
+    assertEquals(expectedCSVString, CsvUtil.toCsvRow(YailList.makeList(row)));
+  }
+
+  public void testCSVRowRoundTrip() throws Exception {
+    String[] row = {"a", "b,c", "\"d\"", "e\r\nf", "", "g"};
+    YailList ylist = CsvUtil.fromCsvRow(CsvUtil.toCsvRow(YailList.makeList(row)));
+    assertEquals(Arrays.asList((Object[]) row), Arrays.asList(ylist.toArray()));
+  }
+
+  public void testFromCSVTableTrailingEmptyCells() throws Exception {
+    YailList ylist = CsvUtil.fromCsvTable("a,\nb,\"\"");
+    assertEquals("((a ) (b ))", ylist.toString());
+  }
+
+  public void testFromCSVTableQuoteAfterClosingQuote() {
+    try {
+      CsvUtil.fromCsvTable("\"a\"b,c\n");
+      fail();
+    } catch (Exception e) {
+      // expected
+    }
+  }
+
+  public void testFromCSVTableLargeCell() throws Exception {
+    // Cells are not limited by the size of the parser's buffer.
+    StringBuilder large = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      large.append(i % 10);
+    }
+    String cell = large.toString();
+    YailList ylist = CsvUtil.fromCsvTable(cell + ",\"" + cell + "\"\n" + "x,y\n");
+    assertEquals(2, ylist.size());
+    YailList row = (YailList) ylist.getObject(0);
+    assertEquals(cell, row.getString(0));
+    assertEquals(cell, row.getString(1));
+  }
+
+  public void testFromCSVTableReaderRowByRow() throws Exception {
+    // Reading from a Reader sees rows one at a time, even when a read returns a
+    // single character.
+    Reader reader = new StringReader("a,b\r\n\"c\nd\",e\rf,g\n") {
+      @Override
+      public int read(char[] buf, int off, int len) throws java.io.IOException {
+        return super.read(buf, off, Math.min(len, 1));
+      }
+    };
+    CsvUtil.CsvParser parser = new CsvUtil.CsvParser(reader);
+    assertTrue(parser.hasNext());
+    assertEquals(Arrays.asList("a", "b"), parser.next());
+    assertEquals(Arrays.asList("c\nd", "e"), parser.next());
+    assertEquals(Arrays.asList("f", "g"), parser.next());
+    assertFalse(parser.hasNext());
+    parser.throwAnyProblem();
+  }
 }
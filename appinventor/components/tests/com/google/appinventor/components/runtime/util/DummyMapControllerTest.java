@@ -272,4 +272,49 @@ public class DummyMapControllerTest {
   public void testGetOverlayCount() {
     mapController.getOverlayCount();
   }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testSetTileCacheSize() {
+    mapController.setTileCacheSize(0);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testGetTileCacheSize() {
+    mapController.getTileCacheSize();
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testClearTileCache() {
+    mapController.clearTileCache();
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testAddTileArchive() {
+    mapController.addTileArchive(null, null);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testCountTiles() {
+    mapController.countTiles(null, 0, 0);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testPrefetchTiles() {
+    mapController.prefetchTiles(null, 0, 0);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testCancelTilePrefetch() {
+    mapController.cancelTilePrefetch();
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testSetClusterMarkersEnabled() {
+    mapController.setClusterMarkersEnabled(true);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testIsClusterMarkersEnabled() {
+    mapController.isClusterMarkersEnabled();
+  }
 }
@@ -0,0 +1,85 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Tests GeoJSONReader class.
+ */
+public class GeoJSONReaderTest extends TestCase {
+  private static GeoJSONReader reader(String geojson) throws IOException {
+    return new GeoJSONReader(new StringReader(geojson));
+  }
+
+  public void testReadsFeaturesInOrder() throws IOException {
+    GeoJSONReader reader = reader("{\"type\":\"FeatureCollection\",\"features\":["
+        + "{\"type\":\"Feature\",\"properties\":{\"name\":\"a\"}},"
+        + "{\"type\":\"Feature\",\"properties\":{\"name\":\"b\"}}]}");
+    YailList first = reader.nextFeature();
+    YailList second = reader.nextFeature();
+    assertNull(reader.nextFeature());
+    assertTrue(reader.isFeatureCollection());
+    assertTrue(reader.hasFeatures());
+    assertEquals("((type Feature) (properties ((name a))))", first.toString());
+    assertEquals("((type Feature) (properties ((name b))))", second.toString());
+  }
+
+  public void testValueTypes() throws IOException {
+    GeoJSONReader reader = reader("{\"type\":\"FeatureCollection\",\"features\":["
+        + "{\"i\":3,\"l\":12345678901,\"d\":1.5,\"b\":true,\"a\":[1,\"x\"]}]}");
+    YailList feature = reader.nextFeature();
+    assertEquals(3, ((YailList) feature.getObject(0)).getObject(1));
+    assertEquals(12345678901L, ((YailList) feature.getObject(1)).getObject(1));
+    assertEquals(1.5, ((YailList) feature.getObject(2)).getObject(1));
+    assertEquals(Boolean.TRUE, ((YailList) feature.getObject(3)).getObject(1));
+    assertEquals("(1 x)", ((YailList) feature.getObject(4)).getObject(1).toString());
+  }
+
+  public void testTypeAfterFeaturesAndBOM() throws IOException {
+    GeoJSONReader reader = reader("\uFEFF{\"features\":[{\"a\":1}],"
+        + "\"type\":\"FeatureCollection\"}");
+    assertNotNull(reader.nextFeature());
+    assertNull(reader.nextFeature());
+    assertTrue(reader.isFeatureCollection());
+  }
+
+  public void testSkipsOtherMembers() throws IOException {
+    GeoJSONReader reader = reader("{\"type\":\"FeatureCollection\",\"bbox\":{\"x\":[1,2]},"
+        + "\"features\":[]}");
+    assertNull(reader.nextFeature());
+    assertTrue(reader.isFeatureCollection());
+    assertTrue(reader.hasFeatures());
+  }
+
+  public void testNotACollection() throws IOException {
+    GeoJSONReader reader = reader("{\"type\":\"Garbage\",\"features\":[{\"a\":1}]}");
+    assertNull(reader.nextFeature());
+    assertFalse(reader.isFeatureCollection());
+    assertFalse(reader.hasFeatures());
+  }
+
+  public void testNotAnObject() throws IOException {
+    try {
+      reader("[bad]").nextFeature();
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  public void testNullValue() throws IOException {
+    try {
+      reader("{\"type\":\"FeatureCollection\",\"features\":[{\"a\":null}]}").nextFeature();
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
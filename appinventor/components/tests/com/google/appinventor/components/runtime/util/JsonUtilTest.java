@@ -130,4 +130,70 @@ public class JsonUtilTest extends TestCase {
     Object shouldBeEmpty = JsonUtil.getObjectFromJson("");
     assertEquals("", JsonUtil.getObjectFromJson(""));
   }
+
+  public void testGetObjectFromJsonMatchesJsonArray() throws JSONException {
+    String jsonInput = "[\"Hello.\", 9, -9.5, 1e3, 123456789101112," +
+        " true, \"TRUE\", null, [], {}, [\"nested\", [1, [2]]]," +
+        " {\"b\": 2, \"a\": {\"c\": [null, false]}}]";
+    assertEquals(JsonUtil.getListFromJsonArray(new JSONArray(jsonInput)),
+        JsonUtil.getObjectFromJson(jsonInput));
+  }
+
+  public void testGetObjectFromJsonMatchesJsonObject() throws JSONException {
+    String jsonInput = "{\"z\": [1, 2], \"a\": \"x\", \"m\": {\"k\": \"false\"}, \"n\": null}";
+    assertEquals(JsonUtil.getListFromJsonObject(new JSONObject(jsonInput)),
+        JsonUtil.getObjectFromJson(jsonInput));
+  }
+
+  public void testGetObjectFromJsonTopLevelValues() throws JSONException {
+    assertEquals("true", JsonUtil.getObjectFromJson("\"true\""));
+    assertEquals(true, JsonUtil.getObjectFromJson("true"));
+    assertEquals(42, JsonUtil.getObjectFromJson(" 42 "));
+    assertEquals(4.5, JsonUtil.getObjectFromJson("4.5"));
+    assertNull(JsonUtil.getObjectFromJson("null"));
+  }
+
+  public void testGetObjectFromJsonEscapes() throws JSONException {
+    assertEquals("a\"b\\c/d\né\t",
+        JsonUtil.getObjectFromJson("\"a\\\"b\\\\c\\/d\\n\\u00e9\\t\""));
+    assertEquals(Arrays.asList("plain", "esc\"aped"),
+        JsonUtil.getObjectFromJson("[\"plain\",\"esc\\\"aped\"]"));
+  }
+
+  public void testGetObjectFromJsonLenientSyntax() throws JSONException {
+    // Text that is not strict JSON is still decoded by the org.json tokener.
+    assertEquals(Arrays.asList("a", "b"), JsonUtil.getObjectFromJson("['a', 'b']"));
+    assertEquals(Arrays.asList(Arrays.asList("k", 1)), JsonUtil.getObjectFromJson("{k: 1}"));
+    try {
+      JsonUtil.getObjectFromJson("[1, 2");
+      fail();
+    } catch (JSONException e) {
+      // this is the intended behavior
+    }
+  }
+
+  public void testGetJsonRepresentation() throws JSONException {
+    List<Object> inner = new ArrayList<Object>();
+    inner.add(1);
+    inner.add(2.5);
+    Object[] array = {"x", true};
+    Object[] items = {"a\"b\\c/d\n\u0001", inner, array, null, false};
+    assertEquals("[\"a\\\"b\\\\c\\/d\\n\\u0001\",[1,2.5],[\"x\",true],null,false]",
+        JsonUtil.getJsonRepresentation(YailList.makeList(items)));
+  }
+
+  public void testJsonRoundTrip() throws JSONException {
+    String json = "[\"a\",[1,2.5,[\"deep\",\"x\\\\y\"]],[[\"k\",\"v\"]],false]";
+    Object decoded = JsonUtil.getObjectFromJson(json);
+    assertEquals(json, JsonUtil.getJsonRepresentation(decoded));
+  }
+
+  public void testLargeListRoundTrip() throws JSONException {
+    List<Object> items = new ArrayList<Object>();
+    for (int i = 0; i < 100000; i++) {
+      items.add(i % 2 == 0 ? (Object) i : "item" + i);
+    }
+    String json = JsonUtil.getJsonRepresentation(YailList.makeList(items));
+    assertEquals(items, JsonUtil.getObjectFromJson(json));
+  }
 }
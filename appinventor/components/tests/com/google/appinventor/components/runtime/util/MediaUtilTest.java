@@ -1,22 +1,63 @@
 // -*- mode: java; c-basic-offset: 2; -*-
 // Copyright 2009-2011 Google, All Rights reserved
-// Copyright 2011-2012 MIT, All rights reserved
+// Copyright 2011-2018 MIT, All rights reserved
 // Released under the Apache License, Version 2.0
 // http://www.apache.org/licenses/LICENSE-2.0
 
 package com.google.appinventor.components.runtime.util;
 
-import junit.framework.TestCase;
-
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import com.google.appinventor.components.runtime.RobolectricTestBase;
+import com.google.appinventor.components.runtime.shadows.ShadowAsynchUtil;
+import com.google.appinventor.components.runtime.shadows.ShadowBitmapFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Tests MediaUtil.java.
  *
  * @author lizlooney@google.com (Liz Looney)
  */
-public class MediaUtilTest extends TestCase {
+@Config(shadows = {ShadowBitmapFactory.class})
+public class MediaUtilTest extends RobolectricTestBase {
 
+  private File image;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    MediaUtil.clearBitmapCache();
+    ShadowAsynchUtil.getPendingRunnables().clear();
+    ShadowBitmapFactory.clearDecodes();
+  }
+
+  @After
+  public void tearDown() {
+    getForm().Sizing("Responsive");
+    if (image != null) {
+      image.delete();
+    }
+  }
+
+  @Test
   public void testFileUrlToFilePath() throws Exception {
     assertEquals("/sdcard/17 Candle - Follow Me Down.m4a",
         MediaUtil.fileUrlToFilePath("file:///sdcard/17%20Candle%20-%20Follow%20Me%20Down.m4a"));
@@ -87,4 +128,122 @@ public class MediaUtilTest extends TestCase {
       // Expected
     }
   }
+  @Test
+  public void testCachedImageIsReused() throws IOException {
+    String url = writeImage(40, 30);
+    List<BitmapDrawable> loaded = load(url);
+    ShadowAsynchUtil.runAllPendingRunnables();
+    assertEquals(1, loaded.size());
+
+    ShadowLooper.pauseMainLooper();
+    List<BitmapDrawable> cached = load(url);
+    // Nothing is decoded again, and the cached image arrives later, as a loaded one does.
+    assertEquals(0, ShadowAsynchUtil.getPendingRunnables().size());
+    assertEquals(0, cached.size());
+    runAllEvents();
+    assertEquals(1, cached.size());
+    assertSame(loaded.get(0).getBitmap(), cached.get(0).getBitmap());
+    assertNotSame(loaded.get(0), cached.get(0));
+  }
+
+  @Test
+  public void testConcurrentLoadsShareOneDecode() throws IOException {
+    String url = writeImage(40, 30);
+    List<BitmapDrawable> first = load(url);
+    List<BitmapDrawable> second = load(url);
+    assertEquals(1, ShadowAsynchUtil.getPendingRunnables().size());
+    ShadowAsynchUtil.runAllPendingRunnables();
+    assertEquals(1, first.size());
+    assertEquals(1, second.size());
+    assertSame(first.get(0).getBitmap(), second.get(0).getBitmap());
+  }
+
+  @Test
+  public void testChangedFileIsLoadedAgain() throws IOException {
+    String url = writeImage(40, 30);
+    List<BitmapDrawable> before = load(url);
+    ShadowAsynchUtil.runAllPendingRunnables();
+    writeImage(80, 60);
+    List<BitmapDrawable> after = load(url);
+    assertEquals(1, ShadowAsynchUtil.getPendingRunnables().size());
+    ShadowAsynchUtil.runAllPendingRunnables();
+    assertEquals(1, after.size());
+    assertNotSame(before.get(0).getBitmap(), after.get(0).getBitmap());
+  }
+
+  @Test
+  public void testLargeImageIsSampledDown() throws IOException {
+    // Images more than twice as wide and high as a 360x420 screen are sampled down.
+    getForm().Sizing("Fixed");
+    String url = writeImage(2000, 1600);
+    List<BitmapDrawable> loaded = load(url);
+    ShadowAsynchUtil.runAllPendingRunnables();
+    List<ShadowBitmapFactory.Decode> decodes = ShadowBitmapFactory.getDecodes();
+    assertEquals(2, decodes.size());
+    assertTrue(decodes.get(0).justBounds);
+    assertFalse(decodes.get(1).justBounds);
+    assertEquals(2, decodes.get(1).sampleSize);
+    assertReadFromStart(decodes);
+    Bitmap bitmap = loaded.get(0).getBitmap();
+    assertEquals(1000, bitmap.getWidth());
+    assertEquals(800, bitmap.getHeight());
+  }
+
+  @Test
+  public void testSmallImageIsNotSampled() throws IOException {
+    getForm().Sizing("Fixed");
+    String url = writeImage(100, 80);
+    List<BitmapDrawable> loaded = load(url);
+    ShadowAsynchUtil.runAllPendingRunnables();
+    List<ShadowBitmapFactory.Decode> decodes = ShadowBitmapFactory.getDecodes();
+    assertEquals(2, decodes.size());
+    assertTrue(decodes.get(0).justBounds);
+    assertFalse(decodes.get(1).justBounds);
+    assertEquals(1, decodes.get(1).sampleSize);
+    assertReadFromStart(decodes);
+    Bitmap bitmap = loaded.get(0).getBitmap();
+    assertEquals(100, bitmap.getWidth());
+    assertEquals(80, bitmap.getHeight());
+  }
+
+  /**
+   * Asserts that each decode was given the whole image, so the stream read for the bounds was
+   * not reused to decode the pixels.
+   */
+  private void assertReadFromStart(List<ShadowBitmapFactory.Decode> decodes) {
+    for (ShadowBitmapFactory.Decode decode : decodes) {
+      assertEquals(image.length(), decode.available);
+    }
+  }
+
+  /**
+   * Writes a PNG image of the given size to a temporary file and returns its file URL.
+   */
+  private String writeImage(int width, int height) throws IOException {
+    if (image == null) {
+      image = File.createTempFile("MediaUtilTest", ".png");
+    }
+    ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY), "png", image);
+    return "file://" + image.getAbsolutePath();
+  }
+
+  /**
+   * Requests the image at url and returns the list that the drawable is added to when it
+   * arrives.
+   */
+  private List<BitmapDrawable> load(String url) {
+    final List<BitmapDrawable> results = new ArrayList<BitmapDrawable>();
+    MediaUtil.getBitmapDrawableAsync(getForm(), url, new AsyncCallbackPair<BitmapDrawable>() {
+      @Override
+      public void onSuccess(BitmapDrawable result) {
+        results.add(result);
+      }
+
+      @Override
+      public void onFailure(String message) {
+        fail(message);
+      }
+    });
+    return results;
+  }
 }
@@ -0,0 +1,102 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2018 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * Tests SensorWindow against the mean, minimum and maximum of a plain queue of the same readings.
+ *
+ */
+public class SensorWindowTest extends TestCase {
+  private static final float DELTA = .001f;  // floating point delta
+
+  public void testEmptyWindow() {
+    SensorWindow window = new SensorWindow(4);
+    assertEquals(0, window.size());
+    assertFalse(window.isFull());
+    assertEquals(0f, window.mean(), DELTA);
+    assertEquals(0f, window.max(), DELTA);
+    assertEquals(0f, window.min(), DELTA);
+  }
+
+  public void testOldestReadingIsPushedOut() {
+    SensorWindow window = new SensorWindow(3);
+    window.add(9);
+    window.add(1);
+    window.add(5);
+    assertTrue(window.isFull());
+    assertEquals(9f, window.max(), DELTA);
+    assertEquals(5f, window.mean(), DELTA);
+
+    window.add(2);
+    assertEquals(3, window.size());
+    assertEquals(5f, window.max(), DELTA);
+    assertEquals(1f, window.min(), DELTA);
+    assertEquals(2f, window.get(0), DELTA);
+    assertEquals(5f, window.get(1), DELTA);
+    assertEquals(1f, window.get(2), DELTA);
+  }
+
+  public void testClear() {
+    SensorWindow window = new SensorWindow(2);
+    window.add(7);
+    window.add(8);
+    window.add(9);
+    window.clear();
+    assertEquals(0, window.size());
+    window.add(-3);
+    assertEquals(-3f, window.max(), DELTA);
+    assertEquals(-3f, window.min(), DELTA);
+    assertEquals(-3f, window.mean(), DELTA);
+  }
+
+  public void testGetOutsideWindow() {
+    SensorWindow window = new SensorWindow(2);
+    window.add(1);
+    try {
+      window.get(1);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
+  public void testMatchesQueue() {
+    Random random = new Random(17);
+    for (int capacity : new int[] { 1, 2, 10, 100 }) {
+      SensorWindow window = new SensorWindow(capacity);
+      ArrayDeque<Float> queue = new ArrayDeque<Float>();
+      for (int i = 0; i < 20000; i++) {
+        // Alternate between readings with many repeats and readings that are all different.
+        float value = (i % 1000 < 500)
+            ? random.nextInt(5)
+            : (float) random.nextGaussian() * 100;
+        window.add(value);
+        queue.addLast(value);
+        if (queue.size() > capacity) {
+          queue.removeFirst();
+        }
+        float max = -Float.MAX_VALUE;
+        float min = Float.MAX_VALUE;
+        double sum = 0;
+        for (float v : queue) {
+          max = Math.max(max, v);
+          min = Math.min(min, v);
+          sum += v;
+        }
+        assertEquals(queue.size(), window.size());
+        assertEquals(max, window.max(), 0);
+        assertEquals(min, window.min(), 0);
+        assertEquals(sum / queue.size(), window.mean(), DELTA);
+        assertEquals(queue.peekFirst(), window.get(queue.size() - 1), 0);
+      }
+    }
+  }
+}
@@ -7,11 +7,15 @@
 package com.google.appinventor.components.runtime.util;
 
 import gnu.lists.FString;
+import gnu.lists.LList;
+import gnu.lists.Pair;
 
 import junit.framework.TestCase;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * Tests YailList class.
@@ -203,4 +207,205 @@ public class YailListTest extends TestCase {
       // this is the intended behavior
     }
   }
+
+  public void testItemIterator() {
+    Object[] testArray = {"a", 1, "c"};
+    YailList yailList = YailList.makeList(testArray);
+    Iterator<Object> it = yailList.itemIterator();
+    for (Object expected : testArray) {
+      assertTrue(it.hasNext());
+      assertEquals(expected, it.next());
+    }
+    assertFalse(it.hasNext());
+    try {
+      it.next();
+      fail();
+    } catch (NoSuchElementException e) {
+      // this is the intended behavior
+    }
+    assertFalse(new YailList().itemIterator().hasNext());
+  }
+
+  public void testIndexedEdits() {
+    YailList yailList = YailList.makeList(new Object[] {"b", "d"});
+    yailList.insertObject(0, "a");
+    yailList.insertObject(2, "c");
+    yailList.insertObject(4, "e");
+    yailList.addAll(LList.makeList(new Object[] {"f", "g"}, 0));
+    yailList.removeObject(6);
+    yailList.setObject(1, "B");
+    assertEquals("(a B c d e f)", yailList.toString());
+    assertEquals(6, yailList.size());
+    assertEquals("f", yailList.getObject(5));
+    assertEquals("c", yailList.getString(2));
+    while (yailList.size() > 0) {
+      yailList.removeObject(0);
+    }
+    assertEquals("()", yailList.toString());
+    yailList.addAll(LList.makeList(new Object[] {"x"}, 0));
+    assertEquals("(x)", yailList.toString());
+  }
+
+  public void testAppendListToItself() {
+    YailList yailList = YailList.makeList(new Object[] {"a", "b"});
+    yailList.addAll((LList) yailList.getCdr());
+    assertEquals("(a b a b)", yailList.toString());
+    assertEquals(4, yailList.size());
+    // A tail of the list grows as it is appended too.
+    yailList.addAll((LList) ((Pair) yailList.getCdr()).getCdr());
+    assertEquals("(a b a b b a b)", yailList.toString());
+    assertEquals("b", yailList.getObject(6));
+  }
+
+  public void testIndexFollowsChangesMadeAroundIt() {
+    checkChangesMadeAroundIndex(2);
+    checkChangesMadeAroundIndex(40);
+  }
+
+  private static void checkChangesMadeAroundIndex(int size) {
+    YailList yailList = YailList.makeList(makeItems(0, size));
+    assertEquals(size, yailList.size());
+    // The runtime's set-cdr! on the list header, or on its last pair, bypasses the index.
+    yailList.setCdr(LList.makeList(makeItems(100, size + 1), 0));
+    assertEquals(size + 1, yailList.size());
+    assertEquals(100 + size, yailList.getObject(size));
+    Pair last = (Pair) yailList.getCdr();
+    while (last.getCdr() != LList.Empty) {
+      last = (Pair) last.getCdr();
+    }
+    last.setCdr(new Pair("w", LList.Empty));
+    assertEquals(size + 2, yailList.size());
+    assertEquals("w", yailList.getObject(size + 1));
+  }
+
+  // Makes the same edits to a YailList and an ArrayList, from empty through lengths on both
+  // sides of the one at which YailList starts indexing its items.
+  public void testEditsAcrossIndexThreshold() {
+    YailList yailList = new YailList();
+    ArrayList<Object> expected = new ArrayList<Object>();
+    for (int i = 0; i < 40; i++) {
+      yailList.addObject(i);
+      expected.add(i);
+      yailList.insertObject(i / 2, -i);
+      expected.add(i / 2, -i);
+      if (i % 3 == 0) {
+        yailList.removeObject(i);
+        expected.remove(i);
+      }
+      yailList.setObject(i / 3, "s" + i);
+      expected.set(i / 3, "s" + i);
+      checkItems(expected, yailList);
+    }
+    while (!expected.isEmpty()) {
+      yailList.removeObject(expected.size() / 2);
+      expected.remove(expected.size() / 2);
+      checkItems(expected, yailList);
+    }
+    try {
+      yailList.getObject(0);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // this is the intended behavior
+    }
+  }
+
+  private static void checkItems(ArrayList<Object> expected, YailList yailList) {
+    assertEquals(expected.size(), yailList.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i), yailList.getObject(i));
+    }
+    assertEquals(LList.makeList(expected).toString(), yailList.toString());
+  }
+
+  private static Object[] makeItems(int first, int count) {
+    Object[] items = new Object[count];
+    for (int i = 0; i < count; i++) {
+      items[i] = first + i;
+    }
+    return items;
+  }
+
+  public void testCopyIsDeep() {
+    YailList inner = YailList.makeList(new Object[] {"b", "c"});
+    YailList outer = YailList.makeList(new Object[] {"a", inner});
+    YailList copy = outer.copy();
+    ((YailList) copy.getObject(1)).setObject(0, "B");
+    copy.setObject(0, "A");
+    ((YailList) copy.getObject(1)).addObject("d");
+    assertEquals("(a (b c))", outer.toString());
+    assertEquals("(A (B c d))", copy.toString());
+    outer.removeObject(0);
+    assertEquals("(A (B c d))", copy.toString());
+  }
+
+  public void testCopyOnWrite() {
+    YailList original = YailList.makeList(new Object[] {"a", "b", "c"});
+    YailList copy = original.copy(true);
+    assertSame(original.getCdr(), copy.getCdr());
+    copy.setObject(0, "x");
+    original.removeObject(2);
+    assertEquals("(a b)", original.toString());
+    assertEquals("(x b c)", copy.toString());
+    YailList second = copy.copy(true);
+    second.insertObject(0, "w");
+    copy.addAll(LList.makeList(new Object[] {"d"}, 0));
+    assertEquals("(w x b c)", second.toString());
+    assertEquals("(x b c d)", copy.toString());
+  }
+
+  public void testCopyOnWriteOfIndexedList() {
+    YailList original = YailList.makeList(makeItems(0, 40));
+    assertEquals(39, original.getObject(39));
+    YailList copy = original.copy(true);
+    copy.setObject(39, "x");
+    copy.addObject(40);
+    original.removeObject(0);
+    assertEquals(39, original.size());
+    assertEquals(39, original.getObject(38));
+    assertEquals(41, copy.size());
+    assertEquals(0, copy.getObject(0));
+    assertEquals("x", copy.getObject(39));
+    assertEquals(40, copy.getObject(40));
+  }
+
+  public void testCopyOnWriteCopiesSublists() {
+    YailList inner = YailList.makeList(new Object[] {"b", "c"});
+    YailList outer = YailList.makeList(new Object[] {"a", inner});
+    YailList copy = outer.copy(true);
+    assertNotSame(outer.getCdr(), copy.getCdr());
+    ((YailList) copy.getObject(1)).addObject("d");
+    assertEquals("(a (b c))", outer.toString());
+    assertEquals("(a (b c d))", copy.toString());
+  }
+
+  // The following tests time whole-list traversals. Before YailList had an item iterator these
+  // used get(i) in a loop and were quadratic; at 100k elements they took minutes rather than
+  // milliseconds.
+
+  public void testTraversal10() {
+    checkTraversal(10);
+  }
+
+  public void testTraversal1k() {
+    checkTraversal(1000);
+  }
+
+  public void testTraversal100k() {
+    checkTraversal(100000);
+  }
+
+  private static void checkTraversal(int size) {
+    ArrayList<Object> items = new ArrayList<Object>(size);
+    for (int i = 0; i < size; i++) {
+      items.add("item" + i);
+    }
+    YailList yailList = YailList.makeList(items);
+    String[] strings = yailList.toStringArray();
+    assertEquals(size, strings.length);
+    assertEquals("item" + (size - 1), strings[size - 1]);
+    String json = yailList.toJSONString();
+    assertTrue(json.endsWith("\"item" + (size - 1) + "\"]"));
+    assertEquals(size, ElementsUtil.setSelectedIndexFromValue("item" + (size - 1), yailList));
+    assertEquals(0, ElementsUtil.setSelectedIndexFromValue("missing", yailList));
+  }
 }